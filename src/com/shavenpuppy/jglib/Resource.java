@@ -38,6 +38,9 @@ import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.w3c.dom.Element;
 
@@ -73,6 +76,12 @@ public abstract class Resource implements IResource, Cloneable {
 	// Has the resource been created;
 	transient boolean created, creating, destroying;
 
+	/** Has the CPU-side work of creation already been done by {@link #prepare()} */
+	private transient volatile boolean prepared;
+
+	/** Preparation handed to a background thread by {@link Resources#prepare(java.util.Collection)}, if any */
+	private transient volatile FutureTask<Void> preparation;
+
 	/** Special twiddler that causes resources to create() when they are deserialized if they were created at serialization time */
 	private static class CreationDeserialization implements Serializable {
 		private static final long serialVersionUID = 1L;
@@ -178,7 +187,16 @@ public abstract class Resource implements IResource, Cloneable {
 			if (Resources.getCreatingCallback() != null) {
 				Resources.getCreatingCallback().onCreating(this);
 			}
-			doCreate();
+			try {
+				prepare();
+				doCreate();
+			} catch (RuntimeException e) {
+				unprepare();
+				throw e;
+			} catch (Error e) {
+				unprepare();
+				throw e;
+			}
 			creating = false;
 			created = true;
 		}
@@ -194,9 +212,96 @@ public abstract class Resource implements IResource, Cloneable {
 			doDestroy();
 			destroying = false;
 			created = false;
+			prepared = false;
+		}
+	}
+
+	/**
+	 * Prepare this resource: performs the CPU-side half of creation, such as reading and decoding files. It is called
+	 * automatically by {@link #create()} if it hasn't been called already. If the resource has been handed to a
+	 * background thread, this waits for that thread to finish with it, or prepares it here if the thread hasn't got to
+	 * it yet; if the background thread failed, its exception is thrown here.
+	 */
+	public final void prepare() {
+		FutureTask<Void> task = preparation;
+		if (task != null) {
+			// Does nothing if a background thread has already started it
+			task.run();
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while preparing " + this, e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Failed to prepare " + this, e.getCause());
+			} finally {
+				preparation = null;
+			}
+		} else if (!prepared && !created) {
+			doPrepare();
+			prepared = true;
 		}
 	}
 
+	/**
+	 * Hand this resource's preparation over to a background thread
+	 * @return the preparation, to be run on the background thread; or null if there's nothing to do
+	 */
+	FutureTask<Void> startPreparation() {
+		if (prepared || created || preparation != null || !isPreparable()) {
+			return null;
+		}
+		preparation = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				doPrepare();
+				prepared = true;
+				return null;
+			}
+		});
+		return preparation;
+	}
+
+	/**
+	 * Throw away any prepared data if this resource hasn't been created, because creating it failed or because it
+	 * turned out not to be needed. Any background preparation must have finished or been abandoned.
+	 */
+	void unprepare() {
+		if (!created) {
+			preparation = null;
+			prepared = false;
+			doUnprepare();
+		}
+	}
+
+	/**
+	 * Subclasses may implement this method to do any creation work which doesn't need the O/S resources (OpenGL,
+	 * OpenAL etc). It may be run on a background thread, so it must not create or look up any other resources.
+	 */
+	protected void doPrepare() {}
+
+	/**
+	 * Subclasses which implement {@link #doPrepare()} should implement this to throw away whatever it made. It may be
+	 * called even if doPrepare() wasn't, or failed part way through.
+	 */
+	protected void doUnprepare() {}
+
+	/**
+	 * @return true if this resource does any work in {@link #doPrepare()}, and is therefore worth preparing on a
+	 * background thread
+	 */
+	protected boolean isPreparable() {
+		return false;
+	}
+
+	/**
+	 * @return the names of any resources which creating this one will create, or null. Used to work out what's worth
+	 * preparing ahead of time.
+	 */
+	public String[] getDependencies() {
+		return null;
+	}
+
 	/**
 	 * Subclasses must implement this method to do the creation of external resources.
 	 */
@@ -33,6 +33,11 @@ package com.shavenpuppy.jglib;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Holds Resources. Essentially, a Resource is a handle to a native peer
@@ -58,6 +63,9 @@ public final class Resources {
 	/** Serialization mode: set to true to serialize as SerializedResources */
 	private static boolean runMode;
 
+	/** Headless mode: resources are created without touching OpenGL or OpenAL */
+	private static boolean headless;
+
 	/** A map of resource names to resources */
 	private static final Map<String, IResource> RESOURCES = new LinkedHashMap<String, IResource>(256, 0.25f);
 
@@ -73,6 +81,31 @@ public final class Resources {
 	/** Number of resources created */
 	private static int numCreated;
 
+	/**
+	 * Number of background threads used to prepare resources: we leave one CPU free for the main thread. Can be set
+	 * with the system property <code>resources.prepareThreads</code>.
+	 */
+	private static final int PREPARE_THREADS = Integer.getInteger("resources.prepareThreads", Runtime.getRuntime().availableProcessors() - 1);
+
+	/** Background preparation threads */
+	private static final ThreadFactory PREPARE_THREAD_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Resource preparation");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	/** Background preparation threads, while there's anything to prepare */
+	private static ExecutorService preparer;
+
+	/** Resources handed to the preparation threads */
+	private static final List<Resource> PREPARING = new ArrayList<Resource>();
+
+	/** Calls to prepare() not yet matched by finishPreparing() */
+	private static int prepareCount;
+
 	/** Resource creation callback */
 	public interface CreatingCallback {
 
@@ -363,6 +396,22 @@ public final class Resources {
 		return runMode;
 	}
 
+	/**
+	 * Sets headless mode. Textures, vertex buffers and sound buffers then skip their OpenGL and OpenAL calls when they
+	 * are created, and nothing touches the LWJGL natives, so resources can be created with no display or sound device.
+	 * @param headless
+	 */
+	public static void setHeadless(boolean headless) {
+		Resources.headless = headless;
+	}
+
+	/**
+	 * @return true if we're in headless mode
+	 */
+	public static boolean isHeadless() {
+		return headless;
+	}
+
 	public static void registerTag(Class<? extends IResource> clazz, String tag) {
 		CLASS_TO_TAG_MAP.put(clazz, tag);
 		TAG_TO_CLASS_MAP.put(tag, clazz);
@@ -380,8 +429,96 @@ public final class Resources {
 	 * Create all uncreated resources
 	 */
 	public static void create() {
-		for (IResource res : RESOURCES.values()) {
-			res.create();
+		prepare(RESOURCES.values());
+		try {
+			for (IResource res : RESOURCES.values()) {
+				res.create();
+			}
+		} finally {
+			finishPreparing();
+		}
+	}
+
+	/**
+	 * Start preparing the specified uncreated resources, and everything creating them will create, on a pool of
+	 * background threads, and return immediately. The resources must still be created as usual on the main thread,
+	 * which does the OpenGL and OpenAL uploads; creating a resource that is still being prepared waits for it, and
+	 * creating one that hasn't been reached yet prepares it there and then. A resource's dependencies are queued
+	 * before the resource itself. Every call must be matched by a call to {@link #finishPreparing()} once the
+	 * resources have been created.
+	 * @param resources The resources, in the order they are likely to be created
+	 */
+	public static void prepare(Collection<? extends IResource> resources) {
+		prepareCount ++;
+		if (PREPARE_THREADS < 1) {
+			return;
+		}
+		// Resolve dependencies here on the main thread, as RESOURCES isn't threadsafe
+		List<Resource> order = new ArrayList<Resource>();
+		Set<IResource> visited = new HashSet<IResource>();
+		for (IResource res : resources) {
+			getPrepareOrder(res, order, visited);
+		}
+		for (Resource res : order) {
+			FutureTask<Void> task = res.startPreparation();
+			if (task != null) {
+				if (preparer == null) {
+					preparer = Executors.newFixedThreadPool(PREPARE_THREADS, PREPARE_THREAD_FACTORY);
+				}
+				PREPARING.add(res);
+				preparer.execute(task);
+			}
+		}
+	}
+
+	/**
+	 * Stop preparing resources in the background. Anything not yet started is abandoned, and anything prepared but
+	 * not created is thrown away.
+	 */
+	public static void finishPreparing() {
+		assert prepareCount > 0;
+		if (-- prepareCount > 0 || preparer == null) {
+			return;
+		}
+		preparer.shutdownNow();
+		boolean interrupted = false;
+		try {
+			while (!preparer.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Wait for the last decodes to finish
+			}
+		} catch (InterruptedException e) {
+			interrupted = true;
+		}
+		for (Resource res : PREPARING) {
+			res.unprepare();
+		}
+		PREPARING.clear();
+		preparer = null;
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Lists an uncreated resource's preparable dependencies and then, if it's preparable, the resource; depth first
+	 */
+	private static void getPrepareOrder(IResource res, List<Resource> order, Set<IResource> visited) {
+		if (!(res instanceof Resource) || res.isCreated() || !visited.add(res)) {
+			return;
+		}
+		String[] dependencies = ((Resource) res).getDependencies();
+		if (dependencies != null) {
+			for (String name : dependencies) {
+				if (name != null) {
+					IResource dependency = RESOURCES.get(name.toLowerCase());
+					if (dependency != null) {
+						getPrepareOrder(dependency, order, visited);
+					}
+				}
+			}
+		}
+		if (((Resource) res).isPreparable()) {
+			order.add((Resource) res);
 		}
 	}
 
@@ -390,8 +527,13 @@ public final class Resources {
 	}
 
 	public static void dequeue() {
-		for (IResource r : QUEUE) {
-			r.create();
+		prepare(QUEUE);
+		try {
+			for (IResource r : QUEUE) {
+				r.create();
+			}
+		} finally {
+			finishPreparing();
 		}
 		QUEUE.clear();
 	}
@@ -33,6 +33,7 @@ package com.shavenpuppy.jglib;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 import com.shavenpuppy.jglib.resources.WaveWrapper;
 /**
@@ -89,6 +90,13 @@ public final class Wave implements Serializable, WaveWrapper {
 	private static final int MAGIC = 0xB00F;
 	private static final int VERSION = 1;
 
+	/*
+	 * Mapped cache files: MAGIC, version, source hash (long), samples, type, freq, length of data, then the raw data
+	 * in native byte order
+	 */
+	private static final int CACHE_VERSION = 2;
+	private static final int CACHE_HEADER_SIZE = 32;
+
 
 	private transient int numRead, numDisposed;
 
@@ -181,6 +189,69 @@ public final class Wave implements Serializable, WaveWrapper {
 		oos.reset();
 	}
 
+	/**
+	 * Maps a Wave from a cache file written by {@link #writeMapped(Wave, File, long)}. The wave's data is the mapped
+	 * file itself, so nothing is copied.
+	 * @param file The cache file
+	 * @param hash A hash of the wave's source, which must match the hash the file was written with
+	 * @return the Wave, or null if the file doesn't exist, or is stale or damaged
+	 */
+	public static Wave map(File file, long hash) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < CACHE_HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != CACHE_VERSION || raf.readLong() != hash) {
+				return null;
+			}
+			Wave ret = new Wave();
+			ret.readHeader(raf);
+			int length = raf.readInt();
+			if (length != raf.length() - CACHE_HEADER_SIZE) {
+				return null;
+			}
+			// The mapping stays valid after the file is closed
+			ret.data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, CACHE_HEADER_SIZE, length).order(ByteOrder.nativeOrder());
+			return ret;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes a Wave to a cache file which can be read back with {@link #map(File, long)}
+	 * @param wave The wave to write
+	 * @param file The cache file
+	 * @param hash A hash of the wave's source
+	 */
+	public static void writeMapped(Wave wave, File file, long hash) throws IOException {
+		ByteBuffer src = wave.data.duplicate();
+		src.rewind();
+		ByteBuffer header = ByteBuffer.allocate(CACHE_HEADER_SIZE);
+		header.putInt(MAGIC).putInt(CACHE_VERSION).putLong(hash);
+		header.putInt(wave.samples).putInt(wave.type).putInt(wave.freq);
+		header.putInt(src.remaining());
+		header.flip();
+
+		File dir = file.getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			FileChannel channel = fos.getChannel();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			while (src.hasRemaining()) {
+				channel.write(src);
+			}
+		} finally {
+			fos.close();
+		}
+	}
+
 	private void writeObject(ObjectOutputStream stream) throws IOException {
 		stream.defaultWriteObject();
 		writeHeader(stream);
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * LSD radix sort of 64 bit keys, compared as unsigned. Like {@link RadixSort} it produces a list of indices in sorted
+ * order rather than moving the keys, and is stable.
+ * <p>
+ * It takes advantage of temporal coherence: if the same number of keys is sorted as last time, the previous indices
+ * are insertion sorted. That's cheap when the keys have hardly changed, but it is only allowed to shift indices about
+ * {@link #MAX_SHIFTS_PER_KEY} times per key; once that's used up it gives up and radix sorts instead, so a few keys
+ * moving a long way can't make it quadratic. Byte passes in which every key has the same byte are skipped.
+ */
+public final class LongRadixSort {
+
+	/** Insertion sort shifts allowed per key, on average, before we give up and radix sort */
+	private static final int MAX_SHIFTS_PER_KEY = 2;
+
+	/** Counters for each byte of each pass */
+	private final int[] histogram = new int[256 * 8];
+
+	/** Two lists, swapped each pass */
+	private int[] indices = new int[0], indices2 = new int[0];
+
+	/** Number of keys last sorted */
+	private int size;
+
+	/**
+	 * C'tor
+	 */
+	public LongRadixSort() {
+	}
+
+	/**
+	 * @return the indices of the keys in sorted order
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+
+	/**
+	 * Sort some keys
+	 * @param keys
+	 * @param length Number of keys to sort
+	 * @return this
+	 */
+	public LongRadixSort sort(long[] keys, int length) {
+		if (indices.length < length) {
+			indices = new int[keys.length];
+			indices2 = new int[keys.length];
+			size = -1;
+		}
+
+		if (length == size && length > 0 && insertionSort(keys, length, length * MAX_SHIFTS_PER_KEY)) {
+			// Temporal coherence
+			return this;
+		}
+
+		size = length;
+		for (int i = 0; i < length; i ++) {
+			indices[i] = i;
+		}
+		if (length < 2) {
+			return this;
+		}
+
+		// Create histograms for all passes in one run
+		Arrays.fill(histogram, 0);
+		for (int i = 0; i < length; i ++) {
+			long key = keys[i];
+			for (int pass = 0; pass < 8; pass ++) {
+				histogram[(pass << 8) + ((int) (key >>> (pass << 3)) & 0xFF)] ++;
+			}
+		}
+
+		for (int pass = 0; pass < 8; pass ++) {
+			int base = pass << 8;
+			int shift = pass << 3;
+
+			// If all keys have the same byte, this pass is useless
+			if (histogram[base + ((int) (keys[0] >>> shift) & 0xFF)] == length) {
+				continue;
+			}
+
+			// Turn the counts into offsets
+			int offset = 0;
+			for (int i = 0; i < 256; i ++) {
+				int count = histogram[base + i];
+				histogram[base + i] = offset;
+				offset += count;
+			}
+
+			for (int i = 0; i < length; i ++) {
+				int id = indices[i];
+				indices2[histogram[base + ((int) (keys[id] >>> shift) & 0xFF)] ++] = id;
+			}
+
+			int[] tmp = indices;
+			indices = indices2;
+			indices2 = tmp;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Insertion sort the previous indices
+	 * @param maxShifts The number of shifts after which we give up
+	 * @return true if the indices are sorted; false if we gave up, in which case they are a permutation of the old ones
+	 */
+	private boolean insertionSort(long[] keys, int length, int maxShifts) {
+		int shifts = 0;
+		long prev = keys[indices[0]] ^ Long.MIN_VALUE;
+		for (int i = 1; i < length; i ++) {
+			int id = indices[i];
+			long key = keys[id] ^ Long.MIN_VALUE;
+			if (key >= prev) {
+				// Already in place, which is nearly always the case
+				prev = key;
+				continue;
+			}
+			int j = i - 1;
+			do {
+				indices[j + 1] = indices[j];
+				j --;
+				if (++ shifts > maxShifts) {
+					indices[j + 1] = id;
+					return false;
+				}
+			} while (j >= 0 && (keys[indices[j]] ^ Long.MIN_VALUE) > key);
+			indices[j + 1] = id;
+		}
+		return true;
+	}
+}
@@ -113,7 +113,7 @@ public class ALBuffer extends Resource implements ALBufferID {
 	@Override
 	protected void doCreate() {
 
-		if (!org.lwjgl.openal.AL.isCreated()) {
+		if (Resources.isHeadless() || !org.lwjgl.openal.AL.isCreated()) {
 			return;
 		}
 
@@ -161,6 +161,18 @@ public class ALBuffer extends Resource implements ALBufferID {
 
 	}
 
+	/**
+	 * @see com.shavenpuppy.jglib.Resource#getDependencies()
+	 */
+	@Override
+	public String[] getDependencies() {
+		if (url != null && url.startsWith("resource:")) {
+			return new String[] {url.substring(9)};
+		} else {
+			return null;
+		}
+	}
+
 	/**
 	 * @see com.shavenpuppy.jglib.Resource#doDestroy()
 	 */
@@ -37,6 +37,7 @@ import org.lwjgl.openal.OpenALException;
 import org.lwjgl.util.vector.Vector3f;
 
 import com.shavenpuppy.jglib.Resource;
+import com.shavenpuppy.jglib.Resources;
 
 import static org.lwjgl.openal.AL10.*;
 
@@ -175,7 +176,7 @@ public class ALSource extends Resource {
 	@Override
 	protected void doCreate() {
 
-		if (!org.lwjgl.openal.AL.isCreated()) {
+		if (Resources.isHeadless() || !org.lwjgl.openal.AL.isCreated()) {
 			return;
 		}
 
@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import org.w3c.dom.Element;
 
 import com.shavenpuppy.jglib.Resource;
+import com.shavenpuppy.jglib.Resources;
 import com.shavenpuppy.jglib.util.XMLUtil;
 
 /**
@@ -117,7 +118,7 @@ public class ALStream extends Resource {
 	@Override
 	protected void doCreate() {
 
-		if (!org.lwjgl.openal.AL.isCreated()) {
+		if (Resources.isHeadless() || !org.lwjgl.openal.AL.isCreated()) {
 			return;
 		}
 
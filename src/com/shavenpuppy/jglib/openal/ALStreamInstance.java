@@ -31,7 +31,6 @@
  */
 package com.shavenpuppy.jglib.openal;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
@@ -73,15 +72,12 @@ public class ALStreamInstance extends Resource {
 	/** Input stream */
 	private transient InputStream inputStream;
 
-	/** Buffer */
-	private transient byte[] buf;
+	/** Decodes the input stream ahead of playback */
+	private transient StreamDecoder decoder;
 
 	/** Upload buffer */
 	private transient ByteBuffer byteBuf;
 
-	/** Current buffer read pos */
-	private transient int pos;
-
 	private transient int type;
 	private transient int frequency;
 	private transient int format;
@@ -158,7 +154,7 @@ public class ALStreamInstance extends Resource {
 	@Override
 	protected void doCreate() {
 
-		if (!org.lwjgl.openal.AL.isCreated()) {
+		if (Resources.isHeadless() || !org.lwjgl.openal.AL.isCreated()) {
 			return;
 		}
 
@@ -170,7 +166,6 @@ public class ALStreamInstance extends Resource {
 				buffers[i].create();
 			}
 
-			buf = new byte[BUFSIZE];
 			byteBuf = BufferUtils.createByteBuffer(BUFSIZE);
 
 			initStream();
@@ -182,10 +177,11 @@ public class ALStreamInstance extends Resource {
 	private void initStream() throws Exception {
 
 		// First get the wave if necessary
+		WaveWrapper waveResource = null;
 		if (url != null) {
 			if (url.startsWith("resource:")) {
 				// Load directly from Resources
-				WaveWrapper waveResource = (WaveWrapper) Resources.get(url.substring(9));
+				waveResource = (WaveWrapper) Resources.get(url.substring(9));
 				if (waveResource == null) {
 					throw new RuntimeException("Resource "+url+" not found");
 				}
@@ -215,6 +211,18 @@ public class ALStreamInstance extends Resource {
             default:
                 assert false;
 		}
+
+		// Decode ahead on another thread, so tick() only has to queue up ready buffers
+		decoder = new StreamDecoder(inputStream, waveResource, looped, BUFSIZE);
+		decoder.start();
+	}
+
+	private void stopDecoder() {
+		if (decoder != null) {
+			// The decoder closes the input stream when it stops
+			decoder.stop();
+			decoder = null;
+		}
 	}
 
 	/**
@@ -228,15 +236,7 @@ public class ALStreamInstance extends Resource {
 			}
 			buffers = null;
 		}
-		if (inputStream != null) {
-			try {
-				inputStream.close();
-			} catch (IOException e) {
-				e.printStackTrace(System.err);
-			}
-			inputStream = null;
-		}
-		buf = null;
+		stopDecoder();
 		byteBuf = null;
 	}
 
@@ -260,6 +260,7 @@ public class ALStreamInstance extends Resource {
 			waitForQueue = false;
 			startPlaying = false;
 			writeBuf = 0;
+			stopDecoder();
 			owner.stop();
 			// Dequeue everything
 			int queued;
@@ -292,18 +293,13 @@ public class ALStreamInstance extends Resource {
 	}
 
 	void reset() throws Exception {
-	    if (url != null && inputStream != null) {
-	        try {
-	            inputStream.close();
-	        } catch (IOException e) {
-	        }
-	        inputStream = null;
-	    }
+		stopDecoder();
 		initStream();
 	}
 
 	/**
-	 * Tick. This keeps our buffers full. This is run in a separate thread.
+	 * Tick. This keeps our buffers full. This is run in a separate thread, and only uploads buffers that the decoder
+	 * thread has already filled.
 	 */
 	public synchronized void tick() throws Exception {
 		if (!buffers[writeBuf].isCreated()) {
@@ -327,13 +323,10 @@ public class ALStreamInstance extends Resource {
 		}
 
 		// We are now on the second buffer; this means we can unqueue the first, and
-		// queue the buffer that's been filled; and start decoding the next buffer.
-		int read = inputStream.read(buf, pos, buf.length - pos);
-		if (read == -1) {
-			if (looped) {
-				initStream();
-				tick();
-			} else {
+		// queue the next buffer the decoder has filled.
+		byte[] buf = decoder == null ? null : decoder.peek();
+		if (buf == null) {
+			if (decoder == null || decoder.isFinished()) {
 				if (numQueued == 0) {
 					setPlaying(false);
 				} else {
@@ -341,33 +334,30 @@ public class ALStreamInstance extends Resource {
 				}
 			}
 		} else {
-			pos += read;
-			if (pos == buf.length) {
-				pos = 0;
-				// We're full. Upload to AL. We'll count the samples as being played.
-				samplesPlayed += buf.length / sampleSize;
-				byteBuf.put(buf);
-				byteBuf.flip();
-				final ALBuffer bufToQueue = buffers[writeBuf ++];
-				if (writeBuf == buffers.length) {
-					writeBuf = 0;
-				}
-				numQueued ++;
-				if (numQueued == buffers.length) {
-					waitForQueue = true;
-				}
-				if (startPlaying) {
-					owner.unattach(); // Ensure source has no buffers in it of the wrong format
-					startPlaying = false;
-				}
-				// Ensure that the buffer is not somehow inexplicably already queued
-				alBufferData(bufToQueue.getBufferID(), format, byteBuf, frequency);
-				owner.queue(bufToQueue);
-				if (owner.getInt(AL_SOURCE_STATE) != AL_PLAYING) {
-					owner.play();
-				}
-				byteBuf.clear();
+			// Upload to AL. We'll count the samples as being played.
+			samplesPlayed += buf.length / sampleSize;
+			byteBuf.put(buf);
+			byteBuf.flip();
+			decoder.release();
+			final ALBuffer bufToQueue = buffers[writeBuf ++];
+			if (writeBuf == buffers.length) {
+				writeBuf = 0;
+			}
+			numQueued ++;
+			if (numQueued == buffers.length) {
+				waitForQueue = true;
+			}
+			if (startPlaying) {
+				owner.unattach(); // Ensure source has no buffers in it of the wrong format
+				startPlaying = false;
+			}
+			// Ensure that the buffer is not somehow inexplicably already queued
+			alBufferData(bufToQueue.getBufferID(), format, byteBuf, frequency);
+			owner.queue(bufToQueue);
+			if (owner.getInt(AL_SOURCE_STATE) != AL_PLAYING) {
+				owner.play();
 			}
+			byteBuf.clear();
 		}
 
 	}
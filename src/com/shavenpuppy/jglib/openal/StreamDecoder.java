@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.openal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.LockSupport;
+
+import com.shavenpuppy.jglib.resources.WaveWrapper;
+
+/**
+ * Decodes a stream into a ring of PCM buffers on its own thread, ahead of playback. The ring has exactly one producer
+ * (the decoder thread) and one consumer (the stream thread), so it needs no locks: each side only ever writes its
+ * own index.
+ */
+final class StreamDecoder implements Runnable {
+
+	/** Number of buffers decoded ahead */
+	private static final int SLOTS = 4;
+
+	/** How long the decoder waits when the ring is full, in nanoseconds */
+	private static final long WAIT = 5000000L;
+
+	private static int num;
+
+	/** The ring of decoded buffers */
+	private final byte[][] slot;
+
+	/** Counts of buffers taken by the consumer, and written by the producer */
+	private volatile int readCount, writeCount;
+
+	/** Set by the producer when there is nothing more to decode */
+	private volatile boolean finished;
+
+	/** Set by the consumer to stop decoding */
+	private volatile boolean stopped;
+
+	/** Source wave, which is asked for a new stream when a looped stream ends; may be null */
+	private final WaveWrapper source;
+
+	/** Looped? */
+	private final boolean looped;
+
+	/** The decoder thread */
+	private final Thread thread;
+
+	/** The input stream; only touched by the decoder thread once started */
+	private InputStream input;
+
+	/**
+	 * C'tor
+	 * @param input The stream to decode
+	 * @param source The wave to reopen when a looped stream ends, or null
+	 * @param looped Whether to loop
+	 * @param bufSize Size of each decoded buffer, in bytes
+	 */
+	StreamDecoder(InputStream input, WaveWrapper source, boolean looped, int bufSize) {
+		this.input = input;
+		this.source = source;
+		this.looped = looped;
+		slot = new byte[SLOTS][bufSize];
+		thread = new Thread(this, "Stream Decoder "+(num++));
+		thread.setPriority(Thread.NORM_PRIORITY + 2);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Start decoding
+	 */
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stop decoding. The decoder thread closes the input stream and exits once any decode in progress has finished;
+	 * this method doesn't wait for it.
+	 */
+	void stop() {
+		stopped = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * @return the next decoded buffer, or null if none is ready yet. Call {@link #release()} when finished with it.
+	 */
+	byte[] peek() {
+		int r = readCount;
+		if (r == writeCount) {
+			return null;
+		}
+		return slot[r % SLOTS];
+	}
+
+	/**
+	 * Hand the buffer returned by {@link #peek()} back to the decoder
+	 */
+	void release() {
+		readCount ++;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * @return true if the stream has ended and every decoded buffer has been taken
+	 */
+	boolean isFinished() {
+		return finished && readCount == writeCount;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!stopped) {
+				if (writeCount - readCount == SLOTS) {
+					LockSupport.parkNanos(this, WAIT);
+					continue;
+				}
+				if (!fill(slot[writeCount % SLOTS])) {
+					break;
+				}
+				writeCount ++;
+			}
+		} catch (Exception e) {
+			if (!stopped) {
+				e.printStackTrace(System.err);
+			}
+		} finally {
+			finished = true;
+			try {
+				input.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Fill a buffer completely
+	 * @return false if the stream ended first; the partial buffer is discarded
+	 */
+	private boolean fill(byte[] buf) throws Exception {
+		int pos = 0;
+		while (pos < buf.length) {
+			if (stopped) {
+				return false;
+			}
+			int read = input.read(buf, pos, buf.length - pos);
+			if (read == -1) {
+				if (!looped || source == null) {
+					return false;
+				}
+				input.close();
+				input = source.getStream();
+			} else {
+				pos += read;
+			}
+		}
+		return true;
+	}
+}
@@ -36,6 +36,7 @@ import org.lwjgl.opengl.OpenGLException;
 import org.w3c.dom.Element;
 
 import com.shavenpuppy.jglib.Resource;
+import com.shavenpuppy.jglib.Resources;
 import com.shavenpuppy.jglib.util.XMLUtil;
 
 import static org.lwjgl.opengl.GL11.*;
@@ -108,6 +109,9 @@ public abstract class GLBaseTexture extends Resource implements GLRenderableObje
 	 */
 	@Override
 	protected final void doCreate() {
+		if (Resources.isHeadless()) {
+			return;
+		}
 
 		GLUtil.scratch.ints.clear().limit(1);
 		glGenTextures(GLUtil.scratch.ints);
@@ -181,4 +185,4 @@ public abstract class GLBaseTexture extends Resource implements GLRenderableObje
 
 	public abstract int getWidth();
 	public abstract int getHeight();
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -212,13 +212,32 @@ public class GLTexture extends GLBaseTexture {
 	}
 
 	/* (non-Javadoc)
-	 * @see com.shavenpuppy.jglib.opengl.GLBaseTexture#doCreateTexture()
+	 * @see com.shavenpuppy.jglib.Resource#isPreparable()
 	 */
 	@Override
-	protected void doCreateTexture() {
+	protected boolean isPreparable() {
+		return url != null && !url.startsWith("resource:");
+	}
 
+	/* (non-Javadoc)
+	 * @see com.shavenpuppy.jglib.Resource#getDependencies()
+	 */
+	@Override
+	public String[] getDependencies() {
+		if (url != null && url.startsWith("resource:")) {
+			return new String[] {url.substring(9)};
+		} else {
+			return null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.shavenpuppy.jglib.Resource#doPrepare()
+	 */
+	@Override
+	protected void doPrepare() {
 		try {
-			// First get the image if necessary
+			// Get the image if necessary. Images from Resources are fetched when the texture is created.
 			if (url != null) {
 				if (url.startsWith("classpath:")) {
 					// Load directly from a serialised Image in the classpath
@@ -229,14 +248,37 @@ public class GLTexture extends GLBaseTexture {
 						System.out.println("Failed to load system resource: "+url.substring(10));
 						throw e;
 					}
-				} else if (url.startsWith("resource:")) {
-					// Load directly from Resources
-					imageResource = (ImageWrapper) Resources.get(url.substring(9));
-				} else {
+				} else if (!url.startsWith("resource:")) {
 					// Load from a URL
 					image = Image.read(new BufferedInputStream(new URL(url).openStream()));
 				}
 			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.shavenpuppy.jglib.Resource#doUnprepare()
+	 */
+	@Override
+	protected void doUnprepare() {
+		if (isPreparable()) {
+			image = null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.shavenpuppy.jglib.opengl.GLBaseTexture#doCreateTexture()
+	 */
+	@Override
+	protected void doCreateTexture() {
+
+		try {
+			if (url != null && url.startsWith("resource:")) {
+				// Load directly from Resources
+				imageResource = (ImageWrapper) Resources.get(url.substring(9));
+			}
 
 		//	System.out.println("Creating texture "+imageResource);
 
@@ -470,4 +512,4 @@ public class GLTexture extends GLBaseTexture {
 	public void archive() {
 		url = null;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
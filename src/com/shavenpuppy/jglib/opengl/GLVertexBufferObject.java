@@ -37,6 +37,7 @@ import java.nio.ByteOrder;
 import org.lwjgl.opengl.OpenGLException;
 
 import com.shavenpuppy.jglib.Resource;
+import com.shavenpuppy.jglib.Resources;
 
 import static org.lwjgl.opengl.ARBBufferObject.*;
 
@@ -77,6 +78,9 @@ public class GLVertexBufferObject extends Resource implements GLRenderableObject
 	 */
 	@Override
 	protected void doCreate() {
+		if (Resources.isHeadless()) {
+			return;
+		}
 		id = glGenBuffersARB();
 	}
 
@@ -112,6 +112,73 @@ public abstract class Feature extends Resource {
 		System.gc();
 	}
 
+	/**
+	 * @return the features {@link #autoCreate()} will create, in the order it will create them
+	 */
+	public static List<Feature> getAutoCreated() {
+		List<Feature> ret = new ArrayList<Feature>();
+		for (Feature feature : FEATURES) {
+			if (feature.autoCreated) {
+				ret.add(feature);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Lists the resources default creation will get: the feature we inherit from, and the value of each String field
+	 * which has a transient resource partner field.
+	 */
+	@Override
+	public String[] getDependencies() {
+		List<String> ret = new ArrayList<String>();
+		if (inherit != null) {
+			ret.add(inherit);
+		}
+		Class<?> clazz = this.getClass();
+		while (Feature.class.isAssignableFrom(clazz)) {
+			Field[] fields = clazz.getDeclaredFields();
+			ArrayList<Field> stringFields = new ArrayList<Field>(fields.length / 2 + 1);
+			ArrayList<Field> resourceFields = new ArrayList<Field>(fields.length / 2 + 1);
+			for (int i = 0; i < fields.length; i ++) {
+				Field f = fields[i];
+				// Ignore a few well-known fields
+				String fieldName = f.getName().toLowerCase();
+				if (fieldName.equals("name") || fieldName.equals("class") || fieldName.equals("autoCreated") || fieldName.equals("inherit")) {
+					continue;
+				}
+				int modifiers = f.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+					continue;
+				}
+				if (!Modifier.isTransient(modifiers) && f.getType() == String.class) {
+					stringFields.add(f);
+				} else if (Modifier.isTransient(modifiers) && IResource.class.isAssignableFrom(f.getType())) {
+					resourceFields.add(f);
+				}
+			}
+			for (Field stringField : stringFields) {
+				for (Field resourceField : resourceFields) {
+					if (resourceField.getName().startsWith(stringField.getName())) {
+						try {
+							stringField.setAccessible(true);
+							String resourceName = (String) stringField.get(this);
+							if (resourceName != null) {
+								ret.add(resourceName);
+							}
+						} catch (IllegalAccessException e) {
+							assert false : "Should never happen: "+e;
+						}
+						break;
+					}
+				}
+			}
+			// Get next class up...
+			clazz = clazz.getSuperclass();
+		}
+		return ret.toArray(new String[ret.size()]);
+	}
+
 	@Override
 	public void archive() {
 		clearStrings();
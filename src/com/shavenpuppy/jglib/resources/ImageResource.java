@@ -76,10 +76,18 @@ public class ImageResource extends Resource implements ImageWrapper {
 	}
 
 	/* (non-Javadoc)
-	 * @see com.shavenpuppy.jglib.Resource#doCreate()
+	 * @see com.shavenpuppy.jglib.Resource#isPreparable()
 	 */
 	@Override
-	protected void doCreate() {
+	protected boolean isPreparable() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.shavenpuppy.jglib.Resource#doPrepare()
+	 */
+	@Override
+	protected void doPrepare() {
 		try {
 			BufferedInputStream bis;
 			if (url.startsWith("classpath:")) {
@@ -101,6 +109,14 @@ public class ImageResource extends Resource implements ImageWrapper {
 		image = null;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.shavenpuppy.jglib.Resource#doUnprepare()
+	 */
+	@Override
+	protected void doUnprepare() {
+		image = null;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.shavenpuppy.jglib.Resource#load(org.w3c.dom.Element, com.shavenpuppy.jglib.Resource.Loader)
 	 */
@@ -121,7 +137,7 @@ public class ImageResource extends Resource implements ImageWrapper {
 		}
 		if (image.getData() == null) {
 			// Reload the image
-			doCreate();
+			doPrepare();
 		}
 		return image;
 	}
@@ -32,6 +32,8 @@
 package com.shavenpuppy.jglib.resources;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.w3c.dom.Element;
@@ -109,6 +111,22 @@ public class ResourceArray extends Resource {
 
 	}
 
+	@Override
+	public String[] getDependencies() {
+		ArrayList<String> ret = new ArrayList<String>();
+		for (int i = 0; i < resource.length; i ++) {
+			if (embedded[i] instanceof Resource) {
+				String[] dependencies = ((Resource) embedded[i]).getDependencies();
+				if (dependencies != null) {
+					ret.addAll(Arrays.asList(dependencies));
+				}
+			} else if (embedded[i] == null) {
+				ret.add(resource[i]);
+			}
+		}
+		return ret.toArray(new String[ret.size()]);
+	}
+
 	@Override
 	protected void doDestroy() {
 		for (int i = 0; i < resource.length; i ++) {
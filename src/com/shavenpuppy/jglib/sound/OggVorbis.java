@@ -37,6 +37,7 @@ import java.io.*;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.zip.CRC32;
 
 import org.w3c.dom.Element;
 
@@ -60,12 +61,6 @@ public class OggVorbis extends Resource implements WaveWrapper {
 	 * Static data
 	 */
 
-	/** Conversion buffer size */
-	private static int convsize = 4096 * 2;
-
-	/** Conversion buffer */
-	private static byte[] convbuffer = new byte[convsize];
-
 	/** Decoded cache */
 	private static String cacheDirectory;
 
@@ -129,6 +124,24 @@ public class OggVorbis extends Resource implements WaveWrapper {
 		return streamed;
 	}
 
+	/**
+	 * Reads the whole of the source ogg into memory
+	 */
+	private byte[] readSource() throws Exception {
+		InputStream input = createStream();
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(65536);
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = input.read(buf)) != -1) {
+				baos.write(buf, 0, n);
+			}
+			return baos.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+
 	private InputStream createStream() throws Exception {
 		InputStream inStream;
 		if (url.startsWith("classpath:")) {
@@ -157,24 +170,44 @@ public class OggVorbis extends Resource implements WaveWrapper {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see com.shavenpuppy.jglib.resources.GenericResource#doCreate()
+	 * @see com.shavenpuppy.jglib.Resource#isPreparable()
 	 */
 	@Override
-	protected void doCreate() {
+	protected boolean isPreparable() {
+		return true;
+	}
 
-		// New feature: check the cache
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.shavenpuppy.jglib.Resource#doPrepare()
+	 */
+	@Override
+	protected void doPrepare() {
+
+		// New feature: check the cache. Cached waves are mapped straight from disk, and are only valid if the hash of
+		// the source ogg still matches.
 		File cached = null;
+		byte[] source = null;
+		long hash = 0L;
 		if (cacheDirectory != null && !streamed) {
 			try {
+				source = readSource();
+				CRC32 crc = new CRC32();
+				crc.update(source);
+				hash = (long) source.length << 32 | crc.getValue();
+
 				String cacheName;
 				if (url.startsWith("classpath:")) {
-					cacheName = url.substring(10) + ".wave." + ByteOrder.nativeOrder().toString();
+					cacheName = url.substring(10) + ".pcm." + ByteOrder.nativeOrder().toString();
 				} else {
-					cacheName = new URL(url).getFile() + ".wave." + ByteOrder.nativeOrder().toString();
+					cacheName = new URL(url).getFile() + ".pcm." + ByteOrder.nativeOrder().toString();
 				}
 				cached = new File(cacheDirectory + File.separator + cacheName);
-				if (cached.exists()) {
-					wave = Wave.read(new BufferedInputStream(new FileInputStream(cached)));
+				wave = Wave.map(cached, hash);
+				if (wave != null) {
+					type = wave.getType();
+					frequency = wave.getFrequency();
 					System.out.println("Loaded cached wave " + cacheName);
 				}
 			} catch (Exception e) {
@@ -187,7 +220,7 @@ public class OggVorbis extends Resource implements WaveWrapper {
 
 		// Ok, failed to read from the cache. Try decoding the ogg.
 		try {
-			InputStream input = createStream();
+			InputStream input = source != null ? new ByteArrayInputStream(source) : createStream();
 	
 			SyncState oy = new SyncState(); // sync and verify incoming physical
 			// bitstream
@@ -359,7 +392,8 @@ public class OggVorbis extends Resource implements WaveWrapper {
 					return;
 				}
 	
-				convsize = 4096 / vi.channels;
+				int convsize = 4096 / vi.channels;
+				byte[] convbuffer = new byte[2 * vi.channels * convsize];
 	
 				vd.synthesis_init(vi); // central decode state
 				vb.init(vd); // local state for most of the decode
@@ -508,10 +542,7 @@ public class OggVorbis extends Resource implements WaveWrapper {
 			// Cache the wave
 			if (cached != null) {
 				try {
-					FileOutputStream fos = new FileOutputStream(cached);
-					Wave.write(wave, new BufferedOutputStream(fos));
-					fos.flush();
-					fos.close();
+					Wave.writeMapped(wave, cached, hash);
 				} catch (Exception e) {
 					System.err.println("Failed to cache " + url + " @ " + cached);
 					e.printStackTrace(System.err);
@@ -535,7 +566,7 @@ public class OggVorbis extends Resource implements WaveWrapper {
 		assert isCreated();
 		if (wave.getData() == null) {
 			// Reload disposed wave
-			doCreate();
+			doPrepare();
 		}
 		return wave;
 	}
@@ -565,6 +596,16 @@ public class OggVorbis extends Resource implements WaveWrapper {
 		wave = null;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.shavenpuppy.jglib.Resource#doUnprepare()
+	 */
+	@Override
+	protected void doUnprepare() {
+		wave = null;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
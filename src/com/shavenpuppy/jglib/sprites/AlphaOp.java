@@ -37,6 +37,12 @@ public enum AlphaOp {
 	public final void op(ReadableColor c, int alpha, FloatBuffer dest) {
 		dest.put(Float.intBitsToFloat(calc(c, alpha)));
 	}
+	public final void op(ReadableColor c, int alpha, FloatBuffer dest, int index) {
+		dest.put(index, Float.intBitsToFloat(calc(c, alpha)));
+	}
+	public final float op(ReadableColor c, int alpha) {
+		return Float.intBitsToFloat(calc(c, alpha));
+	}
 	public final void op(ReadableColor c, int alpha, SimpleRenderer renderer) {
 		renderer.glColori(calc(c, alpha));
 	}
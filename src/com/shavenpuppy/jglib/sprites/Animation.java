@@ -33,6 +33,7 @@ package com.shavenpuppy.jglib.sprites;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -159,6 +160,18 @@ public class Animation extends Resource implements Appearance {
 
 	}
 
+	@Override
+	public String[] getDependencies() {
+		ArrayList<String> ret = new ArrayList<String>();
+		for (int i = 0; i < command.length; i ++) {
+			String[] dependencies = command[i].getDependencies();
+			if (dependencies != null) {
+				ret.addAll(Arrays.asList(dependencies));
+			}
+		}
+		return ret.toArray(new String[ret.size()]);
+	}
+
 	@Override
 	protected void doDestroy() {
 		// Destroy all the commands
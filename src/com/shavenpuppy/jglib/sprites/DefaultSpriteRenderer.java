@@ -34,17 +34,16 @@ package com.shavenpuppy.jglib.sprites;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import org.lwjgl.opengl.GLContext;
-import org.lwjgl.util.ReadableColor;
-import org.lwjgl.util.vector.Vector2f;
 
 import com.shavenpuppy.jglib.Resource;
-import com.shavenpuppy.jglib.algorithms.RadixSort;
+import com.shavenpuppy.jglib.Resources;
+import com.shavenpuppy.jglib.algorithms.LongRadixSort;
 import com.shavenpuppy.jglib.opengl.GLBaseTexture;
 import com.shavenpuppy.jglib.opengl.GLVertexBufferObject;
-import com.shavenpuppy.jglib.util.FPMath;
-import com.shavenpuppy.jglib.util.FastMath;
 import com.shavenpuppy.jglib.util.FloatList;
 import com.shavenpuppy.jglib.util.ShortList;
 
@@ -57,6 +56,19 @@ import static org.lwjgl.opengl.GL12.*;
  * A default sprite renderer. This sorts incoming sprites by layer, Z, then
  * optionally by Y coordinate, state, then texture. and stashes vertex, texture,
  * and colour coordinates in a buffer. The sprites are rendered by OpenGL11.
+ * <p>
+ * The sort order is packed into a single 63 bit key per sprite, most significant
+ * first: layer (9 bits), Y (16 bits), sublayer (8 bits), X (14 bits), texture
+ * (8 bits) and style (8 bits). Values out of range are clamped. Textures and
+ * styles are numbered in the order they're first seen each frame, as only
+ * grouping them matters.
+ * <p>
+ * Sprite vertices are written in a separate pass just before each buffer is
+ * rendered. By then every sprite's position in the buffer is known, so when
+ * there are enough of them the work is split across a fork-join pool, each
+ * task writing its own slice of the buffer. The output is identical either
+ * way; set the system property <code>sprites.serial</code> to always write
+ * them on the rendering thread.
  */
 class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 
@@ -64,8 +76,73 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 
 	private static final float PREMULT_ALPHA = 1.0f / 255.0f;
 
-	/** Scratch vector */
-	private static final Vector2f offset = new Vector2f();
+	/** Whether to write sprite vertices in parallel */
+	private static final boolean PARALLEL_BUILD = Runtime.getRuntime().availableProcessors() > 1 && !Boolean.getBoolean("sprites.serial");
+
+	/** Pool for writing sprite vertices in parallel, created when first needed */
+	private static ForkJoinPool pool;
+
+	/**
+	 * @return the pool to write sprite vertices with, or null to write them on the rendering thread
+	 */
+	private static ForkJoinPool getPool() {
+		if (!PARALLEL_BUILD) {
+			return null;
+		}
+		if (pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/*
+	 * Sort key layout
+	 */
+	private static final int LAYER_BITS = 9, LAYER_SHIFT = 54;
+	private static final int Y_BITS = 16, Y_SHIFT = 38;
+	private static final int SUBLAYER_BITS = 8, SUBLAYER_SHIFT = 30;
+	private static final int X_BITS = 14, X_SHIFT = 16;
+	private static final int TEXTURE_SHIFT = 8;
+
+	/**
+	 * Maps texture or style IDs to small numbers, in order of first appearance since the last {@link #clear()}. Once
+	 * {@link #MAX_ORDINAL} numbers have been handed out, everything else shares the last one.
+	 */
+	private static final class Ordinals {
+
+		private static final int MAX_ORDINAL = 255;
+		private static final int SIZE = 512;
+
+		private final int[] keys = new int[SIZE];
+		private final int[] values = new int[SIZE];
+		private final int[] stamps = new int[SIZE];
+		private int stamp = 1, count;
+
+		void clear() {
+			count = 0;
+			if (++ stamp == 0) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+		}
+
+		int get(int key) {
+			int i = (key * 0x9E3779B9) >>> 23;
+			while (stamps[i] == stamp) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+				i = (i + 1) & (SIZE - 1);
+			}
+			if (count == MAX_ORDINAL) {
+				return MAX_ORDINAL;
+			}
+			stamps[i] = stamp;
+			keys[i] = key;
+			values[i] = count;
+			return count ++;
+		}
+	}
 
 	/**
 	 * Ring buffer, used by all the sprite engines.
@@ -113,6 +190,9 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 		int bufferSize, bufferSizeInVertices, indexBufferSize;
 		int numBuffers;
 
+		/** Sprites waiting for their vertices to be written */
+		SpriteVertexWriter pending;
+
 		GLVertexBufferObject[] vbo, ibo;
 		FloatBuffer[] vertices;
 		ByteBuffer[] verticesBytes;
@@ -154,6 +234,7 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 			for (int i = 0; i < stateRun.length; i ++) {
 				stateRun[i] = new StateRun();
 			}
+			pending = new SpriteVertexWriter(bufferSizeInVertices >> 2);
 		}
 
 		private void next() {
@@ -249,106 +330,8 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 				currentTexture0 = newTexture0;
 			}
 
-			final float w = image.getWidth();
-			final float h = image.getHeight();
-			final float tx0 = image.getTx0();
-			final float tx1 = image.getTx1();
-			final float ty0 = image.getTy0();
-			final float ty1 = image.getTy1();
-			final int xscale = s.getXScale(); // 16 bits fraction
-			final int yscale = s.getYScale(); // 16 bits fraction
-			s.getOffset(offset);
-			final float x = s.getX() + offset.getX();
-			final float y = s.getY() + offset.getY();
-			final int alpha = (int) (engineAlpha * s.getAlpha());
-			final float angle = FPMath.floatValue(s.getAngle()) * FastMath.TAU;
-
-			// First scale then rotate coordinates
-			float scaledx0 = -image.getHotspotX();
-			float scaledy0 = -image.getHotspotY();
-			float scaledx1 = scaledx0 + w;
-			float scaledy1 = scaledy0 + h;
-
-			// Scale 'em first
-			if (xscale != NO_SCALE || yscale != NO_SCALE) {
-				float fxScale = FPMath.floatValue(xscale);
-				float fyScale = FPMath.floatValue(yscale);
-				scaledx0 = scaledx0 * fxScale;
-				scaledx1 = scaledx1 * fxScale;
-				scaledy0 = scaledy0 * fyScale;
-				scaledy1 = scaledy1 * fyScale;
-			}
-
-			float scaledx00, scaledx10, scaledx11, scaledx01, scaledy00, scaledy10, scaledy11, scaledy01;
-
-			// Then rotate
-			if (angle != 0) {
-				float cos = (float) Math.cos(angle);
-				float sin = (float) Math.sin(angle);
-
-				scaledx00 = cos * scaledx0 - sin * scaledy0;
-				scaledx10 = cos * scaledx1 - sin * scaledy0;
-				scaledx11 = cos * scaledx1 - sin * scaledy1;
-				scaledx01 = cos * scaledx0 - sin * scaledy1;
-				scaledy00 = sin * scaledx0 + cos * scaledy0;
-				scaledy10 = sin * scaledx1 + cos * scaledy0;
-				scaledy11 = sin * scaledx1 + cos * scaledy1;
-				scaledy01 = sin * scaledx0 + cos * scaledy1;
-			} else {
-				scaledx00 = scaledx0;
-				scaledx10 = scaledx1;
-				scaledx11 = scaledx1;
-				scaledx01 = scaledx0;
-				scaledy00 = scaledy0;
-				scaledy10 = scaledy0;
-				scaledy11 = scaledy1;
-				scaledy01 = scaledy1;
-			}
-
-			// Then translate them
-			final float x00 = scaledx00 + x;
-			final float x01 = scaledx01 + x;
-			final float x11 = scaledx11 + x;
-			final float x10 = scaledx10 + x;
-			final float y00 = scaledy00 + y;
-			final float y01 = scaledy01 + y;
-			final float y11 = scaledy11 + y;
-			final float y10 = scaledy10 + y;
-
-			AlphaOp alphaOp = newStyle.getAlphaOp();
-			FloatBuffer floats = currentVertices;
-			float mtx = s.isMirrored() ? tx1 : tx0;
-			float fty = s.isFlipped() ? ty0 : ty1;
-			float mtx1 = s.isMirrored() ? tx0 : tx1;
-			float mty1 = s.isFlipped() ? ty1 : ty0;
-			floats.put(x00);
-			floats.put(y00);
-			floats.put(mtx);
-			floats.put(fty);
-			ReadableColor color = s.getColor(0);
-			alphaOp.op(color, alpha, floats);
-
-			floats.put(x10);
-			floats.put(y10);
-			floats.put(mtx1);
-			floats.put(fty);
-			color = s.getColor(1);
-			alphaOp.op(color, alpha, floats);
-
-			floats.put(x11);
-			floats.put(y11);
-			floats.put(mtx1);
-			floats.put(mty1);
-			color = s.getColor(2);
-			alphaOp.op(color, alpha, floats);
-
-			floats.put(x01);
-			floats.put(y01);
-			floats.put(mtx);
-			floats.put(mty1);
-			color = s.getColor(3);
-			alphaOp.op(color, alpha, floats);
-
+			// Vertices are written later, in render()
+			pending.add(s, newStyle, engineAlpha, vertexCursor);
 
 			// Write indices: need 6, for two triangles
 			currentIndices.put((short) vertexCursor);
@@ -416,6 +399,7 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 
 		void render() {
 			//System.out.println("  RENDER "+numRuns+" RUNS");
+			pending.write(currentVertices, getPool());
 			vbo[sequence].unmap();
 			ibo[sequence].unmap();
 			lastRenderedStyle = null;
@@ -432,10 +416,10 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 	private static RingBuffer ringBuffer;
 
 	/** A radix sorter for sorting */
-	private final RadixSort sort = new RadixSort();
+	private final LongRadixSort sort = new LongRadixSort();
 
-	/** Handy constant */
-	private static final int NO_SCALE = FPMath.ONE;
+	/** Texture and style numbering for sort keys */
+	private final Ordinals textureOrdinals = new Ordinals(), styleOrdinals = new Ordinals();
 
 	/** Debug */
 	private static final boolean DEBUG = true;
@@ -446,15 +430,8 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 	/** Whether sprites are unique (rendered only once) */
 	private final boolean uniqueSprites;
 
-	/*
-	 * Arrays for sorting
-	 */
-	private int[] sort_y;
-	private int[] sort_x;
-	private int[] sort_layer;
-	private int[] sort_sublayer;
-	private int[] sort_style;
-	private int[] sort_texture0;
+	/** Sort keys */
+	private long[] sortKey;
 
 	/** Whether to sort Y coords */
 	private final boolean sortY;
@@ -501,24 +478,16 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 		}
 		style = new Style[1];
 
-		// Initialize radix sort
-		sort_layer = new int[1];
-		sort_sublayer = new int[1];
-		sort_texture0 = new int[1];
-		sort_style = new int[1];
-		if (sortY) {
-			sort_y = new int[1];
-			sort_x = new int[1];
-		} else {
-			sort_y = null;
-			sort_x = null;
-		}
-		sort.resetIndices();
-
+		sortKey = new long[1];
 	}
 
 	@Override
 	protected void doCreate() {
+		if (Resources.isHeadless()) {
+			// Nothing is ever rendered
+			return;
+		}
+
 		if (ringBuffer == null) {
 			ringBuffer = new RingBuffer();
 			ringBuffer.create();
@@ -569,38 +538,10 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 
 	private void addSprite(Style spriteStyle, Sprite s) {
 		if (numSprites == sprite.length) {
-			if (sortY) {
-				int[] old_sort_y = sort_y;
-				sort_y = new int[numSprites * 2];
-				System.arraycopy(old_sort_y, 0, sort_y, 0, numSprites);
-				old_sort_y = null;
-
-				int[] old_sort_x = sort_x;
-				sort_x = new int[numSprites * 2];
-				System.arraycopy(old_sort_x, 0, sort_x, 0, numSprites);
-				old_sort_x = null;
-			}
-
-
-			int[] old_sort_layer = sort_layer;
-			sort_layer = new int[numSprites * 2];
-			System.arraycopy(old_sort_layer, 0, sort_layer, 0, numSprites);
-			old_sort_layer = null;
-
-			int[] old_sort_sublayer = sort_sublayer;
-			sort_sublayer = new int[numSprites * 2];
-			System.arraycopy(old_sort_sublayer, 0, sort_sublayer, 0, numSprites);
-			old_sort_sublayer = null;
-
-			int[] old_sort_style = sort_style;
-			sort_style = new int[numSprites * 2];
-			System.arraycopy(old_sort_style, 0, sort_style, 0, numSprites);
-			old_sort_style = null;
-
-			int[] old_sort_texture0 = sort_texture0;
-			sort_texture0 = new int[numSprites * 2];
-			System.arraycopy(old_sort_texture0, 0, sort_texture0, 0, numSprites);
-			old_sort_texture0 = null;
+			long[] old_sortKey = sortKey;
+			sortKey = new long[numSprites * 2];
+			System.arraycopy(old_sortKey, 0, sortKey, 0, numSprites);
+			old_sortKey = null;
 
 			Sprite[] old_sprite = sprite;
 			sprite = new Sprite[numSprites * 2];
@@ -613,6 +554,7 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 			old_style = null;
 		}
 		style[numSprites] = spriteStyle;
+		sortKey[numSprites] = getSortKey(spriteStyle, s);
 		if (uniqueSprites) {
 			Sprite copy = sprite[numSprites];
 			if (copy == null) {
@@ -671,58 +613,53 @@ class DefaultSpriteRenderer extends Resource implements SpriteRenderer {
 	public void preRender() {
 		// Reset everything
 		numSprites = 0;
+		textureOrdinals.clear();
+		styleOrdinals.clear();
 	}
 
 	/**
 	 * Sort sprites
 	 */
 	private void sort() {
-		final int n = numSprites;
-		if (sortY) {
-			for (int i = 0; i < n; i++) {
-				final Sprite s = sprite[i];
-				if (s.isVisible()) {
-					sort_x[i] = (int) s.getX();
-					sort_layer[i] = s.getLayer();
-					sort_sublayer[i] = s.getSubLayer();
-					sort_style[i] = style[i].getStyleID();
-					if (s.getStyle().getRenderSprite()) {
-						final SpriteImage si = s.getImage();
-						GLBaseTexture tex = si.getTexture();
-						sort_texture0[i] = tex == null ? 0 : tex.getID();
-
-						if (s.getLayer() >= sortLayer) {
-							sort_y[i] = 0;
-						} else {
-							sort_y[i] = (int) -(s.getY() + s.getYSortOffset());
-						}
-					} else {
-						sort_texture0[i] = 0;
-						sort_y[i] = 0;
-					}
-				}
-			}
+		sort.sort(sortKey, numSprites);
+	}
 
-			sort.resetIndices().sort(sort_style, n).sort(sort_texture0, n).sort(sort_x, n).sort(
-					sort_sublayer, n).sort(sort_y, n).sort(sort_layer, n);
-		} else {
-			for (int i = 0; i < n; i++) {
-				final Sprite s = sprite[i];
-				if (s.isVisible()) {
-					sort_layer[i] = s.getLayer();
-					sort_sublayer[i] = s.getSubLayer();
-					sort_style[i] = style[i].getStyleID();
-					if (s.getStyle().getRenderSprite()) {
-						final SpriteImage si = s.getImage();
-						GLBaseTexture tex = si.getTexture();
-						sort_texture0[i] = tex == null ? 0 : tex.getID();
-					} else {
-						sort_texture0[i] = 0;
-					}
-				}
+	/**
+	 * Pack a sprite's sort order into a key
+	 * @param spriteStyle The style the sprite will be rendered with
+	 * @param s The sprite
+	 * @return the sort key
+	 */
+	private long getSortKey(Style spriteStyle, Sprite s) {
+		long key = pack(s.getLayer(), LAYER_BITS) << LAYER_SHIFT | pack(s.getSubLayer(), SUBLAYER_BITS) << SUBLAYER_SHIFT | styleOrdinals.get(spriteStyle.getStyleID());
+		int y = 0;
+		if (s.getStyle().getRenderSprite()) {
+			GLBaseTexture tex = s.getImage().getTexture();
+			key |= (long) textureOrdinals.get(tex == null ? 0 : tex.getID()) << TEXTURE_SHIFT;
+			if (sortY && s.getLayer() < sortLayer) {
+				y = (int) -(s.getY() + s.getYSortOffset());
 			}
-			sort.resetIndices().sort(sort_style, n).sort(sort_texture0, n).sort(sort_sublayer, n).sort(sort_layer, n);
+		} else {
+			key |= (long) textureOrdinals.get(0) << TEXTURE_SHIFT;
+		}
+		if (sortY) {
+			key |= pack(y, Y_BITS) << Y_SHIFT | pack((int) s.getX(), X_BITS) << X_SHIFT;
+		}
+		return key;
+	}
+
+	/**
+	 * Bias and clamp a signed value to an unsigned field
+	 * @param value
+	 * @param bits Width of the field
+	 * @return the field
+	 */
+	private static long pack(int value, int bits) {
+		int biased = value + (1 << bits - 1);
+		if (biased < 0) {
+			return 0L;
 		}
+		return Math.min(biased, (1 << bits) - 1);
 	}
 
 	/**
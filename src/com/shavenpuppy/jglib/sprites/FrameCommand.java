@@ -72,6 +72,11 @@ public class FrameCommand extends Command {
 		super();
 	}
 
+	@Override
+	public String[] getDependencies() {
+		return new String[] {appearanceName};
+	}
+
 	@Override
 	public void archive() {
 		appearanceName = null;
@@ -191,21 +191,31 @@ public abstract class GeometryStyle extends AbstractStyle implements SimpleRende
 
 	@Override
 	public void glRender(final int primitiveType, final short[] indices) {
-		if (indices.length == 0) {
+		glRender(primitiveType, indices, indices.length);
+	}
+
+	/**
+	 * Render just the first few indices of an array
+	 * @param primitiveType
+	 * @param indices
+	 * @param count Number of indices to use
+	 */
+	public void glRender(final int primitiveType, final short[] indices, final int count) {
+		if (count == 0) {
 			return;
 		}
 		// If the last GeometryRun was the same type and is continuable, we'll extend it instead of doing a new one
 		MeshGeometry gr;
 		if (previous != null && previous.primitiveType == primitiveType && isContinuable(primitiveType)) {
 			gr = previous;
-			gr.numIndices += indices.length;
+			gr.numIndices += count;
 		} else {
-			gr = new MeshGeometry(primitiveType, this.indices.size() * 2, indices.length);
+			gr = new MeshGeometry(primitiveType, this.indices.size() * 2, count);
 			geometry.add(gr);
 			previous = gr;
 		}
 
-		this.indices.addAll(indices);
+		this.indices.addAll(indices, 0, count);
 	}
 
 	@Override
@@ -218,6 +228,22 @@ public abstract class GeometryStyle extends AbstractStyle implements SimpleRende
 		return numVertices ++;
 	}
 
+	/**
+	 * Add a block of ready-made vertices, of 5 floats each: x, y, u, v, and a packed RGBA color (see {@link #glColori(int)})
+	 * stored with {@link Float#intBitsToFloat(int)}
+	 * @param data
+	 * @param count The number of vertices
+	 * @return the index of the first vertex added
+	 */
+	public short glVertices(float[] data, int count) {
+		vertices.addAll(data, 0, count * 5);
+		hasTexture = true;
+		hasColor = true;
+		short ret = numVertices;
+		numVertices += count;
+		return ret;
+	}
+
 	@Override
     public short getVertexOffset() {
 		return numVertices;
@@ -180,6 +180,11 @@ public class ImageBank extends Resource {
 		}
 	}
 
+	@Override
+	public String[] getDependencies() {
+		return new String[] {textureName};
+	}
+
 	@Override
 	public void archive() {
 		textureName = null;
@@ -103,7 +103,7 @@ public class SoundCommand extends Command {
 
 	@Override
 	public boolean execute(Sprite target) {
-		if (target.isVisible() && AL.isCreated()) {
+		if (target.isVisible() && !Resources.isHeadless() && AL.isCreated()) {
 			SoundPlayer p = playerFeature == null ? soundPlayer : playerFeature;
 			if (soundResource != null && p != null) {
 				SoundEffect fx = p.allocate(soundResource, target);
@@ -144,6 +144,11 @@ public class SoundCommand extends Command {
 		}
 	}
 
+	@Override
+	public String[] getDependencies() {
+		return new String[] {sound, player, attenuator};
+	}
+
 	@Override
 	public void archive() {
 		player = null;
@@ -222,6 +222,11 @@ public class SpriteImage extends Resource implements Appearance {
 		}
 	}
 
+	@Override
+	public String[] getDependencies() {
+		return new String[] {imageBankName, styleName};
+	}
+
 	@Override
 	public void archive() {
 		imageBankName = null;
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.sprites;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.lwjgl.util.ReadableColor;
+import org.lwjgl.util.vector.Vector2f;
+
+import com.shavenpuppy.jglib.util.FPMath;
+import com.shavenpuppy.jglib.util.FastMath;
+
+/**
+ * Writes the vertices of sprites whose place in a vertex buffer is already known. Sprites are queued with
+ * {@link #add(Sprite, Style, float, int)} as their indices are written, and their vertices all written at once by
+ * {@link #write(FloatBuffer, ForkJoinPool)} just before the buffer is rendered. Given a pool, and enough sprites, the
+ * queue is split into chunks which each write their own slice of the buffer; the output is the same either way.
+ */
+final class SpriteVertexWriter {
+
+	/** Write in parallel if there are at least this many sprites */
+	static final int PARALLEL_THRESHOLD = 512;
+
+	/** Number of sprites each parallel task writes */
+	private static final int PARALLEL_CHUNK = 128;
+
+	/** Handy constant */
+	private static final int NO_SCALE = FPMath.ONE;
+
+	/**
+	 * Writes the vertices of a range of queued sprites
+	 */
+	private class WriteTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final int from, to;
+
+		WriteTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK) {
+				write(from, to, new Vector2f());
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new WriteTask(from, mid), new WriteTask(mid, to));
+			}
+		}
+	}
+
+	/** Sprites waiting for their vertices to be written, and the vertex to write them at */
+	private final Sprite[] sprite;
+	private final Style[] style;
+	private final float[] alpha;
+	private final int[] vertex;
+	private int size;
+
+	/** Scratch vector for serial writes */
+	private final Vector2f offset = new Vector2f();
+
+	/** Destination for the current write */
+	private FloatBuffer floats;
+
+	/**
+	 * C'tor
+	 * @param maxSprites The most sprites that will be queued between writes
+	 */
+	SpriteVertexWriter(int maxSprites) {
+		sprite = new Sprite[maxSprites];
+		style = new Style[maxSprites];
+		alpha = new float[maxSprites];
+		vertex = new int[maxSprites];
+	}
+
+	/**
+	 * Queue a sprite
+	 * @param s The sprite
+	 * @param spriteStyle The style it's rendered with
+	 * @param engineAlpha The sprite engine's alpha
+	 * @param firstVertex The vertex to write it at
+	 */
+	void add(Sprite s, Style spriteStyle, float engineAlpha, int firstVertex) {
+		sprite[size] = s;
+		style[size] = spriteStyle;
+		alpha[size] = engineAlpha;
+		vertex[size] = firstVertex;
+		size ++;
+	}
+
+	/**
+	 * @return the number of sprites queued
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Write the vertices of all the queued sprites, and empty the queue
+	 * @param dest Destination buffer
+	 * @param pool Pool to write them in parallel with, or null to write them on this thread
+	 */
+	void write(FloatBuffer dest, ForkJoinPool pool) {
+		floats = dest;
+		if (pool != null && size >= PARALLEL_THRESHOLD) {
+			pool.invoke(new WriteTask(0, size));
+		} else {
+			write(0, size, offset);
+		}
+		floats = null;
+		Arrays.fill(sprite, 0, size, null);
+		Arrays.fill(style, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Write the vertices of a range of queued sprites
+	 * @param from Index of the first sprite
+	 * @param to Index after the last sprite
+	 * @param tmp Scratch vector
+	 */
+	private void write(int from, int to, Vector2f tmp) {
+		for (int i = from; i < to; i ++) {
+			writeVertices(sprite[i], style[i], alpha[i], floats, vertex[i] * DefaultSpriteRenderer.VERTEX_SIZE >> 2, tmp);
+		}
+	}
+
+	/**
+	 * Write a sprite's four vertices
+	 * @param s The sprite
+	 * @param style The style it's rendered with
+	 * @param engineAlpha The sprite engine's alpha
+	 * @param floats Destination buffer
+	 * @param index Index of the first float to write in the buffer
+	 * @param tmp Scratch vector
+	 */
+	static void writeVertices(Sprite s, Style style, float engineAlpha, FloatBuffer floats, int index, Vector2f tmp) {
+		SpriteImage image = s.getImage();
+		final float w = image.getWidth();
+		final float h = image.getHeight();
+		final float tx0 = image.getTx0();
+		final float tx1 = image.getTx1();
+		final float ty0 = image.getTy0();
+		final float ty1 = image.getTy1();
+		final int xscale = s.getXScale(); // 16 bits fraction
+		final int yscale = s.getYScale(); // 16 bits fraction
+		s.getOffset(tmp);
+		final float x = s.getX() + tmp.getX();
+		final float y = s.getY() + tmp.getY();
+		final int alpha = (int) (engineAlpha * s.getAlpha());
+		final float angle = FPMath.floatValue(s.getAngle()) * FastMath.TAU;
+
+		// First scale then rotate coordinates
+		float scaledx0 = -image.getHotspotX();
+		float scaledy0 = -image.getHotspotY();
+		float scaledx1 = scaledx0 + w;
+		float scaledy1 = scaledy0 + h;
+
+		// Scale 'em first
+		if (xscale != NO_SCALE || yscale != NO_SCALE) {
+			float fxScale = FPMath.floatValue(xscale);
+			float fyScale = FPMath.floatValue(yscale);
+			scaledx0 = scaledx0 * fxScale;
+			scaledx1 = scaledx1 * fxScale;
+			scaledy0 = scaledy0 * fyScale;
+			scaledy1 = scaledy1 * fyScale;
+		}
+
+		float scaledx00, scaledx10, scaledx11, scaledx01, scaledy00, scaledy10, scaledy11, scaledy01;
+
+		// Then rotate
+		if (angle != 0) {
+			float cos = (float) Math.cos(angle);
+			float sin = (float) Math.sin(angle);
+
+			scaledx00 = cos * scaledx0 - sin * scaledy0;
+			scaledx10 = cos * scaledx1 - sin * scaledy0;
+			scaledx11 = cos * scaledx1 - sin * scaledy1;
+			scaledx01 = cos * scaledx0 - sin * scaledy1;
+			scaledy00 = sin * scaledx0 + cos * scaledy0;
+			scaledy10 = sin * scaledx1 + cos * scaledy0;
+			scaledy11 = sin * scaledx1 + cos * scaledy1;
+			scaledy01 = sin * scaledx0 + cos * scaledy1;
+		} else {
+			scaledx00 = scaledx0;
+			scaledx10 = scaledx1;
+			scaledx11 = scaledx1;
+			scaledx01 = scaledx0;
+			scaledy00 = scaledy0;
+			scaledy10 = scaledy0;
+			scaledy11 = scaledy1;
+			scaledy01 = scaledy1;
+		}
+
+		// Then translate them
+		final float x00 = scaledx00 + x;
+		final float x01 = scaledx01 + x;
+		final float x11 = scaledx11 + x;
+		final float x10 = scaledx10 + x;
+		final float y00 = scaledy00 + y;
+		final float y01 = scaledy01 + y;
+		final float y11 = scaledy11 + y;
+		final float y10 = scaledy10 + y;
+
+		AlphaOp alphaOp = style.getAlphaOp();
+		int i = index;
+		float mtx = s.isMirrored() ? tx1 : tx0;
+		float fty = s.isFlipped() ? ty0 : ty1;
+		float mtx1 = s.isMirrored() ? tx0 : tx1;
+		float mty1 = s.isFlipped() ? ty1 : ty0;
+		floats.put(i ++, x00);
+		floats.put(i ++, y00);
+		floats.put(i ++, mtx);
+		floats.put(i ++, fty);
+		ReadableColor color = s.getColor(0);
+		alphaOp.op(color, alpha, floats, i ++);
+
+		floats.put(i ++, x10);
+		floats.put(i ++, y10);
+		floats.put(i ++, mtx1);
+		floats.put(i ++, fty);
+		color = s.getColor(1);
+		alphaOp.op(color, alpha, floats, i ++);
+
+		floats.put(i ++, x11);
+		floats.put(i ++, y11);
+		floats.put(i ++, mtx1);
+		floats.put(i ++, mty1);
+		color = s.getColor(2);
+		alphaOp.op(color, alpha, floats, i ++);
+
+		floats.put(i ++, x01);
+		floats.put(i ++, y01);
+		floats.put(i ++, mtx);
+		floats.put(i ++, mty1);
+		color = s.getColor(3);
+		alphaOp.op(color, alpha, floats, i ++);
+	}
+}
@@ -93,6 +93,11 @@ public class SubCommand extends Command {
 		animation = (Animation) Resources.get(id);
 	}
 
+	@Override
+	public String[] getDependencies() {
+		return new String[] {id};
+	}
+
 	@Override
 	public void archive() {
 		id = null;
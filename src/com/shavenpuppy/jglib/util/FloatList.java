@@ -108,6 +108,18 @@ public class FloatList implements java.io.Serializable {
 		count += f.length;
 	}
 
+	/**
+	 * Add part of an array
+	 * @param f
+	 * @param offset
+	 * @param length
+	 */
+	public void addAll(float[] f, int offset, int length) {
+		ensureCapacity(count + length);
+		System.arraycopy(f, offset, value, count, length);
+		count += length;
+	}
+
 	/**
 	 * add method comment.
 	 */
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Cheap per-frame timing of named scopes. Time spent in each scope is accumulated over a frame and then stored in a
+ * fixed size ring buffer of recent frames, from which percentiles can be read or dumped as CSV. Nothing is allocated
+ * while profiling.
+ * <p>
+ * Profiling is only enabled if the system property <code>profiler</code> is <code>true</code>; otherwise {@link #ENABLED}
+ * is false and the JIT removes the timing calls entirely. Usage:
+ * <pre>
+ * private static final int PROFILE_FOO = Profiler.register("foo");
+ * ...
+ * long then = Profiler.begin();
+ * foo();
+ * Profiler.end(PROFILE_FOO, then);
+ * </pre>
+ * and call {@link #endFrame()} once per frame.
+ */
+public final class Profiler {
+
+	/** Whether profiling is on */
+	public static final boolean ENABLED = Boolean.getBoolean("profiler");
+
+	/** Maximum number of scopes */
+	public static final int MAX_SCOPES = 32;
+
+	/** Number of frames remembered. Kept below the size at which Arrays.sort(long[]) might allocate. */
+	public static final int FRAMES = 256;
+
+	private static final String[] NAMES = new String[MAX_SCOPES];
+	private static int numScopes;
+
+	/** Time spent in each scope so far this frame, in nanoseconds, and the number of times it was entered */
+	private static final long[] CURRENT = new long[MAX_SCOPES];
+	private static final int[] CURRENT_CALLS = new int[MAX_SCOPES];
+
+	/** Ring buffers of time spent per frame, and calls per frame */
+	private static final long[][] SAMPLES = new long[MAX_SCOPES][FRAMES];
+	private static final int[][] CALLS = new int[MAX_SCOPES][FRAMES];
+
+	/** Next frame to write, and number of frames written (up to FRAMES) */
+	private static int frame, numFrames;
+
+	/** Scratch for percentiles */
+	private static final long[] SORTED = new long[FRAMES];
+
+	/**
+	 * No c'tor
+	 */
+	private Profiler() {
+	}
+
+	/**
+	 * Register a scope. Usually done in a static initialiser.
+	 * @param name
+	 * @return the scope's index, for {@link #end(int, long)}
+	 */
+	public static synchronized int register(String name) {
+		for (int i = 0; i < numScopes; i ++) {
+			if (NAMES[i].equals(name)) {
+				return i;
+			}
+		}
+		if (numScopes == MAX_SCOPES) {
+			throw new IllegalStateException("Too many profiler scopes registering " + name);
+		}
+		NAMES[numScopes] = name;
+		return numScopes ++;
+	}
+
+	/**
+	 * @return the time now, to pass to {@link #end(int, long)}, or 0 if profiling is disabled
+	 */
+	public static long begin() {
+		return ENABLED ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Leave a scope
+	 * @param scope The scope's index, from {@link #register(String)}
+	 * @param begin The value returned by {@link #begin()}
+	 */
+	public static void end(int scope, long begin) {
+		if (!ENABLED) {
+			return;
+		}
+		CURRENT[scope] += System.nanoTime() - begin;
+		CURRENT_CALLS[scope] ++;
+	}
+
+	/**
+	 * Store this frame's times and start a new frame
+	 */
+	public static void endFrame() {
+		if (!ENABLED) {
+			return;
+		}
+		for (int i = 0; i < numScopes; i ++) {
+			SAMPLES[i][frame] = CURRENT[i];
+			CALLS[i][frame] = CURRENT_CALLS[i];
+			CURRENT[i] = 0L;
+			CURRENT_CALLS[i] = 0;
+		}
+		if (++ frame == FRAMES) {
+			frame = 0;
+		}
+		if (numFrames < FRAMES) {
+			numFrames ++;
+		}
+	}
+
+	/**
+	 * @return the number of registered scopes
+	 */
+	public static int getNumScopes() {
+		return numScopes;
+	}
+
+	/**
+	 * @return the name of a scope
+	 */
+	public static String getName(int scope) {
+		return NAMES[scope];
+	}
+
+	/**
+	 * @return the number of frames recorded, up to {@link #FRAMES}
+	 */
+	public static int getNumFrames() {
+		return numFrames;
+	}
+
+	/**
+	 * Get the time spent in a scope in a recent frame
+	 * @param scope
+	 * @param age 0 for the most recent frame, up to {@link #getNumFrames()} - 1
+	 * @return time in nanoseconds
+	 */
+	public static long getSample(int scope, int age) {
+		return SAMPLES[scope][(frame - 1 - age + FRAMES) % FRAMES];
+	}
+
+	/**
+	 * Get a percentile of the per-frame time spent in a scope over the recent frames
+	 * @param scope
+	 * @param percentile 0..100; 100 gives the maximum
+	 * @return time in nanoseconds
+	 */
+	public static long getPercentile(int scope, int percentile) {
+		if (numFrames == 0) {
+			return 0L;
+		}
+		System.arraycopy(SAMPLES[scope], 0, SORTED, 0, numFrames);
+		Arrays.sort(SORTED, 0, numFrames);
+		return SORTED[Math.min(numFrames - 1, numFrames * percentile / 100)];
+	}
+
+	/**
+	 * @return a one-line-per-scope summary of p50, p99 and max times, in microseconds
+	 */
+	public static String getSummary() {
+		StringBuilder sb = new StringBuilder(numScopes * 64);
+		for (int i = 0; i < numScopes; i ++) {
+			sb.append(NAMES[i]);
+			sb.append(": p50 ");
+			sb.append(getPercentile(i, 50) / 1000L);
+			sb.append("us p99 ");
+			sb.append(getPercentile(i, 99) / 1000L);
+			sb.append("us max ");
+			sb.append(getPercentile(i, 100) / 1000L);
+			sb.append("us\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write the recorded frames as CSV, oldest first: a frame column, then time in microseconds and number of calls
+	 * for each scope.
+	 * @param writer
+	 * @throws IOException
+	 */
+	public static void writeCSV(Writer writer) throws IOException {
+		writer.write("frame");
+		for (int i = 0; i < numScopes; i ++) {
+			writer.write("," + NAMES[i] + "_us," + NAMES[i] + "_calls");
+		}
+		writer.write("\n");
+		int start = (frame - numFrames + FRAMES) % FRAMES;
+		for (int f = 0; f < numFrames; f ++) {
+			int idx = (start + f) % FRAMES;
+			writer.write(String.valueOf(f));
+			for (int i = 0; i < numScopes; i ++) {
+				writer.write("," + SAMPLES[i][idx] / 1000L + "," + CALLS[i][idx]);
+			}
+			writer.write("\n");
+		}
+		writer.flush();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.util;
+
+import org.lwjgl.opengl.Display;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.util.glu.GLU;
+
+/**
+ * Draws the frames recorded by the {@link Profiler} as a stacked bar graph, one bar per frame and one colour per scope,
+ * with a marker at 16.7ms (60Hz). Like {@link FpsGraph} it uses basic GL11 commands, and leaves the GL state as it
+ * found it.
+ */
+public class ProfilerGraph {
+
+	/** Pixels per millisecond */
+	private static final float SCALE = 4.0f;
+
+	/** Height of the graph in pixels */
+	private static final int HEIGHT = 120;
+
+	/** 60Hz frame budget, in milliseconds */
+	private static final float BUDGET = 1000.0f / 60.0f;
+
+	/** Scope colours */
+	private static final float[][] COLORS =
+		{
+			{1.0f, 0.2f, 0.2f},
+			{0.2f, 1.0f, 0.2f},
+			{0.3f, 0.3f, 1.0f},
+			{1.0f, 1.0f, 0.2f},
+			{1.0f, 0.2f, 1.0f},
+			{0.2f, 1.0f, 1.0f},
+			{1.0f, 0.6f, 0.1f},
+			{0.7f, 0.7f, 0.7f}
+		};
+
+	/**
+	 * C'tor
+	 */
+	public ProfilerGraph() {
+	}
+
+	/**
+	 * Render the graph in the bottom left of the display
+	 */
+	public void render() {
+		GL11.glMatrixMode(GL11.GL_PROJECTION);
+		GL11.glPushMatrix();
+		GL11.glLoadIdentity();
+		GLU.gluOrtho2D(0, Display.getDisplayMode().getWidth(), 0, Display.getDisplayMode().getHeight());
+		GL11.glMatrixMode(GL11.GL_MODELVIEW);
+		GL11.glPushMatrix();
+		GL11.glLoadIdentity();
+		GL11.glPushAttrib(GL11.GL_ENABLE_BIT | GL11.GL_CURRENT_BIT);
+		GL11.glDisable(GL11.GL_TEXTURE_2D);
+		GL11.glDisable(GL11.GL_BLEND);
+		GL11.glTranslatef(10, 10, 0);
+
+		int width = Profiler.FRAMES;
+		int frames = Profiler.getNumFrames();
+		int scopes = Profiler.getNumScopes();
+
+		// Bars, newest on the right
+		GL11.glBegin(GL11.GL_LINES);
+		for (int i = 0; i < frames; i ++) {
+			float x = width - i;
+			float y = 0.0f;
+			for (int j = 0; j < scopes && y < HEIGHT; j ++) {
+				float h = Profiler.getSample(j, i) * SCALE / 1000000.0f;
+				if (h <= 0.0f) {
+					continue;
+				}
+				float[] c = COLORS[j % COLORS.length];
+				GL11.glColor3f(c[0], c[1], c[2]);
+				GL11.glVertex2f(x, y);
+				y = Math.min(HEIGHT, y + h);
+				GL11.glVertex2f(x, y);
+			}
+		}
+
+		// 60Hz line
+		GL11.glColor3f(0.8f, 0.8f, 0.8f);
+		GL11.glVertex2f(0.0f, BUDGET * SCALE);
+		GL11.glVertex2f(width, BUDGET * SCALE);
+		GL11.glEnd();
+
+		// Boundary
+		GL11.glBegin(GL11.GL_LINE_LOOP);
+		GL11.glColor3f(0.4f, 0.0f, 1.0f);
+		GL11.glVertex2f(0.0f, 0.0f);
+		GL11.glVertex2f(width, 0.0f);
+		GL11.glVertex2f(width, HEIGHT);
+		GL11.glVertex2f(0.0f, HEIGHT);
+		GL11.glEnd();
+
+		// Key
+		GL11.glBegin(GL11.GL_QUADS);
+		for (int j = 0; j < scopes; j ++) {
+			float[] c = COLORS[j % COLORS.length];
+			GL11.glColor3f(c[0], c[1], c[2]);
+			float y = HEIGHT - 8 - j * 6;
+			GL11.glVertex2f(width + 4, y);
+			GL11.glVertex2f(width + 8, y);
+			GL11.glVertex2f(width + 8, y + 4);
+			GL11.glVertex2f(width + 4, y + 4);
+		}
+		GL11.glEnd();
+
+		GL11.glPopAttrib();
+		GL11.glPopMatrix();
+		GL11.glMatrixMode(GL11.GL_PROJECTION);
+		GL11.glPopMatrix();
+		GL11.glMatrixMode(GL11.GL_MODELVIEW);
+	}
+}
@@ -45,7 +45,7 @@ import org.lwjgl.opengl.Display;
  */
 public class Util {
 
-	private static final Random random = new Random();
+	private static Random random = new Random();
 
 	/**
 	 * NO constructor for Util.
@@ -97,6 +97,21 @@ public class Util {
 		random.setSeed(seed);
 	}
 
+	/**
+	 * Replaces the random number generator, eg. with a seeded one for repeatable simulations
+	 * @param newRandom The new random number generator (may not be null)
+	 */
+	public static void setRandom(Random newRandom) {
+		random = newRandom;
+	}
+
+	/**
+	 * @return the random number generator used by {@link #random()} and {@link #random(int, int)}
+	 */
+	public static Random getRandom() {
+		return random;
+	}
+
 	/**
 	 * Create a consistent seed from the machine.
 	 */
@@ -336,4 +351,4 @@ public class Util {
 		return distanceFromLineToPoint(x1, y1, 0.0, x2, y2, 0.0, px, py, 0.0);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -41,6 +41,8 @@ import com.shavenpuppy.jglib.sound.SoundEffect;
 import com.shavenpuppy.jglib.sound.SoundPlayer;
 import com.shavenpuppy.jglib.sprites.SoundCommand;
 import com.shavenpuppy.jglib.util.CheckOnline;
+import com.shavenpuppy.jglib.util.Profiler;
+import com.shavenpuppy.jglib.util.ProfilerGraph;
 import com.shavenpuppy.jglib.util.Util;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -140,6 +142,10 @@ public abstract class Game extends Feature {
      * Initialised flag
      */
     private static boolean initialised;
+    /**
+     * Headless mode: there is no display, input or sound, and the game state is ticked directly
+     */
+    private static boolean headless;
     /**
      * Arguments passed in main()
      */
@@ -261,6 +267,13 @@ public abstract class Game extends Feature {
      */
     private static final int[] FPS = new int[60];
     private static int fps = 0, currentFPS = 60;
+    /**
+     * Profiling
+     */
+    private static final int PROFILE_TICK_SCREENS = Profiler.register("tickAllScreens");
+    private static final int PROFILE_UPDATE_SCREENS = Profiler.register("updateAllScreens");
+    private static final int PROFILE_RENDER_SCREENS = Profiler.register("renderAllScreens");
+    private static ProfilerGraph profilerGraph;
 
     static {
         Image.setDecompressor(new JPEGDecompressor() {
@@ -673,6 +686,24 @@ public abstract class Game extends Feature {
         return paused;
     }
 
+    /**
+     * @return Returns true if we're running headless
+     */
+    public static boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Sets headless mode. Must be called before the game state is ticked. Resources are created without touching
+     * OpenGL or OpenAL, and screens don't read input or render.
+     *
+     * @param headless
+     */
+    public static void setHeadless(boolean headless) {
+        Game.headless = headless;
+        Resources.setHeadless(headless);
+    }
+
     /**
      * @return Returns true if the game is registered
      */
@@ -735,6 +766,46 @@ public abstract class Game extends Feature {
         exit();
     }
 
+    /**
+     * Initialise the game for a headless run. Resources are loaded and created as in {@link #init(Properties, InputStream)},
+     * but there is no display, sound, input, splash screen, mod loading or registration check. Preferences go to a node
+     * of their own, with a single player slot, so a run leaves the player's settings and progress alone.
+     *
+     * @param resourcesStream An InputStream for reading in a compiled resource data file
+     * @throws Exception if the game fails to initialise correctly
+     */
+    public static void initHeadless(InputStream resourcesStream) throws Exception {
+        if (initialised) {
+            return;
+        }
+        initialised = true;
+        finished = false;
+        setHeadless(true);
+        Game.properties = new Properties();
+
+        Resources.load(resourcesStream);
+        Game.title = ((TextResource) Resources.get("title")).getText().trim();
+        Game.version = ((TextResource) Resources.get("version")).getText().trim();
+        Game.internalVersion = Game.version;
+        game = (Game) Resources.peek(System.getProperty("net.puppygames.applet.Game.gameResource", DEFAULT_GAME_RESOURCE_NAME));
+        if (game.displayTitle == null) {
+            game.displayTitle = title;
+        }
+
+        GLOBALPREFS = Preferences.userNodeForPackage(Game.class).node(title + " Headless");
+        LOCALPREFS = GLOBALPREFS;
+        ROAMINGPREFS = GLOBALPREFS;
+        configuration = new Configuration();
+        configuration.init();
+
+        SFX.createSFX();
+        Res.createResources();
+        Feature.autoCreate();
+        Resources.setRunMode(true);
+        game.create();
+        playerSlot = new PlayerSlot("headless");
+    }
+
     /**
      * Initialise the game. This must be called <strong>outside</strong> of the AWT thread!
      *
@@ -1000,16 +1071,27 @@ public abstract class Game extends Feature {
             }
         }
 
+        // Decode the images and sounds the features below will need in the background while we create them
+        List<IResource> startup = new ArrayList<IResource>();
+        startup.add(Res.getInstance());
+        startup.addAll(Feature.getAutoCreated());
+        Resources.prepare(startup);
+
         // Autocreate features
-        SFX.createSFX();
         try {
-            Res.createResources();
-            Feature.autoCreate();
-        } catch (Exception e) {
-            e.printStackTrace(System.err);
-            gameInfo.setException(e);
-            badDrivers();
-            return;
+            SFX.createSFX();
+            try {
+                Res.createResources();
+                Feature.autoCreate();
+            } catch (Exception e) {
+                e.printStackTrace(System.err);
+                gameInfo.setException(e);
+                badDrivers();
+                return;
+            }
+        } finally {
+            // Throw away anything we prepared but didn't need after all
+            Resources.finishPreparing();
         }
 
         // We're in Run Mode now
@@ -1426,7 +1508,7 @@ public abstract class Game extends Feature {
      * @return a SoundEffect, or null, if a sound effect could not be created
      */
     public static SoundEffect allocateSound(ALBuffer buffer, float gain, float pitch, Object owner) {
-        if (!org.lwjgl.openal.AL.isCreated() || !isSFXEnabled() || buffer == null || buffer.getWave() == null || soundPlayer == null) {
+        if (soundPlayer == null || !org.lwjgl.openal.AL.isCreated() || !isSFXEnabled() || buffer == null || buffer.getWave() == null) {
             return null;
         }
         SoundEffect effect = soundPlayer.allocate(buffer, (int) (buffer.getPriority() * gain), owner);
@@ -1448,7 +1530,7 @@ public abstract class Game extends Feature {
      * @return a SoundEffect, or null, if a sound effect could not be created
      */
     public static SoundEffect allocateSound(ALStream buffer) {
-        if (!org.lwjgl.openal.AL.isCreated() || !isSFXEnabled() || buffer == null || soundPlayer == null) {
+        if (soundPlayer == null || !org.lwjgl.openal.AL.isCreated() || !isSFXEnabled() || buffer == null) {
             return null;
         }
         SoundEffect effect = soundPlayer.allocate(buffer, Game.class);
@@ -2107,6 +2189,7 @@ public abstract class Game extends Feature {
                         framesTicked += ticksToDo;
                     }
                     render();
+                    Profiler.endFrame();
                     Display.update();
                 }
                 if (DEBUG || forceSleep) {
@@ -2224,12 +2307,24 @@ public abstract class Game extends Feature {
             setPaused(!paused);
         }
 
+        // Profiler overlay and dump
+        if (Profiler.ENABLED) {
+            if (wasKeyPressed(Keyboard.KEY_F9)) {
+                profilerGraph = profilerGraph == null ? new ProfilerGraph() : null;
+            }
+            if (wasKeyPressed(Keyboard.KEY_F10)) {
+                dumpProfile();
+            }
+        }
+
         if (!paused) {
             Timer.tick();
             // Custom ticking
             doTick();
             // Tick screens
+            long profileThen = Profiler.begin();
             Screen.tickAllScreens();
+            Profiler.end(PROFILE_TICK_SCREENS, profileThen);
             // Now tick the sound engine
             if (org.lwjgl.openal.AL.isCreated()) {
                 int n = soundPlayers.size();
@@ -2269,15 +2364,45 @@ public abstract class Game extends Feature {
      * Render. Called every frame.
      */
     private void render() {
+        long profileThen = Profiler.begin();
         Screen.updateAllScreens();
+        Profiler.end(PROFILE_UPDATE_SCREENS, profileThen);
         glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
         glClear(GL_COLOR_BUFFER_BIT);
         glPushMatrix();
         glTranslatef((float) (-logicalWidth / 2.0), (float) (-logicalHeight / 2.0), -256);
         preRender();
+        profileThen = Profiler.begin();
         Screen.renderAllScreens();
+        Profiler.end(PROFILE_RENDER_SCREENS, profileThen);
         postRender();
         glPopMatrix();
+        if (profilerGraph != null) {
+            profilerGraph.render();
+        }
+    }
+
+    /**
+     * Write the profiler's recorded frames to profile.csv in the player directory, and print a summary
+     */
+    private static void dumpProfile() {
+        File file = new File(getPlayerDirectoryPrefix() + "profile.csv");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(file));
+            Profiler.writeCSV(writer);
+            System.out.println("Profile written to " + file);
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        System.out.println(Profiler.getSummary());
     }
 
     /**
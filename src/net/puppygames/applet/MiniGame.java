@@ -12,6 +12,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import net.puppygames.applet.effects.Effect;
 import net.puppygames.applet.effects.EffectFeature;
 import net.puppygames.applet.effects.SFX;
 import net.puppygames.applet.screens.*;
@@ -71,6 +73,46 @@ public abstract class MiniGame extends Game {
      * Prize to be redeemed on starting a new game
      */
     private static PrizeFeature prize;
+    /**
+     * Background save, if any
+     */
+    private static SaveGameThread saveGameThread;
+
+    /**
+     * Compresses and writes a snapshot of the game state in the background. The magic number that validates the file
+     * is only stored in the prefs, by {@link MiniGame#finishSave()} on the game thread, once the file has been written.
+     */
+    private static class SaveGameThread extends Thread {
+
+        private final byte[] snapshot;
+        private final String file;
+        private final Preferences prefs;
+        private final String magicLocation;
+        private final long magic;
+        volatile boolean finished, succeeded;
+
+        SaveGameThread(byte[] snapshot, String file, Preferences prefs, String magicLocation, long magic) {
+            super("Save Game Thread");
+            setPriority(NORM_PRIORITY - 1);
+            this.snapshot = snapshot;
+            this.file = file;
+            this.prefs = prefs;
+            this.magicLocation = magicLocation;
+            this.magic = magic;
+        }
+
+        @Override
+        public void run() {
+            try {
+                SaveFile.writeAtomically(snapshot, new File(file));
+                succeeded = true;
+            } catch (Exception e) {
+                e.printStackTrace(System.err);
+            } finally {
+                finished = true;
+            }
+        }
+    }
 
     /*
      * Resource data
@@ -218,7 +260,7 @@ public abstract class MiniGame extends Game {
      * @return boolean
      */
     public static boolean isRestoreAvailable() {
-        return new RoamingFile(getGame().getRestoreFile()).exists();
+        return saveGameThread != null && !saveGameThread.finished || new RoamingFile(getGame().getRestoreFile()).exists();
     }
 
     public static boolean maybeShowHelp() {
@@ -439,6 +481,8 @@ public abstract class MiniGame extends Game {
 
     @Override
     protected void onExit() {
+        waitForSave();
+
         // And nag :)
         if (getGame() != null && !preventBuy) {
             buy(false);
@@ -450,15 +494,14 @@ public abstract class MiniGame extends Game {
      * Restore the game
      */
     protected void doRestoreGame() {
+        waitForSave();
         allowSave = true;
         String file = getRestoreFile();
         GameInputStream gis = null;
-        ObjectInputStream ois = null;
         boolean exceptionOccurred = false;
         try {
             gis = new GameInputStream(file);
-            ois = new ObjectInputStream(gis);
-            setGameState((GameState) ois.readObject());
+            setGameState((GameState) SaveFile.read(gis));
             // Check tox value in prefs...
             long tox;
             if (getPlayerSlot() != null) {
@@ -671,35 +714,84 @@ public abstract class MiniGame extends Game {
             return;
         }
 
-        String file = getRestoreFile();
-
+        waitForSave();
         try {
-            try (GameOutputStream gos = new GameOutputStream(file)) {
-                ObjectOutputStream oos = new ObjectOutputStream(gos);
-
-                // Set current magic number
-                gameState.setMagic(new Random().nextLong());
-                if (getPlayerSlot() != null) {
-                    getPlayerSlot().getPreferences().putLong(getSaveGameRegistryMagicLocation(), gameState.getMagic());
-                } else {
-                    getRoamingPreferences().putLong(getSaveGameRegistryMagicLocation(), gameState.getMagic());
-                }
-                // This restore file is now only valid when tox in prefs is the
-                // same as that in the file. As soon as we do a restore, we zap
-                // the tox value :)
-                oos.writeObject(gameState);
-                oos.flush();
+            // Set current magic number. The restore file is only valid when tox in prefs is the same as that in the
+            // file; it's stored once the file has been written, so until then the previous save stays valid. As soon
+            // as we do a restore, we zap the tox value :)
+            gameState.setMagic(new Random().nextLong());
+            Preferences prefs = getPlayerSlot() != null ? getPlayerSlot().getPreferences() : getRoamingPreferences();
+
+            // Snapshot the state now, on this thread, so that it's consistent; compression and writing happen in the
+            // background. The snapshot is the whole serialized state graph, so its cost grows with the size of the game
+            // state; it's logged in debug mode.
+            long then = System.nanoTime();
+            byte[] snapshot = SaveFile.snapshot(gameState);
+            if (DEBUG) {
+                System.out.println("Save game snapshot: " + snapshot.length + " bytes in " + (System.nanoTime() - then) / 1000L + "us");
             }
+            saveGameThread = new SaveGameThread(snapshot, getRestoreFile(), prefs, getSaveGameRegistryMagicLocation(), gameState.getMagic());
+            saveGameThread.start();
             allowSave = false;
 
-            onGameSaved();
-            flushPrefs();
-
         } catch (Exception e) {
             e.printStackTrace(System.err);
         }
 
         TitleScreen.show();
+
+        if (saveGameThread != null && !allowSave) {
+            // Confirm on the title screen once the save has actually been written
+            final SaveGameThread saving = saveGameThread;
+            new Effect() {
+                @Override
+                protected void doTick() {
+                    if (saving.finished) {
+                        remove();
+                        if (saving == saveGameThread && finishSave()) {
+                            onGameSaved();
+                        }
+                    }
+                }
+
+                @Override
+                protected void render() {
+                }
+            }.spawn(TitleScreen.getInstance());
+        }
+    }
+
+    /**
+     * Wait for any background save to finish writing
+     */
+    public static void waitForSave() {
+        if (saveGameThread == null) {
+            return;
+        }
+        try {
+            saveGameThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace(System.err);
+            return;
+        }
+        finishSave();
+    }
+
+    /**
+     * Finish off a background save once it has finished writing: if it succeeded, store its magic number in the prefs,
+     * which makes the new file the one we can restore. Must be called on the game thread.
+     *
+     * @return true if the save succeeded
+     */
+    private static boolean finishSave() {
+        SaveGameThread saving = saveGameThread;
+        saveGameThread = null;
+        if (!saving.succeeded) {
+            return false;
+        }
+        saving.prefs.putLong(saving.magicLocation, saving.magic);
+        flushPrefs();
+        return true;
     }
 
     /**
@@ -713,6 +805,7 @@ public abstract class MiniGame extends Game {
      * Start a new game from scratch
      */
     public static void cleanGame() {
+        waitForSave();
         RoamingFile file = new RoamingFile(getGame().getRestoreFile());
         if (file.exists() && !file.delete()) {
             System.err.println("Failed to delete save file " + file);
@@ -105,6 +105,13 @@ public class Res extends Feature {
 		instance = null;
 	}
 
+	/**
+	 * @return the resources, which may not have been created yet
+	 */
+	static Res getInstance() {
+		return instance;
+	}
+
 	/**
 	 * Create the resources
 	 */
@@ -0,0 +1,256 @@
+/**
+ *
+ */
+package net.puppygames.applet;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Versioned container for saved games and cached maps. The header is checked before anything is deserialized, so
+ * stale or damaged files are rejected cheaply. The layout is:
+ *
+ * MAGIC - int
+ * version - int
+ * payload type - int: {@link #SERIALIZED} or {@link #RECORD}
+ * length of payload - int
+ * CRC32 of payload - long
+ * payload: the serialized state or the record, deflated
+ *
+ * Cached maps are typed records (see {@link Record}); saved games are still the serialized game state, because the
+ * entity graph covers dozens of classes which would each need their own record.
+ */
+public final class SaveFile {
+
+    /**
+     * Magic number
+     */
+    private static final int MAGIC = 0x50475356; // PGSV
+    /**
+     * Format version: bump this whenever the serialized form of saved state changes incompatibly
+     */
+    private static final int VERSION = 2;
+    /**
+     * Payload types
+     */
+    private static final int SERIALIZED = 0, RECORD = 1;
+    /**
+     * Initial buffer size
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Something which writes itself as a typed record of primitives and arrays, with its own version, rather than by
+     * serialization. It is read back by a constructor taking a {@link DataInput}.
+     */
+    public interface Record {
+
+        /**
+         * Write the record
+         * @param out
+         * @throws IOException
+         */
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * No c'tor
+     */
+    private SaveFile() {
+    }
+
+    /**
+     * Take a snapshot of some state. This is just the uncompressed serialized form, so it's as quick as we can make it;
+     * compressing and writing it out can then be done on another thread with {@link #write(byte[], OutputStream)}.
+     *
+     * @param state The state to snapshot
+     * @return the snapshot
+     * @throws IOException
+     */
+    public static byte[] snapshot(Serializable state) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFFER_SIZE);
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(state);
+        oos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Write state to a stream
+     *
+     * @param state The state to write
+     * @param os The stream to write to; it is not closed
+     * @throws IOException
+     */
+    public static void write(Serializable state, OutputStream os) throws IOException {
+        write(snapshot(state), os);
+    }
+
+    /**
+     * Write a snapshot to a stream
+     *
+     * @param snapshot A snapshot returned by {@link #snapshot(Serializable)}
+     * @param os The stream to write to; it is not closed
+     * @throws IOException
+     */
+    public static void write(byte[] snapshot, OutputStream os) throws IOException {
+        write(SERIALIZED, snapshot, os);
+    }
+
+    /**
+     * Write a record to a stream
+     *
+     * @param record The record to write
+     * @param os The stream to write to; it is not closed
+     * @throws IOException
+     */
+    public static void writeRecord(Record record, OutputStream os) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFFER_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        record.write(dos);
+        dos.flush();
+        write(RECORD, baos.toByteArray(), os);
+    }
+
+    private static void write(int type, byte[] snapshot, OutputStream os) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(snapshot.length / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(snapshot);
+            deflater.finish();
+            byte[] chunk = new byte[BUFFER_SIZE / 4];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                payload.write(chunk, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] buf = payload.toByteArray();
+        crc.update(buf);
+
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(type);
+        dos.writeInt(buf.length);
+        dos.writeLong(crc.getValue());
+        dos.write(buf);
+        dos.flush();
+    }
+
+    /**
+     * Write a snapshot to a file such that a crash or failure part way through never leaves a partially written file
+     * in its place: the snapshot is written and synced to a temporary file, which then replaces the file.
+     *
+     * @param snapshot A snapshot returned by {@link #snapshot(Serializable)}
+     * @param file The file to write
+     * @throws IOException
+     */
+    public static void writeAtomically(byte[] snapshot, File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            BufferedOutputStream bos = new BufferedOutputStream(fos, BUFFER_SIZE / 4);
+            write(snapshot, bos);
+            bos.flush();
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Read state from a stream
+     *
+     * @param is The stream to read from; it is not closed
+     * @return the state
+     * @throws IOException if the file is not a save file, is from a different version, or is damaged
+     * @throws ClassNotFoundException
+     */
+    public static Object read(InputStream is) throws IOException, ClassNotFoundException {
+        byte[] buf = readPayload(is, SERIALIZED);
+        Inflater inflater = new Inflater();
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(buf), inflater, BUFFER_SIZE / 4));
+            return ois.readObject();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Read a record from a stream
+     *
+     * @param is The stream to read from; it is not closed
+     * @return the record, ready to be passed to the record's read constructor
+     * @throws IOException if the file is not a record, is from a different version, or is damaged
+     */
+    public static DataInputStream readRecord(InputStream is) throws IOException {
+        byte[] buf = readPayload(is, RECORD);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(buf.length * 4);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buf);
+            byte[] chunk = new byte[BUFFER_SIZE / 4];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Save file is damaged");
+                }
+                record.write(chunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Save file is damaged", e);
+        } finally {
+            inflater.end();
+        }
+        return new DataInputStream(new ByteArrayInputStream(record.toByteArray()));
+    }
+
+    /**
+     * Read and check the header, and read the payload
+     *
+     * @param is The stream to read from
+     * @param type The payload type we expect
+     * @return the payload, still deflated
+     * @throws IOException if the file is not a save file of the right type, is from a different version, or is damaged
+     */
+    private static byte[] readPayload(InputStream is, int type) throws IOException {
+        DataInputStream dis = new DataInputStream(is);
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Not a save file");
+        }
+        int version = dis.readInt();
+        if (version != VERSION) {
+            throw new IOException("Save file version " + version + " is not supported");
+        }
+        if (dis.readInt() != type) {
+            throw new IOException("Save file holds the wrong kind of data");
+        }
+        int length = dis.readInt();
+        long expected = dis.readLong();
+        if (length < 0) {
+            throw new IOException("Save file is damaged");
+        }
+        byte[] buf = new byte[length];
+        dis.readFully(buf);
+        CRC32 crc = new CRC32();
+        crc.update(buf);
+        if (crc.getValue() != expected) {
+            throw new IOException("Save file is damaged");
+        }
+        return buf;
+    }
+}
@@ -90,6 +90,9 @@ public abstract class Screen extends Feature implements SpriteAllocator {
 	/** Extra ticking to do as a result of trying to tick within tick */
 	private static final List<Screen> EXTRA_TICKING = new ArrayList<Screen>(1);
 
+	/** Scratch list of tickables to remove */
+	private static final List<Tickable> DEAD_TICKABLES = new ArrayList<Tickable>();
+
 	/** Monkeying: slow tick speed */
 	private static final int SLOW_TICK_SPEED = 4;
 
@@ -646,6 +649,12 @@ public abstract class Screen extends Feature implements SpriteAllocator {
 			throw new RuntimeException("Screen "+this+"["+System.identityHashCode(this)+"]"+" is not created but is being ticked!");
 		}
 
+		if (Game.isHeadless()) {
+			// No input, transitions or rendering; but the tickables and sprite animations still drive the game
+			tickEverything();
+			return;
+		}
+
 		if (alreadyTicking) {
 			if (!EXTRA_TICKING.contains(this)) {
 				EXTRA_TICKING.add(this);
@@ -800,16 +809,13 @@ public abstract class Screen extends Feature implements SpriteAllocator {
 	 * Tick all the screen's tickables
 	 */
 	private void tickEverything() {
-		for (int i = 0; i < tickables.size(); ) {
+		for (int i = 0; i < tickables.size(); i ++) {
 			Tickable tickable = tickables.get(i);
 			if (tickable.isActive()) {
 				tickable.tick();
-				i ++;
-			} else {
-				tickables.remove(i);
-				tickable.remove();
 			}
 		}
+		cullTickables();
 
 		// Then finally the sprite engine
 		spriteEngine.tick();
@@ -819,16 +825,38 @@ public abstract class Screen extends Feature implements SpriteAllocator {
 	 * Update everything
 	 */
 	protected final void updateEverything() {
-		for (int i = 0; i < tickables.size(); ) {
+		for (int i = 0; i < tickables.size(); i ++) {
 			Tickable tickable = tickables.get(i);
 			if (tickable.isActive()) {
 				tickable.update();
-				i ++;
+			}
+		}
+		cullTickables();
+	}
+
+	/**
+	 * Squeeze inactive tickables out of the tickables list in a single pass, and then remove them
+	 */
+	private void cullTickables() {
+		int n = 0;
+		int size = tickables.size();
+		for (int i = 0; i < size; i ++) {
+			Tickable tickable = tickables.get(i);
+			if (tickable.isActive()) {
+				tickables.set(n ++, tickable);
 			} else {
-				tickables.remove(i);
-				tickable.remove();
+				DEAD_TICKABLES.add(tickable);
 			}
 		}
+		if (n == size) {
+			return;
+		}
+		tickables.subList(n, size).clear();
+		// Removing a tickable may well add or detach others, so only do it once the list is straight
+		for (int i = 0; i < DEAD_TICKABLES.size(); i ++) {
+			DEAD_TICKABLES.get(i).remove();
+		}
+		DEAD_TICKABLES.clear();
 	}
 
 	/**
@@ -1275,7 +1303,7 @@ public abstract class Screen extends Feature implements SpriteAllocator {
 	/**
 	 * @return Returns the alpha.
 	 */
-	protected final float getAlpha() {
+	public final float getAlpha() {
 		return alpha;
 	}
 
@@ -42,7 +42,7 @@ import com.shavenpuppy.jglib.sprites.Sprite;
 public abstract class TickableObject extends GeometryStyle implements Tickable {
 
 	private boolean done, visible = true;
-	private int layer;
+	private int layer, subLayer;
 	private Sprite sprite;
 	private Screen screen;
 
@@ -85,6 +85,7 @@ public abstract class TickableObject extends GeometryStyle implements Tickable {
 		sprite = screen.allocateSprite(this);
 		sprite.setStyle(this);
 		sprite.setLayer(layer);
+		sprite.setSubLayer(subLayer);
 		sprite.setVisible(visible);
 		doSpawn();
 	}
@@ -109,6 +110,16 @@ public abstract class TickableObject extends GeometryStyle implements Tickable {
 		return layer;
 	}
 
+	public final void setSubLayer(int subLayer) {
+		this.subLayer = subLayer;
+		if (sprite != null) {
+			sprite.setSubLayer(subLayer);
+		}
+	}
+	public final int getSubLayer() {
+		return subLayer;
+	}
+
 	@Override
 	public void tick() {
 	}
@@ -32,6 +32,7 @@
 package net.puppygames.applet.effects;
 
 import net.puppygames.applet.Game;
+import net.puppygames.applet.Res;
 import net.puppygames.applet.Screen;
 
 import org.lwjgl.util.Color;
@@ -45,6 +46,7 @@ import com.shavenpuppy.jglib.resources.Feature;
 import com.shavenpuppy.jglib.resources.Range;
 import com.shavenpuppy.jglib.sound.SoundEffect;
 import com.shavenpuppy.jglib.sprites.Appearance;
+import com.shavenpuppy.jglib.sprites.SpriteImage;
 
 /**
  * $Id: EmitterFeature.java,v 1.11 2010/08/03 20:44:07 foo Exp $
@@ -421,6 +423,14 @@ public class EmitterFeature extends Feature {
 				if (!forceEmit && (offsetXpos < -MARGIN || offsetYpos < -MARGIN || offsetXpos > screen.getWidth() + MARGIN || offsetYpos > screen.getHeight() + MARGIN)) {
 					numParticles += n;
 				} else {
+					SpriteImage batchImage = null;
+					if (slave == null) {
+						if (appearanceResource == null) {
+							batchImage = Res.getParticleImage();
+						} else if (appearanceResource instanceof SpriteImage) {
+							batchImage = (SpriteImage) appearanceResource;
+						}
+					}
 					for (int i = 0; i < n && (maxParticles == 0 || numParticles < maxParticles); i ++) {
 						numParticles ++;
 						Color startColor;
@@ -455,31 +465,73 @@ public class EmitterFeature extends Feature {
 								yyy += r * Math.sin(randomRadiusAngle);
 							}
 						}
+						float particleAngle = EmitterFeature.this.angle == null ? (float) Math.random() * 360.0f : EmitterFeature.this.angle.getValue() + angle;
+						float particleVelocity = velocity == null ? 0.0f : velocity.getValue() * instanceScale;
+						float particleAcceleration = acceleration == null ? 0.0f : acceleration.getValue() * instanceScale;
+						float particleAx = gravityX == null ? 0.0f : gravityX.getValue() * instanceScale;
+						float particleAy = gravityY == null ? 0.0f : gravityY.getValue() * instanceScale;
+						float particleStartScale = startScale == null ? instanceScale : startScale.getValue() * instanceScale;
+						float particleEndScale = endScale == null ? instanceScale : endScale.getValue() * instanceScale;
+						float particleScale = EmitterFeature.this.scale == null ? instanceScale : EmitterFeature.this.scale.getValue() * instanceScale;
+						if (batchImage != null) {
+							// Plain particles go in a batch rather than getting a sprite each
+							ParticleBatch batch = ParticleBatch.getBatch(screen, batchImage, layer, subLayer);
+							int p = batch.add
+								(
+									this,
+									xxx, yyy, oyyy,
+									particleAngle,
+									particleVelocity,
+									particleAcceleration,
+									(int) particleDuration.getValue(),
+									(int) fadeDuration.getValue(),
+									startColor,
+									endColor
+								);
+							if (p == -1) {
+								continue;
+							}
+							batch.setGravity(p, particleAx, particleAy);
+							batch.setScale(p, particleStartScale, particleScale, particleEndScale);
+							batch.setRotation(p, rotate ? particleAngle : 0.0f, relativeRotate);
+							if (doYOffset) {
+								batch.setDoYOffset(p);
+							}
+							if (ceilingSet) {
+								batch.setCeiling(p, ceiling);
+							}
+							if (floorSet) {
+								batch.setFloor(p, floor);
+							}
+							if (leftWallSet) {
+								batch.setLeftWall(p, leftWall);
+							}
+							if (rightWallSet) {
+								batch.setRightWall(p, rightWall);
+							}
+							continue;
+						}
 						Particle p = Particle.POOL.obtain
 							(
 								this,
 								xxx, yyy, oyyy,
-								EmitterFeature.this.angle == null ? (float) Math.random() * 360.0f : EmitterFeature.this.angle.getValue() + angle,
-								velocity == null ? 0.0f : velocity.getValue() * instanceScale,
-								acceleration == null ? 0.0f : acceleration.getValue() * instanceScale,
+								particleAngle,
+								particleVelocity,
+								particleAcceleration,
 								(int) particleDuration.getValue(),
 								(int) fadeDuration.getValue(),
 								startColor,
 								endColor
 							);
-						p.setAx(gravityX == null ? 0.0f : gravityX.getValue() * instanceScale);
-						p.setAy(gravityY == null ? 0.0f : gravityY.getValue() * instanceScale);
+						p.setAx(particleAx);
+						p.setAy(particleAy);
 						p.setAppearance(appearanceResource);
 						p.setLayer(layer);
 						p.setSubLayer(subLayer);
 						p.setDoYOffset(doYOffset);
-						p.setStartScale(startScale == null ? instanceScale : startScale.getValue() * instanceScale);
-						p.setEndScale(endScale == null ? instanceScale : endScale.getValue() * instanceScale);
-						if (EmitterFeature.this.scale != null) {
-							p.setScale(EmitterFeature.this.scale.getValue() * instanceScale);
-						} else {
-							p.setScale(instanceScale);
-						}
+						p.setStartScale(particleStartScale);
+						p.setEndScale(particleEndScale);
+						p.setScale(particleScale);
 						if (ceilingSet) {
 							p.setCeiling(ceiling);
 						}
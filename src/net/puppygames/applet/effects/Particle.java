@@ -113,8 +113,8 @@ public class Particle implements Tickable {
 	/** Total pixels */
 	private static int totalPixels;
 
-	/** Number of particles */
-	private static int numParticles;
+	/** Number of particles, including those in {@link ParticleBatch}es */
+	static int numParticles;
 
 	/** Particle falloff count */
 	private static int falloffCount;
@@ -231,50 +231,59 @@ public class Particle implements Tickable {
 		emitter.setOffset(parent.getOffset());
 	}
 
-	@Override
-	public void spawn(Screen screen) {
-		if (emitter != null) {
-			emitter.setLocation(x, y);
-			emitter.setYOffset(yOffset);
+	/**
+	 * Applies the particle and fill rate caps to an unforced particle. Also used by {@link ParticleBatch}.
+	 * @return true if the particle should be spawned
+	 */
+	static boolean shouldSpawn() {
+		if (numParticles > maxParticles) {
+			return false;
+		} else if (numParticles > maxParticles * 0.75f) {
+			falloffCount ++;
+			if (falloffCount < 3) {
+				return false;
+			} else {
+				falloffCount = 0;
+			}
+		} else if (numParticles > maxParticles * 0.66f) {
+			falloffCount ++;
+			if (falloffCount < 2) {
+				return false;
+			} else {
+				falloffCount = 0;
+			}
 		}
-		if (!forced) {
-			if (numParticles > maxParticles) {
-				return;
-			} else if (numParticles > maxParticles * 0.75f) {
+		// Now check fill rate
+		if (maxPixels != -1) {
+			if (totalPixels > maxPixels) {
+				return false;
+			} else if (totalPixels > maxPixels * 0.75f) {
 				falloffCount ++;
 				if (falloffCount < 3) {
-					return;
+					return false;
 				} else {
 					falloffCount = 0;
 				}
-			} else if (numParticles > maxParticles * 0.66f) {
+			} else if (totalPixels > maxPixels * 0.66f) {
 				falloffCount ++;
 				if (falloffCount < 2) {
-					return;
+					return false;
 				} else {
 					falloffCount = 0;
 				}
 			}
-			// Now check fill rate
-			if (maxPixels != -1) {
-				if (totalPixels > maxPixels) {
-					return;
-				} else if (totalPixels > maxPixels * 0.75f) {
-					falloffCount ++;
-					if (falloffCount < 3) {
-						return;
-					} else {
-						falloffCount = 0;
-					}
-				} else if (totalPixels > maxPixels * 0.66f) {
-					falloffCount ++;
-					if (falloffCount < 2) {
-						return;
-					} else {
-						falloffCount = 0;
-					}
-				}
-			}
+		}
+		return true;
+	}
+
+	@Override
+	public void spawn(Screen screen) {
+		if (emitter != null) {
+			emitter.setLocation(x, y);
+			emitter.setYOffset(yOffset);
+		}
+		if (!forced && !shouldSpawn()) {
+			return;
 		}
 
 		sprite = screen.allocateSprite(screen);
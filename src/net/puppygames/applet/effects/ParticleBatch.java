@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.puppygames.applet.effects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.puppygames.applet.Screen;
+import net.puppygames.applet.TickableObject;
+
+import org.lwjgl.util.Color;
+import org.lwjgl.util.ReadableColor;
+import org.lwjgl.util.ReadablePoint;
+
+import com.shavenpuppy.jglib.opengl.GLBaseTexture;
+import com.shavenpuppy.jglib.opengl.GLRenderable;
+import com.shavenpuppy.jglib.sprites.AlphaOp;
+import com.shavenpuppy.jglib.sprites.SpriteImage;
+import com.shavenpuppy.jglib.sprites.Style;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * All the plain particles on a screen that share an image, layer and sublayer. Rather than a {@link Particle} and a sprite
+ * apiece they're kept in parallel arrays, ticked in a few tight loops, and drawn as a single lump of geometry. Particles
+ * with slave emitters or animated appearances still use {@link Particle}.
+ */
+class ParticleBatch extends TickableObject {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Most particles in one batch, as the geometry's vertex count is a short */
+	private static final int MAX_PARTICLES = 8191;
+
+	/** Initial size of the arrays */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Floats per vertex: x, y, u, v, color */
+	private static final int VERTEX_SIZE = 5;
+
+	/** Particle flags */
+	private static final int FADING = 1, FINISHED = 2, DO_Y_OFFSET = 4, RELATIVE_ROTATION = 8;
+	private static final int FLOOR = 16, CEILING = 32, LEFT_WALL = 64, RIGHT_WALL = 128;
+	private static final int WALLS = FLOOR | CEILING | LEFT_WALL | RIGHT_WALL;
+
+	/** Live batches */
+	private static final ArrayList<ParticleBatch> BATCHES = new ArrayList<ParticleBatch>();
+
+	/** The image every particle is drawn with */
+	private final SpriteImage image;
+
+	/** GL state for the image */
+	private final GLRenderable setup, reset;
+
+	/** Scratch colour */
+	private final Color color = new Color();
+
+	/** Number of particles, and the size of the arrays */
+	private int count, capacity;
+
+	/** Particle state */
+	private Emitter[] parent;
+	private float[] x, y, yOffset, angle, velocity, acceleration, ax, ay, vx, vy;
+	private float[] startScale, scale, endScale, rotation;
+	private float[] floor, ceiling, leftWall, rightWall;
+	private int[] tick, duration, fadeDuration, startColor, endColor, flags;
+
+	/** Colour (packed, as for {@link #glColori(int)}) and scale, worked out each tick */
+	private int[] currentColor;
+	private float[] currentScale;
+
+	/** Vertex data */
+	private float[] vertices;
+
+	/** Quad indices, which are the same for every batch of a particular size */
+	private short[] indices;
+
+	/**
+	 * C'tor
+	 * @param image
+	 * @param layer
+	 * @param subLayer
+	 */
+	ParticleBatch(SpriteImage image, int layer, int subLayer) {
+		this.image = image;
+		final Style style = image.getStyle();
+		final GLBaseTexture texture = image.getTexture();
+		setup = new GLRenderable() {
+			@Override
+			public void render() {
+				style.setupState();
+				if (texture != null) {
+					texture.render();
+				}
+			}
+		};
+		reset = new GLRenderable() {
+			@Override
+			public void render() {
+				style.resetState();
+			}
+		};
+		setLayer(layer);
+		setSubLayer(subLayer);
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Find the batch for particles drawn with an image on a particular layer of a screen, spawning it if there isn't one yet
+	 * @param screen
+	 * @param image
+	 * @param layer
+	 * @param subLayer
+	 * @return a ParticleBatch
+	 */
+	static ParticleBatch getBatch(Screen screen, SpriteImage image, int layer, int subLayer) {
+		for (int i = 0; i < BATCHES.size(); i ++) {
+			ParticleBatch batch = BATCHES.get(i);
+			if (batch.getScreen() == screen && batch.image == image && batch.getLayer() == layer && batch.getSubLayer() == subLayer) {
+				return batch;
+			}
+		}
+		ParticleBatch batch = new ParticleBatch(image, layer, subLayer);
+		batch.spawn(screen);
+		BATCHES.add(batch);
+		return batch;
+	}
+
+	/**
+	 * Add a particle, subject to the particle caps
+	 * @return the particle's index, for the setters, or -1 if it wasn't added
+	 */
+	int add(Emitter parent, float x, float y, float yOffset, float angle, float velocity, float acceleration, int duration, int fadeDuration,
+			ReadableColor startColor, ReadableColor endColor) {
+		if (count == MAX_PARTICLES || !Particle.shouldSpawn()) {
+			return -1;
+		}
+		if (count == capacity) {
+			allocate(Math.min(MAX_PARTICLES, capacity * 2));
+		}
+		int i = count ++;
+		Particle.numParticles ++;
+		this.parent[i] = parent;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.yOffset[i] = yOffset;
+		this.angle[i] = angle;
+		this.velocity[i] = velocity;
+		this.acceleration[i] = acceleration;
+		this.duration[i] = duration;
+		this.fadeDuration[i] = fadeDuration;
+		this.startColor[i] = pack(startColor);
+		this.endColor[i] = pack(endColor);
+		ax[i] = 0.0f;
+		ay[i] = 0.0f;
+		vx[i] = 0.0f;
+		vy[i] = 0.0f;
+		startScale[i] = 1.0f;
+		scale[i] = 1.0f;
+		endScale[i] = 1.0f;
+		rotation[i] = 0.0f;
+		tick[i] = 0;
+		flags[i] = 0;
+		currentColor[i] = this.startColor[i];
+		currentScale[i] = 1.0f;
+		return i;
+	}
+
+	/**
+	 * @return the number of particles in the batch
+	 */
+	int getCount() {
+		return count;
+	}
+
+	void setGravity(int i, float ax, float ay) {
+		this.ax[i] = ax;
+		this.ay[i] = ay;
+	}
+
+	void setScale(int i, float startScale, float scale, float endScale) {
+		this.startScale[i] = startScale;
+		this.scale[i] = scale;
+		this.endScale[i] = endScale;
+		currentScale[i] = startScale;
+	}
+
+	void setRotation(int i, float rotation, boolean relativeRotation) {
+		this.rotation[i] = rotation;
+		if (relativeRotation) {
+			flags[i] |= RELATIVE_ROTATION;
+		}
+	}
+
+	void setDoYOffset(int i) {
+		flags[i] |= DO_Y_OFFSET;
+	}
+
+	void setFloor(int i, float floor) {
+		this.floor[i] = floor;
+		flags[i] |= FLOOR;
+	}
+
+	void setCeiling(int i, float ceiling) {
+		this.ceiling[i] = ceiling;
+		flags[i] |= CEILING;
+	}
+
+	void setLeftWall(int i, float leftWall) {
+		this.leftWall[i] = leftWall;
+		flags[i] |= LEFT_WALL;
+	}
+
+	void setRightWall(int i, float rightWall) {
+		this.rightWall[i] = rightWall;
+		flags[i] |= RIGHT_WALL;
+	}
+
+	@Override
+	public void tick() {
+		// Particles which finished last tick have had their last frame drawn, so squeeze them out first
+		int n = 0;
+		for (int i = 0; i < count; i ++) {
+			if ((flags[i] & FINISHED) == 0) {
+				if (n != i) {
+					move(i, n);
+				}
+				n ++;
+			}
+		}
+		if (n < count) {
+			Arrays.fill(parent, n, count, null);
+			Particle.numParticles -= count - n;
+			count = n;
+		}
+
+		// Movement
+		for (int i = 0; i < n; i ++) {
+			double a = Math.toRadians(angle[i]);
+			float dx = velocity[i] * (float) Math.cos(a);
+			float dy = velocity[i] * (float) Math.sin(a);
+			velocity[i] += acceleration[i];
+			if (velocity[i] <= 0.0f) {
+				velocity[i] = 0.0f;
+				acceleration[i] = 0.0f;
+			}
+			vx[i] += ax[i];
+			vy[i] += ay[i];
+			x[i] += dx + vx[i];
+			if ((flags[i] & DO_Y_OFFSET) != 0) {
+				yOffset[i] += dy + vy[i];
+			} else {
+				y[i] += dy + vy[i];
+			}
+			if ((flags[i] & WALLS) != 0) {
+				bounce(i, dx, dy);
+			}
+		}
+
+		// Colour, scale, and lifetime
+		for (int i = 0; i < n; i ++) {
+			int t = ++ tick[i];
+			if ((flags[i] & FADING) != 0) {
+				float ratio = (float) t / (float) fadeDuration[i];
+				int c = endColor[i];
+				currentColor[i] = c & 0xFFFFFF | (255 - (int) ((c >>> 24) * ratio) & 0xFF) << 24;
+				currentScale[i] = lerp(scale[i], endScale[i], ratio);
+				if (t >= fadeDuration[i]) {
+					flags[i] |= FINISHED;
+				}
+			} else {
+				float ratio = (float) t / (float) duration[i];
+				currentColor[i] = lerpColor(startColor[i], endColor[i], ratio);
+				currentScale[i] = lerp(startScale[i], scale[i], ratio);
+				if (t >= duration[i]) {
+					flags[i] |= FADING;
+					tick[i] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bounce a particle off its walls, floor and ceiling, exactly as a {@link Particle} would
+	 */
+	private void bounce(int i, float dx, float dy) {
+		int f = flags[i];
+		if ((f & LEFT_WALL) != 0 && x[i] < leftWall[i]) {
+			vx[i] = -vx[i];
+			dx = -dx;
+			angle[i] = (float) Math.atan2(dy + vy[i], dx + vx[i]);
+			x[i] = leftWall[i] + leftWall[i] - x[i];
+		} else if ((f & RIGHT_WALL) != 0 && x[i] > rightWall[i]) {
+			vx[i] = -vx[i];
+			dx = -dx;
+			angle[i] = (float) Math.atan2(dy + vy[i], dx + vx[i]);
+			x[i] = rightWall[i] - (x[i] - rightWall[i]);
+		}
+		if ((f & DO_Y_OFFSET) != 0) {
+			if ((f & FLOOR) != 0 && yOffset[i] + y[i] < floor[i]) {
+				vy[i] = -vy[i];
+				dy = -dy;
+				angle[i] = (float) Math.atan2(dy + vy[i], dx + vx[i]);
+				yOffset[i] = floor[i] + floor[i] - yOffset[i];
+			} else if ((f & CEILING) != 0 && yOffset[i] + y[i] > ceiling[i]) {
+				vy[i] = -vy[i];
+				dy = -dy;
+				angle[i] = (float) Math.atan2(dy + vy[i], dx + vx[i]);
+				yOffset[i] = ceiling[i] - (yOffset[i] - ceiling[i]);
+			}
+		} else {
+			if ((f & FLOOR) != 0 && y[i] < floor[i]) {
+				vy[i] = -vy[i];
+				dy = -dy;
+				angle[i] = (float) Math.atan2(dy + vy[i], dx + vx[i]);
+				y[i] = floor[i] + floor[i] - y[i];
+			} else if ((f & CEILING) != 0 && y[i] > ceiling[i]) {
+				vy[i] = -vy[i];
+				dy = -dy;
+				angle[i] = (float) Math.atan2(dy + vy[i], dx + vx[i]);
+				y[i] = ceiling[i] - (y[i] - ceiling[i]);
+			}
+		}
+	}
+
+	@Override
+	protected void render() {
+		if (count == 0) {
+			return;
+		}
+
+		AlphaOp alphaOp = image.getStyle().getAlphaOp();
+		int alpha = (int) (getScreen().getAlpha() * 255.0f);
+		float hx = -image.getHotspotX();
+		float hy = -image.getHotspotY();
+		float w = image.getWidth();
+		float h = image.getHeight();
+		float tx0 = image.getTx0(), tx1 = image.getTx1(), ty0 = image.getTy0(), ty1 = image.getTy1();
+
+		int quads = 0;
+		int v = 0;
+		for (int i = 0; i < count; i ++) {
+			Emitter p = parent[i];
+			if (!p.isVisible()) {
+				continue;
+			}
+			ReadablePoint offset = p.getOffset();
+			float px = (int) x[i];
+			float py = (int) y[i];
+			if (offset != null) {
+				px += offset.getX();
+				py += offset.getY();
+			}
+			py += yOffset[i];
+
+			// Scale, then rotate, then translate, like a sprite
+			float s = currentScale[i];
+			float x0 = hx * s, y0 = hy * s, x1 = (hx + w) * s, y1 = (hy + h) * s;
+			float r = (flags[i] & RELATIVE_ROTATION) != 0 ? angle[i] + rotation[i] : rotation[i];
+			float cos = 1.0f, sin = 0.0f;
+			if (r != 0.0f) {
+				double a = Math.toRadians(r);
+				cos = (float) Math.cos(a);
+				sin = (float) Math.sin(a);
+			}
+			int c = currentColor[i];
+			color.set(c & 0xFF, c >> 8 & 0xFF, c >> 16 & 0xFF, c >>> 24);
+			float col = alphaOp.op(color, alpha);
+
+			v = putVertex(v, px + cos * x0 - sin * y0, py + sin * x0 + cos * y0, tx0, ty1, col);
+			v = putVertex(v, px + cos * x1 - sin * y0, py + sin * x1 + cos * y0, tx1, ty1, col);
+			v = putVertex(v, px + cos * x1 - sin * y1, py + sin * x1 + cos * y1, tx1, ty0, col);
+			v = putVertex(v, px + cos * x0 - sin * y1, py + sin * x0 + cos * y1, tx0, ty0, col);
+			quads ++;
+		}
+		if (quads == 0) {
+			return;
+		}
+
+		// The vertices must come first, so that the indices start at 0
+		glVertices(vertices, quads * 4);
+		glRender(setup);
+		glRender(GL_TRIANGLES, indices, quads * 6);
+		glRender(reset);
+	}
+
+	private int putVertex(int i, float x, float y, float u, float v, float color) {
+		vertices[i ++] = x;
+		vertices[i ++] = y;
+		vertices[i ++] = u;
+		vertices[i ++] = v;
+		vertices[i ++] = color;
+		return i;
+	}
+
+	@Override
+	protected void doRemove() {
+		BATCHES.remove(this);
+		Particle.numParticles -= count;
+		count = 0;
+		Arrays.fill(parent, null);
+	}
+
+	/**
+	 * Copy a particle from one slot to another
+	 */
+	private void move(int src, int dest) {
+		parent[dest] = parent[src];
+		x[dest] = x[src];
+		y[dest] = y[src];
+		yOffset[dest] = yOffset[src];
+		angle[dest] = angle[src];
+		velocity[dest] = velocity[src];
+		acceleration[dest] = acceleration[src];
+		ax[dest] = ax[src];
+		ay[dest] = ay[src];
+		vx[dest] = vx[src];
+		vy[dest] = vy[src];
+		startScale[dest] = startScale[src];
+		scale[dest] = scale[src];
+		endScale[dest] = endScale[src];
+		rotation[dest] = rotation[src];
+		floor[dest] = floor[src];
+		ceiling[dest] = ceiling[src];
+		leftWall[dest] = leftWall[src];
+		rightWall[dest] = rightWall[src];
+		tick[dest] = tick[src];
+		duration[dest] = duration[src];
+		fadeDuration[dest] = fadeDuration[src];
+		startColor[dest] = startColor[src];
+		endColor[dest] = endColor[src];
+		flags[dest] = flags[src];
+		currentColor[dest] = currentColor[src];
+		currentScale[dest] = currentScale[src];
+	}
+
+	/**
+	 * (Re)allocate the arrays
+	 * @param newCapacity
+	 */
+	private void allocate(int newCapacity) {
+		if (capacity == 0) {
+			parent = new Emitter[newCapacity];
+			x = new float[newCapacity];
+			y = new float[newCapacity];
+			yOffset = new float[newCapacity];
+			angle = new float[newCapacity];
+			velocity = new float[newCapacity];
+			acceleration = new float[newCapacity];
+			ax = new float[newCapacity];
+			ay = new float[newCapacity];
+			vx = new float[newCapacity];
+			vy = new float[newCapacity];
+			startScale = new float[newCapacity];
+			scale = new float[newCapacity];
+			endScale = new float[newCapacity];
+			rotation = new float[newCapacity];
+			floor = new float[newCapacity];
+			ceiling = new float[newCapacity];
+			leftWall = new float[newCapacity];
+			rightWall = new float[newCapacity];
+			tick = new int[newCapacity];
+			duration = new int[newCapacity];
+			fadeDuration = new int[newCapacity];
+			startColor = new int[newCapacity];
+			endColor = new int[newCapacity];
+			flags = new int[newCapacity];
+			currentColor = new int[newCapacity];
+			currentScale = new float[newCapacity];
+		} else {
+			parent = Arrays.copyOf(parent, newCapacity);
+			x = Arrays.copyOf(x, newCapacity);
+			y = Arrays.copyOf(y, newCapacity);
+			yOffset = Arrays.copyOf(yOffset, newCapacity);
+			angle = Arrays.copyOf(angle, newCapacity);
+			velocity = Arrays.copyOf(velocity, newCapacity);
+			acceleration = Arrays.copyOf(acceleration, newCapacity);
+			ax = Arrays.copyOf(ax, newCapacity);
+			ay = Arrays.copyOf(ay, newCapacity);
+			vx = Arrays.copyOf(vx, newCapacity);
+			vy = Arrays.copyOf(vy, newCapacity);
+			startScale = Arrays.copyOf(startScale, newCapacity);
+			scale = Arrays.copyOf(scale, newCapacity);
+			endScale = Arrays.copyOf(endScale, newCapacity);
+			rotation = Arrays.copyOf(rotation, newCapacity);
+			floor = Arrays.copyOf(floor, newCapacity);
+			ceiling = Arrays.copyOf(ceiling, newCapacity);
+			leftWall = Arrays.copyOf(leftWall, newCapacity);
+			rightWall = Arrays.copyOf(rightWall, newCapacity);
+			tick = Arrays.copyOf(tick, newCapacity);
+			duration = Arrays.copyOf(duration, newCapacity);
+			fadeDuration = Arrays.copyOf(fadeDuration, newCapacity);
+			startColor = Arrays.copyOf(startColor, newCapacity);
+			endColor = Arrays.copyOf(endColor, newCapacity);
+			flags = Arrays.copyOf(flags, newCapacity);
+			currentColor = Arrays.copyOf(currentColor, newCapacity);
+			currentScale = Arrays.copyOf(currentScale, newCapacity);
+		}
+		capacity = newCapacity;
+
+		vertices = new float[capacity * 4 * VERTEX_SIZE];
+		indices = new short[capacity * 6];
+		for (int i = 0; i < capacity; i ++) {
+			int n = i * 6;
+			int v = i * 4;
+			indices[n] = (short) v;
+			indices[n + 1] = (short) (v + 1);
+			indices[n + 2] = (short) (v + 2);
+			indices[n + 3] = (short) v;
+			indices[n + 4] = (short) (v + 2);
+			indices[n + 5] = (short) (v + 3);
+		}
+	}
+
+	/**
+	 * Pack a colour in the same order as {@link #glColor(ReadableColor)}
+	 */
+	private static int pack(ReadableColor c) {
+		return c.getAlpha() << 24 | c.getBlue() << 16 | c.getGreen() << 8 | c.getRed();
+	}
+
+	/**
+	 * Linear interpolation, clamped, as per {@link com.shavenpuppy.jglib.interpolators.LinearInterpolator}
+	 */
+	private static float lerp(float a, float b, float ratio) {
+		if (ratio <= 0.0f) {
+			return a;
+		} else if (ratio >= 1.0f) {
+			return b;
+		} else {
+			return a + (b - a) * ratio;
+		}
+	}
+
+	/**
+	 * Interpolate between two packed colours
+	 */
+	static int lerpColor(int a, int b, float ratio) {
+		int ret = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			ret |= ((int) lerp((float) (a >>> shift & 0xFF), (float) (b >>> shift & 0xFF), ratio) & 0xFF) << shift;
+		}
+		return ret;
+	}
+}
@@ -69,6 +69,13 @@ interface CollisionManager {
 	 */
 	boolean remove(Entity entity);
 
+	/**
+	 * Update an entity's position in this node after it has moved or changed size. Does nothing if it is still in
+	 * the same place; stores it if it isn't stored here at all.
+	 * @param entity
+	 */
+	void move(Entity entity);
+
 	/**
 	 * Populate a list with all the entities colliding with the specified entity. Only entities in this node, its children, and all parent nodes
 	 * are checked.
@@ -87,9 +94,38 @@ interface CollisionManager {
 	 */
 	List<Entity> checkCollisions(ReadableRectangle rect, List<Entity> dest);
 
+	/**
+	 * Find the active, collidable entities of the specified collision categories nearest to a point, measured from their
+	 * centres.
+	 * @param x
+	 * @param y
+	 * @param minRadius Entities at or closer than this distance are ignored
+	 * @param maxRadius Entities at or further than this distance are ignored
+	 * @param categories Bitmask of Entity.COLLIDE_ constants
+	 * @param filter If not null, only entities it accepts are returned
+	 * @param dest Receives the nearest entities, nearest first; its length is the maximum number of entities returned
+	 * @param distances Receives the distances to the entities in dest
+	 * @return the number of entities found
+	 */
+	int findNearest(float x, float y, float minRadius, float maxRadius, int categories, EntityFilter filter, Entity[] dest, float[] distances);
+
+	/**
+	 * Cast a ray along a line segment, reporting the active, collidable entities of the specified collision categories that
+	 * it passes through, nearest first.
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @param radius Radius of the ray; entities within this distance of the segment are touched. 0 for a thin ray.
+	 * @param step Distance a fat ray moves at a time; one which starts inside a rectangle is looked for in it at whole steps
+	 * @param categories Bitmask of Entity.COLLIDE_ constants
+	 * @param callback Receives the entities; it may stop the ray
+	 */
+	void raycast(float x0, float y0, float x1, float y1, float radius, float step, int categories, RaycastCallback callback);
+
 	/**
 	 * Check all the collisions in this node.
 	 */
 	void checkCollisions();
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.util.ArrayList;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * The tiles a building makes dangerous to gidrahs: those whose centres lie within a ring around the building. The tiles
+ * are kept as runs along rows, relative to the tile the centre of the ring is in, so that the ring can be added to the
+ * danger map a row at a time. Stamps are cached, as there are only ever a few different ranges and positions within a
+ * tile.
+ */
+public final class DangerStamp {
+
+	/** Cached stamps */
+	private static final ArrayList<DangerStamp> STAMPS = new ArrayList<DangerStamp>();
+
+	/** Position of the centre within its tile, in pixels */
+	private final float offsetX, offsetY;
+
+	/** Tiles are covered if their centres are within radius + 1 of the centre, and further than minRange */
+	private final float radius, minRange;
+
+	/** Runs of covered tiles, inclusive */
+	private final int[] runY, runX0, runX1;
+
+	/** Bounds of the runs, inclusive */
+	final int minX, minY, maxX, maxY;
+
+	/**
+	 * C'tor
+	 */
+	private DangerStamp(float offsetX, float offsetY, float radius, float minRange) {
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+		this.radius = radius;
+		this.minRange = minRange;
+
+		IntList ys = new IntList(), x0s = new IntList(), x1s = new IntList();
+		int reach = (int) ((radius + 1.0f) / MapRenderer.TILE_SIZE) + 1;
+		int left = Integer.MAX_VALUE, bottom = Integer.MAX_VALUE, right = Integer.MIN_VALUE, top = Integer.MIN_VALUE;
+		for (int y = -reach; y <= reach; y ++) {
+			float dy = offsetY - y * MapRenderer.TILE_SIZE - MapRenderer.TILE_SIZE * 0.5f;
+			int start = 0;
+			boolean inRun = false;
+			for (int x = -reach; x <= reach + 1; x ++) {
+				boolean covered = false;
+				if (x <= reach) {
+					float dx = offsetX - x * MapRenderer.TILE_SIZE - MapRenderer.TILE_SIZE * 0.5f;
+					double dist = Math.sqrt(dx * dx + dy * dy);
+					covered = dist <= radius + 1.0f && dist > minRange;
+				}
+				if (covered && !inRun) {
+					start = x;
+					inRun = true;
+				} else if (!covered && inRun) {
+					ys.add(y);
+					x0s.add(start);
+					x1s.add(x - 1);
+					left = Math.min(left, start);
+					right = Math.max(right, x - 1);
+					bottom = Math.min(bottom, y);
+					top = Math.max(top, y);
+					inRun = false;
+				}
+			}
+		}
+		runY = ys.toArray(null);
+		runX0 = x0s.toArray(null);
+		runX1 = x1s.toArray(null);
+		minX = left;
+		minY = bottom;
+		maxX = right;
+		maxY = top;
+	}
+
+	/**
+	 * Get the stamp for a ring of tiles
+	 * @param x Centre of the ring, in pixels
+	 * @param y
+	 * @param radius Tiles whose centres are within radius + 1 pixels are covered...
+	 * @param minRange ...unless they're this close or closer. Use a negative minRange to include the centre.
+	 * @return a DangerStamp, to be applied at the same x, y
+	 */
+	public static DangerStamp get(float x, float y, float radius, float minRange) {
+		float offsetX = x - tileOf(x) * MapRenderer.TILE_SIZE;
+		float offsetY = y - tileOf(y) * MapRenderer.TILE_SIZE;
+		for (int i = 0; i < STAMPS.size(); i ++) {
+			DangerStamp s = STAMPS.get(i);
+			if (s.offsetX == offsetX && s.offsetY == offsetY && s.radius == radius && s.minRange == minRange) {
+				return s;
+			}
+		}
+		DangerStamp s = new DangerStamp(offsetX, offsetY, radius, minRange);
+		STAMPS.add(s);
+		return s;
+	}
+
+	/**
+	 * @param coord A pixel coordinate
+	 * @return the tile coordinate the stamp is placed relative to
+	 */
+	static int tileOf(float coord) {
+		return (int) Math.floor(coord / MapRenderer.TILE_SIZE);
+	}
+
+	/**
+	 * @return true if the stamp covers no tiles at all
+	 */
+	boolean isEmpty() {
+		return runY.length == 0;
+	}
+
+	/**
+	 * Add to the values in a grid under the stamp
+	 * @param grid
+	 * @param tileX The tile the stamp is centred in
+	 * @param tileY
+	 * @param amount
+	 */
+	void apply(IntGrid grid, int tileX, int tileY, int amount) {
+		for (int i = 0; i < runY.length; i ++) {
+			grid.addRow(tileX + runX0[i], tileX + runX1[i], tileY + runY[i], amount);
+		}
+	}
+}
@@ -83,6 +83,23 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 	/** Node of the quadtree we're in */
 	private transient CollisionManager node;
 
+	/** Collision categories: used to skip testing pairs of entities that have no interest in each other */
+	public static final int COLLIDE_BUILDING = 1 << 0;
+	public static final int COLLIDE_GIDRAH = 1 << 1;
+	public static final int COLLIDE_BULLET = 1 << 2;
+	public static final int COLLIDE_UNIT = 1 << 3;
+	public static final int COLLIDE_SAUCER = 1 << 4;
+	public static final int COLLIDE_BOMB = 1 << 5;
+	public static final int COLLIDE_SMARTBOMB = 1 << 6;
+	public static final int COLLIDE_OTHER = 1 << 7;
+	public static final int COLLIDE_ALL = 0xFFFFFFFF;
+
+	/** Slot in the collision manager, plus one; 0 if we haven't got one */
+	transient int collisionSlot;
+
+	/** Slots in the game state's list of all entities and in its list of this kind of entity, plus one; 0 if not in one */
+	transient int listSlot, typedListSlot;
+
 	/** Location */
 	private float mapX, mapY, oldX, oldY, oldR;
 
@@ -199,12 +216,9 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 		}
 		WormGameState gameState = Worm.getGameState();
 		GameMap map = gameState.getMap();
-		ArrayList<Entity> entities = gameState.getEntities();
-		int n = entities.size();
 		// Create a list of solid entities we think are somewhere in the LOS
 		ENTITYCACHE.clear();
-		for (int i = 0; i < n; i ++) {
-			Entity e = entities.get(i);
+		for (Entity e : gameState.getEntities()) {
 			if (e != this && e.isActive() && e.isSolid()) {
 				double dist = Util.distanceFromLineToPoint(getX(), getY(), mapX, mapY, e.getX(), e.getY());
 				if (dist >= 0.0 && dist <= e.getRadius()) {
@@ -219,12 +233,9 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 			int x = BRESENHAM.getX() / MapRenderer.TILE_SIZE;
 			int y = BRESENHAM.getY() / MapRenderer.TILE_SIZE;
 			if (x != oldMapX || y != oldMapY) {
-				for (int z = 0; z < GameMap.LAYERS; z ++) {
-					Tile tile = map.getTile(x, y, z);
-					if (tile != null && !tile.isBulletThrough()) {
-						// Tile blocks LOS
-						return false;
-					}
+				if (map.blocksBullets(x, y)) {
+					// Tile blocks LOS
+					return false;
 				}
 				oldMapX = x;
 				oldMapY = y;
@@ -410,6 +421,21 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 	public void onCollisionWithBomb(Bomb bomb) {
 	}
 
+	/**
+	 * @return the collision category (one of the COLLIDE_ constants) of this entity
+	 */
+	public int getCollisionCategory() {
+		return COLLIDE_OTHER;
+	}
+
+	/**
+	 * @return the collision categories this entity reacts to in its onCollisionWith... methods. A pair of entities
+	 * is only tested for collision if at least one of them is interested in the other.
+	 */
+	public int getCollisionMask() {
+		return COLLIDE_ALL;
+	}
+
 	/**
 	 * Get radius. Only applicable if isRound() returns true.
 	 * @return radius
@@ -453,6 +479,52 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 		return COLLISIONMANAGER.checkCollisions(rect, dest);
 	}
 
+	/**
+	 * Find the entities of the specified collision categories nearest to a point
+	 * @param x
+	 * @param y
+	 * @param minRadius Entities at or closer than this distance are ignored
+	 * @param maxRadius Entities at or further than this distance are ignored
+	 * @param categories Bitmask of COLLIDE_ constants
+	 * @param filter If not null, only entities it accepts are returned; it is only asked about entities near enough to be
+	 * returned, so it's the place for checks that would otherwise crowd better candidates out of dest
+	 * @param dest Receives the entities, nearest first; its length is the maximum number of entities returned
+	 * @param distances Receives the distances to the entities; must be at least as long as dest
+	 * @return the number of entities found
+	 */
+	public static int getNearest(float x, float y, float minRadius, float maxRadius, int categories, EntityFilter filter, Entity[] dest, float[] distances) {
+		return COLLISIONMANAGER.findNearest(x, y, minRadius, maxRadius, categories, filter, dest, distances);
+	}
+
+	/**
+	 * Find the entities of the specified collision categories along a line segment, nearest first
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @param categories Bitmask of COLLIDE_ constants
+	 * @param callback Receives the entities; it may stop the ray
+	 */
+	public static void raycast(float x0, float y0, float x1, float y1, int categories, RaycastCallback callback) {
+		COLLISIONMANAGER.raycast(x0, y0, x1, y1, 0.0f, 1.0f, categories, callback);
+	}
+
+	/**
+	 * Sweep a circle along a line segment, finding the entities of the specified collision categories that it touches,
+	 * nearest first
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @param radius Radius of the circle
+	 * @param step Distance the circle moves at a time
+	 * @param categories Bitmask of COLLIDE_ constants
+	 * @param callback Receives the entities, with the distances at which the circle starts and stops touching them; it may stop the sweep
+	 */
+	public static void sweep(float x0, float y0, float x1, float y1, float radius, float step, int categories, RaycastCallback callback) {
+		COLLISIONMANAGER.raycast(x0, y0, x1, y1, radius, step, categories, callback);
+	}
+
 	/**
 	 * Are we touching a specific point?
 	 * @param x
@@ -577,7 +649,7 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 
 			if (node != null) {
 				if (canCollide() && isActive()) {
-					// If we've changed radius, remove and re-add to the quadtree
+					// If we've changed radius, update our cells in the quadtree
 					if (oldR != newR) {
 						oldR = newR;
 						addToCollisionManager();
@@ -797,9 +869,8 @@ public abstract class Entity implements Tickable, Serializable, ReadablePosition
 	 */
 	protected final void addToCollisionManager() {
 		if (node != null) {
-			if (!node.remove(this)) {
-				assert false : "Entity "+this+" was not found!";
-			}
+			node.move(this);
+			return;
 		}
 		node = COLLISIONMANAGER.add(this);
 		if (node == null) {
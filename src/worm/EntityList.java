@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A collection of entities which is cheap to remove things from. Each entity knows its slot in the list, so
+ * {@link #remove(Object)} just marks that slot as removed; the list is squeezed up in a single pass, keeping its order,
+ * when {@link #compact()} is called, which the game state does once a tick. So a tick in which a whole wave of gidrahs
+ * dies costs one pass over the list, and reading the list never costs a pass.
+ * <p>
+ * Removed entities are invisible straight away: {@link #size()}, iteration and {@link #contains(Object)} skip them.
+ * Until the next compact they still have their slots, so indexed readers go through {@link #slotCount()} and
+ * {@link #slot(int)}, skipping those that are {@link #isRemoved(int)}. Appending doesn't move anything, so entities
+ * added while iterating are simply iterated too.
+ * <p>
+ * An entity can be in one list of each kind at a time, and only once.
+ */
+public class EntityList<E extends Entity> extends AbstractCollection<E> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Kinds of list: which of an entity's slot fields the list uses */
+	public static final int ALL = 0, TYPED = 1;
+
+	private static final Object[] EMPTY = new Object[0];
+	private static final boolean[] NONE = new boolean[0];
+
+	/** Kind of list */
+	private final int kind;
+
+	/** The entities */
+	private transient Object[] data = EMPTY;
+
+	/** Tombstones: set for each slot whose entity has been removed since the last compact */
+	private transient boolean[] removed = NONE;
+
+	/** Number of slots in the list, including any removed */
+	private transient int slots;
+
+	/** Number of slots removed since the last compact */
+	private transient int pending;
+
+	/** Incremented whenever slots move */
+	private transient int modCount;
+
+	/**
+	 * C'tor
+	 * @param kind {@link #ALL} or {@link #TYPED}
+	 */
+	public EntityList(int kind) {
+		assert kind == ALL || kind == TYPED;
+		this.kind = kind;
+	}
+
+	/**
+	 * @return the entity's slot in this kind of list, plus one; 0 if it isn't in one
+	 */
+	private int getSlot(Entity entity) {
+		return kind == ALL ? entity.listSlot : entity.typedListSlot;
+	}
+
+	private void setSlot(Entity entity, int slot) {
+		if (kind == ALL) {
+			entity.listSlot = slot;
+		} else {
+			entity.typedListSlot = slot;
+		}
+	}
+
+	/**
+	 * @return the index of the entity's slot in this list, or -1 if it isn't in it or has been removed
+	 */
+	private int indexOf(Object o) {
+		if (!(o instanceof Entity)) {
+			return -1;
+		}
+		int index = getSlot((Entity) o) - 1;
+		if (index < 0 || index >= slots || data[index] != o || removed[index]) {
+			return -1;
+		}
+		return index;
+	}
+
+	/**
+	 * Squeeze out everything that's been removed
+	 */
+	public void compact() {
+		if (pending == 0) {
+			return;
+		}
+		int n = 0;
+		for (int i = 0; i < slots; i ++) {
+			Entity e = (Entity) data[i];
+			if (removed[i]) {
+				removed[i] = false;
+			} else {
+				setSlot(e, n + 1);
+				data[n ++] = e;
+			}
+		}
+		truncate(n);
+	}
+
+	/**
+	 * Squeeze out everything that's been removed, and any entity which is no longer active
+	 */
+	public void removeInactive() {
+		int n = 0;
+		for (int i = 0; i < slots; i ++) {
+			Entity e = (Entity) data[i];
+			if (removed[i]) {
+				removed[i] = false;
+			} else if (e.isActive()) {
+				setSlot(e, n + 1);
+				data[n ++] = e;
+			} else {
+				setSlot(e, 0);
+			}
+		}
+		truncate(n);
+	}
+
+	private void truncate(int n) {
+		pending = 0;
+		if (n < slots) {
+			Arrays.fill(data, n, slots, null);
+			slots = n;
+			modCount ++;
+		}
+	}
+
+	/**
+	 * @return the number of entities in the list, not counting any which have been removed since the last compact
+	 */
+	@Override
+	public int size() {
+		return slots - pending;
+	}
+
+	/**
+	 * @return the number of slots in the list, including any whose entities have been removed since the last compact
+	 */
+	public int slotCount() {
+		return slots;
+	}
+
+	/**
+	 * @param index
+	 * @return the entity in a slot, which may have been removed since the last compact
+	 */
+	@SuppressWarnings("unchecked")
+	public E slot(int index) {
+		if (index >= slots) {
+			throw new IndexOutOfBoundsException("Referenced "+index+", size="+slots);
+		}
+		return (E) data[index];
+	}
+
+	/**
+	 * @param index
+	 * @return true if the entity in a slot has been removed since the last compact
+	 */
+	public boolean isRemoved(int index) {
+		if (index >= slots) {
+			throw new IndexOutOfBoundsException("Referenced "+index+", size="+slots);
+		}
+		return removed[index];
+	}
+
+	@Override
+	public boolean add(E element) {
+		assert indexOf(element) == -1 : element+" is already in the list";
+		if (slots == data.length) {
+			int capacity = Math.max(16, slots * 2);
+			data = Arrays.copyOf(data, capacity);
+			removed = Arrays.copyOf(removed, capacity);
+		}
+		data[slots ++] = element;
+		setSlot(element, slots);
+		return true;
+	}
+
+	/**
+	 * Removes an entity. Its slot is only marked as removed; the entity is squeezed out of the list at the next
+	 * {@link #compact()}.
+	 * @param o The entity to remove
+	 * @return true if the entity was in the list, and hadn't already been removed
+	 */
+	@Override
+	public boolean remove(Object o) {
+		int index = indexOf(o);
+		if (index == -1) {
+			return false;
+		}
+		removed[index] = true;
+		pending ++;
+		setSlot((Entity) o, 0);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) != -1;
+	}
+
+	/**
+	 * @return an iterator which skips entities removed since the last compact
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			int next = skip(0), last = -1, expectedModCount = modCount;
+
+			private int skip(int index) {
+				while (index < slots && removed[index]) {
+					index ++;
+				}
+				return index;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next < slots;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public E next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (next >= slots) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = skip(next + 1);
+				return (E) data[last];
+			}
+
+			@Override
+			public void remove() {
+				if (last == -1 || removed[last]) {
+					throw new IllegalStateException();
+				}
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				EntityList.this.remove(data[last]);
+			}
+		};
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < slots; i ++) {
+			if (!removed[i]) {
+				setSlot((Entity) data[i], 0);
+			}
+		}
+		Arrays.fill(data, 0, slots, null);
+		Arrays.fill(removed, 0, slots, false);
+		slots = 0;
+		pending = 0;
+		modCount ++;
+	}
+
+	private void writeObject(ObjectOutputStream stream) throws IOException {
+		stream.defaultWriteObject();
+		stream.writeInt(size());
+		for (int i = 0; i < slots; i ++) {
+			if (!removed[i]) {
+				stream.writeObject(data[i]);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+		stream.defaultReadObject();
+		slots = stream.readInt();
+		data = new Object[Math.max(16, slots)];
+		removed = new boolean[data.length];
+		for (int i = 0; i < slots; i ++) {
+			Entity e = (Entity) stream.readObject();
+			data[i] = e;
+			setSlot(e, i + 1);
+		}
+	}
+}
@@ -31,27 +31,42 @@
  */
 package worm;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.ArrayList;
+
+import net.puppygames.applet.SaveFile;
 
 import org.lwjgl.util.Rectangle;
 
 
 /**
- * A game map. Note that this is not a Resource.
+ * A game map. Note that this is not a Resource. Cached maps are written as a {@link SaveFile.Record}; in a saved game
+ * the map is serialized, but its layers are still written the same way.
  * @author Cas
  */
-public class GameMap implements Serializable {
+public class GameMap implements Serializable, SaveFile.Record {
 
 	private static final long serialVersionUID = 1L;
 
 	/** Max layers */
 	public static final int LAYERS = 3;
 
+	/** Record format version: bump this whenever {@link #write(DataOutput)} changes */
+	private static final int RECORD_VERSION = 1;
+
+	/** Planes of {@link #tileBits}: one bit per tile, summarising all the layers at that tile */
+	private static final int PLANE_BLOCKS_BULLETS = 0;
+	private static final int PLANE_SOLID = 1;
+	private static final int PLANE_IMPASSABLE = 2;
+	/** The solid tiles of each layer, used to calculate visibility */
+	private static final int PLANE_LAYER_SOLID = 3;
+	private static final int PLANES = PLANE_LAYER_SOLID + LAYERS;
+
 	/** Fill tile index */
 	private final short fill;
 
@@ -79,9 +94,24 @@ public class GameMap implements Serializable {
 	/** Fade level */
 	private transient IntGrid fade;
 
+	/** Tile flags, packed into planes of rows of {@link #stride} longs; rebuilt from the map when loaded */
+	private transient long[] tileBits;
+
+	/** Longs per row of {@link #tileBits} */
+	private transient int stride;
+
 	/** Listener */
 	private transient MapListener listener;
 
+	/** Additional listeners */
+	private transient ArrayList<MapListener> listeners;
+
+	/** Whether anything affecting pathfinding has changed since {@link #takePathChanges(Rectangle)} was last called */
+	private transient boolean pathChanged;
+
+	/** Bounds of the changes affecting pathfinding, in tile coordinates (inclusive) */
+	private transient int pathChangedMinX, pathChangedMinY, pathChangedMaxX, pathChangedMaxY;
+
 	/**
 	 * C'tor
 	 */
@@ -95,6 +125,32 @@ public class GameMap implements Serializable {
 		fade = new IntGrid(width, height, 0);
 		cost = new IntGrid(width, height, 0);
 		difficulty = new IntGrid(width, height, 0);
+		createTileBits();
+	}
+
+	/**
+	 * Read c'tor: reads a map written by {@link #write(DataOutput)}
+	 * @param in
+	 * @throws IOException if the record is from a different version or is damaged
+	 */
+	public GameMap(DataInput in) throws IOException {
+		int version = in.readInt();
+		if (version != RECORD_VERSION) {
+			throw new IOException("Map record version " + version + " is not supported");
+		}
+		fill = in.readShort();
+		readLayers(in);
+		createTileBits();
+	}
+
+	/**
+	 * Write the map as a record
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(RECORD_VERSION);
+		out.writeShort(fill);
+		writeLayers(out);
 	}
 
 	/**
@@ -219,6 +275,7 @@ public class GameMap implements Serializable {
 	 */
 	public void setCost(int x, int y, int newValue) {
 		cost.setValue(x, y, newValue);
+		pathChanged(x, y);
 	}
 
 	/**
@@ -228,6 +285,7 @@ public class GameMap implements Serializable {
 	 */
 	public void setDifficulty(int x, int y, int newValue) {
 		difficulty.setValue(x, y, newValue);
+		pathChanged(x, y);
 	}
 
 	/**
@@ -237,6 +295,33 @@ public class GameMap implements Serializable {
 	 */
 	public void setDanger(int x, int y, int newValue) {
 		danger.setValue(x, y, newValue);
+		pathChanged(x, y);
+	}
+
+	/**
+	 * Add danger to all the tiles under a stamp, and note them as changed for pathfinding
+	 * @param stamp
+	 * @param x Centre of the stamp, in pixels, as given to {@link DangerStamp#get(float, float, float, float)}
+	 * @param y
+	 * @param amount
+	 * @param dirty Receives the bounds of the tiles changed, in tile coordinates
+	 * @return true if any tiles changed, in which case dirty is set
+	 */
+	public boolean addDanger(DangerStamp stamp, float x, float y, int amount, Rectangle dirty) {
+		if (amount == 0 || stamp.isEmpty()) {
+			return false;
+		}
+		int tileX = DangerStamp.tileOf(x), tileY = DangerStamp.tileOf(y);
+		int minX = Math.max(tileX + stamp.minX, 0), minY = Math.max(tileY + stamp.minY, 0);
+		int maxX = Math.min(tileX + stamp.maxX, getWidth() - 1), maxY = Math.min(tileY + stamp.maxY, getHeight() - 1);
+		if (minX > maxX || minY > maxY) {
+			return false;
+		}
+		stamp.apply(danger, tileX, tileY, amount);
+		pathChanged(minX, minY);
+		pathChanged(maxX, maxY);
+		dirty.setBounds(minX, minY, maxX - minX + 1, maxY - minY + 1);
+		return true;
 	}
 
 	/**
@@ -304,6 +389,7 @@ public class GameMap implements Serializable {
 
 		// Draw onto the map
 		map.setTile(x, y, z, newTile);
+		updateTileBits(x, y);
 		newTile.onDrawn(this, x, y);
 
 		// Calculate tile rules if the map changed on layer 0
@@ -323,17 +409,55 @@ public class GameMap implements Serializable {
 		calcVis(x, y - 1);
 		calcVis(x + 1, y - 1);
 
+		pathChanged(x, y);
+
 		if (listener != null) {
 			listener.onChanged(x, y);
 		}
+		if (listeners != null) {
+			for (int i = listeners.size(); -- i >= 0; ) {
+				listeners.get(i).onChanged(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Record that a tile which affects pathfinding has changed
+	 * @param x
+	 * @param y
+	 */
+	private void pathChanged(int x, int y) {
+		if (pathChanged) {
+			pathChangedMinX = Math.min(pathChangedMinX, x);
+			pathChangedMinY = Math.min(pathChangedMinY, y);
+			pathChangedMaxX = Math.max(pathChangedMaxX, x);
+			pathChangedMaxY = Math.max(pathChangedMaxY, y);
+		} else {
+			pathChanged = true;
+			pathChangedMinX = pathChangedMaxX = x;
+			pathChangedMinY = pathChangedMaxY = y;
+		}
+	}
+
+	/**
+	 * Retrieves and clears the bounds of all changes to tiles, cost, danger and difficulty since the last call.
+	 * @param dest Destination rectangle, in tile coordinates
+	 * @return true if anything changed, in which case dest contains the changed bounds
+	 */
+	public boolean takePathChanges(Rectangle dest) {
+		if (!pathChanged) {
+			return false;
+		}
+		pathChanged = false;
+		dest.setBounds(pathChangedMinX, pathChangedMinY, pathChangedMaxX - pathChangedMinX + 1, pathChangedMaxY - pathChangedMinY + 1);
+		return true;
 	}
 
 	private void calcVis(int x, int y) {
 		outer: for (int z = 0; z < LAYERS; z ++) {
 			for (int yy = y - 1; yy <= y; yy ++) {
 				for (int xx = x - 1; xx <= x; xx ++) {
-					Tile t = getTile(xx, yy, z);
-					if (t == null || !t.isSolid()) {
+					if (!getBit(PLANE_LAYER_SOLID + z, xx, yy)) {
 						continue outer;
 					}
 				}
@@ -345,6 +469,149 @@ public class GameMap implements Serializable {
 		setVisibility(x, y, 1);
 	}
 
+	/**
+	 * Allocate {@link #tileBits} and fill it in from the map
+	 */
+	private void createTileBits() {
+		stride = (getWidth() + 63) >> 6;
+		tileBits = new long[PLANES * getHeight() * stride];
+		for (int y = 0; y < getHeight(); y ++) {
+			for (int x = 0; x < getWidth(); x ++) {
+				updateTileBits(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Recalculate the flags of a tile from all of its layers
+	 * @param x
+	 * @param y
+	 */
+	private void updateTileBits(int x, int y) {
+		boolean blocksBullets = false, solid = false, impassable = false;
+		for (int z = 0; z < LAYERS; z ++) {
+			Tile t = map.getTile(x, y, z);
+			boolean layerSolid = t != null && t.isSolid();
+			setBit(PLANE_LAYER_SOLID + z, x, y, layerSolid);
+			if (t != null) {
+				blocksBullets |= !t.isBulletThrough();
+				solid |= layerSolid;
+				impassable |= layerSolid || t.isImpassable();
+			}
+		}
+		setBit(PLANE_BLOCKS_BULLETS, x, y, blocksBullets);
+		setBit(PLANE_SOLID, x, y, solid);
+		setBit(PLANE_IMPASSABLE, x, y, impassable);
+	}
+
+	private void setBit(int plane, int x, int y, boolean value) {
+		int index = (plane * getHeight() + y) * stride + (x >> 6);
+		if (value) {
+			tileBits[index] |= 1L << x;
+		} else {
+			tileBits[index] &= ~(1L << x);
+		}
+	}
+
+	/**
+	 * @return the bit for a tile in a plane of {@link #tileBits}; false if out of bounds
+	 */
+	private boolean getBit(int plane, int x, int y) {
+		if (!isInBounds(x, y)) {
+			return false;
+		}
+		return (tileBits[(plane * getHeight() + y) * stride + (x >> 6)] & 1L << x) != 0L;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return true if any layer at (x, y) stops bullets and line of sight; false if out of bounds
+	 */
+	public boolean blocksBullets(int x, int y) {
+		return getBit(PLANE_BLOCKS_BULLETS, x, y);
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return true if any layer at (x, y) is solid; false if out of bounds
+	 */
+	public boolean isSolid(int x, int y) {
+		return getBit(PLANE_SOLID, x, y);
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return true if any layer at (x, y) is solid or impassable; false if out of bounds
+	 */
+	public boolean isImpassable(int x, int y) {
+		return getBit(PLANE_IMPASSABLE, x, y);
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return true if (x, y) is on the map and nothing there is solid or impassable
+	 */
+	public boolean isWalkable(int x, int y) {
+		return isInBounds(x, y) && !getBit(PLANE_IMPASSABLE, x, y);
+	}
+
+	/**
+	 * Determines whether line of sight between two tiles is clear, by following the same Bresenham line as
+	 * {@link com.shavenpuppy.jglib.algorithms.Bresenham}. The starting tile isn't checked, nor is anything off the map.
+	 * Runs of tiles along a row are tested a word at a time.
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @return true if none of the tiles after the first, up to and including the last, blocks bullets
+	 */
+	public boolean isLineClear(int x0, int y0, int x1, int y1) {
+		int dx = x1 - x0, dy = y1 - y0;
+		int xInc = dx >= 0 ? 1 : -1, yInc = dy >= 0 ? 1 : -1;
+		dx = Math.abs(dx);
+		dy = Math.abs(dy);
+		int error = dx > 0 ? dx >> 1 : dy >> 1;
+		int steps = Math.max(dx, dy);
+		int width = getWidth(), height = getHeight();
+		int x = x0, y = y0;
+		int word = -1;
+		long mask = 0L;
+		for (int i = 1; i <= steps; i ++) {
+			if (dx > dy) {
+				error += dy;
+				if (error >= dx) {
+					error -= dx;
+					y += yInc;
+				}
+				x += xInc;
+			} else {
+				error += dx;
+				if (error >= dy) {
+					error -= dy;
+					x += xInc;
+				}
+				y += yInc;
+			}
+			if (x < 0 || y < 0 || x >= width || y >= height) {
+				continue;
+			}
+			int index = (PLANE_BLOCKS_BULLETS * height + y) * stride + (x >> 6);
+			if (index != word) {
+				if (word != -1 && (tileBits[word] & mask) != 0L) {
+					return false;
+				}
+				word = index;
+				mask = 0L;
+			}
+			mask |= 1L << x;
+		}
+		return word == -1 || (tileBits[word] & mask) == 0L;
+	}
+
 	/**
 	 * Checks to see if a coordinate is in bounds
 	 * @param x
@@ -431,44 +698,60 @@ public class GameMap implements Serializable {
 	}
 
 	/**
-	 * Override standard object writing so we can gzip the stream for MapStorage
+	 * Override standard object writing so we can write the layers as raw arrays. Compression is left to whatever
+	 * stream we're written to.
 	 * @param stream
 	 * @throws IOException
 	 */
 	private void writeObject(ObjectOutputStream stream) throws IOException {
 		stream.defaultWriteObject();
-		GZIPOutputStream gzos = new GZIPOutputStream(stream);
-		ObjectOutputStream oos = new ObjectOutputStream(gzos);
-		oos.writeObject(map);
-		oos.writeObject(visibility);
-		oos.writeObject(occupied);
-		oos.writeObject(danger);
-		oos.writeObject(attacking);
-		oos.writeObject(fade);
-		oos.writeObject(cost);
-		oos.writeObject(difficulty);
-		oos.flush();
-		gzos.finish();
-	}
-
-	/**
-	 * Override standard object reading to read the zipped MapStorage
+		writeLayers(stream);
+	}
+
+	/**
+	 * Override standard object reading to read the raw layers
 	 * @param stream
 	 * @throws IOException
 	 * @throws ClassNotFoundException
 	 */
 	private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
 		stream.defaultReadObject();
-		GZIPInputStream gzis = new GZIPInputStream(stream, 1024 * 1024);
-		ObjectInputStream ois = new ObjectInputStream(gzis);
-		map = (MapClip) ois.readObject();
-		visibility = (IntGrid) ois.readObject();
-		occupied = (IntGrid) ois.readObject();
-		danger = (IntGrid) ois.readObject();
-		attacking = (IntGrid) ois.readObject();
-		fade = (IntGrid) ois.readObject();
-		cost = (IntGrid) ois.readObject();
-		difficulty = (IntGrid) ois.readObject();
+		readLayers(stream);
+		createTileBits();
+	}
+
+	private void writeLayers(DataOutput out) throws IOException {
+		map.write(out);
+		visibility.write(out);
+		occupied.write(out);
+		danger.write(out);
+		attacking.write(out);
+		fade.write(out);
+		cost.write(out);
+		difficulty.write(out);
+	}
+
+	private void readLayers(DataInput in) throws IOException {
+		map = new MapClip(in);
+		visibility = new IntGrid(in);
+		occupied = new IntGrid(in);
+		danger = new IntGrid(in);
+		attacking = new IntGrid(in);
+		fade = new IntGrid(in);
+		cost = new IntGrid(in);
+		difficulty = new IntGrid(in);
+
+		// Check the layers fit together
+		int width = map.getWidth(), height = map.getHeight();
+		if (map.getLayers() != LAYERS || !fits(visibility, width + 1, height + 1) || !fits(occupied, width + 2, height + 2)
+				|| !fits(danger, width, height) || !fits(attacking, width + 2, height + 2) || !fits(fade, width, height)
+				|| !fits(cost, width, height) || !fits(difficulty, width, height)) {
+			throw new IOException("Map layers don't match a " + width + "x" + height + " map");
+		}
+	}
+
+	private static boolean fits(IntGrid grid, int width, int height) {
+		return grid.getWidth() == width && grid.getHeight() == height;
 	}
 
 	/**
@@ -480,11 +763,8 @@ public class GameMap implements Serializable {
 	public boolean isClearPX(Rectangle bounds) {
 		for (int y = bounds.getY() / MapRenderer.TILE_SIZE; y <= (bounds.getHeight() - 1) / MapRenderer.TILE_SIZE; y ++) {
 			for (int x = bounds.getX() / MapRenderer.TILE_SIZE; x <= (bounds.getWidth() - 1) / MapRenderer.TILE_SIZE; x ++) {
-				for (int z = 0; z < GameMap.LAYERS; z ++) {
-					Tile tile = map.getTile(x, y, z);
-					if (tile != null && (tile.isSolid() || tile.isImpassable())) {
-						return false;
-					}
+				if (isImpassable(x, y)) {
+					return false;
 				}
 			}
 		}
@@ -495,4 +775,25 @@ public class GameMap implements Serializable {
 		this.listener = listener;
 	}
 
+	/**
+	 * Add a listener which is told about tile changes in addition to the one set by {@link #setListener(MapListener)}
+	 * @param listener
+	 */
+	public void addListener(MapListener listener) {
+		if (listeners == null) {
+			listeners = new ArrayList<MapListener>(4);
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener added with {@link #addListener(MapListener)}
+	 * @param listener
+	 */
+	public void removeListener(MapListener listener) {
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+
 }
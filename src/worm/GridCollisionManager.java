@@ -33,64 +33,145 @@ package worm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.lwjgl.util.ReadableRectangle;
 import org.lwjgl.util.Rectangle;
 
 /**
- * Grid-based collision manager.
+ * Grid-based collision manager. Each stored entity is given a slot; cells hold arrays of slots, and each slot
+ * remembers the span of cells it occupies, so that moving an entity only touches the cells it enters or leaves.
  */
 class GridCollisionManager implements CollisionManager {
 
 	private static final int INITIAL_ENTITIES = 512;
+	private static final int INITIAL_CELL_SIZE = 4;
 	private static final int BORDER_TILES = 2;
 
-	private static class Cell {
-		final ArrayList<Entity> contents = new ArrayList<Entity>(4);
-		boolean inUsed;
-	}
-
-	private static class Pair {
-
-		Entity a, b;
+	/** Slack for rounding errors in the length of a ray, when stepping along it a pixel at a time */
+	private static final float ROUNDING = 1.0E-3f;
+
+	/**
+	 * Open-addressed hash set of pairs of entity slots, packed into longs. 0 is never a valid key.
+	 */
+	private static class PairSet {
+
+		private long[] keys = new long[INITIAL_ENTITIES * 2];
+		private int size;
+
+		/**
+		 * Add a pair
+		 * @return true if the pair was not already in the set
+		 */
+		boolean add(int a, int b) {
+			long key = a < b ? (long) a << 32 | b : (long) b << 32 | a;
+			if (size * 2 >= keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			long k;
+			while ((k = keys[i]) != 0L) {
+				if (k == key) {
+					return false;
+				}
+				i = i + 1 & mask;
+			}
+			keys[i] = key;
+			size ++;
+			return true;
+		}
 
-		Pair(Entity a, Entity b) {
-	        this.a = a;
-	        this.b = b;
-        }
+		void clear() {
+			if (size > 0) {
+				Arrays.fill(keys, 0L);
+				size = 0;
+			}
+		}
 
-		@Override
-		public int hashCode() {
-		    return a.hashCode() + b.hashCode();
+		private static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int) (key ^ key >>> 32);
 		}
 
-		@Override
-		public boolean equals(Object obj) {
-			Pair p = (Pair) obj;
-			return ((p.a == a && p.b == b) || (p.a == b && p.b == a));
+		private void grow() {
+			long[] old = keys;
+			keys = new long[old.length * 2];
+			int mask = keys.length - 1;
+			for (long key : old) {
+				if (key != 0L) {
+					int i = hash(key) & mask;
+					while (keys[i] != 0L) {
+						i = i + 1 & mask;
+					}
+					keys[i] = key;
+				}
+			}
 		}
 	}
 
-	/** Temp pair */
-	private final Pair tempPair = new Pair(null, null);
-
 	/** Temp rects */
 	private final Rectangle temp = new Rectangle(), cells = new Rectangle();
 
-	/** Collision pairs */
-	private final List<Pair> collisions = new ArrayList<Pair>();
+	/** Collision pairs already processed this frame */
+	private final PairSet collisions = new PairSet();
+
+	/** Entities by slot; and their collision categories and masks, cached when they are stored or moved */
+	private Entity[] slotEntity = new Entity[INITIAL_ENTITIES];
+	private int[] slotCategory = new int[INITIAL_ENTITIES], slotMask = new int[INITIAL_ENTITIES];
+
+	/** Span of cells occupied by each slot */
+	private int[] slotX = new int[INITIAL_ENTITIES], slotY = new int[INITIAL_ENTITIES], slotW = new int[INITIAL_ENTITIES], slotH = new int[INITIAL_ENTITIES];
+
+	/** Whether each slot is currently stored in the grid */
+	private boolean[] slotStored = new boolean[INITIAL_ENTITIES];
+
+	/** Stamps used to weed out duplicates when gathering collisions with a single entity or rect */
+	private int[] slotStamp = new int[INITIAL_ENTITIES];
+	private int stamp;
+
+	/** Stamps used to weed out duplicates during a {@link #raycast}; kept apart from the others as the callback may well make queries of its own */
+	private int[] slotRayStamp = new int[INITIAL_ENTITIES];
+	private int rayStamp;
+
+	/** Entities found by a {@link #raycast} but not yet reported, nearest first, from firstHit to numHits */
+	private Entity[] hitEntity = new Entity[16];
+	private float[] hitNear = new float[16], hitFar = new float[16];
+	private int firstHit, numHits;
+	private boolean casting;
+
+	/** Where the ray enters and leaves an entity, calculated by {@link #intersect} */
+	private float rayNear, rayFar;
+
+	/** Distance the ray moves at a time */
+	private float rayStep;
+
+	/** Free slots */
+	private int[] freeSlots = new int[INITIAL_ENTITIES];
+	private int numFreeSlots, numSlots;
+
+	/** Slots of entities removed during {@link #checkCollisions()}; these aren't recycled until it's finished */
+	private int[] deferredSlots = new int[16];
+	private int numDeferredSlots;
+
+	/** Whether we're in {@link #checkCollisions()} */
+	private boolean checking;
 
 	/** Cell size */
 	private final int cellSize;
 
-	/** The sparse grid */
-	private Cell[] grid;
+	/** The sparse grid: slots in each cell, allocated on demand */
+	private final int[][] cellSlots;
+
+	/** Number of slots in each cell */
+	private final int[] cellCount;
+
+	/** Whether each cell is in the used list */
+	private final boolean[] cellInUsed;
 
 	/** All cells which actually contain at least 1 entity */
-	private ArrayList<Cell> used = new ArrayList<Cell>(INITIAL_ENTITIES), used0 = new ArrayList<Cell>(INITIAL_ENTITIES);
+	private int[] used = new int[INITIAL_ENTITIES], used0 = new int[INITIAL_ENTITIES];
+	private int numUsed;
 
 	/** Origin (grid) */
 	private int ox, oy;
@@ -98,9 +179,6 @@ class GridCollisionManager implements CollisionManager {
 	/** Size (grid) */
 	private int w, h;
 
-	/** Map of Entities to ReadableRectangles; this maps Entities to the cells in which they have been placed */
-	private Map<Entity, ReadableRectangle> entityMap = new HashMap<Entity, ReadableRectangle>(INITIAL_ENTITIES);
-
 	private static int fastFloor(float x) {
 		int i = (int) x;
 		return x >= 0.0f ? i : i == x ? i : i - 1;
@@ -112,14 +190,108 @@ class GridCollisionManager implements CollisionManager {
 		oy = -BORDER_TILES;
 		w = WormGameState.ABS_MAX_SIZE + BORDER_TILES * 2;
 		h = WormGameState.ABS_MAX_SIZE + BORDER_TILES * 2;
-		grid = new Cell[w * h];
+		cellSlots = new int[w * h][];
+		cellCount = new int[w * h];
+		cellInUsed = new boolean[w * h];
 	}
 
 	@Override
 	public void clear() {
-		Arrays.fill(grid, null);
-		used.clear();
-		entityMap.clear();
+		for (int i = 0; i < numUsed; i ++) {
+			cellCount[used[i]] = 0;
+			cellInUsed[used[i]] = false;
+		}
+		numUsed = 0;
+		Arrays.fill(slotEntity, null);
+		Arrays.fill(slotStored, false);
+		numSlots = 0;
+		numFreeSlots = 0;
+		numDeferredSlots = 0;
+	}
+
+	/**
+	 * Allocate a slot for the entity if it hasn't already got one, and cache its collision category and mask
+	 * @return the slot
+	 */
+	private int allocSlot(Entity entity) {
+		int slot = entity.collisionSlot - 1;
+		if (slot < 0 || slot >= numSlots || slotEntity[slot] != entity) {
+			if (numFreeSlots > 0) {
+				slot = freeSlots[-- numFreeSlots];
+			} else {
+				slot = numSlots ++;
+				if (slot == slotEntity.length) {
+					int newSize = slot * 2;
+					slotEntity = Arrays.copyOf(slotEntity, newSize);
+					slotCategory = Arrays.copyOf(slotCategory, newSize);
+					slotMask = Arrays.copyOf(slotMask, newSize);
+					slotX = Arrays.copyOf(slotX, newSize);
+					slotY = Arrays.copyOf(slotY, newSize);
+					slotW = Arrays.copyOf(slotW, newSize);
+					slotH = Arrays.copyOf(slotH, newSize);
+					slotStored = Arrays.copyOf(slotStored, newSize);
+					slotStamp = Arrays.copyOf(slotStamp, newSize);
+					slotRayStamp = Arrays.copyOf(slotRayStamp, newSize);
+				}
+			}
+			slotEntity[slot] = entity;
+			slotStored[slot] = false;
+			slotStamp[slot] = 0;
+			slotRayStamp[slot] = 0;
+			entity.collisionSlot = slot + 1;
+		}
+		slotCategory[slot] = entity.getCollisionCategory();
+		slotMask[slot] = entity.getCollisionMask();
+		return slot;
+	}
+
+	/**
+	 * @return the entity's slot, or -1 if it isn't stored here
+	 */
+	private int getStoredSlot(Entity entity) {
+		int slot = entity.collisionSlot - 1;
+		if (slot < 0 || slot >= numSlots || slotEntity[slot] != entity || !slotStored[slot]) {
+			return -1;
+		}
+		return slot;
+	}
+
+	private void freeSlot(int slot) {
+		if (checking) {
+			// A slot recycled mid-pass could be mistaken for one whose pairs were already processed
+			if (numDeferredSlots == deferredSlots.length) {
+				deferredSlots = Arrays.copyOf(deferredSlots, numDeferredSlots * 2);
+			}
+			deferredSlots[numDeferredSlots ++] = slot;
+			return;
+		}
+		slotEntity[slot].collisionSlot = 0;
+		slotEntity[slot] = null;
+		if (numFreeSlots == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, numFreeSlots * 2);
+		}
+		freeSlots[numFreeSlots ++] = slot;
+	}
+
+	/**
+	 * Begins a new de-duplication pass for {@link #checkCollisions(Entity, List)} and {@link #checkCollisions(ReadableRectangle, List)}
+	 */
+	private void nextStamp() {
+		if (++ stamp == 0) {
+			Arrays.fill(slotStamp, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * @return true if the slot has not already been seen in this pass
+	 */
+	private boolean markSeen(int slot) {
+		if (slotStamp[slot] == stamp) {
+			return false;
+		}
+		slotStamp[slot] = stamp;
+		return true;
 	}
 
 	private void calcBounds(Entity entity) {
@@ -133,34 +305,64 @@ class GridCollisionManager implements CollisionManager {
 		}
 	}
 
+	private void addToCell(int cell, int slot) {
+		int[] contents = cellSlots[cell];
+		int n = cellCount[cell];
+		if (contents == null) {
+			contents = new int[INITIAL_CELL_SIZE];
+			cellSlots[cell] = contents;
+		} else if (n == contents.length) {
+			contents = Arrays.copyOf(contents, n * 2);
+			cellSlots[cell] = contents;
+		}
+		contents[n] = slot;
+		cellCount[cell] = n + 1;
+		if (!cellInUsed[cell]) {
+			cellInUsed[cell] = true;
+			if (numUsed == used.length) {
+				used = Arrays.copyOf(used, numUsed * 2);
+			}
+			used[numUsed ++] = cell;
+		}
+	}
+
+	private void removeFromCell(int cell, int slot) {
+		int[] contents = cellSlots[cell];
+		int n = cellCount[cell];
+		for (int i = 0; i < n; i ++) {
+			if (contents[i] == slot) {
+				// Shuffle down rather than swap with the last, so that a scan in progress misses at most one entity
+				System.arraycopy(contents, i + 1, contents, i, n - i - 1);
+				cellCount[cell] = n - 1;
+				return;
+			}
+		}
+		assert false : "Entity "+slotEntity[slot]+" not found where it was expected!";
+	}
+
 	@Override
 	public void store(Entity entity) {
-		// See which cells we should be in and maybe resize the grid
-		calcBounds(entity);
-		Rectangle r = calcCells(temp, new Rectangle());
-
-		if (entityMap.put(entity, r) != null) {
-			assert false : "Entity "+entity+" is already in the entityMap!";
+		if (getStoredSlot(entity) != -1) {
+			assert false : "Entity "+entity+" is already stored!";
+			return;
 		}
 
-		// Add this entity to each cell
-		int cell = r.getX() + r.getY() * w;
-		for (int y = r.getHeight(); -- y >= 0; ) {
-			for (int x = r.getWidth(); -- x >= 0; ) {
-				Cell c = grid[cell];
-				if (c == null) {
-					c = new Cell();
-					grid[cell] = c;
-				}
-				c.contents.add(entity);
-				if (!c.inUsed) {
-					c.inUsed = true;
-					used.add(c);
-				}
+		// See which cells we should be in
+		int slot = allocSlot(entity);
+		calcBounds(entity);
+		calcCells(temp, cells);
+		int x0 = cells.getX(), y0 = cells.getY(), cw = cells.getWidth(), ch = cells.getHeight();
+		slotX[slot] = x0;
+		slotY[slot] = y0;
+		slotW[slot] = cw;
+		slotH[slot] = ch;
+		slotStored[slot] = true;
 
-				cell ++;
+		// Add this entity to each cell
+		for (int y = y0; y < y0 + ch; y ++) {
+			for (int x = x0; x < x0 + cw; x ++) {
+				addToCell(x + y * w, slot);
 			}
-			cell += w - r.getWidth();
 		}
 	}
 
@@ -183,32 +385,65 @@ class GridCollisionManager implements CollisionManager {
 	}
 
 	@Override
-	public boolean remove(Entity entity) {
+	public void move(Entity entity) {
+		int slot = getStoredSlot(entity);
+		if (slot == -1) {
+			store(entity);
+			return;
+		}
+		slotCategory[slot] = entity.getCollisionCategory();
+		slotMask[slot] = entity.getCollisionMask();
 
-		// Shortcut: look in entity map first
-		ReadableRectangle cells = entityMap.remove(entity);
-		if (cells != null) {
-			int cell = cells.getX() + cells.getY() * w;
-			for (int yy = cells.getHeight(); -- yy >= 0; ) {
-				for (int xx = cells.getWidth(); -- xx >= 0; ) {
-					Cell test = grid[cell];
-					if (test == null) {
-						assert false : "Entity "+entity+" was supposed to be at "+cells+" but isn't at "+(cell % w)+","+(cell / w);
-					}
-					if (!test.contents.remove(entity)) {
-						assert false : "Entity "+entity+" not found where it was expected!";
-					}
-					cell ++;
+		calcBounds(entity);
+		calcCells(temp, cells);
+		int nx0 = cells.getX(), ny0 = cells.getY(), nx1 = nx0 + cells.getWidth(), ny1 = ny0 + cells.getHeight();
+		int ox0 = slotX[slot], oy0 = slotY[slot], ox1 = ox0 + slotW[slot], oy1 = oy0 + slotH[slot];
+		if (nx0 == ox0 && ny0 == oy0 && nx1 == ox1 && ny1 == oy1) {
+			// Still in the same cells
+			return;
+		}
+
+		// Leave the cells we're no longer in
+		for (int y = oy0; y < oy1; y ++) {
+			for (int x = ox0; x < ox1; x ++) {
+				if (x < nx0 || x >= nx1 || y < ny0 || y >= ny1) {
+					removeFromCell(x + y * w, slot);
 				}
+			}
+		}
 
-				cell += w - cells.getWidth();
+		// And enter the new ones
+		for (int y = ny0; y < ny1; y ++) {
+			for (int x = nx0; x < nx1; x ++) {
+				if (x < ox0 || x >= ox1 || y < oy0 || y >= oy1) {
+					addToCell(x + y * w, slot);
+				}
 			}
-			return true;
+		}
 
-		} else {
+		slotX[slot] = nx0;
+		slotY[slot] = ny0;
+		slotW[slot] = nx1 - nx0;
+		slotH[slot] = ny1 - ny0;
+	}
+
+	@Override
+	public boolean remove(Entity entity) {
+		int slot = getStoredSlot(entity);
+		if (slot == -1) {
 			assert false : "Entity "+entity+" not found!";
 			return false;
 		}
+
+		int x0 = slotX[slot], y0 = slotY[slot];
+		for (int y = y0 + slotH[slot]; -- y >= y0; ) {
+			for (int x = x0 + slotW[slot]; -- x >= x0; ) {
+				removeFromCell(x + y * w, slot);
+			}
+		}
+		slotStored[slot] = false;
+		freeSlot(slot);
+		return true;
 	}
 
 	@Override
@@ -226,19 +461,17 @@ class GridCollisionManager implements CollisionManager {
 
 		calcBounds(entity);
 		calcCells(temp, cells);
+		nextStamp();
 
 		int cell = cells.getX() + cells.getY() * w;
 		for (int y = cells.getHeight(); -- y >= 0; ) {
 			for (int x = cells.getWidth(); -- x >= 0; ) {
-				Cell c = grid[cell];
-				if (c != null) {
-					List<Entity> contents = c.contents;
-					final int n = contents.size();
-					for (int i = n; --i >= 0; ) {
-						Entity test = contents.get(i);
-						if (entity != test && test.isActive() && test.canCollide() && test.isTouching(entity) && !dest.contains(test)) {
-							dest.add(test);
-						}
+				int[] contents = cellSlots[cell];
+				for (int i = cellCount[cell]; --i >= 0; ) {
+					int slot = contents[i];
+					Entity test = slotEntity[slot];
+					if (entity != test && test.isActive() && test.canCollide() && test.isTouching(entity) && markSeen(slot)) {
+						dest.add(test);
 					}
 				}
 				cell ++;
@@ -246,8 +479,6 @@ class GridCollisionManager implements CollisionManager {
 			cell += w - cells.getWidth();
 		}
 
-		collisions.clear();
-
 		return dest;
 	}
 
@@ -260,19 +491,17 @@ class GridCollisionManager implements CollisionManager {
 		dest.clear();
 
 		calcCells(rect, cells);
+		nextStamp();
 
 		int cell = cells.getX() + cells.getY() * w;
 		for (int y = cells.getHeight(); -- y >= 0; ) {
 			for (int x = cells.getWidth(); --x >= 0; ) {
-				Cell c = grid[cell];
-				if (c != null) {
-					List<Entity> contents = c.contents;
-					final int n = contents.size();
-					for (int i = n; --i >= 0; ) {
-						Entity entity = contents.get(i);
-						if (entity.isActive() && entity.canCollide() && entity.isTouching(rect) && !dest.contains(entity)) {
-							dest.add(entity);
-						}
+				int[] contents = cellSlots[cell];
+				for (int i = cellCount[cell]; --i >= 0; ) {
+					int slot = contents[i];
+					Entity entity = slotEntity[slot];
+					if (entity.isActive() && entity.canCollide() && entity.isTouching(rect) && markSeen(slot)) {
+						dest.add(entity);
 					}
 				}
 				cell ++;
@@ -280,37 +509,324 @@ class GridCollisionManager implements CollisionManager {
 			cell += w - cells.getWidth();
 		}
 
-		collisions.clear();
-
 		return dest;
 	}
 
+	@Override
+	public int findNearest(float x, float y, float minRadius, float maxRadius, int categories, EntityFilter filter, Entity[] dest, float[] distances) {
+		int r = (int) maxRadius + 1;
+		temp.setBounds((int) x - r, (int) y - r, r * 2, r * 2);
+		calcCells(temp, cells);
+		nextStamp();
+
+		int found = 0, max = dest.length;
+		float worst = maxRadius;
+		int cell = cells.getX() + cells.getY() * w;
+		for (int yy = cells.getHeight(); -- yy >= 0; ) {
+			for (int xx = cells.getWidth(); -- xx >= 0; ) {
+				int[] contents = cellSlots[cell];
+				for (int i = cellCount[cell]; --i >= 0; ) {
+					int slot = contents[i];
+					if ((slotCategory[slot] & categories) == 0 || !markSeen(slot)) {
+						continue;
+					}
+					Entity entity = slotEntity[slot];
+					if (!entity.isActive() || !entity.canCollide()) {
+						continue;
+					}
+					float dx = entity.getX() - x, dy = entity.getY() - y;
+					float dist = (float) Math.sqrt(dx * dx + dy * dy);
+					if (dist <= minRadius || dist >= worst) {
+						continue;
+					}
+					if (filter != null && !filter.accept(entity)) {
+						continue;
+					}
+
+					// Insertion sort into the bounded result
+					int j = found < max ? found ++ : max - 1;
+					while (j > 0 && distances[j - 1] > dist) {
+						dest[j] = dest[j - 1];
+						distances[j] = distances[j - 1];
+						j --;
+					}
+					dest[j] = entity;
+					distances[j] = dist;
+					if (found == max) {
+						worst = distances[max - 1];
+					}
+				}
+				cell ++;
+			}
+			cell += w - cells.getWidth();
+		}
+
+		return found;
+	}
+
+	@Override
+	public void raycast(float x0, float y0, float x1, float y1, float radius, float step, int categories, RaycastCallback callback) {
+		assert !casting : "Raycasts can't be nested";
+		assert step > 0.0f : step;
+		float dx = x1 - x0, dy = y1 - y0;
+		float length = (float) Math.sqrt(dx * dx + dy * dy);
+		if (length == 0.0f) {
+			return;
+		}
+		float ux = dx / length, uy = dy / length;
+		rayStep = step;
+		if (++ rayStamp == 0) {
+			Arrays.fill(slotRayStamp, 0);
+			rayStamp = 1;
+		}
+
+		// Amanatides & Woo: walk the cells along the ray, tracking the distance along it to the next vertical and horizontal
+		// cell boundaries
+		int cx = fastFloor(x0 / cellSize), cy = fastFloor(y0 / cellSize);
+		int stepX = ux > 0.0f ? 1 : -1, stepY = uy > 0.0f ? 1 : -1;
+		float tDeltaX = ux == 0.0f ? Float.MAX_VALUE : cellSize / Math.abs(ux);
+		float tDeltaY = uy == 0.0f ? Float.MAX_VALUE : cellSize / Math.abs(uy);
+		float tMaxX = ux == 0.0f ? Float.MAX_VALUE : ((ux > 0.0f ? cx + 1 : cx) * cellSize - x0) / ux;
+		float tMaxY = uy == 0.0f ? Float.MAX_VALUE : ((uy > 0.0f ? cy + 1 : cy) * cellSize - y0) / uy;
+
+		casting = true;
+		firstHit = 0;
+		numHits = 0;
+		float enter = 0.0f;
+		try {
+			while (true) {
+				float exit = Math.min(Math.min(tMaxX, tMaxY), length);
+				if (radius == 0.0f) {
+					int gx = cx - ox, gy = cy - oy;
+					if (gx >= 0 && gy >= 0 && gx < w && gy < h) {
+						gatherHits(gx + gy * w, x0, y0, ux, uy, length, radius, categories);
+					}
+				} else {
+					// A fat ray also touches whatever is within radius of the stretch of ray inside this cell
+					float ax = x0 + ux * enter, ay = y0 + uy * enter, bx = x0 + ux * exit, by = y0 + uy * exit;
+					int minX = Math.max(fastFloor((Math.min(ax, bx) - radius) / cellSize) - ox, 0);
+					int minY = Math.max(fastFloor((Math.min(ay, by) - radius) / cellSize) - oy, 0);
+					int maxX = Math.min(fastFloor((Math.max(ax, bx) + radius) / cellSize) - ox, w - 1);
+					int maxY = Math.min(fastFloor((Math.max(ay, by) + radius) / cellSize) - oy, h - 1);
+					for (int gy = minY; gy <= maxY; gy ++) {
+						for (int gx = minX; gx <= maxX; gx ++) {
+							gatherHits(gx + gy * w, x0, y0, ux, uy, length, radius, categories);
+						}
+					}
+				}
+
+				// Everything the ray enters before it leaves this cell can be reported now: an entity it enters earlier
+				// must overlap a cell we've already visited, so we'll have found it already
+				while (firstHit < numHits && hitNear[firstHit] <= exit) {
+					if (callback.onHit(hitEntity[firstHit], hitNear[firstHit], hitFar[firstHit])) {
+						return;
+					}
+					firstHit ++;
+				}
+
+				if (exit >= length) {
+					break;
+				}
+				enter = exit;
+				if (tMaxX < tMaxY) {
+					cx += stepX;
+					tMaxX += tDeltaX;
+				} else {
+					cy += stepY;
+					tMaxY += tDeltaY;
+				}
+			}
+		} finally {
+			Arrays.fill(hitEntity, 0, numHits, null);
+			firstHit = 0;
+			numHits = 0;
+			casting = false;
+		}
+	}
+
+	/**
+	 * Find the entities in a cell which the ray passes through, and file them in order of distance
+	 */
+	private void gatherHits(int cell, float x0, float y0, float ux, float uy, float length, float radius, int categories) {
+		int[] contents = cellSlots[cell];
+		for (int i = cellCount[cell]; -- i >= 0; ) {
+			int slot = contents[i];
+			if ((slotCategory[slot] & categories) == 0 || slotRayStamp[slot] == rayStamp) {
+				continue;
+			}
+			slotRayStamp[slot] = rayStamp;
+			Entity entity = slotEntity[slot];
+			if (!entity.isActive() || !entity.canCollide() || !intersect(entity, x0, y0, ux, uy, length, radius)) {
+				continue;
+			}
+
+			// Insertion sort into the unreported hits
+			if (numHits == hitEntity.length) {
+				int newSize = numHits * 2;
+				hitEntity = Arrays.copyOf(hitEntity, newSize);
+				hitNear = Arrays.copyOf(hitNear, newSize);
+				hitFar = Arrays.copyOf(hitFar, newSize);
+			}
+			int j = numHits ++;
+			while (j > firstHit && hitNear[j - 1] > rayNear) {
+				hitEntity[j] = hitEntity[j - 1];
+				hitNear[j] = hitNear[j - 1];
+				hitFar[j] = hitFar[j - 1];
+				j --;
+			}
+			hitEntity[j] = entity;
+			hitNear[j] = rayNear;
+			hitFar[j] = rayFar;
+		}
+	}
+
+	/**
+	 * Intersect a ray with an entity's circle or bounding rectangle, grown by the radius of the ray. A rectangle grown by
+	 * a radius has round corners, as in {@link Entity#isTouching(float, float, float)}, so a fat ray passing just off a
+	 * corner doesn't touch it.
+	 * @return true if the ray touches the entity, in which case {@link #rayNear} and {@link #rayFar} are set
+	 */
+	private boolean intersect(Entity entity, float x0, float y0, float ux, float uy, float length, float radius) {
+		float near, far;
+		if (entity.isRound()) {
+			float r = entity.getRadius();
+			if (r == 0.0f || !intersectCircle(entity.getX(), entity.getY(), r + radius, x0, y0, ux, uy)) {
+				return false;
+			}
+			near = rayNear;
+			far = rayFar;
+		} else {
+			entity.getBounds(temp);
+			if (temp.isEmpty()) {
+				return false;
+			}
+			float rx = temp.getX(), ry = temp.getY(), rw = temp.getWidth(), rh = temp.getHeight();
+			float left = rx - radius, right = rx + rw + radius;
+			float bottom = ry - radius, top = ry + rh + radius;
+			near = -Float.MAX_VALUE;
+			far = Float.MAX_VALUE;
+			if (ux == 0.0f) {
+				if (x0 < left || x0 > right) {
+					return false;
+				}
+			} else {
+				float t0 = (left - x0) / ux, t1 = (right - x0) / ux;
+				near = Math.max(near, Math.min(t0, t1));
+				far = Math.min(far, Math.max(t0, t1));
+			}
+			if (uy == 0.0f) {
+				if (y0 < bottom || y0 > top) {
+					return false;
+				}
+			} else {
+				float t0 = (bottom - y0) / uy, t1 = (top - y0) / uy;
+				near = Math.max(near, Math.min(t0, t1));
+				far = Math.min(far, Math.max(t0, t1));
+			}
+			if (near > far) {
+				return false;
+			}
+
+			// Where the ray goes in or out through a corner of the grown rectangle, it really crosses the circle about the
+			// corner; if it misses that circle it misses the rectangle altogether
+			if (radius > 0.0f) {
+				float px = x0 + ux * near, py = y0 + uy * near;
+				if ((px < rx || px > rx + rw) && (py < ry || py > ry + rh)) {
+					if (!intersectCircle(px < rx ? rx : rx + rw, py < ry ? ry : ry + rh, radius, x0, y0, ux, uy)) {
+						return false;
+					}
+					near = rayNear;
+				}
+				px = x0 + ux * far;
+				py = y0 + uy * far;
+				if ((px < rx || px > rx + rw) && (py < ry || py > ry + rh)) {
+					if (!intersectCircle(px < rx ? rx : rx + rw, py < ry ? ry : ry + rh, radius, x0, y0, ux, uy)) {
+						return false;
+					}
+					far = rayFar;
+				}
+
+				// Starting inside, a bullet only touches the rectangle where GeomUtil.circleRectCollision says it does, which
+				// isn't everywhere inside the rectangle: look for that a step at a time, from where the bullet first moves to,
+				// as it used to
+				if (near <= 0.0f) {
+					float end = Math.min(far, length);
+					int steps = 1;
+					float t = rayStep;
+					while (!GeomUtil.circleRectCollision(x0 + ux * t, y0 + uy * t, radius, rx, ry, rw, rh)) {
+						t = ++ steps * rayStep;
+						if (t > end + ROUNDING) {
+							return false;
+						}
+					}
+					near = Math.min(t, end);
+				}
+			}
+		}
+		if (far < 0.0f || near > length || near > far) {
+			return false;
+		}
+		rayNear = Math.max(near, 0.0f);
+		rayFar = Math.min(far, length);
+		return true;
+	}
+
+	/**
+	 * Intersect a ray with a circle
+	 * @return true if the line of the ray crosses the circle, in which case {@link #rayNear} and {@link #rayFar} are set to
+	 * the distances along it where it goes in and out
+	 */
+	private boolean intersectCircle(float cx, float cy, float r, float x0, float y0, float ux, float uy) {
+		float fx = x0 - cx, fy = y0 - cy;
+		float b = fx * ux + fy * uy;
+		float disc = b * b - (fx * fx + fy * fy - r * r);
+		if (disc < 0.0f) {
+			return false;
+		}
+		float s = (float) Math.sqrt(disc);
+		rayNear = -b - s;
+		rayFar = -b + s;
+		return true;
+	}
+
 	@Override
 	public void checkCollisions() {
-		// For each cell with something in it...
-		for (int i = used.size(); --i >= 0; ) {
-			Cell cell = used.get(i);
-			if (cell.contents.size() > 0) {
-				used0.add(cell);
+		checking = true;
+
+		// For each cell with something in it... Collision callbacks may store entities in new cells, growing used, so
+		// work from a copy of it which is only ever grown here
+		if (used0.length < numUsed) {
+			used0 = new int[used.length];
+		}
+		int[] cells = used0;
+		int numCells = 0;
+		for (int i = numUsed; --i >= 0; ) {
+			if (cellCount[used[i]] > 0) {
+				cells[numCells ++] = used[i];
 			}
 		}
 
-		for (int cell = used0.size(); --cell >= 0; ) {
-			// Process all combinations within that cell
-			List<Entity> contents = used0.get(cell).contents;
-			for (int i = 0; i < contents.size(); i ++) {
-				Entity src = contents.get(i);
+		for (int c = numCells; --c >= 0; ) {
+			// Process all combinations within that cell. Collision callbacks may add or remove entities, so
+			// re-read the contents and count every time.
+			int cell = cells[c];
+			for (int i = 0; i < cellCount[cell]; i ++) {
+				int srcSlot = cellSlots[cell][i];
+				Entity src = slotEntity[srcSlot];
 				if (src.isActive() && src.canCollide()) {
-					for (int j = i + 1; j < contents.size(); j ++) {
-						Entity dest = contents.get(j);
+					int srcCategory = slotCategory[srcSlot], srcMask = slotMask[srcSlot];
+					for (int j = i + 1; j < cellCount[cell]; j ++) {
+						int destSlot = cellSlots[cell][j];
+						if ((srcMask & slotCategory[destSlot] | slotMask[destSlot] & srcCategory) == 0) {
+							// Neither entity is interested in the other
+							continue;
+						}
+						Entity dest = slotEntity[destSlot];
 						if (dest.isActive() && src.isActive() && src.canCollide() && dest.canCollide() && src.isTouching(dest)) {
 							// Inform both entities of the collision, in no particular order, unless already done
-							tempPair.a = src;
-							tempPair.b = dest;
-							if (collisions.contains(tempPair)) {
+							if (!collisions.add(srcSlot + 1, destSlot + 1)) {
 								continue;
 							}
-							collisions.add(new Pair(src, dest));
 							src.onCollision(dest);
 							dest.onCollision(src);
 						}
@@ -320,22 +836,29 @@ class GridCollisionManager implements CollisionManager {
 		}
 
 		// Compact used list
-		used0.clear();
-		for (int i = used.size(); --i >= 0; ) {
-			Cell cell = used.get(i);
-			if (cell.contents.size() > 0) {
-				used0.add(cell);
+		int n = 0;
+		for (int i = 0; i < numUsed; i ++) {
+			int cell = used[i];
+			if (cellCount[cell] > 0) {
+				used[n ++] = cell;
 			} else {
-				cell.inUsed = false;
+				cellInUsed[cell] = false;
 			}
 		}
-		ArrayList<Cell> temp = used;
-		used = used0;
-		used0 = temp;
-		used0.clear();
+		numUsed = n;
 
 		// Clear away collisions now they're all processed
 		collisions.clear();
+
+		// Recycle the slots of entities that were removed and not put back
+		checking = false;
+		for (int i = 0; i < numDeferredSlots; i ++) {
+			int slot = deferredSlots[i];
+			if (slotEntity[slot] != null && !slotStored[slot]) {
+				freeSlot(slot);
+			}
+		}
+		numDeferredSlots = 0;
 	}
 
 
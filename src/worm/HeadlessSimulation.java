@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import net.puppygames.applet.Game;
+
+import worm.buildings.BuildingFeature;
+import worm.screens.GameScreen;
+
+import com.shavenpuppy.jglib.Resources;
+import com.shavenpuppy.jglib.util.Util;
+
+/**
+ * Ticks a {@link WormGameState} as fast as it will go, with no display, input or sound, and reports the tick rate.
+ * All gameplay randomness comes from a seeded random number generator so runs are repeatable. The game screen is
+ * ticked too, without input or rendering, as its effects and sprite animations drive gameplay events. Buildings can be
+ * placed by a script, one order per line:
+ * <pre>
+ * # tick building tileX tileY
+ * 120 blaster.building.spec 20 14
+ * </pre>
+ */
+public final class HeadlessSimulation {
+
+	/** Report progress this often */
+	private static final int REPORT_INTERVAL = 3600;
+
+	/** Default run length: 10 minutes of game time */
+	private static final int DEFAULT_TICKS = 60 * 60 * 10;
+
+	private static class BuildOrder {
+		final int tick;
+		final String building;
+		final int tileX, tileY;
+
+		BuildOrder(int tick, String building, int tileX, int tileY) {
+			this.tick = tick;
+			this.building = building;
+			this.tileX = tileX;
+			this.tileY = tileY;
+		}
+	}
+
+	/** The game state we're ticking */
+	private final WormGameState gameState;
+
+	/** Build orders, in tick order */
+	private final ArrayList<BuildOrder> orders = new ArrayList<BuildOrder>();
+
+	/**
+	 * C'tor
+	 * @param gameState The game state to tick; its level should already have begun
+	 */
+	public HeadlessSimulation(WormGameState gameState) {
+		this.gameState = gameState;
+	}
+
+	/**
+	 * Add a build order
+	 * @param tick The tick, counting from the start of the run, at which to build
+	 * @param building Name of the BuildingFeature resource
+	 * @param tileX
+	 * @param tileY
+	 */
+	public void addBuildOrder(int tick, String building, int tileX, int tileY) {
+		orders.add(new BuildOrder(tick, building, tileX, tileY));
+		Collections.sort(orders, new Comparator<BuildOrder>() {
+			@Override
+			public int compare(BuildOrder o1, BuildOrder o2) {
+				return o1.tick - o2.tick;
+			}
+		});
+	}
+
+	/**
+	 * Read build orders from a script
+	 * @param reader
+	 * @throws IOException
+	 */
+	public void loadScript(Reader reader) throws IOException {
+		BufferedReader br = new BufferedReader(reader);
+		String line;
+		int lineNumber = 0;
+		while ((line = br.readLine()) != null) {
+			lineNumber ++;
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			StringTokenizer st = new StringTokenizer(line);
+			if (st.countTokens() != 4) {
+				throw new IOException("Line " + lineNumber + ": expected tick, building, tileX, tileY but got: " + line);
+			}
+			try {
+				int tick = Integer.parseInt(st.nextToken());
+				String building = st.nextToken();
+				int tileX = Integer.parseInt(st.nextToken());
+				int tileY = Integer.parseInt(st.nextToken());
+				addBuildOrder(tick, building, tileX, tileY);
+			} catch (NumberFormatException e) {
+				throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Run the simulation
+	 * @param ticks Number of ticks to run for
+	 * @return the average number of ticks per second
+	 */
+	public float run(int ticks) {
+		int nextOrder = 0;
+		long start = System.nanoTime();
+		long lastReport = start;
+		for (int tick = 0; tick < ticks; tick ++) {
+			while (nextOrder < orders.size() && orders.get(nextOrder).tick <= tick) {
+				build(orders.get(nextOrder ++));
+			}
+
+			gameState.tick();
+			GameScreen.getInstance().tick();
+
+			if ((tick + 1) % REPORT_INTERVAL == 0) {
+				long now = System.nanoTime();
+				System.out.println("Tick " + (tick + 1) + ": " + format(REPORT_INTERVAL, now - lastReport) + " ticks/s, " + gameState.getEntities().size() + " entities, " + gameState.getGidrahs().size() + " gidrahs, " + gameState.getBuildings().size() + " buildings, $" + gameState.getMoney());
+				lastReport = now;
+			}
+
+			if (!gameState.isAlive()) {
+				System.out.println("Base destroyed at tick " + (tick + 1));
+				ticks = tick + 1;
+				break;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println("Ran " + ticks + " ticks in " + elapsed / 1000000L + "ms: " + format(ticks, elapsed) + " ticks/s");
+		return elapsed == 0L ? 0.0f : ticks * 1.0E9f / elapsed;
+	}
+
+	private static String format(int ticks, long nanos) {
+		return nanos == 0L ? "-" : String.valueOf(Math.round(ticks * 1.0E9 / nanos));
+	}
+
+	private void build(BuildOrder order) {
+		BuildingFeature feature = Resources.get(order.building);
+		if (feature == null) {
+			System.err.println("Tick " + order.tick + ": no such building " + order.building);
+			return;
+		}
+		if (gameState.buildAt(feature, order.tileX * MapRenderer.TILE_SIZE, order.tileY * MapRenderer.TILE_SIZE) == null) {
+			System.err.println("Tick " + order.tick + ": couldn't build " + order.building + " at " + order.tileX + "," + order.tileY);
+		}
+	}
+
+	/**
+	 * Usage: HeadlessSimulation [-resources file] [-level n] [-seed n] [-ticks n] [-script file]
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String resources = "resources.dat";
+		String script = null;
+		int level = 0;
+		long seed = 0L;
+		int ticks = DEFAULT_TICKS;
+		for (int i = 0; i < args.length - 1; i += 2) {
+			if ("-resources".equals(args[i])) {
+				resources = args[i + 1];
+			} else if ("-level".equals(args[i])) {
+				level = Integer.parseInt(args[i + 1]);
+			} else if ("-seed".equals(args[i])) {
+				seed = Long.parseLong(args[i + 1]);
+			} else if ("-ticks".equals(args[i])) {
+				ticks = Integer.parseInt(args[i + 1]);
+			} else if ("-script".equals(args[i])) {
+				script = args[i + 1];
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		Util.setRandom(new Random(seed));
+
+		InputStream is = new BufferedInputStream(new FileInputStream(resources));
+		try {
+			Game.initHeadless(is);
+		} finally {
+			is.close();
+		}
+
+		// Start the level, skipping the story and research screens
+		WormGameState gameState = Worm.newHeadlessGame(WormGameState.GAME_MODE_CAMPAIGN);
+		gameState.doInit(level);
+		gameState.beginLevel2();
+
+		HeadlessSimulation simulation = new HeadlessSimulation(gameState);
+		if (script != null) {
+			Reader reader = new FileReader(script);
+			try {
+				simulation.loadScript(reader);
+			} finally {
+				reader.close();
+			}
+		}
+		System.out.println("Level " + level + ", seed " + seed + ", " + ticks + " ticks");
+		simulation.run(ticks);
+		System.exit(0);
+	}
+}
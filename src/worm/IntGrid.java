@@ -31,7 +31,11 @@
  */
 package worm;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -41,6 +45,9 @@ public class IntGrid implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/** Largest width and height we'll read */
+	private static final int MAX_SIZE = 4096;
+
 	private final int width, height, fill;
 	private final int[] value;
 
@@ -58,6 +65,34 @@ public class IntGrid implements Serializable {
 		Arrays.fill(value, fill);
 	}
 
+	/**
+	 * Read c'tor: reads a grid written by {@link #write(DataOutput)}
+	 */
+	IntGrid(DataInput in) throws IOException {
+		width = in.readInt();
+		height = in.readInt();
+		fill = in.readInt();
+		if (width < 0 || height < 0 || width > MAX_SIZE || height > MAX_SIZE) {
+			throw new IOException("Bad grid size " + width + "x" + height);
+		}
+		byte[] buf = new byte[width * height * 4];
+		in.readFully(buf);
+		value = new int[width * height];
+		ByteBuffer.wrap(buf).asIntBuffer().get(value);
+	}
+
+	/**
+	 * Write the grid as a raw array
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(fill);
+		ByteBuffer buf = ByteBuffer.allocate(value.length * 4);
+		buf.asIntBuffer().put(value);
+		out.write(buf.array());
+	}
+
 	public void clear() {
 		Arrays.fill(value, fill);
 	}
@@ -95,6 +130,23 @@ public class IntGrid implements Serializable {
 		value[idx] = newValue;
 	}
 
+	/**
+	 * Add to a run of values along a row. Anything out of bounds is ignored.
+	 * @param x0 Start of the run
+	 * @param x1 End of the run (inclusive)
+	 * @param y
+	 * @param delta
+	 */
+	public void addRow(int x0, int x1, int y, int delta) {
+		if (y < 0 || y >= height) {
+			return;
+		}
+		int start = Math.max(x0, 0) + y * width, end = Math.min(x1, width - 1) + y * width;
+		for (int i = start; i <= end; i ++) {
+			value[i] += delta;
+		}
+	}
+
 	/**
 	 * @return the width
 	 */
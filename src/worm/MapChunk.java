@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.util.Arrays;
+
+import net.puppygames.applet.TickableObject;
+
+import org.lwjgl.util.ReadableColor;
+
+import com.shavenpuppy.jglib.opengl.GLBaseTexture;
+import com.shavenpuppy.jglib.opengl.GLRenderable;
+import com.shavenpuppy.jglib.resources.MappedColor;
+import com.shavenpuppy.jglib.sprites.AlphaOp;
+import com.shavenpuppy.jglib.sprites.SpriteImage;
+import com.shavenpuppy.jglib.sprites.Style;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * A square chunk of static floor tiles, baked into a single lump of geometry so that the floor doesn't need a sprite
+ * per tile. The chunk is rebuilt only when the {@link MapRenderer} tells it that one of its tiles has changed.
+ * Animated floor tiles, and everything on the other layers, are left to the {@link MapRenderer}'s sprites.
+ */
+class MapChunk extends TickableObject {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Size of a chunk, in tiles */
+	static final int SIZE = 16;
+
+	/** Floats per vertex: x, y, u, v, color */
+	private static final int VERTEX_SIZE = 5;
+
+	/** Map */
+	private final GameMap map;
+
+	/** Position of the chunk's bottom left tile on the map */
+	private final int mapX, mapY;
+
+	/** Vertex data */
+	private final float[] vertices = new float[SIZE * SIZE * 4 * VERTEX_SIZE];
+
+	/** Corner colors and alpha op for each quad, so the colours can be redone if the screen alpha changes */
+	private final ReadableColor[] colors = new ReadableColor[SIZE * SIZE * 4];
+	private final AlphaOp[] alphaOps = new AlphaOp[SIZE * SIZE];
+
+	/** Number of quads */
+	private int numQuads;
+
+	/** Quads are grouped by style and texture; each group gets its own indices and state */
+	private int numGroups;
+	private final int[] quadGroup = new int[SIZE * SIZE];
+	private final int[] groupSize = new int[SIZE * SIZE];
+	private final Style[] groupStyle = new Style[SIZE * SIZE];
+	private final GLBaseTexture[] groupTexture = new GLBaseTexture[SIZE * SIZE];
+	private final short[][] groupIndices = new short[SIZE * SIZE][];
+	private final GLRenderable[] groupSetup = new GLRenderable[SIZE * SIZE];
+	private final GLRenderable[] groupReset = new GLRenderable[SIZE * SIZE];
+
+	/** Screen alpha the colours were calculated for */
+	private int colorAlpha = -1;
+
+	/** Whether the chunk needs rebuilding */
+	private boolean dirty = true;
+
+	/** Location on screen */
+	private int screenX, screenY;
+
+	private final GLRenderable translate = new GLRenderable() {
+		@Override
+		public void render() {
+			glPushMatrix();
+			glTranslatef(screenX, screenY, 0.0f);
+		}
+	};
+
+	private final GLRenderable untranslate = new GLRenderable() {
+		@Override
+		public void render() {
+			glPopMatrix();
+		}
+	};
+
+	/**
+	 * C'tor
+	 * @param map
+	 * @param mapX
+	 * @param mapY
+	 */
+	MapChunk(GameMap map, int mapX, int mapY) {
+		this.map = map;
+		this.mapX = mapX;
+		this.mapY = mapY;
+	}
+
+	/**
+	 * Is a floor tile drawn by a chunk, or does it need a sprite?
+	 * @param tile The tile, or null
+	 * @return true if the tile is baked into its chunk
+	 */
+	static boolean isBaked(Tile tile) {
+		return tile != null && tile.getImage() != null && tile.getSpriteLayer() == 0;
+	}
+
+	/**
+	 * Mark the chunk as needing a rebuild
+	 */
+	void setDirty() {
+		dirty = true;
+	}
+
+	/**
+	 * Sets the location of the chunk's bottom left corner on screen
+	 * @param screenX
+	 * @param screenY
+	 */
+	void setLocation(int screenX, int screenY) {
+		this.screenX = screenX;
+		this.screenY = screenY;
+	}
+
+	/**
+	 * Rebuild the chunk, if it's dirty
+	 * @param force Rebuild anyway
+	 */
+	void update(boolean force) {
+		if (!dirty && !force) {
+			return;
+		}
+		dirty = false;
+		numQuads = 0;
+		numGroups = 0;
+		colorAlpha = -1;
+		Arrays.fill(groupStyle, null);
+		Arrays.fill(groupTexture, null);
+		Arrays.fill(groupSize, 0);
+
+		int w = Math.min(SIZE, map.getWidth() - mapX);
+		int h = Math.min(SIZE, map.getHeight() - mapY);
+		// Top row first, like the Y sorted sprites would be
+		for (int y = h; -- y >= 0; ) {
+			for (int x = 0; x < w; x ++) {
+				Tile tile = map.getTile(mapX + x, mapY + y, 0);
+				if (isBaked(tile)) {
+					addQuad(tile, x, y);
+				}
+			}
+		}
+
+		// Now the indices for each group
+		for (int i = 0; i < numGroups; i ++) {
+			groupIndices[i] = new short[groupSize[i] * 6];
+			groupSize[i] = 0;
+		}
+		for (int i = 0; i < numQuads; i ++) {
+			int group = quadGroup[i];
+			short[] indices = groupIndices[group];
+			int n = groupSize[group] ++ * 6;
+			int v = i * 4;
+			indices[n] = (short) v;
+			indices[n + 1] = (short) (v + 1);
+			indices[n + 2] = (short) (v + 2);
+			indices[n + 3] = (short) v;
+			indices[n + 4] = (short) (v + 2);
+			indices[n + 5] = (short) (v + 3);
+		}
+	}
+
+	private void addQuad(Tile tile, int x, int y) {
+		SpriteImage image = tile.getImage();
+		Style style = image.getStyle();
+		GLBaseTexture texture = image.getTexture();
+		int group = 0;
+		while (group < numGroups && (groupStyle[group] != style || groupTexture[group] != texture)) {
+			group ++;
+		}
+		if (group == numGroups) {
+			numGroups ++;
+			groupStyle[group] = style;
+			groupTexture[group] = texture;
+			groupSetup[group] = new GroupState(style, texture, false);
+			groupReset[group] = new GroupState(style, texture, true);
+		}
+		quadGroup[numQuads] = group;
+		groupSize[group] ++;
+
+		// Vertices, in the same order as a sprite's
+		float x0 = x * MapRenderer.TILE_SIZE - image.getHotspotX();
+		float y0 = y * MapRenderer.TILE_SIZE - image.getHotspotY();
+		float x1 = x0 + image.getWidth();
+		float y1 = y0 + image.getHeight();
+		int i = numQuads * 4 * VERTEX_SIZE;
+		i = putVertex(i, x0, y0, image.getTx0(), image.getTy1());
+		i = putVertex(i, x1, y0, image.getTx1(), image.getTy1());
+		i = putVertex(i, x1, y1, image.getTx1(), image.getTy0());
+		putVertex(i, x0, y1, image.getTx0(), image.getTy0());
+
+		// Colours
+		MappedColor color = MapRenderer.getColor(tile);
+		int c = numQuads * 4;
+		colors[c] = MapRenderer.getFloorColor(map, color, mapX + x, mapY + y);
+		colors[c + 1] = MapRenderer.getFloorColor(map, color, mapX + x + 1, mapY + y);
+		colors[c + 2] = MapRenderer.getFloorColor(map, color, mapX + x + 1, mapY + y + 1);
+		colors[c + 3] = MapRenderer.getFloorColor(map, color, mapX + x, mapY + y + 1);
+		alphaOps[numQuads] = style.getAlphaOp();
+
+		numQuads ++;
+	}
+
+	private int putVertex(int i, float x, float y, float u, float v) {
+		vertices[i ++] = x;
+		vertices[i ++] = y;
+		vertices[i ++] = u;
+		vertices[i ++] = v;
+		return i + 1;
+	}
+
+	@Override
+	protected void render() {
+		if (numQuads == 0) {
+			return;
+		}
+
+		int alpha = (int) (getScreen().getAlpha() * 255.0f);
+		if (alpha != colorAlpha) {
+			colorAlpha = alpha;
+			for (int i = 0; i < numQuads; i ++) {
+				for (int j = 0; j < 4; j ++) {
+					vertices[(i * 4 + j) * VERTEX_SIZE + 4] = alphaOps[i].op(colors[i * 4 + j], alpha);
+				}
+			}
+		}
+
+		// The vertices must come first, so that the indices start at 0
+		glVertices(vertices, numQuads * 4);
+		glRender(translate);
+		for (int i = 0; i < numGroups; i ++) {
+			glRender(groupSetup[i]);
+			glRender(GL_TRIANGLES, groupIndices[i]);
+			glRender(groupReset[i]);
+		}
+		glRender(untranslate);
+	}
+
+	@Override
+	protected void doRemove() {
+		Arrays.fill(colors, null);
+		Arrays.fill(groupStyle, null);
+		Arrays.fill(groupTexture, null);
+		Arrays.fill(groupIndices, null);
+		Arrays.fill(groupSetup, null);
+		Arrays.fill(groupReset, null);
+	}
+
+	/**
+	 * Sets up or resets the GL state for a group of quads
+	 */
+	private static class GroupState implements GLRenderable {
+
+		private final Style style;
+		private final GLBaseTexture texture;
+		private final boolean reset;
+
+		GroupState(Style style, GLBaseTexture texture, boolean reset) {
+			this.style = style;
+			this.texture = texture;
+			this.reset = reset;
+		}
+
+		@Override
+		public void render() {
+			if (reset) {
+				style.resetState();
+			} else {
+				style.setupState();
+				if (texture != null) {
+					texture.render();
+				}
+			}
+		}
+	}
+}
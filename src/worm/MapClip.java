@@ -31,7 +31,11 @@
  */
 package worm;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -42,6 +46,9 @@ public class MapClip implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/** Largest width, height and number of layers we'll read */
+	private static final int MAX_SIZE = 4096, MAX_LAYERS = 16;
+
 	/** Size */
 	private final int width, height, layers;
 
@@ -77,6 +84,42 @@ public class MapClip implements Serializable {
 		}
 	}
 
+	/**
+	 * Read c'tor: reads a clip written by {@link #write(DataOutput)}
+	 * @param in
+	 */
+	MapClip(DataInput in) throws IOException {
+		width = in.readInt();
+		height = in.readInt();
+		layers = in.readInt();
+		if (width < 0 || height < 0 || layers < 0 || width > MAX_SIZE || height > MAX_SIZE || layers > MAX_LAYERS) {
+			throw new IOException("Bad map clip size " + width + "x" + height + "x" + layers);
+		}
+		tile = new short[layers][];
+		byte[] buf = new byte[width * height * 2];
+		for (int i = 0; i < layers; i ++) {
+			in.readFully(buf);
+			tile[i] = new short[width * height];
+			ByteBuffer.wrap(buf).asShortBuffer().get(tile[i]);
+		}
+	}
+
+	/**
+	 * Write the clip's layers as raw arrays
+	 * @param out
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(layers);
+		ByteBuffer buf = ByteBuffer.allocate(width * height * 2);
+		for (int i = 0; i < layers; i ++) {
+			buf.clear();
+			buf.asShortBuffer().put(tile[i]);
+			out.write(buf.array());
+		}
+	}
+
 	/**
 	 * Gets the tile at the specified x, y, and z
 	 * @param x
@@ -82,6 +82,9 @@ public class MapRenderer implements MapListener {
 	/** Layers */
 	private static final int FLOOR_LAYER = 0;
 
+	/** Floor chunks can't be Y sorted with the sprites on the floor layer, so they go underneath it */
+	private static final int CHUNK_LAYER = FLOOR_LAYER - 1;
+
 	private static final int FLOOR_FADE = 4;
 
 	/** Temporary color */
@@ -117,6 +120,15 @@ public class MapRenderer implements MapListener {
 	/** Debug */
 	private boolean debug;
 
+	/** Baked floor chunks, created as they come into view */
+	private MapChunk[] chunks;
+
+	/** Size of the map in chunks */
+	private int chunksAcross, chunksDown;
+
+	/** Range of chunks that was visible last frame */
+	private int chunkX0, chunkY0, chunkX1 = -1, chunkY1 = -1;
+
 	/** A RenderedTile contains all the information needed to render a tile. */
 	private class RenderedTile implements TileInfo.TileDisplay {
 		private Sprite[] tileSprite;
@@ -160,7 +172,9 @@ public class MapRenderer implements MapListener {
 				if (displayed[i] != null) {
 					MappedColor color = getColor(displayed[i]);
 					Sprite ts = tileSprite[i];
-					if (i == 0 || displayed[i] != null && displayed[i].isAttenuated()) {
+					if (ts == null) {
+						// Drawn by its chunk
+					} else if (i == 0 || displayed[i] != null && displayed[i].isAttenuated()) {
 						if (color.getColorName() != null && color.getColorName().intern() == LayersFeature.SHADOW_COLOR_NAME) {
 							ts.setColor(0, new AttenuatedColor(color, map.getFFade(mapx, mapy), FLOOR_FADE, ratio00, 0, true));
 							ts.setColor(1, new AttenuatedColor(color, map.getFFade(mapx + 1, mapy), FLOOR_FADE, ratio10, 0, true));
@@ -215,10 +229,6 @@ public class MapRenderer implements MapListener {
 			if (tile != null) {
 				if (tileSprite == null) {
 					tileSprite = new Sprite[tile.length];
-					for (int i = 0; i < tileSprite.length; i ++) {
-						tileSprite[i] = screen.allocateSprite(screen);
-						tileSprite[i].setLayer(FLOOR_LAYER + i);
-					}
 				}
 				if (decalSprite == null) {
 					decalSprite = new Sprite[tile.length][];
@@ -230,9 +240,17 @@ public class MapRenderer implements MapListener {
 				}
 
 				for (int i = 0; i < tileSprite.length; i ++) {
-					if (tile[i] == null) {
-						tileSprite[i].setVisible(false);
+					if (tile[i] == null || i == FLOOR_LAYER && MapChunk.isBaked(tile[i])) {
+						// Nothing to draw, or the floor's drawn by its chunk
+						if (tileSprite[i] != null) {
+							tileSprite[i].deallocate();
+							tileSprite[i] = null;
+						}
 					} else {
+						if (tileSprite[i] == null) {
+							tileSprite[i] = screen.allocateSprite(screen);
+							tileSprite[i].setLayer(FLOOR_LAYER + i);
+						}
 						tile[i].toSprite(tileSprite[i]);
 
 						if (!visible) {
@@ -721,6 +739,14 @@ public class MapRenderer implements MapListener {
 
 		// Reset the display
 		reset();
+
+		if (map != null) {
+			chunksAcross = (map.getWidth() + MapChunk.SIZE - 1) / MapChunk.SIZE;
+			chunksDown = (map.getHeight() + MapChunk.SIZE - 1) / MapChunk.SIZE;
+			chunks = new MapChunk[chunksAcross * chunksDown];
+		} else {
+			chunks = null;
+		}
 	}
 
 	/**
@@ -731,6 +757,16 @@ public class MapRenderer implements MapListener {
 			entry.getValue().remove();
 		}
 		visibleMap.clear();
+		if (chunks != null) {
+			for (int i = 0; i < chunks.length; i ++) {
+				if (chunks[i] != null) {
+					chunks[i].remove();
+					chunks[i] = null;
+				}
+			}
+		}
+		chunkX1 = -1;
+		chunkY1 = -1;
 	}
 
 	/**
@@ -762,14 +798,6 @@ public class MapRenderer implements MapListener {
 		int ox = x % MapRenderer.TILE_SIZE - originX;
 		int oy = y % MapRenderer.TILE_SIZE - originY;
 
-		// Read in the block of map tiles
-		int count = 0;
-		for (int yy = my; yy < my + tileHeight; yy ++) {
-			for (int xx = mx; xx < mx + tileWidth; xx ++) {
-				map.toTileInfo(xx, yy, tileInfo[count ++]);
-			}
-		}
-
 		// Remove all those tiles that are no longer visible from the visible set,
 		// which deallocates the sprites and removes any emitters.
 		for (Iterator<Map.Entry<Point, RenderedTile>> i = visibleMap.entrySet().iterator(); i.hasNext(); ) {
@@ -782,8 +810,8 @@ public class MapRenderer implements MapListener {
 			}
 		}
 
-		// Now add the new tiles
-		count = 0;
+		// Now add the new tiles, reading in map tiles only where they're needed
+		int count = 0;
 		for (int yy = my; yy < my + tileHeight; yy ++) {
 			for (int xx = mx; xx < mx + tileWidth; xx ++) {
 				// See if this tile is already visible.
@@ -798,10 +826,10 @@ public class MapRenderer implements MapListener {
 					visibleMap.put(p, rt);
 
 					// Update with current tileinfo
-					tileInfo[count].toDisplay(rt);
+					map.toTileInfo(xx, yy, tileInfo[count]).toDisplay(rt);
 				} else if (rt.isUpdated() || GameScreen.isDiddlerOpen()) {
 					// Make sure colours update
-					tileInfo[count].toDisplay(rt);
+					map.toTileInfo(xx, yy, tileInfo[count]).toDisplay(rt);
 				}
 
 				// Set the location on screen
@@ -809,6 +837,57 @@ public class MapRenderer implements MapListener {
 				count ++;
 			}
 		}
+
+		renderChunks(mx, my, ox, oy);
+	}
+
+	/**
+	 * Show, position and update the floor chunks that are in view, and hide the ones that have gone out of view
+	 * @param mx Map coordinates of the bottom left tile in view
+	 * @param my
+	 * @param ox Offset of the bottom left tile, in pixels
+	 * @param oy
+	 */
+	private void renderChunks(int mx, int my, int ox, int oy) {
+		int cx0 = Math.max(0, mx / MapChunk.SIZE);
+		int cy0 = Math.max(0, my / MapChunk.SIZE);
+		int cx1 = Math.min(chunksAcross - 1, (mx + tileWidth - 1) / MapChunk.SIZE);
+		int cy1 = Math.min(chunksDown - 1, (my + tileHeight - 1) / MapChunk.SIZE);
+		if (!visible) {
+			cx1 = -1;
+			cy1 = -1;
+		}
+
+		for (int cy = chunkY0; cy <= chunkY1; cy ++) {
+			for (int cx = chunkX0; cx <= chunkX1; cx ++) {
+				if (cx < cx0 || cx > cx1 || cy < cy0 || cy > cy1) {
+					MapChunk chunk = chunks[cx + cy * chunksAcross];
+					if (chunk != null) {
+						chunk.setVisible(false);
+					}
+				}
+			}
+		}
+		chunkX0 = cx0;
+		chunkY0 = cy0;
+		chunkX1 = cx1;
+		chunkY1 = cy1;
+
+		boolean force = GameScreen.isDiddlerOpen();
+		for (int cy = cy0; cy <= cy1; cy ++) {
+			for (int cx = cx0; cx <= cx1; cx ++) {
+				MapChunk chunk = chunks[cx + cy * chunksAcross];
+				if (chunk == null) {
+					chunk = new MapChunk(map, cx * MapChunk.SIZE, cy * MapChunk.SIZE);
+					chunk.setLayer(CHUNK_LAYER);
+					chunk.spawn(screen);
+					chunks[cx + cy * chunksAcross] = chunk;
+				}
+				chunk.update(force);
+				chunk.setLocation((cx * MapChunk.SIZE - mx) * TILE_SIZE - ox, (cy * MapChunk.SIZE - my) * TILE_SIZE - oy);
+				chunk.setVisible(true);
+			}
+		}
 	}
 
 	/**
@@ -883,7 +962,7 @@ public class MapRenderer implements MapListener {
 		return originY;
 	}
 
-	private MappedColor getColor(Tile t) {
+	static MappedColor getColor(Tile t) {
 		MappedColor ret;
 		if (t == null) {
 			return new MappedColor(ReadableColor.WHITE);
@@ -896,6 +975,20 @@ public class MapRenderer implements MapListener {
 		return ret;
 	}
 
+	/**
+	 * Create the colour of a corner of a floor tile
+	 * @param map The map
+	 * @param color The tile's colour
+	 * @param x Map coordinates of the corner
+	 * @param y
+	 * @return an attenuated colour
+	 */
+	static ReadableColor getFloorColor(GameMap map, MappedColor color, int x, int y) {
+		float ratio = ColorAttenuationConstants.dist(x, y, map.getWidth(), map.getHeight()) / ColorAttenuationConstants.getMaxDist();
+		boolean shadow = color.getColorName() != null && color.getColorName().intern() == LayersFeature.SHADOW_COLOR_NAME;
+		return new AttenuatedColor(color, map.getFFade(x, y), FLOOR_FADE, ratio, 0, shadow);
+	}
+
 	private MappedColor getColor(DecalFeature df) {
 		MappedColor ret;
 		if (df == null) {
@@ -918,9 +1011,16 @@ public class MapRenderer implements MapListener {
 
 	@Override
 	public void onChanged(int x, int y) {
+		temp.setLocation(x, y);
 		RenderedTile rt = visibleMap.get(temp);
 		if (rt != null) {
 			rt.setUpdated();
 		}
+		if (chunks != null && x >= 0 && y >= 0 && x < map.getWidth() && y < map.getHeight()) {
+			MapChunk chunk = chunks[x / MapChunk.SIZE + y / MapChunk.SIZE * chunksAcross];
+			if (chunk != null) {
+				chunk.setDirty();
+			}
+		}
 	}
 }
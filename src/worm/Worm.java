@@ -570,6 +570,18 @@ public class Worm extends MiniGame {
 		instance.setGameState(instance.createGameState());
 	}
 
+	/**
+	 * Create a fresh game state without going through any screens or restoring saved games (used by headless
+	 * simulations)
+	 * @param mode The game mode
+	 * @return the new game state
+	 */
+	public static WormGameState newHeadlessGame(int mode) {
+		newMode = mode;
+		resetGameState();
+		return gameState;
+	}
+
 	@Override
 	protected void onRestoreGameFailed(Exception e) {
 		// Clean up the GameScreen
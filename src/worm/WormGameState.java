@@ -37,6 +37,7 @@ import com.shavenpuppy.jglib.interpolators.LinearInterpolator;
 import com.shavenpuppy.jglib.interpolators.SineInterpolator;
 import com.shavenpuppy.jglib.resources.MappedColor;
 import com.shavenpuppy.jglib.resources.ResourceArray;
+import com.shavenpuppy.jglib.util.Profiler;
 import com.shavenpuppy.jglib.util.Util;
 import java.io.*;
 import java.util.Map.Entry;
@@ -135,6 +136,13 @@ public class WormGameState extends GameState {
      * Right mouse button drag sensitivity
      */
     private static final int RMB_DRAG_SENSITIVITY = 3;
+
+    /**
+     * Profiling
+     */
+    private static final int PROFILE_TICK_ENTITIES = Profiler.register("tickEntities");
+    private static final int PROFILE_CHECK_COLLISIONS = Profiler.register("checkCollisions");
+    private static final int PROFILE_UPDATE_ENTITIES = Profiler.register("updateEntities");
     /**
      * Game configuration
      */
@@ -755,11 +763,11 @@ public class WormGameState extends GameState {
     /**
      * Entities
      */
-    private final ArrayList<Entity> entities = new ArrayList<Entity>();
+    private final EntityList<Entity> entities = new EntityList<Entity>(EntityList.ALL);
     /**
      * All the gidrahs currently on the level
      */
-    private final ArrayList<Gidrah> gidrahs = new ArrayList<Gidrah>();
+    private final EntityList<Gidrah> gidrahs = new EntityList<Gidrah>(EntityList.TYPED);
     /**
      * All the bosses currently on the level
      */
@@ -767,15 +775,23 @@ public class WormGameState extends GameState {
     /**
      * All the units currently on the level
      */
-    private final ArrayList<Unit> units = new ArrayList<Unit>();
+    private final EntityList<Unit> units = new EntityList<Unit>(EntityList.TYPED);
     /**
      * All the buildings currently on the level
      */
-    private final ArrayList<Building> buildings = new ArrayList<Building>();
+    private final EntityList<Building> buildings = new EntityList<Building>(EntityList.TYPED);
+    /**
+     * Spatial index of the buildings, for gidrah brains; built on demand
+     */
+    private transient BuildingIndex buildingIndex;
+    /**
+     * Spatial index of the buildings, for proximity effects; built on demand
+     */
+    private transient ProximityIndex proximityIndex;
     /**
      * All the saucers currently on the level
      */
-    private final ArrayList<Saucer> saucers = new ArrayList<Saucer>();
+    private final EntityList<Saucer> saucers = new EntityList<Saucer>(EntityList.TYPED);
     /**
      * Medals earned during play this level
      */
@@ -824,6 +840,12 @@ public class WormGameState extends GameState {
         @Override
         public void addToBuildings(Building building) {
             buildings.add(building);
+            if (buildingIndex != null) {
+                buildingIndex.add(building);
+            }
+            if (proximityIndex != null) {
+                proximityIndex.add(building);
+            }
             if (building.isCity()) {
                 base = building;
             }
@@ -839,6 +861,12 @@ public class WormGameState extends GameState {
         @Override
         public void removeFromBuildings(Building building) {
             buildings.remove(building);
+            if (buildingIndex != null) {
+                buildingIndex.remove(building);
+            }
+            if (proximityIndex != null) {
+                proximityIndex.remove(building);
+            }
             onSomethingInterestingHappened();
         }
 
@@ -1278,14 +1306,11 @@ public class WormGameState extends GameState {
                 oy = -1;
             }
 
-            for (int z = 0; z < GameMap.LAYERS; z++) {
-                Tile t = getMap().getTile(tileX + ox, tileY + oy, z);
-                if (t == null || t.isImpassable() || t.isSolid()) {
-                    // Zap!
-                    stop = true;
-                    remove();
-                    return;
-                }
+            if (!getMap().isWalkable(tileX + ox, tileY + oy)) {
+                // Zap!
+                stop = true;
+                remove();
+                return;
             }
 
             arrowEffect.setSpawnLocation(tileX, tileY);
@@ -1587,8 +1612,7 @@ public class WormGameState extends GameState {
      * Cleanup
      */
     public void cleanup() {
-        for (int i = 0; i < entities.size(); i++) {
-            Entity e = entities.get(i);
+        for (Entity e : entities) {
             if (e.isActive()) {
                 e.remove();
             }
@@ -1933,7 +1957,7 @@ public class WormGameState extends GameState {
         addAvailableStock(building.getFeature(), 1);
 
         // If selling stuff when there are no gidrahs and level ended, there's no point...
-        if (beginLevel && gidrahs.size() == 0) {
+        if (beginLevel && gidrahs.isEmpty()) {
             flagHint(Hints.DONTSELL);
         }
     }
@@ -2114,15 +2138,13 @@ public class WormGameState extends GameState {
 
         float x = mouseX - GameScreen.getSpriteOffset().getX();
         float y = mouseY - GameScreen.getSpriteOffset().getY();
-        int n = entities.size();
         Entity hovered = null;
         if (clicked == null) {
             clicked = new ArrayList<Entity>(8);
         } else {
             clicked.clear();
         }
-        for (int i = 0; i < n; i++) {
-            Entity entity = entities.get(i);
+        for (Entity entity : entities) {
             if (entity.isTouching(x, y)) {
                 if (entity.isClickable()) {
                     clicked.add(entity);
@@ -2136,8 +2158,7 @@ public class WormGameState extends GameState {
         // Check range of capacitors
         capacitorRange = false;
         TEMP_CAPACITORS.clear();
-        for (int i = 0; i < buildings.size(); i++) {
-            Building b = buildings.get(i);
+        for (Building b : buildings) {
             if (b.isAlive() && b instanceof Capacitor) {
                 Capacitor capacitor = (Capacitor) b;
                 if (b.getDistanceTo(x, y) <= capacitor.getZapRadius()) {
@@ -2470,11 +2491,8 @@ public class WormGameState extends GameState {
         }
         for (int y = TEMPBOUNDS.getY() / MapRenderer.TILE_SIZE; y <= (TEMPBOUNDS.getY() + TEMPBOUNDS.getHeight() - 1) / MapRenderer.TILE_SIZE; y++) {
             for (int x = TEMPBOUNDS.getX() / MapRenderer.TILE_SIZE; x <= (TEMPBOUNDS.getX() + TEMPBOUNDS.getWidth() - 1) / MapRenderer.TILE_SIZE; x++) {
-                for (int z = 0; z < GameMap.LAYERS; z++) {
-                    Tile tile = map.getTile(x, y, z);
-                    if (tile != null && (tile.isSolid() || tile.isImpassable())) {
-                        return false;
-                    }
+                if (map.isImpassable(x, y)) {
+                    return false;
                 }
             }
         }
@@ -2575,6 +2593,35 @@ public class WormGameState extends GameState {
 
     }
 
+    /**
+     * Build a building directly, without a ghost or any feedback. Used by scripted simulations, which are responsible
+     * for choosing somewhere sensible to put it.
+     *
+     * @param feature The building to build
+     * @param x Map X coordinate
+     * @param y Map Y coordinate
+     * @return the new building, or null if it isn't available or we can't afford it
+     */
+    public Building buildAt(BuildingFeature feature, int x, int y) {
+        if (!feature.isAvailable() || !feature.isEnabledInShop()) {
+            return null;
+        }
+        int cost = feature.getShopValue();
+        if (getMoney() < cost) {
+            return null;
+        }
+        Building b = feature.build(x, y);
+        b.setCost(cost);
+        addMoney(-cost);
+        if (!(b.isBarricade() || b.isMineField())) {
+            valueOfBuiltBuildings += cost;
+            numberOfBuildingsMade++;
+            addStat(Stats.BUILDINGS_BUILT, 1);
+            addStat(Stats.VALUE_OF_BUILDINGS_BUILT, cost);
+        }
+        return b;
+    }
+
     /**
      * Puts us in Build Mode and sets the building that we wish to build, or cancels build mode if building is null
      *
@@ -2727,7 +2774,7 @@ public class WormGameState extends GameState {
         getLevelFeature().getColors().tick();
 
         // If the shops open do nothing else
-        if (GameScreen.getInstance().isBlocked() || GameScreen.getInstance().isShowingPausedHint()) {
+        if (!Game.isHeadless() && (GameScreen.getInstance().isBlocked() || GameScreen.getInstance().isShowingPausedHint())) {
             return;
         }
 
@@ -2737,7 +2784,9 @@ public class WormGameState extends GameState {
         calcCurrentDifficulty();
 
         // Tick all entities, cull dead ones
+        long profileThen = Profiler.begin();
         tickEntities();
+        Profiler.end(PROFILE_TICK_ENTITIES, profileThen);
 
         if (freezeTick > 0) {
             freezeTick--;
@@ -2751,11 +2800,11 @@ public class WormGameState extends GameState {
             shieldTick--;
         }
 
-        if (isAlive()) {
+        if (isAlive() && !Game.isHeadless()) {
             checkMouse();
         }
 
-        if (Game.DEBUG) {
+        if (Game.DEBUG && !Game.isHeadless()) {
             if (Keyboard.isKeyDown(Keyboard.KEY_RSHIFT)) {
                 try {
                     Thread.sleep(20);
@@ -2831,48 +2880,43 @@ public class WormGameState extends GameState {
                 assert false;
         }
 
+        profileThen = Profiler.begin();
         Entity.checkCollisions();
+        Profiler.end(PROFILE_CHECK_COLLISIONS, profileThen);
 
-        // Now cull inactive entities
-        for (int i = 0; i < entities.size();) {
-            Entity src = entities.get(i);
-            if (!src.isActive()) {
-                entities.remove(i);
-            } else {
-                i++;
-            }
-        }
+        // Now cull inactive entities, and anything removed from the other lists, in one pass each
+        entities.removeInactive();
+        gidrahs.compact();
+        units.compact();
+        buildings.compact();
+        saucers.compact();
 
+        profileThen = Profiler.begin();
         updateEntities();
+        Profiler.end(PROFILE_UPDATE_ENTITIES, profileThen);
     }
 
     /**
      * Clears the collision quadtree and then ticks each entity in turn, placing it back in the quadtree once it has
-     * been ticked.
+     * been ticked. Entities which die are culled afterwards in a single pass.
      */
     private void tickEntities() {
         Unit.resetTotalThinkTime();
         Gidrah.resetTotalThinkTime();
 
-        for (int i = 0; i < entities.size();) {
-            Entity e = entities.get(i);
+        for (Entity e : entities) {
             if (e.isActive()) {
                 e.tick();
             }
-            if (e.isActive()) {
-                i++;
-            } else {
-                entities.remove(i);
-            }
         }
+        entities.removeInactive();
     }
 
     /**
      * Update all the entities
      */
     private void updateEntities() {
-        for (int i = 0; i < entities.size(); i++) {
-            Entity entity = entities.get(i);
+        for (Entity entity : entities) {
             try {
                 entity.update();
             } catch (Exception ex) {
@@ -3025,7 +3069,7 @@ public class WormGameState extends GameState {
             return;
         }
 
-        if (gidrahs.size() == 0) {
+        if (gidrahs.isEmpty()) {
             if (getGameMode() == GAME_MODE_XMAS) {
                 // Wait until spawnpoint is gone
                 if (spawnPoints.size() > 0) {
@@ -3109,8 +3153,7 @@ public class WormGameState extends GameState {
 
     private void shutdownFactories() {
         boolean doSound = false;
-        for (int i = 0; i < buildings.size(); i++) {
-            Building b = buildings.get(i);
+        for (Building b : buildings) {
             if (b.isActive()) {
                 if (b instanceof Factory) {
                     doSound |= ((Factory) b).isMining();
@@ -3180,12 +3223,12 @@ public class WormGameState extends GameState {
             // Choose a spot some way from the base depending on difficulty
             float minDistance = 10.0f;
             float maxDistance = getMap().getWidth() * 0.45f;
-            float ratio = (float) Math.random();
+            float ratio = Util.random();
             float distance = LinearInterpolator.instance.interpolate(
                     CosineInterpolator.instance.interpolate(minDistance, maxDistance, ratio),
                     SineInterpolator.instance.interpolate(minDistance, maxDistance, ratio),
                     getDifficulty());
-            double angle = Math.random() * Math.PI * 2.0;
+            double angle = Util.random() * Math.PI * 2.0;
             tileX = getBase().getTileX() + (int) (Math.cos(angle) * distance);
             tileY = getBase().getTileY() + (int) (Math.sin(angle) * distance);
             for (int x = 0; x < width; x++) {
@@ -3196,11 +3239,8 @@ public class WormGameState extends GameState {
                     if (getMap().isAttacking(x + tileX, y + tileY)) {
                         return;
                     }
-                    for (int z = 0; z < GameMap.LAYERS; z++) {
-                        Tile t = getMap().getTile(x + tileX, y + tileY, z);
-                        if (t == null || t.isImpassable() || t.isSolid()) {
-                            return;
-                        }
+                    if (!getMap().isWalkable(x + tileX, y + tileY)) {
+                        return;
                     }
                 }
             }
@@ -3944,13 +3984,7 @@ public class WormGameState extends GameState {
                     assert false;
                     return new Point();
             }
-            for (int z = 0; z < GameMap.LAYERS; z++) {
-                Tile t = getMap().getTile(x, y, z);
-                if (t.isImpassable() || t.isSolid()) {
-                    blocked = true;
-                    break;
-                }
-            }
+            blocked = getMap().isImpassable(x, y);
         } while (blocked && count < 50);
         return new Point(x + ox, y + oy);
     }
@@ -4073,28 +4107,54 @@ public class WormGameState extends GameState {
     /**
      * @return Returns the entities.
      */
-    public ArrayList<Entity> getEntities() {
+    public EntityList<Entity> getEntities() {
         return entities;
     }
 
     /**
      * @return Returns the buildings
      */
-    public ArrayList<Building> getBuildings() {
+    public EntityList<Building> getBuildings() {
         return buildings;
     }
 
+    /**
+     * @return the spatial index of the buildings
+     */
+    public BuildingIndex getBuildingIndex() {
+        if (buildingIndex == null) {
+            buildingIndex = new BuildingIndex();
+            for (Building b : buildings) {
+                buildingIndex.add(b);
+            }
+        }
+        return buildingIndex;
+    }
+
+    /**
+     * @return the index of the buildings for proximity effects
+     */
+    public ProximityIndex getProximityIndex() {
+        if (proximityIndex == null) {
+            proximityIndex = new ProximityIndex();
+            for (Building b : buildings) {
+                proximityIndex.add(b);
+            }
+        }
+        return proximityIndex;
+    }
+
     /**
      * @return Returns the gidrahs
      */
-    public ArrayList<Gidrah> getGidrahs() {
+    public EntityList<Gidrah> getGidrahs() {
         return gidrahs;
     }
 
     /**
      * @return all the saucers
      */
-    public ArrayList<Saucer> getSaucers() {
+    public EntityList<Saucer> getSaucers() {
         return saucers;
     }
 
@@ -4369,8 +4429,7 @@ public class WormGameState extends GameState {
 
         // Calculate total money in-play
         float total = getMoney() * config.getBankFactor();
-        for (int i = buildings.size(); --i >= 0;) {
-            Building b = buildings.get(i);
+        for (Building b : buildings) {
             if (b.isAlive()) {
                 total += b.getCost();
                 irate += b.getAgitation();
@@ -4427,8 +4486,8 @@ public class WormGameState extends GameState {
         startingMoney = 500;
         somethingInterestingHappenedTick = 0;
         crystals = 0;
-        for (int i = entities.size(); --i >= 0;) {
-            (entities.get(i)).remove();
+        for (Entity e : entities) {
+            e.remove();
         }
         entities.clear();
         for (int i = spawnPoints.size(); --i >= 0;) {
@@ -4439,6 +4498,8 @@ public class WormGameState extends GameState {
         bosses.clear();
         units.clear();
         buildings.clear();
+        buildingIndex = null;
+        proximityIndex = null;
         saucers.clear();
         medalsThisLevel.clear();
         armedCapacitors.clear();
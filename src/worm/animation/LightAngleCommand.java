@@ -31,7 +31,7 @@
  */
 package worm.animation;
 
-import java.util.ArrayList;
+import java.util.Collection;
 
 import org.lwjgl.util.vector.Vector3f;
 import org.w3c.dom.Element;
@@ -83,9 +83,8 @@ public class LightAngleCommand extends Command {
 		// pick a random gidrah for now
 
 		Gidrah gidrahTarget = null;
-		ArrayList<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
-		int n = gidrahs.size();
-		if (n == 0) {
+		Collection<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
+		if (gidrahs.isEmpty()) {
 			// No gidrahs left!
 			target.setVisible(false);
 			target.setSequence(currentSequence + 1);
@@ -95,8 +94,7 @@ public class LightAngleCommand extends Command {
 		float bestDist = maxDist;
 		float dist;
 		// Find the closest gidrah
-		for (int i = 0; i < n; i ++) {
-			Gidrah g = gidrahs.get(i);
+		for (Gidrah g : gidrahs) {
 			if (g.isActive()){
 
 				dist = g.getDistanceTo(x, y);
@@ -31,7 +31,7 @@
  */
 package worm.brains;
 
-import java.util.ArrayList;
+import java.util.Collection;
 
 import worm.Entity;
 import worm.Worm;
@@ -66,16 +66,14 @@ public class DroneBrainFeature extends BrainFeature {
 
 	@Override
 	public Entity findTarget(Entity entity) {
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
-		int n = buildings.size();
-		if (n == 0) {
+		Collection<Building> buildings = Worm.getGameState().getBuildings();
+		if (buildings.isEmpty()) {
 			// No buildings left!
 			return null;
 		}
 		Building best = null;
 		float bestRating = 0.0f;
-		for (int i = 0; i < n; i ++) {
-			Building newTarget = buildings.get(i);
+		for (Building newTarget : buildings) {
 			if (newTarget.isActive() && newTarget.isAttackableByGidrahs() && newTarget.isWorthAttacking()) {
 				float damage = newTarget.getMaxHitPoints() - newTarget.getHitPoints();
 				if (damage == 0.0f) {
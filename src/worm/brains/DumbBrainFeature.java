@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import worm.Entity;
 import worm.Worm;
 import worm.entities.Building;
+import worm.entities.BuildingIndex;
 
 import com.shavenpuppy.jglib.util.Util;
 
@@ -47,6 +48,12 @@ public class DumbBrainFeature extends BrainFeature {
 
 	private static final long serialVersionUID = 1L;
 
+	/** Every category counts the same */
+	private static final float[] FACTORS = {1.0f, 1.0f, 1.0f, 1.0f, 1.0f};
+
+	/** Scratch lists of bases */
+	private static final ArrayList<Building> CANDIDATES = new ArrayList<Building>(), BASES = new ArrayList<Building>();
+
 	/**
 	 * C'tor
 	 */
@@ -63,54 +70,28 @@ public class DumbBrainFeature extends BrainFeature {
 
 	@Override
 	public Entity findTarget(Entity entity) {
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
-		int n = buildings.size();
-		if (n == 0) {
-			// No buildings left!
-			return null;
-		}
-		ArrayList<Building> bases = new ArrayList<Building>(4);
-		Building closest = null;
-		float closestDist = Float.MAX_VALUE;
-		float mapY = entity.getY();
-		float mapX = entity.getX();
+		BuildingIndex index = Worm.getGameState().getBuildingIndex();
+
 		// Find a random base.
-		for (int i = 0; i < n; i ++) {
-			Building newTarget = buildings.get(i);
-			if (newTarget.isActive() && !newTarget.isCloaked() && newTarget.isAttackableByGidrahs() && newTarget.isApparentlyValuable()) {
-				bases.add(newTarget);
+		CANDIDATES.clear();
+		BASES.clear();
+		index.getBuildings(BuildingIndex.VALUABLE, CANDIDATES);
+		for (int i = 0; i < CANDIDATES.size(); i ++) {
+			Building newTarget = CANDIDATES.get(i);
+			if (newTarget.isActive() && !newTarget.isCloaked() && newTarget.isAttackableByGidrahs()) {
+				BASES.add(newTarget);
 			}
 		}
+		CANDIDATES.clear();
 
-		if (bases.size() > 0) {
-			return bases.get(Util.random(0, bases.size() - 1));
-		}
-
-		// Reset the search and look for nearest building
-		closestDist = Float.MAX_VALUE;
-		int idx = Util.random(0, n - 1);
-		for (int i = idx; i < n; i ++) {
-			Building newTarget = buildings.get(i);
-			if (newTarget.isActive() && !newTarget.isCloaked() && newTarget.isAttackableByGidrahs() && newTarget.isWorthAttacking()) {
-				float dist = newTarget.getDistanceTo(mapX, mapY);
-				if (dist < closestDist) {
-					closestDist = dist;
-					closest = newTarget;
-				}
-			}
-		}
-		for (int i = 0; i < idx; i ++) {
-			Building newTarget = buildings.get(i);
-			if (newTarget.isActive() && !newTarget.isCloaked() && newTarget.isAttackableByGidrahs() && newTarget.isWorthAttacking()) {
-				float dist = newTarget.getDistanceTo(mapX, mapY);
-				if (dist < closestDist) {
-					closestDist = dist;
-					closest = newTarget;
-				}
-			}
+		if (BASES.size() > 0) {
+			Building ret = BASES.get(Util.random(0, BASES.size() - 1));
+			BASES.clear();
+			return ret;
 		}
 
-		return closest;
+		// Look for nearest building
+		return index.findNearest(entity.getX(), entity.getY(), FACTORS, BuildingIndex.WORTH_ATTACKING);
 	}
 
 }
@@ -31,12 +31,11 @@
  */
 package worm.brains;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import worm.Entity;
 import worm.Worm;
-import worm.entities.Building;
-import worm.entities.Factory;
+import worm.entities.BuildingIndex;
 
 /**
  * The Smart Brain picks the nearest building
@@ -50,6 +49,9 @@ public class SmartBrainFeature extends BrainFeature {
 
 	private float baseFactor, defaultFactor;
 
+	/** Distance factors for each BuildingIndex category */
+	private transient float[] factors;
+
 	/**
 	 * C'tor
 	 */
@@ -80,40 +82,11 @@ public class SmartBrainFeature extends BrainFeature {
 
 	@Override
 	public Entity findTarget(Entity entity) {
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
-		int n = buildings.size();
-		if (n == 0) {
-			// No buildings left!
-			return null;
-		}
-		Building closest = null;
-		float closestDist = Float.MAX_VALUE;
-		float mapY = entity.getY();
-		float mapX = entity.getX();
-		for (int i = 0; i < n; i ++) {
-			Building newTarget = buildings.get(i);
-			if (newTarget.isActive() && !newTarget.isCloaked() && newTarget.isAttackableByGidrahs() && newTarget.isWorthAttacking()) {
-				float factor;
-				if (newTarget.isApparentlyValuable()) {
-					factor = baseFactor;
-				} else {
-					if (newTarget instanceof Factory) {
-						if (((Factory) newTarget).isShutdown()) {
-							continue;
-						} else {
-							factor = defaultFactor;
-						}
-					} else {
-						factor = defaultFactor;
-					}
-				}
-				float dist = newTarget.getDistanceTo(mapX, mapY) * factor;
-				if (dist < closestDist) {
-					closestDist = dist;
-					closest = newTarget;
-				}
-			}
+		if (factors == null) {
+			factors = new float[BuildingIndex.CATEGORIES];
+			Arrays.fill(factors, defaultFactor);
+			factors[BuildingIndex.VALUABLE] = baseFactor;
 		}
-		return closest;
+		return Worm.getGameState().getBuildingIndex().findNearest(entity.getX(), entity.getY(), factors, BuildingIndex.WORTH_ATTACKING | BuildingIndex.NOT_SHUTDOWN);
 	}
 }
@@ -31,14 +31,10 @@
  */
 package worm.brains;
 
-import java.util.ArrayList;
-
 import worm.Entity;
 import worm.Worm;
 import worm.entities.Building;
-import worm.entities.Factory;
-import worm.entities.Turret;
-import worm.weapons.WeaponFeature.WeaponInstance;
+import worm.entities.BuildingIndex;
 
 /**
  * The Tactical Brain tries to destroy turrets, then reactors, then the nearest building
@@ -53,6 +49,9 @@ public class TacticalBrainFeature extends BrainFeature {
 	private float turretFactor;
 	private float heavyTurretFactor;
 
+	/** Distance factors for each BuildingIndex category; other buildings are ignored */
+	private transient float[] factors;
+
 	/**
 	 * C'tor
 	 */
@@ -69,47 +68,15 @@ public class TacticalBrainFeature extends BrainFeature {
 
 	@Override
 	public Entity findTarget(Entity entity) {
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
-		int n = buildings.size();
-		if (n == 0) {
-			// No buildings left!
-			return null;
+		if (factors == null) {
+			factors = new float[BuildingIndex.CATEGORIES];
+			factors[BuildingIndex.VALUABLE] = baseFactor;
+			factors[BuildingIndex.FACTORY] = factoryFactor;
+			factors[BuildingIndex.HEAVY_TURRET] = heavyTurretFactor;
+			factors[BuildingIndex.TURRET] = turretFactor;
+			factors[BuildingIndex.OTHER] = -1.0f;
 		}
-		Building closest = null;
-		float closestDist = Float.MAX_VALUE;
-		float mapY = entity.getY();
-		float mapX = entity.getX();
-		for (int i = 0; i < n; i ++) {
-			Building newTarget = buildings.get(i);
-			if (newTarget.isActive() && !newTarget.isCloaked() && newTarget.isAttackableByGidrahs()) {
-				float factor;
-				if (newTarget.isApparentlyValuable()) {
-					factor = baseFactor;
-				} else if (newTarget instanceof Factory) {
-					if (((Factory) newTarget).isShutdown()) {
-						continue;
-					} else {
-						factor = factoryFactor;
-					}
-				} else if (newTarget instanceof Turret) {
-					WeaponInstance weapon = ((Turret) newTarget).getWeapon();
-					if (weapon != null && weapon.getFeature().isHeavyWeapon()) {
-						factor = heavyTurretFactor;
-					} else {
-						factor = turretFactor;
-					}
-				} else {
-					continue;
-				}
-
-				float dist = newTarget.getDistanceTo(mapX, mapY) * factor;
-				if (dist < closestDist) {
-					closestDist = dist;
-					closest = newTarget;
-				}
-			}
-		}
-
+		Building closest = Worm.getGameState().getBuildingIndex().findNearest(entity.getX(), entity.getY(), factors, BuildingIndex.NOT_SHUTDOWN);
 		if (closest != null) {
 			// We found a turret, factory, decoy or base
 			return closest;
@@ -31,7 +31,7 @@
  */
 package worm.brains;
 
-import java.util.ArrayList;
+import java.util.Collection;
 
 import worm.Entity;
 import worm.Worm;
@@ -66,9 +66,8 @@ public class UnitBrainFeature extends BrainFeature {
 
 	@Override
 	public Entity findTarget(Entity entity) {
-		ArrayList<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
-		int n = gidrahs.size();
-		if (n == 0) {
+		Collection<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
+		if (gidrahs.isEmpty()) {
 			// No gidrahs left!
 			return null;
 		}
@@ -78,8 +77,7 @@ public class UnitBrainFeature extends BrainFeature {
 		float mapX = entity.getX();
 
 		// Find nearest gidlet...
-		for (int i = 0; i < n; i ++) {
-			Gidrah newTarget = gidrahs.get(i);
+		for (Gidrah newTarget : gidrahs) {
 			if (newTarget.isActive() && newTarget.isAttackableByUnits()) {
 				float dist = newTarget.getDistanceTo(mapX, mapY);
 				GidrahFeature feature = newTarget.getFeature();
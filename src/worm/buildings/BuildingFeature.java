@@ -68,6 +68,11 @@ public abstract class BuildingFeature extends Feature implements ShopItem, Stati
 
 	public static final int HITPOINTS_DIVISOR = 4;
 
+	/** Cached results of {@link #isAffectedBy(BuildingFeature)}, by affects id: 0 if not yet known, 1 if not, 2 if so */
+	private static byte[] affectsMatrix = new byte[0];
+	private static int affectsMatrixSize;
+	private static int numAffectsIds;
+
 	/*
 	 * Resource data
 	 */
@@ -169,6 +174,9 @@ public abstract class BuildingFeature extends Feature implements ShopItem, Stati
 	private transient Appearance tooltipGraphicResource;
 	private transient TextResource descriptionResource;
 
+	/** Row and column in the affects matrix, plus one; 0 if not yet assigned */
+	private transient int affectsId;
+
 
 	/**
 	 * C'tor
@@ -346,6 +354,38 @@ public abstract class BuildingFeature extends Feature implements ShopItem, Stati
 		return false;
 	}
 
+	/**
+	 * The same as {@link #isAffectedBy(BuildingFeature)}, which never changes for a pair of features, but looked up in
+	 * a matrix after the first time it's asked
+	 * @param feature
+	 * @return true if this sort of building is affected by the other
+	 */
+	public final boolean isAffectedByCached(BuildingFeature feature) {
+		int row = getAffectsId() - 1, column = feature.getAffectsId() - 1;
+		int idx = row * affectsMatrixSize + column;
+		if (affectsMatrix[idx] == 0) {
+			affectsMatrix[idx] = (byte) (isAffectedBy(feature) ? 2 : 1);
+		}
+		return affectsMatrix[idx] == 2;
+	}
+
+	private int getAffectsId() {
+		if (affectsId == 0) {
+			affectsId = ++ numAffectsIds;
+			if (numAffectsIds > affectsMatrixSize) {
+				// Grow the matrix, keeping what we know so far
+				int newSize = Math.max(32, affectsMatrixSize * 2);
+				byte[] newMatrix = new byte[newSize * newSize];
+				for (int i = 0; i < affectsMatrixSize; i ++) {
+					System.arraycopy(affectsMatrix, i * affectsMatrixSize, newMatrix, i * newSize, affectsMatrixSize);
+				}
+				affectsMatrix = newMatrix;
+				affectsMatrixSize = newSize;
+			}
+		}
+		return affectsId;
+	}
+
 	/* (non-Javadoc)
 	 * @see worm.ShopItem#getShopAppearance()
 	 */
@@ -33,7 +33,7 @@ package worm.buildings;
 
 import org.lwjgl.util.Rectangle;
 
-import worm.GameMap;
+import worm.DangerStamp;
 import worm.MapRenderer;
 import worm.Worm;
 import worm.entities.Building;
@@ -46,6 +46,9 @@ public class ScarecrowBuildingFeature extends BuildingFeature {
 
 	private static final long serialVersionUID = 1L;
 
+	/** Tiles whose danger has changed */
+	private static final Rectangle DANGER_BOUNDS = new Rectangle();
+
 	private float radius;
 	private int danger;
 
@@ -62,25 +65,11 @@ public class ScarecrowBuildingFeature extends BuildingFeature {
 
 		private void addDanger(int amount) {
 			// Increase danger level nearby
-			float scanRadius = radius + MapRenderer.TILE_SIZE;
-			GameMap map = Worm.getGameState().getMap();
-			int bottomLeftY = (int) (getY() - scanRadius - 1.0f) / MapRenderer.TILE_SIZE;
-			int height = (int) (getY() + scanRadius + 1.0f)  / MapRenderer.TILE_SIZE;
-			int bottomLeftX = (int) (getX() - scanRadius - 1.0f) / MapRenderer.TILE_SIZE;
-			int width = (int) (getX()  + scanRadius + 1.0f)  / MapRenderer.TILE_SIZE;
-			for (int yy = bottomLeftY; yy <= height; yy ++) {
-				float dy = getY() - yy * MapRenderer.TILE_SIZE - MapRenderer.TILE_SIZE * 0.5f;
-				for (int xx = bottomLeftX; xx <= width; xx ++) {
-					float dx = getX() - xx * MapRenderer.TILE_SIZE - MapRenderer.TILE_SIZE * 0.5f;
-					double dist = Math.sqrt(dx * dx + dy * dy);
-					if (dist <= scanRadius + 1.0f) {
-						map.setDanger(xx, yy, map.getDanger(xx, yy) + amount);
-					}
-				}
+			DangerStamp stamp = DangerStamp.get(getX(), getY(), radius + MapRenderer.TILE_SIZE, -1.0f);
+			if (Worm.getGameState().getMap().addDanger(stamp, getX(), getY(), amount, DANGER_BOUNDS)) {
+				// All gidrahs rethink your routes!
+				Gidrah.rethinkRoutes(DANGER_BOUNDS);
 			}
-
-			// All gidrahs rethink your routes!
-			Gidrah.rethinkRoutes(new Rectangle(bottomLeftX, bottomLeftY, width + 1, height + 1));
 		}
 		@Override
 		protected void doOnBuild() {
@@ -32,8 +32,6 @@
 package worm.buildings;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import net.puppygames.applet.Game;
@@ -45,7 +43,9 @@ import org.lwjgl.util.Rectangle;
 import org.w3c.dom.Element;
 
 import worm.ClickAction;
+import worm.DangerStamp;
 import worm.Entity;
+import worm.EntityFilter;
 import worm.GameMap;
 import worm.Hints;
 import worm.Layers;
@@ -92,14 +92,12 @@ public class TurretBuildingFeature extends BuildingFeature {
 	private static final int USELESS_WARNING_TIME = 1800;
 	private static final int RETARGET_TIME = 120;
 
-	/** Target acquisistion */
-	private static final ArrayList<Entity> ENTITIES = new ArrayList<Entity>();
-	private static final ArrayList<Gid> TARGETS = new ArrayList<Gid>();
-	private static class Gid {
-		Gidrah gidrah;
-		float distance;
-	}
-	private static final Rectangle TEMP = new Rectangle();
+	/** Target acquisistion: the nearest gidrah in range that we can aim at, and its distance */
+	private static final Entity[] NEAREST = new Entity[1];
+	private static final float[] NEAREST_DISTANCE = new float[1];
+
+	/** Tiles whose danger has changed */
+	private static final Rectangle DANGER_BOUNDS = new Rectangle(), TEMP_DANGER_BOUNDS = new Rectangle();
 
 
 	private int maxReactors;
@@ -223,6 +221,12 @@ public class TurretBuildingFeature extends BuildingFeature {
 		/** Ignore list */
 		private ArrayList<Entity> ignore = new ArrayList<Entity>();
 
+		/** Line of sight to the tiles in range */
+		private transient TurretVisibility visibility;
+
+		/** Decides which gidrahs we can aim at during target acquisition */
+		private transient TargetFilter targetFilter;
+
 		/**
 		 * C'tor
 		 * @param feature
@@ -260,6 +264,10 @@ public class TurretBuildingFeature extends BuildingFeature {
 			if (weaponFeature != null) {
 				weaponInstance = weaponFeature.spawn(this);
 				addDanger(weaponFeature.getDanger());
+
+				// Work out what we can see from here up front
+				visibility = new TurretVisibility();
+				visibility.prepare(Worm.getGameState().getMap(), getTileX(), getTileY(), getScanRadius());
 			} else {
 				addDanger(0); // Decoys!
 			}
@@ -335,18 +343,6 @@ public class TurretBuildingFeature extends BuildingFeature {
 
 			// Find a target and kill it
 			target = null;
-			TARGETS.clear();
-			float minDist = getScanRadius();
-			ENTITIES.clear();
-			TEMP.setBounds((int) (getX() - minDist), (int) (getY() - minDist), (int) (minDist * 2.0f), (int) (minDist * 2.0f));
-			Entity.getCollisions(TEMP, ENTITIES);
-			int n = ENTITIES.size();
-			if (n == 0) {
-				// No gidrahs left!
-				findTick = FIND_TARGET_INTERVAL;
-				return;
-			}
-
 			for (int j = ignore.size(); -- j >= 0; ) {
 				Entity e = ignore.get(j);
 				if (!e.isActive()) {
@@ -355,75 +351,86 @@ public class TurretBuildingFeature extends BuildingFeature {
 				}
 			}
 
-			// Get all the gidrahs in scanning range which we can potentially aim at
-			outer: for (int i = 0; i < n; i ++) {
-				Entity ent = ENTITIES.get(i);
-				if (!(ent instanceof Gidrah)) {
-					continue;
+			// Flying gids are preferred over ground based gids if this is a laser ("targetIntoMountains" is true)
+			if (targetIntoMountains) {
+				target = chooseTarget(true);
+			}
+			if (target == null) {
+				target = chooseTarget(false);
+			}
+
+			if (target != null) {
+				retargetTick = RETARGET_TIME;
+			}
+			findTick = FIND_TARGET_INTERVAL;
+		}
+
+		/**
+		 * Choose the nearest gidrah in range which we can aim at
+		 * @param flyingOnly Only consider flying gidrahs
+		 * @return the chosen gidrah, or null
+		 */
+		private Gidrah chooseTarget(boolean flyingOnly) {
+			if (targetFilter == null) {
+				targetFilter = new TargetFilter();
+			}
+			targetFilter.flyingOnly = flyingOnly;
+			if (Entity.getNearest(getX(), getY(), getMinimumRange(), getScanRadius(), Entity.COLLIDE_GIDRAH, targetFilter, NEAREST, NEAREST_DISTANCE) == 0) {
+				return null;
+			}
+			Gidrah g = (Gidrah) NEAREST[0];
+			NEAREST[0] = null;
+			return g;
+		}
+
+		/**
+		 * Accepts the gidrahs we can aim at. All the checks are made during the nearest gidrah query, so that gidrahs we
+		 * can't aim at never crowd out one further away that we can.
+		 */
+		private class TargetFilter implements EntityFilter {
+
+			/** Only accept flying gidrahs */
+			boolean flyingOnly;
+
+			@Override
+			public boolean accept(Entity entity) {
+				Gidrah g = (Gidrah) entity;
+				if (flyingOnly && !g.isFlying()) {
+					return false;
 				}
-				Gidrah g = (Gidrah) ent;
+
 				// Ignore gidlets: need units to combat these! And wraiths: need capacitors for these!
 				if (!g.isShootable() || !g.isVisibleToTurrets()) {
-					continue;
+					return false;
 				}
 
 				// Rocket turrets ignore flying targets
 				if (dontTargetFlyingTargets && g.getFeature().isFlying()) {
-					continue;
-				}
-
-				float dist = g.getDistanceTo(getX(), getY());
-				if (dist >= minDist || dist <= getMinimumRange()) {
-					continue;
-				}
-				if (!canSee(g.getX(), g.getY(), g, targetIntoMountains)) {
-					continue;
+					return false;
 				}
 
 				// If the gidrah is in the ignore list... ignore it
 				for (int j = ignore.size(); -- j >= 0; ) {
 					if (g == ignore.get(j)) {
-						// Ignore!
-						continue outer;
+						return false;
 					}
 				}
-				Gid gid = new Gid();
-				gid.gidrah = g;
-				gid.distance = dist;
 
-				TARGETS.add(gid);
+				return canSeeTarget(g);
 			}
+		}
 
-			if (TARGETS.size() == 0) {
-				findTick = FIND_TARGET_INTERVAL;
-				return;
+		/**
+		 * @return true if there is a line of sight to the target, going by the tiles between us
+		 */
+		private boolean canSeeTarget(Entity target) {
+			if (targetIntoMountains && target.isFlying()) {
+				return true;
 			}
-
-			// Sort the targets in order of distance, with a twiddle for flying gids so that they are preferred over ground based
-			// gids if this is a laser ("targetIntoMountains" is true)
-			Collections.sort(TARGETS, new Comparator<Gid>() {
-				@Override
-				public int compare(Gid g0, Gid g1) {
-					if (targetIntoMountains) {
-						if (g0.gidrah.isFlying() && !g1.gidrah.isFlying()) {
-							return -1;
-						} else if (!g0.gidrah.isFlying() && g1.gidrah.isFlying()) {
-							return 1;
-						}
-					}
-					if (g0.distance < g1.distance) {
-						return -1;
-					} else if (g0.distance > g1.distance) {
-						return 1;
-					} else {
-						return 0;
-					}
-				}
-			});
-
-			target = TARGETS.get(0).gidrah;
-			retargetTick = RETARGET_TIME;
-			findTick = FIND_TARGET_INTERVAL;
+			if (visibility == null) {
+				visibility = new TurretVisibility();
+			}
+			return visibility.canSee(Worm.getGameState().getMap(), getTileX(), getTileY(), getScanRadius(), target.getTileX(), target.getTileY());
 		}
 
 		@Override
@@ -470,7 +477,7 @@ public class TurretBuildingFeature extends BuildingFeature {
 				return true;
 			}
 			sightTick = Util.random(FIND_TARGET_INTERVAL / 2, FIND_TARGET_INTERVAL * 2);
-			return canSee(target.getX(), target.getY(), target, targetIntoMountains);
+			return canSeeTarget(target);
 		}
 
 		@Override
@@ -579,6 +586,13 @@ public class TurretBuildingFeature extends BuildingFeature {
 
 		}
 
+		/**
+		 * @return the tiles made dangerous by the turret at its current range
+		 */
+		private DangerStamp getDangerStamp() {
+			return DangerStamp.get(getX(), getY(), getScanRadius() + MapRenderer.TILE_SIZE, getMinimumRange());
+		}
+
 		private void addDanger(int amount) {
 			if (amount == 0) {
 				// It's a decoy
@@ -587,35 +601,38 @@ public class TurretBuildingFeature extends BuildingFeature {
 			}
 
 			// Increase danger level nearby
-			float scanRadius = getScanRadius()+ MapRenderer.TILE_SIZE;
-			GameMap map = Worm.getGameState().getMap();
-			int bottomLeftY = (int) (getY() - scanRadius - 1.0f) / MapRenderer.TILE_SIZE;
-			int height = (int) (getY() + scanRadius + 1.0f)  / MapRenderer.TILE_SIZE;
-			int bottomLeftX = (int) (getX() - scanRadius - 1.0f) / MapRenderer.TILE_SIZE;
-			int width = (int) (getX()  + scanRadius + 1.0f)  / MapRenderer.TILE_SIZE;
-			for (int yy = bottomLeftY; yy <= height; yy ++) {
-				float dy = getY() - yy * MapRenderer.TILE_SIZE - MapRenderer.TILE_SIZE * 0.5f;
-				for (int xx = bottomLeftX; xx <= width; xx ++) {
-					float dx = getX() - xx * MapRenderer.TILE_SIZE - MapRenderer.TILE_SIZE * 0.5f;
-					double dist = Math.sqrt(dx * dx + dy * dy);
-					if (dist <= scanRadius + 1.0f && dist > getMinimumRange()) {
-						map.setDanger(xx, yy, map.getDanger(xx, yy) + amount);
-					}
-				}
+			if (Worm.getGameState().getMap().addDanger(getDangerStamp(), getX(), getY(), amount, DANGER_BOUNDS)) {
+				// All gidrahs rethink your routes!
+				Gidrah.rethinkRoutes(DANGER_BOUNDS);
 			}
-
-			// All gidrahs rethink your routes!
-			Gidrah.rethinkRoutes(new Rectangle(bottomLeftX, bottomLeftY, width + 1, height + 1));
 		}
 
 		@Override
 		public void addScanners(int n) {
-			if (weaponFeature != null && !isGhost()) {
-				addDanger(-weaponFeature.getDanger());
-			}
-			super.addScanners(n);
-			if (weaponFeature != null && !isGhost()) {
-				addDanger(weaponFeature.getDanger());
+			if (weaponFeature == null || isGhost()) {
+				super.addScanners(n);
+			} else {
+				// Move the danger over to the new range, if it's changed, and have the gidrahs rethink just the once
+				DangerStamp oldStamp = getDangerStamp();
+				super.addScanners(n);
+				DangerStamp newStamp = getDangerStamp();
+				if (newStamp != oldStamp) {
+					GameMap map = Worm.getGameState().getMap();
+					int danger = weaponFeature.getDanger();
+					boolean changed = map.addDanger(oldStamp, getX(), getY(), -danger, DANGER_BOUNDS);
+					if (map.addDanger(newStamp, getX(), getY(), danger, TEMP_DANGER_BOUNDS)) {
+						if (changed) {
+							DANGER_BOUNDS.add(TEMP_DANGER_BOUNDS);
+						} else {
+							DANGER_BOUNDS.setBounds(TEMP_DANGER_BOUNDS);
+							changed = true;
+						}
+					}
+					if (changed) {
+						// All gidrahs rethink your routes!
+						Gidrah.rethinkRoutes(DANGER_BOUNDS);
+					}
+				}
 			}
 
 			checkAwesome();
@@ -656,6 +673,10 @@ public class TurretBuildingFeature extends BuildingFeature {
 
 		@Override
 		protected void doBuildingRemove() {
+			if (visibility != null) {
+				visibility.dispose();
+				visibility = null;
+			}
 			if (weaponFeature != null && !isGhost()) {
 				addDanger(-weaponFeature.getDanger());
 			}
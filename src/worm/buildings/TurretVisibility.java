@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.buildings;
+
+import java.util.Arrays;
+
+import worm.GameMap;
+import worm.MapListener;
+import worm.MapRenderer;
+
+/**
+ * Tile-level line of sight from a turret to every tile within its range. The mask is computed on demand and thrown
+ * away whenever a tile inside it changes.
+ */
+class TurretVisibility implements MapListener {
+
+	/** The map we're listening to */
+	private GameMap map;
+
+	/** Turret tile, and range in tiles, that the mask was computed for */
+	private int centreX, centreY, radius;
+
+	/** Visibility bits, (radius * 2 + 1) squared, row by row from the bottom left */
+	private long[] bits;
+
+	/** Whether the mask is up to date */
+	private boolean valid;
+
+	/**
+	 * Can a turret see a tile?
+	 * @param map The map
+	 * @param fromX Turret tile X
+	 * @param fromY Turret tile Y
+	 * @param range Turret range, in pixels
+	 * @param toX Target tile X
+	 * @param toY Target tile Y
+	 * @return true if no tile between the turret and the target tile blocks bullets
+	 */
+	boolean canSee(GameMap map, int fromX, int fromY, float range, int toX, int toY) {
+		prepare(map, fromX, fromY, range);
+		int dx = toX - centreX + radius, dy = toY - centreY + radius, size = radius * 2 + 1;
+		if (dx < 0 || dy < 0 || dx >= size || dy >= size) {
+			return false;
+		}
+		int bit = dx + dy * size;
+		return (bits[bit >> 6] & 1L << bit) != 0L;
+	}
+
+	/**
+	 * Ensure the mask is up to date
+	 * @param map The map
+	 * @param fromX Turret tile X
+	 * @param fromY Turret tile Y
+	 * @param range Turret range, in pixels
+	 */
+	void prepare(GameMap map, int fromX, int fromY, float range) {
+		if (map != this.map) {
+			dispose();
+			this.map = map;
+			map.addListener(this);
+		}
+		int r = (int) (range / MapRenderer.TILE_SIZE) + 1;
+		if (!valid || fromX != centreX || fromY != centreY || r > radius) {
+			compute(fromX, fromY, r);
+		}
+	}
+
+	private void compute(int fromX, int fromY, int r) {
+		centreX = fromX;
+		centreY = fromY;
+		radius = r;
+		int size = r * 2 + 1;
+		int words = (size * size + 63) >> 6;
+		if (bits == null || bits.length < words) {
+			bits = new long[words];
+		} else {
+			Arrays.fill(bits, 0L);
+		}
+		for (int dy = -r; dy <= r; dy ++) {
+			for (int dx = -r; dx <= r; dx ++) {
+				if (dx * dx + dy * dy <= r * r && map.isLineClear(fromX, fromY, fromX + dx, fromY + dy)) {
+					int bit = dx + r + (dy + r) * size;
+					bits[bit >> 6] |= 1L << bit;
+				}
+			}
+		}
+		valid = true;
+	}
+
+	@Override
+	public void onChanged(int x, int y) {
+		if (valid && Math.abs(x - centreX) <= radius && Math.abs(y - centreY) <= radius) {
+			valid = false;
+		}
+	}
+
+	/**
+	 * Stop listening to the map
+	 */
+	void dispose() {
+		if (map != null) {
+			map.removeListener(this);
+			map = null;
+		}
+		valid = false;
+	}
+}
@@ -31,8 +31,6 @@
  */
 package worm.effects;
 
-import java.util.ArrayList;
-
 import net.puppygames.applet.Game;
 import net.puppygames.applet.effects.Effect;
 import net.puppygames.applet.effects.Emitter;
@@ -40,13 +38,12 @@ import net.puppygames.applet.effects.EmitterFeature;
 
 import org.lwjgl.util.ReadableColor;
 import org.lwjgl.util.ReadablePoint;
-import org.lwjgl.util.Rectangle;
 
 import worm.Entity;
 import worm.GameMap;
 import worm.Layers;
 import worm.MapRenderer;
-import worm.Tile;
+import worm.RaycastCallback;
 import worm.Worm;
 import worm.WormGameState;
 import worm.screens.GameScreen;
@@ -63,7 +60,7 @@ import com.shavenpuppy.jglib.util.Util;
 
 import static org.lwjgl.opengl.GL11.*;
 
-public class ElectronZapEffect extends Effect {
+public class ElectronZapEffect extends Effect implements RaycastCallback {
 
 	private static final long serialVersionUID = 1L;
 
@@ -102,9 +99,6 @@ public class ElectronZapEffect extends Effect {
 		}
 	};
 
-	private static final ArrayList<Entity> TEMP_ENTITIES = new ArrayList<Entity>();
-	private static final Rectangle TEMP_RECT = new Rectangle();
-
 	/** Rendering indices */
 	private final ShortList indices = new ShortList(true, 32);
 
@@ -139,6 +133,10 @@ public class ElectronZapEffect extends Effect {
 	/** Current length (distance) */
 	private int length;
 
+	/** Zap tracing state, used by {@link #onHit(Entity, float, float)}: pixel steps per pixel of distance, the last step to check, and the step which hit something */
+	private transient float stepsPerPixel;
+	private transient int lastStep, hitStep;
+
 	/** Number of segments */
 	private int numSegments;
 
@@ -281,14 +279,15 @@ public class ElectronZapEffect extends Effect {
 		int totalLength = 0;
 		if (collides) {
 			WormGameState gameState = Worm.getGameState();
+			GameMap map = gameState.getMap();
+
+			// First find how far the zap gets before it hits a wall, a pixel at a time
 			x = (int) sx;
 			y = (int) sy;
-			GameMap map = gameState.getMap();
 			int tileX = x / MapRenderer.TILE_SIZE;
 			int tileY = y / MapRenderer.TILE_SIZE;
-
-			int ox = x, oy = y;
-			outer: for (int i = 0; i < length; i ++) {
+			totalLength = length;
+			for (int i = 0; i < length; i ++) {
 				x = (int) LinearInterpolator.instance.interpolate(sx, tx, (float) i / (float) length);
 				y = (int) LinearInterpolator.instance.interpolate(sy, ty, (float) i / (float) length);
 
@@ -300,38 +299,32 @@ public class ElectronZapEffect extends Effect {
 					tileX = newTileX;
 					tileY = newTileY;
 
-					for (int tileZ = 0; tileZ < GameMap.LAYERS; tileZ ++) {
-						Tile t = map.getTile(tileX, tileY, tileZ);
-						if (t != null && !t.isBulletThrough()) {
-							// Hit a wall
-							break outer;
-						}
+					if (map.blocksBullets(tileX, tileY)) {
+						// Hit a wall
+						totalLength = i;
+						break;
 					}
 				}
+			}
 
-				// Check collision with entities
-				if (ox != x || oy != y) {
-					TEMP_ENTITIES.clear();
-					TEMP_RECT.setBounds(x, y, 1, 1);
-					Entity.getCollisions(TEMP_RECT, TEMP_ENTITIES);
-					int numEntities = TEMP_ENTITIES.size();
-					for (int j = 0; j < numEntities; j ++) {
-						Entity entity = TEMP_ENTITIES.get(j);
-						if (entity.isActive() && entity.isShootable() && entity.canCollide()) {
-							if (tick % DAMAGE_INTERVAL == 0) {
-								entity.capacitorDamage(1);
-							} else {
-								entity.stunDamage(3);
-							}
-
-							// And here the beam stops.
-							break outer;
-						}
-					}
-					ox = x;
-					oy = y;
+			// Then the first entity in the way, if any, up to the last clear pixel
+			int last = totalLength - 1;
+			if (last > 0) {
+				float ratio = (float) last / (float) length;
+				float ex = LinearInterpolator.instance.interpolate(sx, tx, ratio);
+				float ey = LinearInterpolator.instance.interpolate(sy, ty, ratio);
+				double dx = tx - sx;
+				double dy = ty - sy;
+				stepsPerPixel = (float) (length / Math.sqrt(dx * dx + dy * dy));
+				lastStep = last;
+				hitStep = -1;
+				Entity.raycast(sx, sy, ex, ey, Entity.COLLIDE_ALL, this);
+				if (hitStep != -1) {
+					// And here the beam stops.
+					totalLength = hitStep;
+					x = (int) LinearInterpolator.instance.interpolate(sx, tx, (float) hitStep / (float) length);
+					y = (int) LinearInterpolator.instance.interpolate(sy, ty, (float) hitStep / (float) length);
 				}
-				totalLength ++;
 			}
 		} else {
 			x = (int) tx;
@@ -349,6 +342,21 @@ public class ElectronZapEffect extends Effect {
 		}
 	}
 
+	@Override
+	public boolean onHit(Entity entity, float near, float far) {
+		if (!entity.isActive() || !entity.isShootable() || !entity.canCollide()) {
+			return false;
+		}
+		if (tick % DAMAGE_INTERVAL == 0) {
+			entity.capacitorDamage(1);
+		} else {
+			entity.stunDamage(3);
+		}
+		// The beam ends at the first pixel inside the entity
+		hitStep = Math.min(lastStep, Math.max(1, (int) Math.ceil(near * stepsPerPixel)));
+		return true;
+	}
+
 	@Override
 	public boolean isEffectActive() {
 		return (!fading || tick < FADE_DURATION) && !done;
@@ -404,4 +412,4 @@ public class ElectronZapEffect extends Effect {
 	public int getDefaultLayer() {
 		return Layers.CAPACITOR_EFFECT;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -16,7 +16,6 @@ import org.lwjgl.util.Point;
 
 import worm.GameMap;
 import worm.MapRenderer;
-import worm.Tile;
 import worm.Worm;
 import worm.screens.GameScreen;
 
@@ -129,12 +128,9 @@ public class WeatherEmitter extends Feature implements Tickable {
 			x = Util.random(-border, Game.getWidth() + border) - spriteOffset.getX();
 			y = Util.random(-border, Game.getHeight() + border) - spriteOffset.getY();
 			GameMap map = Worm.getGameState().getMap();
-			for (int z = 0; z < GameMap.LAYERS; z ++) {
-				Tile t = map.getTile((int) (x / MapRenderer.TILE_SIZE), (int) (y / MapRenderer.TILE_SIZE), z);
-				if (t != null && (t.isSolid() || t.isImpassable())) {
-					// Don't spawn at all
-					return;
-				}
+			if (map.isImpassable((int) (x / MapRenderer.TILE_SIZE), (int) (y / MapRenderer.TILE_SIZE))) {
+				// Don't spawn at all
+				return;
 			}
 			z = height;
 
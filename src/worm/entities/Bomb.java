@@ -251,6 +251,16 @@ public class Bomb extends Entity {
 		entity.onCollisionWithBomb(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_BOMB;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return COLLIDE_BUILDING | COLLIDE_GIDRAH;
+	}
+
 	@Override
 	public void onCollisionWithBuilding(Building building) {
 		if (hit.contains(building)) {
@@ -32,6 +32,7 @@
 package worm.entities;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -84,6 +85,9 @@ public abstract class Building extends Entity {
 	private static final int CLOAK_MIN_CYCLE = 120;
 	private static final int CLOAK_MAX_CYCLE = 240;
 
+	/** Scratch list of buildings near a ghost */
+	private static final ArrayList<Building> GHOST_NEARBY = new ArrayList<Building>();
+
 	/*
 	 * Phases
 	 */
@@ -136,6 +140,12 @@ public abstract class Building extends Entity {
 	/** Burning & flames */
 	private transient Emitter damagedEmitter;
 
+	/** Category and cell (plus one; 0 if not filed) in the BuildingIndex */
+	transient int indexCategory, indexCell;
+
+	/** Cell (plus one; 0 if not filed) in the ProximityIndex */
+	transient int proximityCell;
+
 	/** Shield type */
 	private int shieldType = SHIELD_NONE;
 
@@ -251,15 +261,13 @@ public abstract class Building extends Entity {
 	}
 
 	protected final ArrayList<Building> getAllAffectedBuildings() {
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
+		Collection<Building> buildings = Worm.getGameState().getBuildings();
 		return getAffectedBuildings(buildings);
 	}
 
-	private ArrayList<Building> getAffectedBuildings(ArrayList<Building> buildings) {
-		int n = buildings.size();
+	private ArrayList<Building> getAffectedBuildings(Collection<Building> buildings) {
 		ArrayList<Building> ret = new ArrayList<Building>();
-		for (int i = 0; i < n; i ++) {
-			Building target = buildings.get(i);
+		for (Building target : buildings) {
 			if (target != this && isAffectedBy(target) && target.isAffectedBy(this)) {
 				ret.add(target);
 			}
@@ -268,7 +276,8 @@ public abstract class Building extends Entity {
 	}
 
 	protected final ArrayList<Building> getNearbyBuildings() {
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
+		ArrayList<Building> buildings = new ArrayList<Building>();
+		Worm.getGameState().getProximityIndex().getCandidates(getX(), getY(), buildings);
 		int n = buildings.size();
 		ArrayList<Building> ret = new ArrayList<Building>();
 		for (int i = 0; i < n; i ++) {
@@ -290,10 +299,10 @@ public abstract class Building extends Entity {
 		// Reset
 		reactors = scanners = batteries = coolingTowers = shields = factories = bases = capacitors = spawners = autoLoaders = warehouses = collectors = crystals = turrets = 0;
 
-		ArrayList<Building> buildings = Worm.getGameState().getBuildings();
-		int n = buildings.size();
+		Worm.getGameState().getProximityIndex().getCandidates(getX(), getY(), GHOST_NEARBY);
+		int n = GHOST_NEARBY.size();
 		for (int i = 0; i < n; i ++) {
-			Building target = buildings.get(i);
+			Building target = GHOST_NEARBY.get(i);
 			if (target == this) {
 				continue;
 			}
@@ -302,10 +311,11 @@ public abstract class Building extends Entity {
 				target.adjustProximity(this, 1);
 			}
 		}
+		GHOST_NEARBY.clear();
 	}
 
 	protected boolean isAffectedBy(Building building) {
-		return feature.isAffectedBy(building.feature);
+		return feature.isAffectedByCached(building.feature);
 	}
 
 	/**
@@ -456,6 +466,16 @@ public abstract class Building extends Entity {
 		entity.onCollisionWithBuilding(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_BUILDING;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return COLLIDE_BULLET | COLLIDE_GIDRAH;
+	}
+
 	/**
 	 * @return the feature this building is based on
 	 */
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import worm.MapRenderer;
+import worm.WormGameState;
+import worm.weapons.WeaponFeature.WeaponInstance;
+
+/**
+ * Uniform grid of buildings, one per category, for finding the building nearest to a gidrah. Buildings are added
+ * to the game state before they are positioned and built, so new buildings are only filed when the index is next
+ * queried.
+ */
+public class BuildingIndex {
+
+	/** Categories */
+	public static final int VALUABLE = 0;
+	public static final int FACTORY = 1;
+	public static final int HEAVY_TURRET = 2;
+	public static final int TURRET = 3;
+	public static final int OTHER = 4;
+	public static final int CATEGORIES = 5;
+
+	/** Query flags: only buildings which are worth attacking */
+	public static final int WORTH_ATTACKING = 1;
+
+	/** Query flags: ignore factories which are shut down */
+	public static final int NOT_SHUTDOWN = 2;
+
+	private static final int CELL_SIZE = 8 * MapRenderer.TILE_SIZE;
+	private static final int GRID_SIZE = (WormGameState.ABS_MAX_SIZE * MapRenderer.TILE_SIZE + CELL_SIZE - 1) / CELL_SIZE;
+
+	/** Buildings in each category and cell, allocated on demand */
+	private final ArrayList<?>[] cells = new ArrayList<?>[CATEGORIES * GRID_SIZE * GRID_SIZE];
+
+	/** Number of buildings in each category */
+	private final int[] count = new int[CATEGORIES];
+
+	/** Buildings added but not yet filed */
+	private final ArrayList<Building> pending = new ArrayList<Building>();
+
+	/** Distance to the building found by the last call to {@link #findNearest(int, float, float, float, int)} */
+	private float foundDistance;
+
+	/** Search state */
+	private Building searchClosest;
+	private float searchDist;
+
+	/**
+	 * C'tor
+	 */
+	public BuildingIndex() {
+	}
+
+	/**
+	 * Add a building
+	 * @param building
+	 */
+	public void add(Building building) {
+		pending.add(building);
+	}
+
+	/**
+	 * Remove a building
+	 * @param building
+	 */
+	public void remove(Building building) {
+		if (pending.remove(building)) {
+			return;
+		}
+		if (building.indexCell > 0 && getCell(building.indexCategory, building.indexCell - 1).remove(building)) {
+			count[building.indexCategory] --;
+		}
+		building.indexCell = 0;
+	}
+
+	/**
+	 * Remove all buildings
+	 */
+	public void clear() {
+		for (int i = 0; i < cells.length; i ++) {
+			if (cells[i] != null) {
+				cells[i].clear();
+			}
+		}
+		for (int i = 0; i < CATEGORIES; i ++) {
+			count[i] = 0;
+		}
+		pending.clear();
+	}
+
+	/**
+	 * @return the category a building falls in, as far as gidrahs are concerned
+	 */
+	public static int getCategory(Building building) {
+		if (building.isApparentlyValuable()) {
+			return VALUABLE;
+		} else if (building instanceof Factory) {
+			return FACTORY;
+		} else if (building instanceof Turret) {
+			WeaponInstance weapon = ((Turret) building).getWeapon();
+			if (weapon != null && weapon.getFeature().isHeavyWeapon()) {
+				return HEAVY_TURRET;
+			} else {
+				return TURRET;
+			}
+		} else {
+			return OTHER;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayList<Building> getCell(int category, int cell) {
+		int idx = category * GRID_SIZE * GRID_SIZE + cell;
+		ArrayList<Building> ret = (ArrayList<Building>) cells[idx];
+		if (ret == null) {
+			ret = new ArrayList<Building>(4);
+			cells[idx] = ret;
+		}
+		return ret;
+	}
+
+	private static int toCell(float coord) {
+		return Math.max(0, Math.min(GRID_SIZE - 1, (int) coord / CELL_SIZE));
+	}
+
+	/**
+	 * File any newly added buildings
+	 */
+	private void flush() {
+		for (int i = pending.size(); -- i >= 0; ) {
+			Building building = pending.get(i);
+			int category = getCategory(building);
+			int cell = toCell(building.getX()) + toCell(building.getY()) * GRID_SIZE;
+			getCell(category, cell).add(building);
+			building.indexCategory = category;
+			building.indexCell = cell + 1;
+			count[category] ++;
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Get all the buildings in a category
+	 * @param category
+	 * @param dest
+	 */
+	public void getBuildings(int category, List<Building> dest) {
+		flush();
+		if (count[category] == 0) {
+			return;
+		}
+		int base = category * GRID_SIZE * GRID_SIZE;
+		for (int i = 0; i < GRID_SIZE * GRID_SIZE; i ++) {
+			if (cells[base + i] != null) {
+				dest.addAll(getCell(category, i));
+			}
+		}
+	}
+
+	/**
+	 * Find the building with the smallest distance multiplied by its category's factor. Only active, uncloaked
+	 * buildings which gidrahs can attack are considered.
+	 * @param x
+	 * @param y
+	 * @param factors Distance factor for each category; categories with negative factors are ignored
+	 * @param flags Query flags
+	 * @return the building, or null
+	 */
+	public Building findNearest(float x, float y, float[] factors, int flags) {
+		flush();
+		Building closest = null;
+		float closestDist = Float.MAX_VALUE;
+		for (int category = 0; category < CATEGORIES; category ++) {
+			float factor = factors[category];
+			if (factor < 0.0f || factor == 0.0f && closestDist == 0.0f) {
+				continue;
+			}
+			Building found = findNearest(category, x, y, factor > 0.0f ? closestDist / factor : Float.MAX_VALUE, flags);
+			if (found != null) {
+				closestDist = foundDistance * factor;
+				closest = found;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Find the nearest building in a category, by searching outwards ring by ring
+	 * @return the building, or null if there isn't one closer than maxDist
+	 */
+	private Building findNearest(int category, float x, float y, float maxDist, int flags) {
+		if (count[category] == 0) {
+			return null;
+		}
+		int cx = toCell(x), cy = toCell(y);
+		int base = category * GRID_SIZE * GRID_SIZE;
+		searchClosest = null;
+		searchDist = maxDist;
+		for (int r = 0; r < GRID_SIZE; r ++) {
+			// Nothing in this ring or beyond can be closer than this
+			if (r > 0 && (r - 1) * CELL_SIZE >= searchDist) {
+				break;
+			}
+			for (int yy = Math.max(0, cy - r); yy <= Math.min(GRID_SIZE - 1, cy + r); yy ++) {
+				if (yy == cy - r || yy == cy + r) {
+					for (int xx = Math.max(0, cx - r); xx <= Math.min(GRID_SIZE - 1, cx + r); xx ++) {
+						searchCell(base + xx + yy * GRID_SIZE, x, y, flags);
+					}
+				} else {
+					if (cx - r >= 0) {
+						searchCell(base + cx - r + yy * GRID_SIZE, x, y, flags);
+					}
+					if (cx + r < GRID_SIZE) {
+						searchCell(base + cx + r + yy * GRID_SIZE, x, y, flags);
+					}
+				}
+			}
+		}
+		Building ret = searchClosest;
+		searchClosest = null;
+		foundDistance = searchDist;
+		return ret;
+	}
+
+	private void searchCell(int idx, float x, float y, int flags) {
+		ArrayList<?> cell = cells[idx];
+		if (cell == null) {
+			return;
+		}
+		for (int i = cell.size(); -- i >= 0; ) {
+			Building building = (Building) cell.get(i);
+			if (!building.isActive() || building.isCloaked() || !building.isAttackableByGidrahs()) {
+				continue;
+			}
+			if ((flags & WORTH_ATTACKING) != 0 && !building.isWorthAttacking()) {
+				continue;
+			}
+			if ((flags & NOT_SHUTDOWN) != 0 && building instanceof Factory && ((Factory) building).isShutdown()) {
+				continue;
+			}
+			float dx = building.getX() - x, dy = building.getY() - y;
+			float dist = (float) Math.sqrt(dx * dx + dy * dy);
+			if (dist < searchDist) {
+				searchDist = dist;
+				searchClosest = building;
+			}
+		}
+	}
+}
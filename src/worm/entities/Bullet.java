@@ -41,11 +41,10 @@ import net.puppygames.applet.effects.EmitterFeature;
 import org.lwjgl.util.Rectangle;
 
 import worm.Entity;
-import worm.GameMap;
 import worm.GameStateInterface;
 import worm.MapRenderer;
+import worm.RaycastCallback;
 import worm.SFX;
-import worm.Tile;
 import worm.Worm;
 import worm.features.BulletFeature;
 import worm.features.LayersFeature;
@@ -54,6 +53,7 @@ import worm.screens.GameScreen;
 
 import com.shavenpuppy.jglib.interpolators.SineInterpolator;
 import com.shavenpuppy.jglib.util.FPMath;
+import com.shavenpuppy.jglib.util.IntList;
 import com.shavenpuppy.jglib.util.Util;
 
 
@@ -69,7 +69,32 @@ public class Bullet extends Entity {
 	private static final int MAX_REMAINING_RANGE = 30;
 	private static final double JITTER = Math.PI / 32.0;
 
+	/** Entities a bullet will touch this tick, and the substeps at which it first touches them */
 	private static final ArrayList<Entity> SHOOTABLE_ENTITIES = new ArrayList<Entity>();
+	private static final IntList SHOOTABLE_STEPS = new IntList(16);
+
+	private static final Sweep SWEEP = new Sweep();
+
+	/**
+	 * Files the entities found by a bullet's sweep against the substep at which the bullet reaches them
+	 */
+	private static class Sweep implements RaycastCallback {
+
+		Bullet bullet;
+		int firstStep;
+
+		/** Length of a substep, which is not quite a pixel when the bullet is aimed at a point */
+		float stepLength;
+
+		@Override
+		public boolean onHit(Entity entity, float near, float far) {
+			if (entity != bullet) {
+				SHOOTABLE_ENTITIES.add(entity);
+				SHOOTABLE_STEPS.add(firstStep + Math.max(0, (int) Math.ceil(near / stepLength) - 1));
+			}
+			return false;
+		}
+	}
 
 
 	/** Range, in ticks */
@@ -224,6 +249,16 @@ public class Bullet extends Entity {
 		entity.onCollisionWithBullet(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_BULLET;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return COLLIDE_BULLET;
+	}
+
 	@Override
 	public void onCollisionWithBullet(Bullet bullet) {
 		if (bullet.dangerousToBuildings != dangerousToBuildings) {
@@ -263,7 +298,7 @@ public class Bullet extends Entity {
 
 		// Now reflect about this angle
 		double diff = Math.atan2(dy, dx) - angleOfCollision;
-		double reflection = angleOfCollision + Math.PI - diff + Math.random() * JITTER - JITTER * 0.5;
+		double reflection = angleOfCollision + Math.PI - diff + Util.random() * JITTER - JITTER * 0.5;
 		dx = (float) Math.cos(reflection);
 		dy = (float) Math.sin(reflection);
 		calcAngle();
@@ -403,6 +438,10 @@ public class Bullet extends Entity {
 
 			int tileX = (int) (getX() / MapRenderer.TILE_SIZE);
 			int tileY = (int) (getY() / MapRenderer.TILE_SIZE);
+			int nextShootable = 0;
+			if (canCollide()) {
+				sweep(0, ms);
+			}
 			for (int i = 0; i < ms && isActive(); i ++) {
 				tick ++;
 				move();
@@ -432,16 +471,23 @@ public class Bullet extends Entity {
 				}
 
 				if (canCollide()) {
-					checkCollisions(SHOOTABLE_ENTITIES);
-
-					for (int j = 0; j < SHOOTABLE_ENTITIES.size(); j ++) {
-						Entity target = SHOOTABLE_ENTITIES.get(j);
+					float oldDx = dx, oldDy = dy;
+					while (nextShootable < SHOOTABLE_ENTITIES.size() && SHOOTABLE_STEPS.get(nextShootable) <= i) {
+						Entity target = SHOOTABLE_ENTITIES.get(nextShootable ++);
+						if (!target.isActive() || !target.canCollide()) {
+							continue;
+						}
 						this.onCollision(target);
 						target.onCollision(this);
 						if (!isActive()) {
 							return;
 						}
 					}
+					if (dx != oldDx || dy != oldDy) {
+						// Bounced off something, so the rest of the sweep is no good
+						sweep(i + 1, ms);
+						nextShootable = 0;
+					}
 				}
 
 				// Check for collision with solid things
@@ -450,32 +496,24 @@ public class Bullet extends Entity {
 				if (newTileX != tileX || newTileY != tileY) {
 					tileX = newTileX;
 					tileY = newTileY;
-					boolean inWall = false;
-					outer: for (int z = 0; z < GameMap.LAYERS; z ++) {
-						Tile t = Worm.getGameState().getMap().getTile(tileX, tileY, z);
-						if (t != null && !t.isBulletThrough()) {
-							switch (wallThruState) {
-								case WALLTHRU_UNKNOWN:
-									// We're in a wall
-									wallThruState = WALLTHRU_IN_WALL;
-									inWall = true;
-									break outer;
-								case WALLTHRU_IN_WALL:
-									// Still in a wall
-									inWall = true;
-									break outer;
-								case WALLTHRU_NORMAL:
-									// Hit something
-									SFX.ricochet(getMapX(), getMapY(), 1.0f);
-									ricochet();
-									return;
-								default:
-									assert false : wallThruState;
-							}
+					if (Worm.getGameState().getMap().blocksBullets(tileX, tileY)) {
+						switch (wallThruState) {
+							case WALLTHRU_UNKNOWN:
+								// We're in a wall
+								wallThruState = WALLTHRU_IN_WALL;
+								break;
+							case WALLTHRU_IN_WALL:
+								// Still in a wall
+								break;
+							case WALLTHRU_NORMAL:
+								// Hit something
+								SFX.ricochet(getMapX(), getMapY(), 1.0f);
+								ricochet();
+								return;
+							default:
+								assert false : wallThruState;
 						}
-					}
-
-					if (!inWall) {
+					} else {
 						wallThruState = WALLTHRU_NORMAL;
 					}
 				}
@@ -502,6 +540,25 @@ public class Bullet extends Entity {
 		}
 	}
 
+	/**
+	 * Sweep the bullet along its heading for the rest of this tick, gathering what it'll hit in SHOOTABLE_ENTITIES
+	 * @param step The substep the bullet is about to take
+	 * @param steps The number of substeps this tick
+	 */
+	private void sweep(int step, int steps) {
+		SHOOTABLE_ENTITIES.clear();
+		SHOOTABLE_STEPS.clear();
+		int length = steps - step;
+		if (length <= 0) {
+			return;
+		}
+		SWEEP.bullet = this;
+		SWEEP.firstStep = step;
+		SWEEP.stepLength = (float) Math.sqrt(dx * dx + dy * dy);
+		Entity.sweep(getX(), getY(), getX() + dx * length, getY() + dy * length, getRadius(), SWEEP.stepLength, COLLIDE_ALL, SWEEP);
+		SWEEP.bullet = null;
+	}
+
 	private void move() {
 		setLocation(getMapX() + dx, getMapY() + dy);
 	}
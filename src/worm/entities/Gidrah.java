@@ -32,6 +32,7 @@
 package worm.entities;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 import net.puppygames.applet.Game;
 import net.puppygames.applet.Screen;
@@ -275,10 +276,8 @@ public class Gidrah extends Entity {
 	 * Rethink routes
 	 */
 	public static void rethinkRoutes(Rectangle bounds) {
-		ArrayList<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
-		int n = gidrahs.size();
-		for (int i = 0; i < n; i ++) {
-			Gidrah g = gidrahs.get(i);
+		Collection<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
+		for (Gidrah g : gidrahs) {
 			g.movement.maybeRethink(bounds);
 		}
 	}
@@ -287,10 +286,8 @@ public class Gidrah extends Entity {
 	 * Rethink all targets
 	 */
 	public static void rethinkTargets() {
-		ArrayList<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
-		int n = gidrahs.size();
-		for (int i = 0; i < n; i ++) {
-			Gidrah g = gidrahs.get(i);
+		Collection<Gidrah> gidrahs = Worm.getGameState().getGidrahs();
+		for (Gidrah g : gidrahs) {
 			g.findTarget();
 		}
 	}
@@ -385,6 +382,16 @@ public class Gidrah extends Entity {
 		entity.onCollisionWithGidrah(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_GIDRAH;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return COLLIDE_BUILDING | COLLIDE_BULLET | COLLIDE_SMARTBOMB;
+	}
+
 	@Override
 	public void onCollisionWithSmartbomb(Smartbomb smartbomb) {
 		if (smartbombs == null) {
@@ -1249,7 +1256,7 @@ public class Gidrah extends Entity {
 					} else {
 						float xx = spawned.getMapX() + MapRenderer.TILE_SIZE / 2;
 						float yy = spawned.getMapY() + MapRenderer.TILE_SIZE / 2;
-						double angle = Math.random() * Math.PI * 2.0;
+						double angle = Util.random() * Math.PI * 2.0;
 						float dist = range.getValue();
 						xx += Math.cos(angle) * dist;
 						yy += Math.sin(angle) * dist;
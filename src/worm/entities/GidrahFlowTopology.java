@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.entities;
+
+import worm.GameMap;
+import worm.path.ClusterGraph;
+import worm.path.Topology;
+
+import com.shavenpuppy.jglib.util.FPMath;
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Topology shared by every gidrah of the same movement class, used to build flow fields. Only costs that are
+ * the same for every gidrah in the class are considered; occupation and attacking squares change every tick
+ * and are checked by each gidrah's own {@link GidrahGameMapTopology} as it steps along the field.
+ */
+class GidrahFlowTopology implements Topology {
+
+	private static final float DIAGONAL_FACTOR = 1.4142135623730950488016887242097f;
+
+	final GameMap map;
+	final boolean diagonal, wraith;
+	final int armour;
+	final float avoidanceFactor;
+	final int width, height;
+
+	/** Cluster abstraction for long-distance searches, created when first needed */
+	private ClusterGraph clusterGraph;
+
+	/**
+	 * C'tor
+	 */
+	GidrahFlowTopology(GameMap map, boolean diagonal, boolean wraith, int armour, float avoidanceFactor) {
+		this.map = map;
+		this.diagonal = diagonal;
+		this.wraith = wraith;
+		this.armour = armour;
+		this.avoidanceFactor = avoidanceFactor;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+	}
+
+	/**
+	 * Determines whether this topology is the one to use for the specified movement class
+	 */
+	boolean matches(GameMap map, boolean diagonal, boolean wraith, int armour, float avoidanceFactor) {
+		return this.map == map && this.diagonal == diagonal && this.wraith == wraith && this.armour == armour && this.avoidanceFactor == avoidanceFactor;
+	}
+
+	/**
+	 * @return the cluster graph for hierarchical searches over this topology
+	 */
+	ClusterGraph getClusterGraph() {
+		if (clusterGraph == null) {
+			clusterGraph = new ClusterGraph(this, ClusterGraph.DEFAULT_CLUSTER_SIZE);
+		}
+		return clusterGraph;
+	}
+
+	/**
+	 * Notification that part of the map has changed
+	 */
+	void invalidate(int x, int y, int w, int h) {
+		if (clusterGraph != null) {
+			clusterGraph.invalidate(x, y, w, h);
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public int getCost(int from, int to) {
+		if (from == to) {
+			return 0;
+		}
+
+		int sx = GidrahGameMapTopology.getX(from);
+		int sy = GidrahGameMapTopology.getY(from);
+		int tx = GidrahGameMapTopology.getX(to);
+		int ty = GidrahGameMapTopology.getY(to);
+		float bias = SPEED_SCALE * (wraith ? 0.0f : Math.max(0.0f, map.getDanger(tx, ty) - armour)) * avoidanceFactor;
+		int cost = wraith ? NORMAL_COST : map.getCost(tx, ty);
+		int difficulty = wraith ? 0 : map.getDifficulty(tx, ty);
+		int steps = Math.abs(tx - sx) + Math.abs(ty - sy);
+		if (cost != NORMAL_COST && cost != BOG_COST) {
+			// Roads mean we worry much less about danger or difficulty
+			bias *= 0.25f;
+			difficulty >>= 1;
+		}
+
+		if (diagonal) {
+			if (steps == 2) {
+				return FPMath.fpValue(bias) + cost + FPMath.fpValue(difficulty);
+			} else {
+				return (int) (cost * DIAGONAL_FACTOR + FPMath.fpValue(DIAGONAL_FACTOR * bias)  + FPMath.fpValue(difficulty * DIAGONAL_FACTOR)) * 5;
+			}
+		} else {
+			if (steps == 1) {
+				return FPMath.fpValue(bias) + cost + FPMath.fpValue(difficulty);
+			} else {
+				return (int) (cost * DIAGONAL_FACTOR) + FPMath.fpValue(DIAGONAL_FACTOR * bias) + FPMath.fpValue(difficulty * DIAGONAL_FACTOR);
+			}
+		}
+	}
+
+	@Override
+	public int getDistance(int from, int to) {
+		int dx = GidrahGameMapTopology.getX(from) - GidrahGameMapTopology.getX(to);
+		int dy = GidrahGameMapTopology.getY(from) - GidrahGameMapTopology.getY(to);
+		return FPMath.fpValue(Math.sqrt(dx * dx + dy * dy));
+	}
+
+	@Override
+	public void getNeighbours(int node, int parent, IntList dest) {
+		dest.clear();
+
+		int x = GidrahGameMapTopology.getX(node);
+		int y = GidrahGameMapTopology.getY(node);
+		for (int dy = -1; dy <= 1; dy ++) {
+			for (int dx = -1; dx <= 1; dx ++) {
+				if (dx == 0 && dy == 0) {
+					continue;
+				}
+				int n = GidrahGameMapTopology.pack(x + dx, y + dy);
+				if (n != parent && !isImpassable(x + dx, y + dy)) {
+					dest.add(n);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines whether the specified map location is impassable terrain
+	 * @param x
+	 * @param y
+	 * @return true if the terrain can't be crossed
+	 */
+	boolean isImpassable(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return true;
+		}
+		return map.isImpassable(x, y);
+	}
+}
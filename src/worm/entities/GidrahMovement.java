@@ -46,12 +46,17 @@ import worm.MapRenderer;
 import worm.Worm;
 import worm.WormGameState;
 import worm.features.GidrahFeature;
-import worm.path.AStar;
+import worm.path.FlowField;
+import worm.path.FlowFieldCache;
+import worm.path.GridAStar;
+import worm.path.HierarchicalPathFinder;
+import worm.path.PathFinder;
 
 import com.shavenpuppy.jglib.interpolators.CosineInterpolator;
 import com.shavenpuppy.jglib.interpolators.LinearInterpolator;
 import com.shavenpuppy.jglib.interpolators.OpenLinearInterpolator;
 import com.shavenpuppy.jglib.util.IntList;
+import com.shavenpuppy.jglib.util.Profiler;
 import com.shavenpuppy.jglib.util.Util;
 
 /**
@@ -81,9 +86,30 @@ class GidrahMovement implements Movement {
 	private static final float DANGER_SPEEDUP_FACTOR = 0.5f;
 	private static final int RETHINK_MAX = 300;
 	private static final int MAX_FAILS = 100;
+	private static final int MAX_FLOW_FIELDS = 64;
+	private static final int MAX_TOTAL_FLOW_TIME = 2048; // States expanded building and repairing flow fields, per tick
+	private static final int PROFILE_THINK = Profiler.register("GidrahMovement.think");
+	private static final int HIERARCHICAL_DISTANCE = 32; // Use hierarchical pathfinding when further away than this
+
+	/** Results of trying to follow a flow field */
+	private static final int FLOW_FOLLOWED = 0, FLOW_PENDING = 1, FLOW_BLOCKED = 2;
+
+	/** Flow fields shared by all gidrahs heading for the same target */
+	private static final FlowFieldCache FLOW_FIELDS = new FlowFieldCache(MAX_FLOW_FIELDS);
+
+	/** Topologies for each class of gidrah movement */
+	private static final List<GidrahFlowTopology> FLOW_TOPOLOGIES = new ArrayList<GidrahFlowTopology>();
+
+	/** The map the flow fields were built for */
+	private static GameMap flowMap;
+
+	private static final Rectangle CHANGED = new Rectangle();
 
 	public static int totalThinkTime;
 
+	/** Flow field building done this tick */
+	private static int totalFlowTime;
+
 	private static class PointPair implements Serializable {
 		private static final long serialVersionUID = 1L;
 
@@ -115,7 +141,7 @@ class GidrahMovement implements Movement {
 	private final Gidrah gidrah;
 
 	/** Pathfinding */
-	private final AStar astar;
+	private final GridAStar astar;
 
 	/** Topology */
 	private final GidrahGameMapTopology topology;
@@ -141,6 +167,9 @@ class GidrahMovement implements Movement {
 	/** Thinking */
 	private boolean thinking;
 
+	/** Thinking, but only waiting for our flow field to be built */
+	private boolean waitingForFlowField;
+
 	/** Knocked back */
 	private boolean knockedBack;
 
@@ -162,6 +191,15 @@ class GidrahMovement implements Movement {
 	/** Fail count */
 	private int failCount;
 
+	/** Flow field topology for our movement class */
+	private transient GidrahFlowTopology flowTopology;
+
+	/** Hierarchical pathfinding for long distances */
+	private transient HierarchicalPathFinder hierarchical;
+
+	/** The pathfinder in use: either astar or hierarchical */
+	private transient PathFinder finder;
+
 	/**
 	 * C'tor
 	 */
@@ -173,7 +211,7 @@ class GidrahMovement implements Movement {
 
 		diagonal = feature.getDiagonal();
 		topology = new GidrahGameMapTopology(this);
-		astar = new AStar(topology);
+		astar = new GridAStar(topology);
 		if (!feature.isGidlet()) {
 			map.setOccupied(occupiedX = gidrah.getTileX(), occupiedY = gidrah.getTileY());
 		}
@@ -201,6 +239,7 @@ class GidrahMovement implements Movement {
 		targetMapX = occupiedX * MapRenderer.TILE_SIZE;
 		targetMapY = occupiedY * MapRenderer.TILE_SIZE;
 		thinking = false;
+		waitingForFlowField = false;
 		paused = false;
 
 		float dx = targetMapX - sourceMapX;
@@ -259,6 +298,9 @@ class GidrahMovement implements Movement {
 	@Override
 	public void remove() {
 		astar.cancel();
+		if (hierarchical != null) {
+			hierarchical.cancel();
+		}
 
 		if (!feature.isGidlet()) {
 			map.clearOccupied(occupiedX, occupiedY);
@@ -287,7 +329,9 @@ class GidrahMovement implements Movement {
 			}
 		} else {
 			if (thinking) {
+				long profileThen = Profiler.begin();
 				think();
+				Profiler.end(PROFILE_THINK, profileThen);
 				if (thinking) {
 					// Still thinking
 					return;
@@ -420,7 +464,9 @@ class GidrahMovement implements Movement {
 
 		path.clear();
 
-		startAndEnd = new PointPair();
+		if (startAndEnd == null) {
+			startAndEnd = new PointPair();
+		}
 		startAndEnd.a.setLocation(gidrah.getTileX(), gidrah.getTileY());
 		Entity target = gidrah.getTarget();
 		startAndEnd.b.setLocation(target.getTileX(), target.getTileY());
@@ -446,11 +492,110 @@ class GidrahMovement implements Movement {
 			return;
 		}
 
-		astar.findPath(GidrahGameMapTopology.pack(gidrah.getTileX(), gidrah.getTileY()), GidrahGameMapTopology.pack(target.getTileX(), target.getTileY()), path);
+		// Follow the shared flow field if we can; we only need our own A* search if the way is blocked
+		switch (followFlowField(target)) {
+			case FLOW_FOLLOWED:
+				return;
+			case FLOW_PENDING:
+				// Wait for the field to be built a bit more before trying again
+				waitingForFlowField = true;
+				thinking = true;
+				return;
+			default:
+				break;
+		}
+
+		// A long way to go? Plan a rough route through the map's clusters, and just the first part of it in detail
+		if (Math.max(Math.abs(target.getTileX() - gidrah.getTileX()), Math.abs(target.getTileY() - gidrah.getTileY())) > HIERARCHICAL_DISTANCE) {
+			if (hierarchical == null || hierarchical.getGraph() != flowTopology.getClusterGraph()) {
+				hierarchical = new HierarchicalPathFinder(flowTopology.getClusterGraph(), HierarchicalPathFinder.DEFAULT_REFINE_CLUSTERS, topology);
+			}
+			finder = hierarchical;
+		} else {
+			finder = astar;
+		}
+		finder.findPath(GidrahGameMapTopology.pack(gidrah.getTileX(), gidrah.getTileY()), GidrahGameMapTopology.pack(target.getTileX(), target.getTileY()), path);
 		thinking = true;
 		//think();
 	}
 
+	/**
+	 * Search for a route to the target with our own A* search, which knows about occupied and attacked squares
+	 */
+	private void searchLocally() {
+		Entity target = gidrah.getTarget();
+		finder = astar;
+		astar.findPath(GidrahGameMapTopology.pack(gidrah.getTileX(), gidrah.getTileY()), GidrahGameMapTopology.pack(target.getTileX(), target.getTileY()), path);
+	}
+
+	/**
+	 * Take the next step along the shared flow field leading to the target. Building and repairing the field
+	 * comes out of the per-tick flow budget.
+	 * @param target The target
+	 * @return FLOW_FOLLOWED if we've taken a step, FLOW_PENDING if the field hasn't got as far as us yet, or
+	 * FLOW_BLOCKED if we need to calculate a path with A* instead
+	 */
+	private int followFlowField(Entity target) {
+		if (flowTopology == null || flowTopology.map != map) {
+			flowTopology = getFlowTopology(map, diagonal, feature.isWraith(), feature.getArmour(), feature.getBrain().getAvoidanceFactor());
+		}
+		FlowField field = FLOW_FIELDS.getField(flowTopology, GidrahGameMapTopology.pack(target.getTileX(), target.getTileY()));
+		if (!field.isReady() && totalFlowTime < MAX_TOTAL_FLOW_TIME) {
+			totalFlowTime += field.update(MAX_TOTAL_FLOW_TIME - totalFlowTime);
+		}
+		int nextState = field.getNext(GidrahGameMapTopology.pack(gidrah.getTileX(), gidrah.getTileY()));
+		if (nextState == -1) {
+			return field.isReady() ? FLOW_BLOCKED : FLOW_PENDING;
+		}
+		path.add(nextState);
+		if (next()) {
+			// Don't hang on to an old search while we're following the field
+			astar.cancel();
+			// We've rethought our route, so remove from the queue if we're in there
+			if (QUEUESET.contains(this)) {
+				QUEUESET.remove(this);
+				QUEUE.remove(this);
+			}
+			return FLOW_FOLLOWED;
+		}
+		path.clear();
+		return FLOW_BLOCKED;
+	}
+
+	private static GidrahFlowTopology getFlowTopology(GameMap map, boolean diagonal, boolean wraith, int armour, float avoidanceFactor) {
+		for (int i = 0; i < FLOW_TOPOLOGIES.size(); i ++) {
+			GidrahFlowTopology t = FLOW_TOPOLOGIES.get(i);
+			if (t.matches(map, diagonal, wraith, armour, avoidanceFactor)) {
+				return t;
+			}
+		}
+		GidrahFlowTopology t = new GidrahFlowTopology(map, diagonal, wraith, armour, avoidanceFactor);
+		FLOW_TOPOLOGIES.add(t);
+		return t;
+	}
+
+	/**
+	 * Keep the flow fields in step with the map. Anything that changed since last tick is repaired next time
+	 * the fields are used.
+	 */
+	private static void updateFlowFields() {
+		GameMap map = Worm.getGameState().getMap();
+		if (map == null) {
+			return;
+		}
+		if (map != flowMap) {
+			FLOW_FIELDS.clear();
+			FLOW_TOPOLOGIES.clear();
+			flowMap = map;
+			map.takePathChanges(CHANGED);
+		} else if (map.takePathChanges(CHANGED)) {
+			FLOW_FIELDS.invalidate(CHANGED.getX(), CHANGED.getY(), CHANGED.getWidth(), CHANGED.getHeight());
+			for (int i = 0; i < FLOW_TOPOLOGIES.size(); i ++) {
+				FLOW_TOPOLOGIES.get(i).invalidate(CHANGED.getX(), CHANGED.getY(), CHANGED.getWidth(), CHANGED.getHeight());
+			}
+		}
+	}
+
 	/**
 	 * Take the next step along our chosen path.
 	 * @return false if we need to calculate a new path
@@ -497,21 +642,36 @@ class GidrahMovement implements Movement {
 	 * we still haven't found anything, just return.
 	 */
 	void think() {
+		if (waitingForFlowField) {
+			waitingForFlowField = false;
+			chooseDestination();
+			return;
+		}
 //		long timeThen = Sys.getTime();
 		for (int i = 0; i < MAX_THINK_TIME && ++totalThinkTime < MAX_TOTAL_THINK_TIME; i ++) {
 //			System.out.println("Step "+i);
-			switch (astar.nextStep()) {
-				case AStar.SEARCH_STATE_SUCCEEDED:
+			if (finder == null) {
+				finder = astar;
+			}
+			switch (finder.nextStep()) {
+				case PathFinder.SEARCH_STATE_SUCCEEDED:
 					failCount = 0;
 //					long timeNow = Sys.getTime();
 					//System.out.println("Route found: "+((double)(timeNow - timeThen)) / Sys.getTimerResolution()+"s, path "+path.size()+", steps "+astar.getNumSteps());
 					// Found the goal! Move one step closer.
 //					System.out.println("Gidrah "+gidrah+" found goal in "+astar.getNumSteps()+" steps");
-					startAndEnd = new PointPair();
+					if (startAndEnd == null) {
+						startAndEnd = new PointPair();
+					}
 					startAndEnd.a.setLocation(gidrah.getTileX(), gidrah.getTileY());
 					startAndEnd.b.setLocation(gidrah.getTarget().getTileX(), gidrah.getTarget().getTileY());
 
 					if (!next()) {
+						if (finder == hierarchical) {
+							// The rough route is blocked for us after all
+							searchLocally();
+							return;
+						}
 						chooseDestination();
 					}
 					// Remove from the queue if we're in there
@@ -520,7 +680,12 @@ class GidrahMovement implements Movement {
 						QUEUE.remove(this);
 					}
 					return;
-				case AStar.SEARCH_STATE_FAILED:
+				case PathFinder.SEARCH_STATE_FAILED:
+					if (finder == hierarchical) {
+						// Let our own search decide; it knows about squares the shared graph doesn't
+						searchLocally();
+						return;
+					}
 					// Total failure. Wait a bit then think again.
 //					System.out.println("Gidrah "+gidrah+" totally failed to find goal after "+astar.getNumSteps()+" steps");
 					thinking = false;
@@ -537,7 +702,7 @@ class GidrahMovement implements Movement {
 						gidrah.onMovementFail();
 					}
 					return;
-				case AStar.SEARCH_STATE_SEARCHING:
+				case PathFinder.SEARCH_STATE_SEARCHING:
 					// Carry on searching;
 					break;
 				default:
@@ -589,9 +754,10 @@ class GidrahMovement implements Movement {
 		}
 	}
 
-
 	public static void resetTotalThinkTime() {
 		totalThinkTime = 0;
+		totalFlowTime = 0;
+		updateFlowFields();
 		// Also process queue
 		processQueue();
 	}
@@ -599,5 +765,8 @@ class GidrahMovement implements Movement {
 	public static void init() {
 		QUEUE.clear();
 		QUEUESET.clear();
+		FLOW_FIELDS.clear();
+		FLOW_TOPOLOGIES.clear();
+		flowMap = null;
 	}
 }
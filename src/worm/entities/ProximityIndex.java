@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import worm.MapRenderer;
+import worm.WormGameState;
+
+/**
+ * Uniform grid of buildings, with cells {@link Building#PROXIMITY_DISTANCE} across, for finding the buildings near
+ * enough to one another to take effect. As with the {@link BuildingIndex}, new buildings are only filed when the index
+ * is next queried.
+ */
+public class ProximityIndex {
+
+	private static final int CELL_SIZE = (int) Building.PROXIMITY_DISTANCE;
+	private static final int GRID_SIZE = (WormGameState.ABS_MAX_SIZE * MapRenderer.TILE_SIZE + CELL_SIZE - 1) / CELL_SIZE;
+
+	/** Buildings in each cell, allocated on demand */
+	private final ArrayList<?>[] cells = new ArrayList<?>[GRID_SIZE * GRID_SIZE];
+
+	/** Buildings added but not yet filed */
+	private final ArrayList<Building> pending = new ArrayList<Building>();
+
+	/**
+	 * C'tor
+	 */
+	public ProximityIndex() {
+	}
+
+	/**
+	 * Add a building
+	 * @param building
+	 */
+	public void add(Building building) {
+		pending.add(building);
+	}
+
+	/**
+	 * Remove a building
+	 * @param building
+	 */
+	public void remove(Building building) {
+		if (pending.remove(building)) {
+			return;
+		}
+		if (building.proximityCell > 0) {
+			getCell(building.proximityCell - 1).remove(building);
+		}
+		building.proximityCell = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayList<Building> getCell(int cell) {
+		ArrayList<Building> ret = (ArrayList<Building>) cells[cell];
+		if (ret == null) {
+			ret = new ArrayList<Building>(4);
+			cells[cell] = ret;
+		}
+		return ret;
+	}
+
+	private static int toCell(float coord) {
+		return Math.max(0, Math.min(GRID_SIZE - 1, (int) coord / CELL_SIZE));
+	}
+
+	/**
+	 * File any newly added buildings
+	 */
+	private void flush() {
+		for (int i = pending.size(); -- i >= 0; ) {
+			Building building = pending.get(i);
+			int cell = toCell(building.getX()) + toCell(building.getY()) * GRID_SIZE;
+			getCell(cell).add(building);
+			building.proximityCell = cell + 1;
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Get the buildings which might be within {@link Building#PROXIMITY_DISTANCE} of a point: everything in its cell
+	 * and the cells around it
+	 * @param x
+	 * @param y
+	 * @param dest Receives the buildings, in no particular order
+	 */
+	public void getCandidates(float x, float y, List<Building> dest) {
+		flush();
+		int cx = toCell(x), cy = toCell(y);
+		for (int yy = Math.max(0, cy - 1); yy <= Math.min(GRID_SIZE - 1, cy + 1); yy ++) {
+			for (int xx = Math.max(0, cx - 1); xx <= Math.min(GRID_SIZE - 1, cx + 1); xx ++) {
+				ArrayList<?> cell = cells[xx + yy * GRID_SIZE];
+				if (cell != null) {
+					for (int i = 0; i < cell.size(); i ++) {
+						dest.add((Building) cell.get(i));
+					}
+				}
+			}
+		}
+	}
+}
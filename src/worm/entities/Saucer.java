@@ -31,7 +31,7 @@
  */
 package worm.entities;
 
-import java.util.ArrayList;
+import java.util.Collection;
 
 import net.puppygames.applet.Game;
 import net.puppygames.applet.Screen;
@@ -48,7 +48,6 @@ import worm.GameStateInterface;
 import worm.Layers;
 import worm.MapRenderer;
 import worm.Res;
-import worm.Tile;
 import worm.Worm;
 import worm.WormGameState;
 import worm.effects.SaucerEffect;
@@ -132,26 +131,21 @@ public class Saucer extends Entity {
 			// Find an empty spot on the map;
 			int count = 0;
 			boolean ok = false;
-			ArrayList<Entity> entities = Worm.getGameState().getEntities();
-			int n = entities.size();
+			Collection<Entity> entities = Worm.getGameState().getEntities();
 			int x, y;
 			GameMap map = Worm.getGameState().getMap();
 			outer: while (++count < 1000 && !ok) {
 				x = Util.random(MapRenderer.FADE_SIZE, map.getWidth() - MapRenderer.FADE_SIZE);
 				y = Util.random(MapRenderer.FADE_SIZE, map.getHeight() - MapRenderer.FADE_SIZE);
-				for (int z = 0; z < GameMap.LAYERS; z ++) {
-					Tile t = map.getTile(x, y, z);
-					if (t != null && (t.isSolid() || t.isImpassable())) {
-						continue outer;
-					}
+				if (map.isImpassable(x, y)) {
+					continue outer;
 				}
 
 				setLocation(x * MapRenderer.TILE_SIZE + MapRenderer.TILE_SIZE / 2, y * MapRenderer.TILE_SIZE + MapRenderer.TILE_SIZE / 2);
 
 				// Check no solid entity in the way
 				// TODO: use quadtree
-				for (int i = 0; i < n; i ++) {
-					Entity entity = entities.get(i);
+				for (Entity entity : entities) {
 					if (entity != this && entity.isActive() && entity.isSolid() && entity.canCollide() && entity.isTouching(this)) {
 						continue outer;
 					}
@@ -224,6 +218,16 @@ public class Saucer extends Entity {
 		entity.onCollisionWithSaucer(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_SAUCER;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return COLLIDE_SMARTBOMB;
+	}
+
 	private void kill() {
 		WormGameState gameState = Worm.getGameState();
 
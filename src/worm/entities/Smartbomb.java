@@ -120,6 +120,16 @@ public class Smartbomb extends Entity {
 		entity.onCollisionWithSmartbomb(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_SMARTBOMB;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return 0;
+	}
+
 	@Override
 	public float getRadius() {
 		if (effect == null) {
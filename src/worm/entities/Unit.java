@@ -216,6 +216,16 @@ public class Unit extends Entity implements PlayerWeaponInstallation {
 		entity.onCollisionWithUnit(this);
 	}
 
+	@Override
+	public int getCollisionCategory() {
+		return COLLIDE_UNIT;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return COLLIDE_BULLET | COLLIDE_GIDRAH;
+	}
+
 	@Override
 	public void onCollisionWithBullet(Bullet bullet) {
 		if (bullet.isExploding() || bullet.isPassThrough()) {
@@ -583,10 +593,7 @@ public class Unit extends Entity implements PlayerWeaponInstallation {
 			return false;
 		}
 
-		ArrayList<Entity> entities = Worm.getGameState().getEntities();
-		int n = entities.size();
-		for (int i = 0; i < n; i ++) {
-			Entity test = entities.get(i);
+		for (Entity test : Worm.getGameState().getEntities()) {
 			if (test == this) {
 				continue;
 			}
@@ -34,7 +34,6 @@ package worm.entities;
 import java.io.Serializable;
 
 import worm.GameMap;
-import worm.Tile;
 import worm.Worm;
 import worm.WormGameState;
 import worm.path.Topology;
@@ -204,15 +203,7 @@ class UnitGameMapTopology implements Topology, Serializable {
 		}
 
 		// Otherwise we just check the tiles at all levels of the game map.
-		for (int z = 0; z < GameMap.LAYERS; z ++) {
-			Tile t = map.getTile(x, y, z);
-			if (t != null && (t.isImpassable() || t.isSolid())) {
-				//System.out.println("Tile "+t+" at "+x+", "+y+", "+z+" is impassable");
-				return true;
-			}
-		}
-
-		return false;
+		return map.isImpassable(x, y);
 	}
 
 	static int pack(int x, int y) {
@@ -38,7 +38,7 @@ import org.lwjgl.util.Rectangle;
 import worm.Entity;
 import worm.MapRenderer;
 import worm.WormGameState;
-import worm.path.AStar;
+import worm.path.GridAStar;
 
 import com.shavenpuppy.jglib.interpolators.LinearInterpolator;
 import com.shavenpuppy.jglib.util.IntList;
@@ -63,7 +63,7 @@ class UnitMovement implements Movement {
 	final Unit unit;
 
 	/** Pathfinding */
-	final AStar astar;
+	final GridAStar astar;
 
 	/** Topology */
 	final UnitGameMapTopology topology;
@@ -92,7 +92,7 @@ class UnitMovement implements Movement {
 	UnitMovement(Unit unit) {
 		this.unit = unit;
 		topology = new UnitGameMapTopology(this);
-		astar = new AStar(topology);
+		astar = new GridAStar(topology);
 	}
 
 	/**
@@ -248,18 +248,18 @@ class UnitMovement implements Movement {
 	void think() {
 		for (int i = 0; i < MAX_THINK_TIME && totalThinkTime ++ < MAX_TOTAL_THINK_TIME; i ++) {
 			switch (astar.nextStep()) {
-				case AStar.SEARCH_STATE_SUCCEEDED:
+				case GridAStar.SEARCH_STATE_SUCCEEDED:
 					// Found the goal! Move one step closer.
 					next();
 					return;
-				case AStar.SEARCH_STATE_FAILED:
+				case GridAStar.SEARCH_STATE_FAILED:
 					// Total failure. Wait a bit then think again.
 					thinking = false;
 					paused = true;
 					tick = 8;
 					path.clear();
 					return;
-				case AStar.SEARCH_STATE_SEARCHING:
+				case GridAStar.SEARCH_STATE_SEARCHING:
 					// Carry on searching;
 					break;
 				default:
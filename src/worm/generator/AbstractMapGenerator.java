@@ -32,8 +32,6 @@
 package worm.generator;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -46,6 +44,7 @@ import net.puppygames.applet.Game;
 import net.puppygames.applet.GameInputStream;
 import net.puppygames.applet.GameOutputStream;
 import net.puppygames.applet.RoamingFile;
+import net.puppygames.applet.SaveFile;
 
 import org.lwjgl.util.Point;
 import org.lwjgl.util.ReadablePoint;
@@ -57,7 +56,7 @@ import worm.Tile;
 import worm.Worm;
 import worm.WormGameState;
 import worm.features.LevelFeature;
-import worm.path.AStar;
+import worm.path.GridAStar;
 import worm.path.Topology;
 import worm.tiles.Crystal;
 import worm.tiles.Exclude;
@@ -265,13 +264,11 @@ abstract class AbstractMapGenerator implements MapGenerator, SimpleTiles {
 			throw new IOException(getFileName()+" does not exist");
 		}
 		GameInputStream gis = null;
-		ObjectInputStream ois = null;
 		GameMap ret = null;
 		try {
 			gis = new GameInputStream(getFileName());
-			ois = new ObjectInputStream(gis);
 
-			ret = (GameMap) ois.readObject();
+			ret = new GameMap(SaveFile.readRecord(gis));
 			return ret;
 		} catch (Exception e) {
 			throw new IOException("Couldn't load map due to "+e);
@@ -288,13 +285,10 @@ abstract class AbstractMapGenerator implements MapGenerator, SimpleTiles {
 
 	private void save(GameMap gameMap) throws IOException {
 		GameOutputStream gos = null;
-		ObjectOutputStream oos = null;
 		try {
 			gos = new GameOutputStream(getFileName());
-			oos = new ObjectOutputStream(gos);
 
-			oos.writeObject(gameMap);
-			oos.flush();
+			SaveFile.writeRecord(gameMap, gos);
 		} finally {
 			try {
 				if (gos != null) {
@@ -764,12 +758,12 @@ abstract class AbstractMapGenerator implements MapGenerator, SimpleTiles {
 	 * Can we plot an unobstructed path between two points?
 	 */
 	protected final boolean findPath(int sx, int sy, int tx, int ty, IntList path, Topology topology, int[] steps) {
-		AStar astar = new AStar(topology);
+		GridAStar astar = new GridAStar(topology);
 		path.clear();
 		astar.findPath(IntGridTopology.pack(sx, sy), IntGridTopology.pack(tx, ty), path);
 
 		int result;//, count = 0;
-		while ((result = astar.nextStep()) == AStar.SEARCH_STATE_SEARCHING) {
+		while ((result = astar.nextStep()) == GridAStar.SEARCH_STATE_SEARCHING) {
 			// Do nothing...
 //			System.out.println("Search steps..."+(++count));
 		}
@@ -784,7 +778,7 @@ abstract class AbstractMapGenerator implements MapGenerator, SimpleTiles {
 
 		// Clean up nodes
 		astar.cancel();
-		return result == AStar.SEARCH_STATE_SUCCEEDED;
+		return result == GridAStar.SEARCH_STATE_SUCCEEDED;
 	}
 
 	/**
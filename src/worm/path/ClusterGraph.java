@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Arrays;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * An abstraction of a grid {@link Topology} for hierarchical pathfinding. The map is divided into square
+ * clusters; wherever a run of tiles along the border between two clusters can be crossed, an entrance is
+ * placed, and the cost of travelling between every pair of entrances inside each cluster is precomputed.
+ * Searches over this much smaller graph of entrances are then refined into real tile paths on demand by
+ * {@link HierarchicalPathFinder}.
+ * <p>
+ * When tiles change, {@link #invalidate(int, int, int, int)} marks the clusters they lie in as dirty; only
+ * those clusters and their borders are rebuilt, the next time the graph is used.
+ */
+public class ClusterGraph {
+
+	/** Default size of a cluster, in tiles */
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+	static final int INFINITY = Integer.MAX_VALUE;
+
+	/** Border runs longer than this get an entrance at each end rather than one in the middle */
+	private static final int MAX_ENTRANCE_WIDTH = 6;
+
+	/** The topology */
+	final Topology topology;
+
+	/** Map dimensions */
+	final int width, height;
+
+	/** Cluster dimensions */
+	final int clusterSize, clustersX, clustersY;
+
+	/** Entrance tiles in each cluster */
+	private final int[][] nodes;
+	private final int[] numNodes;
+
+	/** Cost between each pair of entrances in each cluster, numNodes x numNodes */
+	private final int[][] intraCost;
+
+	/** Slot of each tile in its cluster's entrance list, or -1 */
+	private final int[] nodeSlot;
+
+	/** Entrances across the east and north borders of each cluster: pairs of (inside tile, outside tile) */
+	private final IntList[] eastBorder, northBorder;
+
+	/** Dirty clusters, and borders needing recalculation */
+	private final boolean[] dirty, eastBorderDirty, northBorderDirty;
+	private boolean anyDirty;
+
+	/** Scratch */
+	private final IntList neighbours = new IntList(true, 8), scratch = new IntList(true, 64);
+
+	/**
+	 * C'tor
+	 * @param topology The topology to abstract
+	 * @param clusterSize Size of each cluster, in tiles
+	 */
+	public ClusterGraph(Topology topology, int clusterSize) {
+		this.topology = topology;
+		this.clusterSize = clusterSize;
+		this.width = topology.getWidth();
+		this.height = topology.getHeight();
+		clustersX = (width + clusterSize - 1) / clusterSize;
+		clustersY = (height + clusterSize - 1) / clusterSize;
+		int numClusters = clustersX * clustersY;
+		nodes = new int[numClusters][];
+		numNodes = new int[numClusters];
+		intraCost = new int[numClusters][];
+		nodeSlot = new int[width * height];
+		Arrays.fill(nodeSlot, -1);
+		eastBorder = new IntList[numClusters];
+		northBorder = new IntList[numClusters];
+		for (int i = 0; i < numClusters; i ++) {
+			nodes[i] = new int[8];
+			eastBorder[i] = new IntList(true, 8);
+			northBorder[i] = new IntList(true, 8);
+		}
+		dirty = new boolean[numClusters];
+		eastBorderDirty = new boolean[numClusters];
+		northBorderDirty = new boolean[numClusters];
+		invalidate(0, 0, width, height);
+	}
+
+	/**
+	 * Mark the clusters covering an area of the map as dirty
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 */
+	public void invalidate(int x, int y, int w, int h) {
+		int minX = Math.max(0, x) / clusterSize, minY = Math.max(0, y) / clusterSize;
+		int maxX = Math.min(width - 1, x + w - 1) / clusterSize, maxY = Math.min(height - 1, y + h - 1) / clusterSize;
+		for (int cy = minY; cy <= maxY; cy ++) {
+			for (int cx = minX; cx <= maxX; cx ++) {
+				dirty[cx + cy * clustersX] = true;
+				anyDirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Rebuild any dirty clusters
+	 */
+	void update() {
+		if (!anyDirty) {
+			return;
+		}
+		anyDirty = false;
+		int numClusters = clustersX * clustersY;
+
+		// Every border of a dirty cluster must be recalculated, and so must the entrance lists of the clusters on
+		// either side of it
+		for (int c = 0; c < numClusters; c ++) {
+			if (!dirty[c]) {
+				continue;
+			}
+			int cx = c % clustersX, cy = c / clustersX;
+			eastBorderDirty[c] = true;
+			northBorderDirty[c] = true;
+			if (cx > 0) {
+				eastBorderDirty[c - 1] = true;
+			}
+			if (cy > 0) {
+				northBorderDirty[c - clustersX] = true;
+			}
+		}
+		for (int c = 0; c < numClusters; c ++) {
+			int cx = c % clustersX, cy = c / clustersX;
+			if (eastBorderDirty[c]) {
+				eastBorderDirty[c] = false;
+				calculateBorder(c, true);
+				dirty[c] = true;
+				if (cx < clustersX - 1) {
+					dirty[c + 1] = true;
+				}
+			}
+			if (northBorderDirty[c]) {
+				northBorderDirty[c] = false;
+				calculateBorder(c, false);
+				dirty[c] = true;
+				if (cy < clustersY - 1) {
+					dirty[c + clustersX] = true;
+				}
+			}
+		}
+		for (int c = 0; c < numClusters; c ++) {
+			if (dirty[c]) {
+				dirty[c] = false;
+				calculateCluster(c);
+			}
+		}
+	}
+
+	/**
+	 * Find the entrances across the east or north border of a cluster
+	 */
+	private void calculateBorder(int c, boolean east) {
+		IntList border = east ? eastBorder[c] : northBorder[c];
+		border.clear();
+		int cx = c % clustersX, cy = c / clustersX;
+		int length, insideX, insideY, dx, dy, stepX, stepY;
+		if (east) {
+			insideX = (cx + 1) * clusterSize - 1;
+			if (insideX + 1 >= width) {
+				return;
+			}
+			insideY = cy * clusterSize;
+			length = Math.min(clusterSize, height - insideY);
+			dx = 1;
+			dy = 0;
+			stepX = 0;
+			stepY = 1;
+		} else {
+			insideY = (cy + 1) * clusterSize - 1;
+			if (insideY + 1 >= height) {
+				return;
+			}
+			insideX = cx * clusterSize;
+			length = Math.min(clusterSize, width - insideX);
+			dx = 0;
+			dy = 1;
+			stepX = 1;
+			stepY = 0;
+		}
+		int runStart = -1;
+		for (int i = 0; i <= length; i ++) {
+			boolean open = i < length && canCross(insideX + stepX * i, insideY + stepY * i, dx, dy);
+			if (open) {
+				if (runStart == -1) {
+					runStart = i;
+				}
+			} else if (runStart != -1) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 > MAX_ENTRANCE_WIDTH) {
+					addEntrance(border, insideX + stepX * runStart, insideY + stepY * runStart, dx, dy);
+					addEntrance(border, insideX + stepX * runEnd, insideY + stepY * runEnd, dx, dy);
+				} else {
+					int mid = (runStart + runEnd) / 2;
+					addEntrance(border, insideX + stepX * mid, insideY + stepY * mid, dx, dy);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	private void addEntrance(IntList border, int x, int y, int dx, int dy) {
+		border.add(x + y * width);
+		border.add(x + dx + (y + dy) * width);
+	}
+
+	/**
+	 * Can we move both ways between a tile and its neighbour?
+	 */
+	private boolean canCross(int x, int y, int dx, int dy) {
+		int a = pack(x, y), b = pack(x + dx, y + dy);
+		return isNeighbour(a, b) && isNeighbour(b, a);
+	}
+
+	private boolean isNeighbour(int from, int to) {
+		topology.getNeighbours(from, -1, neighbours);
+		for (int i = neighbours.size(); -- i >= 0; ) {
+			if (neighbours.get(i) == to) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collect a cluster's entrances from its four borders and work out the costs between them
+	 */
+	private void calculateCluster(int c) {
+		int cx = c % clustersX, cy = c / clustersX;
+		for (int i = 0; i < numNodes[c]; i ++) {
+			nodeSlot[nodes[c][i]] = -1;
+		}
+		numNodes[c] = 0;
+		addNodes(c, eastBorder[c], 0);
+		addNodes(c, northBorder[c], 0);
+		if (cx > 0) {
+			addNodes(c, eastBorder[c - 1], 1);
+		}
+		if (cy > 0) {
+			addNodes(c, northBorder[c - clustersX], 1);
+		}
+
+		int n = numNodes[c];
+		if (intraCost[c] == null || intraCost[c].length < n * n) {
+			intraCost[c] = new int[Math.max(16, n * n)];
+		}
+		int[] cost = intraCost[c];
+		int[] clusterNodes = nodes[c];
+		SearchSpace space = SearchSpace.obtain(width * height);
+		try {
+			for (int i = 0; i < n; i ++) {
+				searchCluster(c, clusterNodes[i], false, -1, space);
+				for (int j = 0; j < n; j ++) {
+					cost[i * n + j] = space.isVisited(clusterNodes[j]) ? space.g[clusterNodes[j]] : INFINITY;
+				}
+			}
+		} finally {
+			SearchSpace.release(space);
+		}
+	}
+
+	private void addNodes(int c, IntList border, int offset) {
+		for (int i = offset; i < border.size(); i += 2) {
+			int tile = border.get(i);
+			if (nodeSlot[tile] != -1) {
+				continue;
+			}
+			if (numNodes[c] == nodes[c].length) {
+				int[] newNodes = new int[numNodes[c] * 2];
+				System.arraycopy(nodes[c], 0, newNodes, 0, numNodes[c]);
+				nodes[c] = newNodes;
+			}
+			nodeSlot[tile] = numNodes[c];
+			nodes[c][numNodes[c] ++] = tile;
+		}
+	}
+
+	/**
+	 * Dijkstra search confined to a single cluster.
+	 * @param c The cluster
+	 * @param source The tile index to search from
+	 * @param reverse If true, search for the cost of getting <em>to</em> the source; each tile's parent is then the
+	 * next step towards the source
+	 * @param stopAt Tile index at which to stop early, or -1
+	 * @param space Search space to fill in
+	 */
+	void searchCluster(int c, int source, boolean reverse, int stopAt, SearchSpace space) {
+		searchCluster(topology, c, source, reverse, stopAt, space);
+	}
+
+	/**
+	 * Dijkstra search confined to a single cluster, using a different topology over the same grid.
+	 * @param topology The topology whose costs to use
+	 * @param c The cluster
+	 * @param source The tile index to search from
+	 * @param reverse If true, search for the cost of getting <em>to</em> the source
+	 * @param stopAt Tile index at which to stop early, or -1
+	 * @param space Search space to fill in
+	 */
+	void searchCluster(Topology topology, int c, int source, boolean reverse, int stopAt, SearchSpace space) {
+		space.reset();
+		int minX = c % clustersX * clusterSize, minY = c / clustersX * clusterSize;
+		int maxX = Math.min(width, minX + clusterSize), maxY = Math.min(height, minY + clusterSize);
+		IndexedHeap open = space.open;
+		space.visit(source, 0, -1);
+		open.insert(source, 0);
+		while (!open.isEmpty()) {
+			int u = open.pop();
+			if (u == stopAt) {
+				return;
+			}
+			int uState = toState(u);
+			int g = space.g[u];
+			topology.getNeighbours(uState, -1, scratch);
+			for (int i = 0; i < scratch.size(); i ++) {
+				int n = scratch.get(i);
+				int x = getX(n), y = getY(n);
+				if (x < minX || y < minY || x >= maxX || y >= maxY) {
+					continue;
+				}
+				int cost = reverse ? topology.getCost(n, uState) : topology.getCost(uState, n);
+				if (cost < 0) {
+					continue;
+				}
+				int nIdx = x + y * width;
+				int newg = g + cost;
+				if (space.isVisited(nIdx)) {
+					if (open.contains(nIdx) && newg < space.g[nIdx]) {
+						space.visit(nIdx, newg, u);
+						open.decreaseKey(nIdx, newg);
+					}
+				} else {
+					space.visit(nIdx, newg, u);
+					open.insert(nIdx, newg);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the abstract neighbours of an entrance tile, and the costs of getting to them
+	 * @param tile The entrance tile index
+	 * @param dest Destination list of pairs of (tile index, cost)
+	 */
+	void getNodeNeighbours(int tile, IntList dest) {
+		dest.clear();
+		int slot = nodeSlot[tile];
+		if (slot == -1) {
+			return;
+		}
+		int c = getCluster(tile);
+		int n = numNodes[c];
+		int[] cost = intraCost[c];
+		for (int j = 0; j < n; j ++) {
+			int k = cost[slot * n + j];
+			if (j != slot && k != INFINITY) {
+				dest.add(nodes[c][j]);
+				dest.add(k);
+			}
+		}
+		int cx = c % clustersX, cy = c / clustersX;
+		addCrossings(tile, eastBorder[c], 0, dest);
+		addCrossings(tile, northBorder[c], 0, dest);
+		if (cx > 0) {
+			addCrossings(tile, eastBorder[c - 1], 1, dest);
+		}
+		if (cy > 0) {
+			addCrossings(tile, northBorder[c - clustersX], 1, dest);
+		}
+	}
+
+	private void addCrossings(int tile, IntList border, int side, IntList dest) {
+		for (int i = 0; i < border.size(); i += 2) {
+			if (border.get(i + side) == tile) {
+				int other = border.get(i + 1 - side);
+				int cost = topology.getCost(toState(tile), toState(other));
+				if (cost >= 0) {
+					dest.add(other);
+					dest.add(cost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param c A cluster
+	 * @return the number of entrances in the cluster
+	 */
+	int getNumNodes(int c) {
+		return numNodes[c];
+	}
+
+	/**
+	 * @param c A cluster
+	 * @param slot
+	 * @return the tile index of an entrance in the cluster
+	 */
+	int getNode(int c, int slot) {
+		return nodes[c][slot];
+	}
+
+	/**
+	 * @param tile A tile index
+	 * @return the cluster containing the tile
+	 */
+	int getCluster(int tile) {
+		return tile % width / clusterSize + tile / width / clusterSize * clustersX;
+	}
+
+	int toIndex(int state) {
+		int x = getX(state);
+		int y = getY(state);
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		return x + y * width;
+	}
+
+	int toState(int idx) {
+		return pack(idx % width, idx / width);
+	}
+
+	private static int pack(int x, int y) {
+		return x & 0xFFFF | y << 16;
+	}
+
+	private static int getX(int state) {
+		if ((state & 0xFFFF) <= 0x7FFF) {
+			return state & 0x7FFF;
+		} else {
+			return state & 0xFFFF | 0xFFFF0000;
+		}
+	}
+
+	private static int getY(int state) {
+		return state >> 16;
+	}
+}
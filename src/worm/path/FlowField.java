@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Arrays;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * A flow field: a reverse Dijkstra search outwards from a single target state over a grid
+ * {@link Topology}. Once built, any number of searchers heading for the same target can read
+ * their next step straight out of the field instead of running their own A* search.
+ * <p>
+ * When the costs underneath part of the field change, {@link #invalidate(int, int, int, int)}
+ * marks the area dirty, and the next {@link #update(int)} repairs just the states whose routes pass
+ * through it.
+ * <p>
+ * Building and repairing are done a few states at a time by {@link #update(int)}, so the work can be
+ * spread over several ticks. Until the field is ready, {@link #getNext(int)} answers from whatever has
+ * been worked out so far, which might not be the cheapest route.
+ */
+public class FlowField {
+
+	/** Distance of states that cannot reach the target */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private static final byte MARK_UNKNOWN = 0;
+	private static final byte MARK_VALID = 1;
+	private static final byte MARK_INVALID = 2;
+
+	/** The topology */
+	private final Topology topology;
+
+	/** The target state */
+	private final int target;
+
+	/** Map dimensions */
+	private final int width, height;
+
+	/** Cost to the target from each tile */
+	private final int[] distance;
+
+	/** The next state along the route from each tile, or -1 */
+	private final int[] next;
+
+	/** Scratch marks used during repair */
+	private final byte[] mark;
+
+	/** A current list of neighbours */
+	private final IntList neighbours = new IntList(true, 8);
+
+	/** Scratch stack used during repair */
+	private final IntList stack = new IntList(true, 256);
+
+	/** Open list: packed distance and tile index */
+	private long[] heap = new long[256];
+	private int heapSize;
+
+	/** Dirty bounds, inclusive, in tile coordinates */
+	private boolean dirty;
+	private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+	/** Whether the field has been started yet */
+	private boolean built;
+
+	/** Last time this field was used, for eviction */
+	int lastUsed;
+
+	/**
+	 * C'tor
+	 * @param topology The topology to search
+	 * @param target The target state
+	 */
+	public FlowField(Topology topology, int target) {
+		this.topology = topology;
+		this.target = target;
+		this.width = topology.getWidth();
+		this.height = topology.getHeight();
+		distance = new int[width * height];
+		next = new int[width * height];
+		mark = new byte[width * height];
+	}
+
+	/**
+	 * @return the topology
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @return the target state
+	 */
+	public int getTarget() {
+		return target;
+	}
+
+	/**
+	 * Mark an area of the map as changed. The field is repaired by the next {@link #update(int)}.
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 */
+	public void invalidate(int x, int y, int w, int h) {
+		if (w <= 0 || h <= 0) {
+			return;
+		}
+		if (dirty) {
+			dirtyMinX = Math.min(dirtyMinX, x);
+			dirtyMinY = Math.min(dirtyMinY, y);
+			dirtyMaxX = Math.max(dirtyMaxX, x + w - 1);
+			dirtyMaxY = Math.max(dirtyMaxY, y + h - 1);
+		} else {
+			dirty = true;
+			dirtyMinX = x;
+			dirtyMinY = y;
+			dirtyMaxX = x + w - 1;
+			dirtyMaxY = y + h - 1;
+		}
+	}
+
+	/**
+	 * @return true if the field is completely built and repaired
+	 */
+	public boolean isReady() {
+		return built && !dirty && heapSize == 0;
+	}
+
+	/**
+	 * Get the next step towards the target from the specified state, as far as the field has been worked out.
+	 * @param state
+	 * @return the next state, or -1 if the state is the target, is off the map, cannot reach the target, or hasn't
+	 * been reached yet by a field that isn't ready
+	 */
+	public int getNext(int state) {
+		int idx = toIndex(state);
+		if (idx == -1) {
+			return -1;
+		}
+		return next[idx];
+	}
+
+	/**
+	 * Get the total cost to the target from the specified state, as far as the field has been worked out.
+	 * @param state
+	 * @return the cost, or {@link #UNREACHABLE}
+	 */
+	public int getDistance(int state) {
+		int idx = toIndex(state);
+		if (idx == -1) {
+			return UNREACHABLE;
+		}
+		return distance[idx];
+	}
+
+	/**
+	 * Carry on building or repairing the field.
+	 * @param maxSteps The most states to expand
+	 * @return the number of states expanded
+	 */
+	public int update(int maxSteps) {
+		int steps = 0;
+		while (steps < maxSteps) {
+			if (heapSize > 0) {
+				steps += search(maxSteps - steps);
+			} else if (!built) {
+				build();
+			} else if (dirty) {
+				// Including any changes that arrived part way through the last search
+				repair();
+			} else {
+				break;
+			}
+		}
+		return steps;
+	}
+
+	/**
+	 * Start building the whole field from scratch
+	 */
+	private void build() {
+		built = true;
+		dirty = false;
+		Arrays.fill(distance, UNREACHABLE);
+		Arrays.fill(next, -1);
+		int targetIdx = toIndex(target);
+		if (targetIdx == -1) {
+			return;
+		}
+		distance[targetIdx] = 0;
+		heapSize = 0;
+		push(0, targetIdx);
+	}
+
+	/**
+	 * Start repairing the dirty part of the field. Every state inside the dirty area, and every state whose route
+	 * passes through it, is reset; the search is then restarted from the surviving states bordering them.
+	 */
+	private void repair() {
+		dirty = false;
+		int minX = Math.max(0, dirtyMinX), minY = Math.max(0, dirtyMinY);
+		int maxX = Math.min(width - 1, dirtyMaxX), maxY = Math.min(height - 1, dirtyMaxY);
+		if (minX > maxX || minY > maxY) {
+			return;
+		}
+		int targetX = getX(target), targetY = getY(target);
+		if (targetX >= minX && targetX <= maxX && targetY >= minY && targetY <= maxY) {
+			build();
+			return;
+		}
+
+		Arrays.fill(mark, MARK_UNKNOWN);
+		for (int y = minY; y <= maxY; y ++) {
+			for (int x = minX; x <= maxX; x ++) {
+				mark[x + y * width] = MARK_INVALID;
+			}
+		}
+
+		// Anything whose route leads through an invalid state is itself invalid
+		int n = distance.length;
+		for (int i = 0; i < n; i ++) {
+			if (mark[i] == MARK_UNKNOWN) {
+				resolve(i);
+			}
+		}
+
+		for (int i = 0; i < n; i ++) {
+			if (mark[i] == MARK_INVALID) {
+				distance[i] = UNREACHABLE;
+				next[i] = -1;
+			}
+		}
+
+		// Seed the search with the valid states surrounding the invalid ones
+		heapSize = 0;
+		for (int i = 0; i < n; i ++) {
+			if (mark[i] != MARK_VALID || distance[i] == UNREACHABLE) {
+				continue;
+			}
+			int x = i % width, y = i / width;
+			if	(
+					isInvalid(x - 1, y - 1) || isInvalid(x, y - 1) || isInvalid(x + 1, y - 1)
+				||	isInvalid(x - 1, y) || isInvalid(x + 1, y)
+				||	isInvalid(x - 1, y + 1) || isInvalid(x, y + 1) || isInvalid(x + 1, y + 1)
+				)
+			{
+				push(distance[i], i);
+			}
+		}
+	}
+
+	private boolean isInvalid(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return false;
+		}
+		return mark[x + y * width] == MARK_INVALID;
+	}
+
+	/**
+	 * Follow the route from a state until we find a state whose validity is known, then mark everything
+	 * on the way the same.
+	 * @param idx
+	 */
+	private void resolve(int idx) {
+		stack.clear();
+		byte result;
+		int i = idx;
+		while (true) {
+			byte m = mark[i];
+			if (m != MARK_UNKNOWN) {
+				result = m;
+				break;
+			}
+			int nextState = next[i];
+			if (nextState == -1) {
+				// Either the target or unreachable; neither depends on anything else
+				result = MARK_VALID;
+				mark[i] = result;
+				break;
+			}
+			stack.add(i);
+			i = toIndex(nextState);
+		}
+		for (int j = stack.size(); -- j >= 0; ) {
+			mark[stack.get(j)] = result;
+		}
+	}
+
+	/**
+	 * Run Dijkstra's algorithm backwards from whatever is in the open list
+	 * @param maxSteps The most states to take off the open list
+	 * @return the number of states taken off the open list
+	 */
+	private int search(int maxSteps) {
+		int steps = 0;
+		while (heapSize > 0 && steps < maxSteps) {
+			steps ++;
+			long top = pop();
+			int d = (int) (top >>> 32);
+			int idx = (int) top;
+			if (d != distance[idx]) {
+				// Stale entry
+				continue;
+			}
+			int state = pack(idx % width, idx / width);
+			topology.getNeighbours(state, -1, neighbours);
+			int numNeighbours = neighbours.size();
+			for (int i = 0; i < numNeighbours; i ++) {
+				int from = neighbours.get(i);
+				int fromIdx = toIndex(from);
+				if (fromIdx == -1) {
+					continue;
+				}
+				int cost = topology.getCost(from, state);
+				if (cost < 0) {
+					continue;
+				}
+				int newDistance = d + cost;
+				if (newDistance < distance[fromIdx]) {
+					distance[fromIdx] = newDistance;
+					next[fromIdx] = state;
+					push(newDistance, fromIdx);
+				}
+			}
+		}
+		return steps;
+	}
+
+	private void push(int d, int idx) {
+		if (heapSize == heap.length) {
+			long[] newHeap = new long[heapSize << 1];
+			System.arraycopy(heap, 0, newHeap, 0, heapSize);
+			heap = newHeap;
+		}
+		long value = (long) d << 32 | idx & 0xFFFFFFFFL;
+		int i = heapSize ++;
+		while (i > 0) {
+			int parent = i - 1 >> 1;
+			if (heap[parent] <= value) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = value;
+	}
+
+	private long pop() {
+		long ret = heap[0];
+		long value = heap[-- heapSize];
+		int i = 0;
+		while (true) {
+			int child = (i << 1) + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+				child ++;
+			}
+			if (heap[child] >= value) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = value;
+		return ret;
+	}
+
+	private int toIndex(int state) {
+		int x = getX(state);
+		int y = getY(state);
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		return x + y * width;
+	}
+
+	private static int pack(int x, int y) {
+		return x & 0xFFFF | y << 16;
+	}
+
+	private static int getX(int state) {
+		if ((state & 0xFFFF) <= 0x7FFF) {
+			return state & 0x7FFF;
+		} else {
+			return state & 0xFFFF | 0xFFFF0000;
+		}
+	}
+
+	private static int getY(int state) {
+		return state >> 16;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+/**
+ * A fixed-size cache of {@link FlowField}s keyed by topology and target state. Searchers that share a topology
+ * and a target share a single field. When the cache is full the least recently used field is discarded.
+ */
+public class FlowFieldCache {
+
+	/** The fields */
+	private final FlowField[] fields;
+
+	/** Number of fields in use */
+	private int numFields;
+
+	/** Usage clock */
+	private int clock;
+
+	/**
+	 * C'tor
+	 * @param maxFields Maximum number of fields to keep
+	 */
+	public FlowFieldCache(int maxFields) {
+		fields = new FlowField[maxFields];
+	}
+
+	/**
+	 * Get the flow field leading to the specified target, creating it if necessary.
+	 * @param topology The topology to search; fields are only shared between searchers using the same instance
+	 * @param target The target state
+	 * @return a FlowField
+	 */
+	public FlowField getField(Topology topology, int target) {
+		clock ++;
+		int lru = 0;
+		for (int i = 0; i < numFields; i ++) {
+			FlowField f = fields[i];
+			if (f.getTarget() == target && f.getTopology() == topology) {
+				f.lastUsed = clock;
+				return f;
+			}
+			if (f.lastUsed < fields[lru].lastUsed) {
+				lru = i;
+			}
+		}
+		FlowField f = new FlowField(topology, target);
+		f.lastUsed = clock;
+		if (numFields < fields.length) {
+			fields[numFields ++] = f;
+		} else {
+			fields[lru] = f;
+		}
+		return f;
+	}
+
+	/**
+	 * Mark an area of the map as changed in every cached field
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 */
+	public void invalidate(int x, int y, int w, int h) {
+		for (int i = 0; i < numFields; i ++) {
+			fields[i].invalidate(x, y, w, h);
+		}
+	}
+
+	/**
+	 * Discard all the fields
+	 */
+	public void clear() {
+		for (int i = 0; i < numFields; i ++) {
+			fields[i] = null;
+		}
+		numFields = 0;
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.io.Serializable;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * An allocation-free version of {@link AStar} for grid topologies. Node states are packed x, y coordinates as
+ * usual, but instead of Node objects and a hash map, costs and parent links live in flat arrays indexed by tile,
+ * and the open list is an {@link IndexedHeap} with O(log n) decrease-key. The arrays are borrowed from a pool for
+ * the duration of each search, so idle searchers cost next to nothing.
+ * <p>
+ * The search in progress is not serialized; a restored searcher that was part way through a search simply
+ * starts it again.
+ */
+public class GridAStar implements PathFinder, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The map */
+	private final Topology map;
+
+	/** Map dimensions */
+	private final int width, height;
+
+	/** A current list of neighbours */
+	private final IntList neighbours = new IntList(true, 8);
+
+	/** The start and goal states */
+	private int start, end;
+
+	/** The number of steps */
+	private int steps;
+
+	/** The current path */
+	private IntList path;
+
+	/** The current search state */
+	private int state = SEARCH_STATE_NOT_INITIALIZED;
+
+	/** Working storage for the current search */
+	private transient SearchSpace space;
+
+	/**
+	 * C'tor
+	 * @param map The map to traverse
+	 */
+	public GridAStar(Topology map) {
+		this.map = map;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+	}
+
+	@Override
+	public void findPath(int startState, int endState, IntList path) {
+		cleanup();
+		steps = 0;
+		this.path = path;
+		this.start = startState;
+		this.end = endState;
+		state = SEARCH_STATE_SEARCHING;
+		begin();
+	}
+
+	/**
+	 * Seed the open list with the start state
+	 */
+	private void begin() {
+		int startIdx = toIndex(start);
+		if (startIdx == -1 || toIndex(end) == -1) {
+			state = SEARCH_STATE_FAILED;
+			return;
+		}
+		space = SearchSpace.obtain(width * height);
+		space.visit(startIdx, 0, -1);
+		space.open.insert(startIdx, map.getDistance(start, end));
+	}
+
+	@Override
+	public void cancel() {
+		state = SEARCH_STATE_CANCELLED;
+		cleanup();
+	}
+
+	/**
+	 * Clean up when a search is finished
+	 */
+	private void cleanup() {
+		if (space != null) {
+			SearchSpace.release(space);
+			space = null;
+		}
+		neighbours.clear();
+	}
+
+	@Override
+	public int nextStep() {
+		if (state != SEARCH_STATE_SEARCHING) {
+			return state;
+		}
+
+		if (space == null) {
+			// We were restored part way through a search, so start it again
+			begin();
+			if (state != SEARCH_STATE_SEARCHING) {
+				return state;
+			}
+		}
+
+		IndexedHeap open = space.open;
+		if (open.isEmpty()) {
+			state = SEARCH_STATE_FAILED;
+			cleanup();
+			return state;
+		}
+
+		steps ++;
+
+		int idx = open.pop();
+		int userState = toState(idx);
+		if (userState == end) {
+			goalFound(idx);
+			return state;
+		}
+
+		int parentIdx = space.parent[idx];
+		map.getNeighbours(userState, parentIdx == -1 ? userState : toState(parentIdx), neighbours);
+		int g = space.g[idx];
+		int numNeighbours = neighbours.size();
+		for (int i = 0; i < numNeighbours; i ++) {
+			int newState = neighbours.get(i);
+			int newIdx = toIndex(newState);
+			if (newIdx == -1) {
+				continue;
+			}
+			int newg = g + map.getCost(userState, newState);
+			if (space.isVisited(newIdx)) {
+				if (!open.contains(newIdx) || space.g[newIdx] <= newg) {
+					// Closed, or there's already a cheaper route to it
+					continue;
+				}
+				space.visit(newIdx, newg, idx);
+				open.decreaseKey(newIdx, newg + map.getDistance(newState, end));
+			} else {
+				space.visit(newIdx, newg, idx);
+				open.insert(newIdx, newg + map.getDistance(newState, end));
+			}
+		}
+
+		return state;
+	}
+
+	/**
+	 * The goal has been found: fill in the path, which runs from the step after the start up to and including the goal
+	 * @param goalIdx
+	 */
+	private void goalFound(int goalIdx) {
+		path.clear();
+		int[] parent = space.parent;
+		for (int idx = goalIdx; parent[idx] != -1; idx = parent[idx]) {
+			path.add(toState(idx));
+		}
+		// Reverse in place
+		int[] a = path.array();
+		for (int i = 0, j = path.size() - 1; i < j; i ++, j --) {
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+
+		state = SEARCH_STATE_SUCCEEDED;
+		cleanup();
+	}
+
+	/**
+	 * @return the steps used so far
+	 */
+	public int getNumSteps() {
+		return steps;
+	}
+
+	private int toIndex(int userState) {
+		int x = getX(userState);
+		int y = getY(userState);
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		return x + y * width;
+	}
+
+	private int toState(int idx) {
+		return pack(idx % width, idx / width);
+	}
+
+	private static int pack(int x, int y) {
+		return x & 0xFFFF | y << 16;
+	}
+
+	private static int getX(int state) {
+		if ((state & 0xFFFF) <= 0x7FFF) {
+			return state & 0x7FFF;
+		} else {
+			return state & 0xFFFF | 0xFFFF0000;
+		}
+	}
+
+	private static int getY(int state) {
+		return state >> 16;
+	}
+}
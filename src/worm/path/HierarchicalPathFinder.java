@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Hierarchical path finder, searching a {@link ClusterGraph} of cluster entrances rather than individual tiles.
+ * Only the first few clusters of the route are refined into tiles; when the searcher runs off the end of the
+ * path it should simply ask for a new one.
+ * <p>
+ * The graph's costs are shared by many searchers. A searcher with costs of its own near where it stands, such as
+ * squares occupied by other gidrahs, can supply a local topology; the way out of the start cluster is then found
+ * with that instead.
+ */
+public class HierarchicalPathFinder implements PathFinder {
+
+	/** Default number of clusters to refine */
+	public static final int DEFAULT_REFINE_CLUSTERS = 2;
+
+	private static final int PHASE_INIT = 0;
+	private static final int PHASE_SEARCH = 1;
+
+	/** The graph */
+	private final ClusterGraph graph;
+
+	/** Topology used within the start cluster */
+	private final Topology localTopology;
+
+	/** Number of clusters to refine the path through */
+	private final int refineClusters;
+
+	/** Scratch */
+	private final IntList edges = new IntList(true, 32), waypoints = new IntList(true, 32);
+
+	/** Start and goal tile indices */
+	private int startIdx, endIdx;
+
+	/** Clusters containing the start and goal */
+	private int startCluster, endCluster;
+
+	/** Costs from the start to each entrance in the start cluster, and from each entrance in the goal cluster to the goal */
+	private int[] startCost = new int[16], endCost = new int[16];
+
+	/** The current path */
+	private IntList path;
+
+	/** The current search state */
+	private int state = SEARCH_STATE_NOT_INITIALIZED;
+	private int phase;
+
+	/** The number of steps */
+	private int steps;
+
+	/** Working storage for the abstract search */
+	private SearchSpace space;
+
+	/**
+	 * C'tor
+	 * @param graph The graph to search
+	 * @param refineClusters Number of clusters along the route to refine into tiles
+	 */
+	public HierarchicalPathFinder(ClusterGraph graph, int refineClusters) {
+		this(graph, refineClusters, graph.topology);
+	}
+
+	/**
+	 * C'tor
+	 * @param graph The graph to search
+	 * @param refineClusters Number of clusters along the route to refine into tiles
+	 * @param localTopology Topology over the same grid, used to find the way out of the start cluster
+	 */
+	public HierarchicalPathFinder(ClusterGraph graph, int refineClusters, Topology localTopology) {
+		this.graph = graph;
+		this.refineClusters = refineClusters;
+		this.localTopology = localTopology;
+	}
+
+	@Override
+	public void findPath(int start, int end, IntList path) {
+		cleanup();
+		this.path = path;
+		path.clear();
+		steps = 0;
+		startIdx = graph.toIndex(start);
+		endIdx = graph.toIndex(end);
+		state = startIdx == -1 || endIdx == -1 ? SEARCH_STATE_FAILED : SEARCH_STATE_SEARCHING;
+		phase = PHASE_INIT;
+	}
+
+	@Override
+	public void cancel() {
+		state = SEARCH_STATE_CANCELLED;
+		cleanup();
+	}
+
+	private void cleanup() {
+		if (space != null) {
+			SearchSpace.release(space);
+			space = null;
+		}
+	}
+
+	/**
+	 * @return the graph we search
+	 */
+	public ClusterGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the steps used so far
+	 */
+	public int getNumSteps() {
+		return steps;
+	}
+
+	@Override
+	public int nextStep() {
+		if (state != SEARCH_STATE_SEARCHING) {
+			return state;
+		}
+		steps ++;
+		if (phase == PHASE_INIT) {
+			begin();
+			return state;
+		}
+
+		IndexedHeap open = space.open;
+		if (open.isEmpty()) {
+			state = SEARCH_STATE_FAILED;
+			cleanup();
+			return state;
+		}
+		int u = open.pop();
+		if (u == endIdx) {
+			goalFound();
+			return state;
+		}
+
+		int g = space.g[u];
+		if (u == startIdx) {
+			for (int i = graph.getNumNodes(startCluster); -- i >= 0; ) {
+				if (startCost[i] != ClusterGraph.INFINITY) {
+					relax(graph.getNode(startCluster, i), g + startCost[i], u);
+				}
+			}
+		}
+		graph.getNodeNeighbours(u, edges);
+		for (int i = 0; i < edges.size(); i += 2) {
+			int n = edges.get(i), cost = edges.get(i + 1);
+			if (u == startIdx && localTopology != graph.topology) {
+				// Leaving the start, which is an entrance itself: routes within the cluster are already in startCost,
+				// and crossing the border costs whatever the local topology says
+				if (graph.getCluster(n) == startCluster) {
+					continue;
+				}
+				cost = localTopology.getCost(graph.toState(u), graph.toState(n));
+				if (cost < 0) {
+					continue;
+				}
+			}
+			relax(n, g + cost, u);
+		}
+		if (graph.getCluster(u) == endCluster) {
+			for (int i = graph.getNumNodes(endCluster); -- i >= 0; ) {
+				if (graph.getNode(endCluster, i) == u && endCost[i] != ClusterGraph.INFINITY) {
+					relax(endIdx, g + endCost[i], u);
+				}
+			}
+		}
+		return state;
+	}
+
+	private void relax(int n, int newg, int from) {
+		IndexedHeap open = space.open;
+		long f = (long) newg + graph.topology.getDistance(graph.toState(n), graph.toState(endIdx));
+		if (space.isVisited(n)) {
+			if (open.contains(n) && newg < space.g[n]) {
+				space.visit(n, newg, from);
+				open.decreaseKey(n, f);
+			}
+		} else {
+			space.visit(n, newg, from);
+			open.insert(n, f);
+		}
+	}
+
+	/**
+	 * Connect the start and goal to the entrances of their clusters, and seed the abstract search
+	 */
+	private void begin() {
+		graph.update();
+		startCluster = graph.getCluster(startIdx);
+		endCluster = graph.getCluster(endIdx);
+		space = SearchSpace.obtain(graph.width * graph.height);
+
+		if (startCluster == endCluster) {
+			// Try a direct route within the cluster first
+			graph.searchCluster(localTopology, startCluster, endIdx, true, startIdx, space);
+			if (space.isVisited(startIdx)) {
+				refine(startIdx, endIdx, space);
+				state = SEARCH_STATE_SUCCEEDED;
+				cleanup();
+				return;
+			}
+		}
+
+		startCost = costs(localTopology, startCluster, startIdx, false, startCost);
+		endCost = costs(graph.topology, endCluster, endIdx, true, endCost);
+
+		space.reset();
+		space.visit(startIdx, 0, -1);
+		space.open.insert(startIdx, graph.topology.getDistance(graph.toState(startIdx), graph.toState(endIdx)));
+		phase = PHASE_SEARCH;
+	}
+
+	/**
+	 * Calculate the costs between a tile and every entrance of its cluster
+	 */
+	private int[] costs(Topology topology, int c, int tile, boolean reverse, int[] dest) {
+		int n = graph.getNumNodes(c);
+		if (dest.length < n) {
+			dest = new int[n];
+		}
+		graph.searchCluster(topology, c, tile, reverse, -1, space);
+		for (int i = 0; i < n; i ++) {
+			int node = graph.getNode(c, i);
+			dest[i] = space.isVisited(node) ? space.g[node] : ClusterGraph.INFINITY;
+		}
+		return dest;
+	}
+
+	/**
+	 * Walk back from the goal to get the abstract route, then refine the start of it into tiles
+	 */
+	private void goalFound() {
+		waypoints.clear();
+		for (int idx = endIdx; idx != -1; idx = space.parent[idx]) {
+			waypoints.add(idx);
+		}
+		// waypoints now runs from the goal back to the start
+		path.clear();
+		int clusters = 1;
+		int currentCluster = startCluster;
+		for (int i = waypoints.size() - 1; i > 0; i --) {
+			int a = waypoints.get(i), b = waypoints.get(i - 1);
+			int c = graph.getCluster(b);
+			if (c != currentCluster) {
+				currentCluster = c;
+				if (++ clusters > refineClusters) {
+					break;
+				}
+			}
+			if (graph.getCluster(a) != c) {
+				// Crossing a border
+				path.add(graph.toState(b));
+			} else {
+				graph.searchCluster(a == startIdx ? localTopology : graph.topology, c, b, true, a, space);
+				if (!space.isVisited(a) || !refine(a, b, space)) {
+					break;
+				}
+			}
+		}
+		state = path.size() > 0 ? SEARCH_STATE_SUCCEEDED : SEARCH_STATE_FAILED;
+		cleanup();
+	}
+
+	/**
+	 * Add the tiles after a up to and including b to the path, using a reverse search from b
+	 * @return true if b was reached
+	 */
+	private boolean refine(int a, int b, SearchSpace reverseSearch) {
+		int idx = a;
+		int maxLength = graph.clusterSize * graph.clusterSize;
+		for (int i = 0; idx != b; i ++) {
+			idx = reverseSearch.parent[idx];
+			if (idx == -1 || i == maxLength) {
+				return false;
+			}
+			path.add(graph.toState(idx));
+		}
+		return true;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Arrays;
+
+/**
+ * A 4-ary min-heap of integer items in the range 0..capacity-1, each with a long key. Because every item's
+ * position in the heap is tracked, membership tests are O(1) and keys can be decreased in O(log n), without
+ * any per-item allocation.
+ */
+final class IndexedHeap {
+
+	private static final int ARITY = 4;
+
+	/** Items, in heap order */
+	private final int[] heap;
+
+	/** Position of each item in the heap, or -1 */
+	private final int[] position;
+
+	/** Key of each item */
+	private final long[] key;
+
+	/** Number of items in the heap */
+	private int size;
+
+	/**
+	 * C'tor
+	 * @param capacity Number of distinct items
+	 */
+	IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		key = new long[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i ++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int item) {
+		return position[item] != -1;
+	}
+
+	long getKey(int item) {
+		return key[item];
+	}
+
+	void insert(int item, long newKey) {
+		if (position[item] != -1) {
+			throw new IllegalStateException("Heap already contains "+item);
+		}
+		key[item] = newKey;
+		position[item] = size;
+		heap[size] = item;
+		upHeap(size ++);
+	}
+
+	/**
+	 * Lower the key of an item already in the heap
+	 * @param item
+	 * @param newKey Must not be greater than the item's current key
+	 */
+	void decreaseKey(int item, long newKey) {
+		int idx = position[item];
+		if (idx == -1) {
+			throw new IllegalStateException("Heap does not contain "+item);
+		}
+		key[item] = newKey;
+		upHeap(idx);
+	}
+
+	int pop() {
+		if (size == 0) {
+			throw new IllegalStateException("Can't pop - heap is empty");
+		}
+		int popped = heap[0];
+		position[popped] = -1;
+		if (-- size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			downHeap(0);
+		}
+		return popped;
+	}
+
+	private void upHeap(int idx) {
+		int item = heap[idx];
+		long cost = key[item];
+		while (idx > 0) {
+			int parentIdx = (idx - 1) / ARITY;
+			int parent = heap[parentIdx];
+			if (cost < key[parent]) {
+				heap[idx] = parent;
+				position[parent] = idx;
+				idx = parentIdx;
+			} else {
+				break;
+			}
+		}
+		heap[idx] = item;
+		position[item] = idx;
+	}
+
+	private void downHeap(int idx) {
+		int item = heap[idx];
+		long cost = key[item];
+		while (true) {
+			int first = idx * ARITY + 1;
+			if (first >= size) {
+				break;
+			}
+			int last = Math.min(first + ARITY, size);
+			int best = first;
+			long bestCost = key[heap[first]];
+			for (int i = first + 1; i < last; i ++) {
+				long c = key[heap[i]];
+				if (c < bestCost) {
+					best = i;
+					bestCost = c;
+				}
+			}
+			if (bestCost >= cost) {
+				break;
+			}
+			int child = heap[best];
+			heap[idx] = child;
+			position[child] = idx;
+			idx = best;
+		}
+		heap[idx] = item;
+		position[item] = idx;
+	}
+}
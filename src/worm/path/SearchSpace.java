@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Working storage for a {@link GridAStar} search over a grid of a particular size: costs, parent links and the
+ * open list, all held in flat arrays indexed by tile. Spaces are pooled, so searchers only hold one for the
+ * duration of a search.
+ */
+final class SearchSpace {
+
+	/** Pool of spare search spaces */
+	private static final ArrayList<SearchSpace> POOL = new ArrayList<SearchSpace>();
+
+	/** Maximum number of pooled spaces */
+	private static final int MAX_POOLED = 256;
+
+	/** Number of tiles */
+	final int size;
+
+	/** Cost of the best route found so far to each tile */
+	final int[] g;
+
+	/** Tile we came from to get to each tile */
+	final int[] parent;
+
+	/** Search generation in which each tile was last touched */
+	private final int[] stamp;
+
+	/** Open list */
+	final IndexedHeap open;
+
+	/** Current search generation */
+	private int generation;
+
+	private SearchSpace(int size) {
+		this.size = size;
+		g = new int[size];
+		parent = new int[size];
+		stamp = new int[size];
+		open = new IndexedHeap(size);
+	}
+
+	/**
+	 * Obtain a cleared search space with room for the specified number of tiles
+	 * @param size
+	 * @return a SearchSpace
+	 */
+	static SearchSpace obtain(int size) {
+		synchronized (POOL) {
+			for (int i = POOL.size(); -- i >= 0; ) {
+				SearchSpace s = POOL.get(i);
+				if (s.size == size) {
+					POOL.remove(i);
+					s.reset();
+					return s;
+				}
+			}
+		}
+		SearchSpace s = new SearchSpace(size);
+		s.reset();
+		return s;
+	}
+
+	/**
+	 * Return a search space to the pool
+	 * @param s
+	 */
+	static void release(SearchSpace s) {
+		synchronized (POOL) {
+			if (POOL.size() == MAX_POOLED) {
+				POOL.remove(0);
+			}
+			POOL.add(s);
+		}
+	}
+
+	void reset() {
+		open.clear();
+		if (++ generation == Integer.MAX_VALUE) {
+			generation = 1;
+			Arrays.fill(stamp, 0);
+		}
+	}
+
+	/**
+	 * @param idx
+	 * @return true if the tile has been reached in this search
+	 */
+	boolean isVisited(int idx) {
+		return stamp[idx] == generation;
+	}
+
+	/**
+	 * Record a route to a tile
+	 * @param idx
+	 * @param cost
+	 * @param from
+	 */
+	void visit(int idx, int cost, int from) {
+		stamp[idx] = generation;
+		g[idx] = cost;
+		parent[idx] = from;
+	}
+}
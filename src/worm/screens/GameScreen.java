@@ -643,12 +643,10 @@ public class GameScreen extends Screen {
 
 		float x = mapX + renderer.getOriginX() + Game.getWidth() / 2.0f;
 		float y = mapY + renderer.getOriginY() + Game.getHeight() / 2.0f;
-		ArrayList<Gidrah> gidrahs = gameState.getGidrahs();
-		int n = gidrahs.size();
+		Collection<Gidrah> gidrahs = gameState.getGidrahs();
 		float totalDry = 0.0f;
 		float totalWet = 0.0f;
-		for (int i = 0; i < n; i ++) {
-			Gidrah g = gidrahs.get(i);
+		for (Gidrah g : gidrahs) {
 			if (g.isActive() && !g.isFrozen() && !(g.getFeature().isWraith() || g.getFeature().isFlying())) {
 				float dist = g.getDistanceTo(x, y);
 				// Wet drops off at distance
@@ -32,6 +32,7 @@
 package worm.screens;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -200,9 +201,8 @@ public class IntermissionScreen extends Screen {
 		int remainingCrystal = 0;
 
 		// Collect all factories etc.
-		ArrayList<Building> buildings = gameState.getBuildings();
-		for (int i = 0; i < buildings.size(); i ++) {
-			Building b = buildings.get(i);
+		Collection<Building> buildings = gameState.getBuildings();
+		for (Building b : buildings) {
 			if (b.isActive()) {
 				if (b.isCity()) {
 					hp = (b.getHitPoints() + 1) / 4;
@@ -45,8 +45,8 @@ import org.lwjgl.util.Rectangle;
 import worm.Entity;
 import worm.GameMap;
 import worm.MapRenderer;
+import worm.RaycastCallback;
 import worm.Res;
-import worm.Tile;
 import worm.Worm;
 import worm.WormGameState;
 import worm.entities.Gidrah;
@@ -214,7 +214,7 @@ public class LaserFeature extends WeaponFeature {
 		}
 	}
 
-	private class LaserBeam extends Effect {
+	private class LaserBeam extends Effect implements RaycastCallback {
 
 		final ShortList indices = new ShortList();
 
@@ -240,6 +240,19 @@ public class LaserFeature extends WeaponFeature {
 
 		ArrayList<Segment> segments = new ArrayList<Segment>();
 
+		/** Beam tracing state, used by {@link #onHit(Entity, float, float)} */
+		transient Segment currentSegment;
+		transient int totalLength;
+		transient boolean dangerous;
+		transient Entity lastBounce;
+		transient double rayX, rayY, rayDx, rayDy;
+		transient int raySteps;
+
+		/** What the beam hit, on which step, and whether it bounced off it */
+		transient Entity rayHit;
+		transient int hitStep;
+		transient boolean rayReflected;
+
 		private LaserBeam(LaserInstance weapon) {
 			this.weapon = weapon;
 			enemyFire = weapon.entity instanceof Gidrah;
@@ -313,12 +326,11 @@ public class LaserFeature extends WeaponFeature {
 			double dy = Math.sin(angle);
 			double x = sx, y = sy;
 			segments.clear();
-			Segment currentSegment = new Segment();
+			currentSegment = new Segment();
 			currentSegment.x0 = sx;
 			currentSegment.y0 = sy;
 			currentSegment.startRatio = 255.0f;
-			int totalLength = 0;
-			Entity lastBounce = null;
+			totalLength = 0;
 
 			if (targetOnly) {
 				// This is the Saturn boss laser
@@ -364,122 +376,74 @@ public class LaserFeature extends WeaponFeature {
 				}
 
 			} else {
-				boolean dangerous = false;
 				GameMap map = gameState.getMap();
-				int tileX = (int) (x / MapRenderer.TILE_SIZE);
-				int tileY = (int) (y / MapRenderer.TILE_SIZE);
-				outer: for (int i = 0; i < length; i ++) {
-					x += dx;
-					y += dy;
-
-					Segment lastSegment = currentSegment;
-
-					// Check map collision unless we're firing at aerial targets
-					if (!aerialTargets) {
-						int newTileX = (int) (x / MapRenderer.TILE_SIZE);
-						int newTileY = (int) (y / MapRenderer.TILE_SIZE);
-						if (newTileX < 0 || newTileY < 0 || newTileX >= mapWidth || newTileY >= mapHeight) {
-							break;
-						}
-
-						if (newTileX != tileX || newTileY != tileY) {
-							tileX = newTileX;
-							tileY = newTileY;
-
-							for (int tileZ = 0; tileZ < GameMap.LAYERS; tileZ ++) {
-								Tile t = map.getTile(tileX, tileY, tileZ);
-								if (t != null && !t.isBulletThrough()) {
-									// Hit a wall
-									break outer;
-								}
-							}
+				dangerous = false;
+				lastBounce = null;
+				int maxSteps = (int) Math.ceil(length);
+				int i = 0;
+				while (i < maxSteps) {
+					// The beam moves a pixel per step. First find how far it gets before it hits a wall, then find the
+					// entities in the way in one go.
+					int steps = aerialTargets ? maxSteps - i : getClearSteps(map, x, y, dx, dy, maxSteps - i);
+					rayX = x;
+					rayY = y;
+					rayDx = dx;
+					rayDy = dy;
+					raySteps = steps;
+					rayHit = null;
+					rayReflected = false;
+					Entity.raycast((float) x, (float) y, (float) (x + dx * steps), (float) (y + dy * steps), Entity.COLLIDE_ALL, this);
+					if (rayHit == null) {
+						// Reached a wall or the end of the beam
+						totalLength += steps;
+						if (steps > 0) {
+							currentSegment.x1 = x + dx * steps;
+							currentSegment.y1 = y + dy * steps;
 						}
+						break;
 					}
 
-					TEMP.setBounds((int) x, (int) y, 1, 1);
-					ENTITIES.clear();
-					Entity.getCollisions(TEMP, ENTITIES);
-					int numEntities = ENTITIES.size();
-
-					// Check collision with entities
-					inner: for (int j = 0; j < numEntities; j ++) {
-						Entity entity = ENTITIES.get(j);
-						if (entity.isActive() && entity.isShootable() || !entity.isShootable() && enemyFire && entity.canCollide() && entity.isSolid()) {
-							if (aerialTargets && (!entity.isFlying() || entity.isLaserOver())) {
-								// Ignore ground targets if targeting aerial targets
-								continue;
-							}
-							if (entity == lastBounce) {
-								// Ignore last reflection
-								continue;
-							}
-							double ddx = entity.getX() - x;
-							double ddy = entity.getY() - y;
-
-							if (entity.isRound()) {
-								double dist = Math.sqrt(ddx * ddx + ddy * ddy);
-								if (dist > entity.getRadius()) {
-									// Missed
-									continue inner;
-								}
-							} else {
-								if (!entity.getBounds(TEMP).contains((int) x, (int) y)) {
-									// Missed
-									continue inner;
-								}
-							}
-							if (!dangerous && entity == weapon.getEntity() || entity.isLaserThrough()) {
-								sx = currentSegment.x0 = x;
-								sy = currentSegment.y0 = y;
-								continue inner;
-							} else if (entity.isLaserProof()) {
-								// Reflect!
-								dangerous = true;
-								lastBounce = entity;
-								// First record current segment
-								segments.add(currentSegment);
-								currentSegment.endRatio = LinearInterpolator.instance.interpolate(255.0f, 0.0f, totalLength / length);
-								currentSegment = new Segment();
-								currentSegment.startRatio = LinearInterpolator.instance.interpolate(255.0f, 0.0f, totalLength / length);
-								currentSegment.x0 = lastSegment.x1;
-								currentSegment.y0 = lastSegment.y1;
-								// Spawn sparks and ting
-								Emitter e = reflectionEmitter.spawn(GameScreen.getInstance());
-								e.setLocation((int) lastSegment.x1, (int) lastSegment.y1);
-								e.setOffset(GameScreen.getSpriteOffset());
-
-
-								// Reflect
-								double angleOfCollision = Math.atan2(ddy, ddx);
-
-								// Now reflect about this angle
-								double diff = Math.atan2(dy, dx) - angleOfCollision;
-								double reflection = angleOfCollision + Math.PI - diff;
-								dx = Math.cos(reflection);
-								dy = Math.sin(reflection);
-								// Go back to where we were & move one more
-								x = lastSegment.x1 + dx;
-								y = lastSegment.y1 + dy;
-
-								weapon.entity.onBulletDeflected(entity);
-							} else {
-								boolean hit = true;
-								if (!harmless) {
-									hit = entity.laserDamage((int) damage.getValue() + entity.getExtraDamage());
-									if (enemyFire) {
-										harmless = true;
-									}
-								}
-								if (hit) {
-									break outer;
-								}
-							}
-						}
-
+					// The beam stops one step short of what it hit
+					double lastX = x + dx * (hitStep - 1);
+					double lastY = y + dy * (hitStep - 1);
+					totalLength += hitStep - 1;
+					currentSegment.x1 = lastX;
+					currentSegment.y1 = lastY;
+					if (!rayReflected) {
+						break;
 					}
+
+					// Reflect! First record current segment
+					Entity entity = rayHit;
+					rayHit = null;
+					dangerous = true;
+					lastBounce = entity;
+					segments.add(currentSegment);
+					currentSegment.endRatio = LinearInterpolator.instance.interpolate(255.0f, 0.0f, totalLength / length);
+					currentSegment = new Segment();
+					currentSegment.startRatio = LinearInterpolator.instance.interpolate(255.0f, 0.0f, totalLength / length);
+					currentSegment.x0 = lastX;
+					currentSegment.y0 = lastY;
+					// Spawn sparks and ting
+					Emitter e = reflectionEmitter.spawn(GameScreen.getInstance());
+					e.setLocation((int) lastX, (int) lastY);
+					e.setOffset(GameScreen.getSpriteOffset());
+
+					// Reflect about the angle between the entity and the point where we hit it
+					double angleOfCollision = Math.atan2(entity.getY() - (y + dy * hitStep), entity.getX() - (x + dx * hitStep));
+					double diff = Math.atan2(dy, dx) - angleOfCollision;
+					double reflection = angleOfCollision + Math.PI - diff;
+					dx = Math.cos(reflection);
+					dy = Math.sin(reflection);
+					// Go back to where we were & move one more
+					x = lastX + dx;
+					y = lastY + dy;
 					currentSegment.x1 = x;
 					currentSegment.y1 = y;
 					totalLength ++;
+					i += hitStep;
+
+					weapon.entity.onBulletDeflected(entity);
 				}
 			}
 			if (totalLength > 0) {
@@ -499,6 +463,72 @@ public class LaserFeature extends WeaponFeature {
 			}
 		}
 
+		@Override
+		public boolean onHit(Entity entity, float near, float far) {
+			if (!(entity.isActive() && entity.isShootable() || !entity.isShootable() && enemyFire && entity.canCollide() && entity.isSolid())) {
+				return false;
+			}
+			if (aerialTargets && (!entity.isFlying() || entity.isLaserOver())) {
+				// Ignore ground targets if targeting aerial targets
+				return false;
+			}
+			if (entity == lastBounce) {
+				// Ignore last reflection
+				return false;
+			}
+			if (!dangerous && entity == weapon.getEntity() || entity.isLaserThrough()) {
+				// The beam starts again where it comes out
+				int out = Math.min(raySteps, (int) far);
+				sx = currentSegment.x0 = rayX + rayDx * out;
+				sy = currentSegment.y0 = rayY + rayDy * out;
+				return false;
+			}
+			hitStep = Math.min(raySteps, Math.max(1, (int) Math.ceil(near)));
+			if (entity.isLaserProof()) {
+				rayHit = entity;
+				rayReflected = true;
+				return true;
+			}
+			boolean hit = true;
+			if (!harmless) {
+				hit = entity.laserDamage((int) damage.getValue() + entity.getExtraDamage());
+				if (enemyFire) {
+					harmless = true;
+				}
+			}
+			if (hit) {
+				rayHit = entity;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return the number of steps the beam can take from (x, y) before it hits a wall or leaves the map
+		 */
+		private int getClearSteps(GameMap map, double x, double y, double dx, double dy, int maxSteps) {
+			int tileX = (int) (x / MapRenderer.TILE_SIZE);
+			int tileY = (int) (y / MapRenderer.TILE_SIZE);
+			for (int i = 0; i < maxSteps; i ++) {
+				x += dx;
+				y += dy;
+				int newTileX = (int) (x / MapRenderer.TILE_SIZE);
+				int newTileY = (int) (y / MapRenderer.TILE_SIZE);
+				if (newTileX < 0 || newTileY < 0 || newTileX >= mapWidth || newTileY >= mapHeight) {
+					return i;
+				}
+				if (newTileX != tileX || newTileY != tileY) {
+					tileX = newTileX;
+					tileY = newTileY;
+					if (map.blocksBullets(tileX, tileY)) {
+						// Hit a wall
+						return i;
+					}
+				}
+			}
+			return maxSteps;
+		}
+
 		@Override
 		protected void doUpdate() {
 			if (beamStartEmitter == null) {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks background resource preparation on two worker threads: only the resources reachable from the ones asked
+ * for are prepared, a worker's exception comes out of create(), prepared data is thrown away when creation fails or
+ * the resource turns out not to be needed, and asking whether a resource is created doesn't wait for it to be
+ * prepared. Exits with status 1 on failure.
+ */
+public final class ResourcePrepareCheck {
+
+	private static int failures;
+
+	private ResourcePrepareCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("resources.prepareThreads", "2");
+
+		// A screen which will create a font and a sound; the sound will fail to decode. The unused image isn't
+		// referred to by anything, and the menu refers to the spare sound but is never created.
+		TestResource font = put(new TestResource("check.font", false, null));
+		TestResource sound = put(new TestResource("check.sound", true, null));
+		TestResource screen = put(new TestResource("check.screen", false, null, "check.font", "check.sound", "check.missing"));
+		screen.preparable = false;
+		TestResource unused = put(new TestResource("check.unused", false, null));
+		TestResource spare = put(new TestResource("check.spare", false, null));
+		TestResource menu = put(new TestResource("check.menu", false, null, "check.spare"));
+		menu.preparable = false;
+
+		Resources.prepare(Arrays.asList(screen, menu));
+		try {
+			font.create();
+			check(font.preparedOn != null && font.preparedOn.startsWith("Resource preparation"), "font was prepared on " + font.preparedOn);
+			check(font.createdWith != null, "font was created without its data");
+
+			try {
+				sound.create();
+				check(false, "sound failed to prepare, but was created");
+			} catch (RuntimeException e) {
+				check(e.getCause() != null && "Corrupt check.sound".equals(e.getCause().getMessage()), "create() threw " + e + ", caused by " + e.getCause());
+			}
+			check(!sound.isCreated(), "sound was created");
+			check(sound.data == null && sound.unprepared > 0, "sound kept its data after failing");
+
+			screen.create();
+			check(screen.preparedOn == null || !screen.preparedOn.startsWith("Resource preparation"), "screen isn't preparable, but was prepared on " + screen.preparedOn);
+		} finally {
+			Resources.finishPreparing();
+		}
+		check(unused.preparedOn == null, "unused was prepared, but nothing refers to it");
+		check(!spare.isCreated() && spare.data == null, "spare was never created, but kept its data");
+		check(font.isCreated() && font.data != null, "font lost its data after being created");
+
+		// isCreated() mustn't wait for a slow background decode
+		CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+		TestResource slow = put(new TestResource("check.slow", false, release));
+		slow.started = started;
+		Resources.prepare(Arrays.asList(slow));
+		try {
+			check(started.await(5, TimeUnit.SECONDS), "slow never started preparing");
+			long then = System.nanoTime();
+			boolean created = slow.isCreated();
+			long millis = (System.nanoTime() - then) / 1000000L;
+			check(!created && millis < 100L, "isCreated() took " + millis + "ms while slow was being prepared");
+			release.countDown();
+			slow.create();
+			check(slow.isCreated() && slow.data != null, "slow wasn't created from its data");
+		} finally {
+			release.countDown();
+			Resources.finishPreparing();
+		}
+
+		System.out.println("ResourcePrepareCheck: " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static TestResource put(TestResource res) {
+		Resources.put(res);
+		return res;
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) {
+			System.out.println(message);
+			failures ++;
+		}
+	}
+
+	/**
+	 * Stands in for an image or a sound: "decodes" some data when prepared, and needs it when created
+	 */
+	private static final class TestResource extends Resource {
+
+		private static final long serialVersionUID = 1L;
+
+		final boolean corrupt;
+		final CountDownLatch release;
+		final String[] dependencies;
+		boolean preparable = true;
+		volatile CountDownLatch started;
+		volatile String preparedOn;
+		volatile byte[] data;
+		byte[] createdWith;
+		volatile int unprepared;
+
+		TestResource(String name, boolean corrupt, CountDownLatch release, String... dependencies) {
+			super(name);
+			this.corrupt = corrupt;
+			this.release = release;
+			this.dependencies = dependencies;
+		}
+
+		@Override
+		protected boolean isPreparable() {
+			return preparable;
+		}
+
+		@Override
+		public String[] getDependencies() {
+			return dependencies;
+		}
+
+		@Override
+		protected void doPrepare() {
+			preparedOn = Thread.currentThread().getName();
+			data = new byte[1024];
+			if (started != null) {
+				started.countDown();
+			}
+			if (release != null) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (corrupt) {
+				throw new IllegalStateException("Corrupt " + getName());
+			}
+		}
+
+		@Override
+		protected void doUnprepare() {
+			data = null;
+			unprepared ++;
+		}
+
+		@Override
+		protected void doCreate() {
+			createdWith = data;
+		}
+	}
+}
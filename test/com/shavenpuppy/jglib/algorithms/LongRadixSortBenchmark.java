@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.algorithms;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Times three ways of putting 5000 sprites in order: a comparator sort over the six sort fields, the six chained
+ * {@link RadixSort} passes the sprite renderer used to do, and one {@link LongRadixSort} over the packed keys. Each
+ * sorter is reused from frame to frame. The sprites either drift a little each frame, scatter everywhere, or have a
+ * band of them jump half a screen, which is the case that used to fool the insertion sort.
+ */
+public final class LongRadixSortBenchmark {
+
+	private static final int SPRITES = 5000;
+	private static final int FRAMES = 100;
+	private static final int ROUNDS = 15;
+
+	private static final int DRIFT = 0, SCATTER = 1, JUMP = 2;
+
+	private LongRadixSortBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		System.out.println("LongRadixSortBenchmark: " + SPRITES + " sprites, " + FRAMES + " frames, median of " + ROUNDS + " rounds");
+		run("drift", DRIFT);
+		run("scatter", SCATTER);
+		run("jump", JUMP);
+	}
+
+	private static void run(String name, int motion) {
+		long[] comparatorTimes = new long[ROUNDS], radixTimes = new long[ROUNDS], longTimes = new long[ROUNDS];
+		RadixSort radix = new RadixSort();
+		LongRadixSort longRadix = new LongRadixSort();
+		for (int round = -5; round < ROUNDS; round ++) {
+			Random random = new Random(7);
+			final SpriteKeys sprites = new SpriteKeys(random, SPRITES);
+			Integer[] boxed = new Integer[SPRITES];
+			Comparator<Integer> comparator = new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					int a = o1.intValue(), b = o2.intValue();
+					int diff = sprites.layer[a] - sprites.layer[b];
+					if (diff == 0) {
+						diff = sprites.y[a] - sprites.y[b];
+					}
+					if (diff == 0) {
+						diff = sprites.subLayer[a] - sprites.subLayer[b];
+					}
+					if (diff == 0) {
+						diff = sprites.x[a] - sprites.x[b];
+					}
+					if (diff == 0) {
+						diff = sprites.texture[a] - sprites.texture[b];
+					}
+					if (diff == 0) {
+						diff = sprites.style[a] - sprites.style[b];
+					}
+					return diff;
+				}
+			};
+			long comparatorTime = 0, radixTime = 0, longTime = 0;
+			for (int frame = 0; frame < FRAMES; frame ++) {
+				switch (motion) {
+					case DRIFT:
+						sprites.drift(random);
+						break;
+					case SCATTER:
+						sprites.scatter(random);
+						break;
+					default:
+						sprites.jump(random);
+						break;
+				}
+
+				long then = System.nanoTime();
+				for (int i = 0; i < SPRITES; i ++) {
+					boxed[i] = Integer.valueOf(i);
+				}
+				Arrays.sort(boxed, comparator);
+				comparatorTime += System.nanoTime() - then;
+
+				then = System.nanoTime();
+				radix.resetIndices().sort(sprites.style, SPRITES).sort(sprites.texture, SPRITES).sort(sprites.x, SPRITES).sort(sprites.subLayer, SPRITES).sort(sprites.y, SPRITES).sort(sprites.layer, SPRITES);
+				radixTime += System.nanoTime() - then;
+
+				then = System.nanoTime();
+				longRadix.sort(sprites.keys, SPRITES);
+				longTime += System.nanoTime() - then;
+
+				if (!sprites.isSorted(radix.getIndices()) || !sprites.isSorted(longRadix.getIndices())) {
+					throw new IllegalStateException("Not sorted, " + name + " frame " + frame);
+				}
+			}
+			if (round >= 0) {
+				comparatorTimes[round] = comparatorTime;
+				radixTimes[round] = radixTime;
+				longTimes[round] = longTime;
+			}
+		}
+		System.out.println("  " + name + ":");
+		System.out.println("    Comparator:    " + millis(comparatorTimes) + "ms");
+		System.out.println("    RadixSort x6:  " + millis(radixTimes) + "ms");
+		System.out.println("    LongRadixSort: " + millis(longTimes) + "ms");
+	}
+
+	private static String millis(long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return String.format("%.3f", sorted[sorted.length / 2] / 1.0E6);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.algorithms;
+
+import java.util.Random;
+
+/**
+ * Checks {@link LongRadixSort} over a run of frames in which the sprites drift, scatter, or jump a long way in a
+ * block, so that the insertion sort finishes in some frames and gives up part way through in others. Every frame's
+ * indices must list every key once, in order.
+ */
+public final class LongRadixSortCheck {
+
+	private static final int FRAMES = 600;
+
+	private LongRadixSortCheck() {
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(11);
+		int failures = 0, frames = 0;
+		for (int size : new int[] {1, 2, 3, 50, 5000}) {
+			SpriteKeys sprites = new SpriteKeys(random, size);
+			LongRadixSort sort = new LongRadixSort();
+			for (int frame = 0; frame < FRAMES; frame ++) {
+				switch (random.nextInt(6)) {
+					case 0:
+						sprites.scatter(random);
+						break;
+					case 1:
+						sprites.jump(random);
+						break;
+					default:
+						sprites.drift(random);
+						break;
+				}
+				if (!sprites.isSorted(sort.sort(sprites.keys, sprites.size).getIndices())) {
+					failures ++;
+					System.out.println("Not sorted: " + size + " keys, frame " + frame);
+				}
+				frames ++;
+			}
+		}
+
+		// Full width keys, top bit and all
+		LongRadixSort sort = new LongRadixSort();
+		for (int frame = 0; frame < FRAMES; frame ++) {
+			int size = 1 + random.nextInt(200);
+			long[] keys = new long[size];
+			for (int i = 0; i < size; i ++) {
+				keys[i] = random.nextLong();
+			}
+			int[] indices = sort.sort(keys, size).getIndices();
+			for (int i = 1; i < size; i ++) {
+				if ((keys[indices[i - 1]] ^ Long.MIN_VALUE) > (keys[indices[i]] ^ Long.MIN_VALUE)) {
+					failures ++;
+					System.out.println("Not sorted: " + size + " full width keys, frame " + frame);
+					break;
+				}
+			}
+			frames ++;
+		}
+
+		System.out.println("LongRadixSortCheck: " + frames + " frames, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.algorithms;
+
+import java.util.Random;
+
+/**
+ * A frame's worth of sprite sort orders, kept both as the six int arrays the sprite renderer used to radix sort one
+ * after another and as the single packed key it sorts now. The fields, most significant first, are layer, Y,
+ * sublayer, X, texture and style, as in DefaultSpriteRenderer.
+ */
+final class SpriteKeys {
+
+	private static final int SCREEN = 1024;
+
+	final int size;
+	final int[] layer, y, subLayer, x, texture, style;
+	final long[] keys;
+
+	SpriteKeys(Random random, int size) {
+		this.size = size;
+		layer = new int[size];
+		y = new int[size];
+		subLayer = new int[size];
+		x = new int[size];
+		texture = new int[size];
+		style = new int[size];
+		keys = new long[size];
+		for (int i = 0; i < size; i ++) {
+			randomise(random, i);
+		}
+		pack();
+	}
+
+	private void randomise(Random random, int i) {
+		layer[i] = random.nextInt(2);
+		y[i] = random.nextInt(SCREEN);
+		subLayer[i] = random.nextInt(4);
+		x[i] = random.nextInt(SCREEN);
+		texture[i] = random.nextInt(8);
+		style[i] = random.nextInt(16);
+	}
+
+	/**
+	 * Every sprite goes somewhere else entirely
+	 */
+	void scatter(Random random) {
+		for (int i = 0; i < size; i ++) {
+			randomise(random, i);
+		}
+		pack();
+	}
+
+	/**
+	 * A few sprites move a pixel or two, as they do from one frame to the next
+	 */
+	void drift(Random random) {
+		for (int n = size / 50; n > 0; n --) {
+			int i = random.nextInt(size);
+			y[i] = wrap(y[i] + random.nextInt(5) - 2);
+			x[i] = wrap(x[i] + random.nextInt(5) - 2);
+		}
+		pack();
+	}
+
+	/**
+	 * Every sprite in a band of the screen jumps half a screen down it. In the last frame's order the band is one
+	 * sorted run, so there's only a descent or two, but every key in it has to move past a few thousand others.
+	 */
+	void jump(Random random) {
+		int top = random.nextInt(SCREEN);
+		for (int i = 0; i < size; i ++) {
+			if (wrap(y[i] - top) < SCREEN / 16) {
+				y[i] = wrap(y[i] + SCREEN / 2);
+			}
+		}
+		pack();
+	}
+
+	private static int wrap(int value) {
+		return value & SCREEN - 1;
+	}
+
+	private void pack() {
+		for (int i = 0; i < size; i ++) {
+			keys[i] = (long) layer[i] << 56 | (long) y[i] << 40 | (long) subLayer[i] << 32 | (long) x[i] << 16 | texture[i] << 8 | style[i];
+		}
+	}
+
+	/**
+	 * @return true if the indices list every sprite once, in order of key
+	 */
+	boolean isSorted(int[] indices) {
+		boolean[] seen = new boolean[size];
+		for (int i = 0; i < size; i ++) {
+			int id = indices[i];
+			if (id < 0 || id >= size || seen[id]) {
+				return false;
+			}
+			seen[id] = true;
+			if (i > 0 && (keys[indices[i - 1]] ^ Long.MIN_VALUE) > (keys[id] ^ Long.MIN_VALUE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.shavenpuppy.jglib.sprites;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.lwjgl.util.Color;
+
+import com.shavenpuppy.jglib.Image;
+import com.shavenpuppy.jglib.Resources;
+import com.shavenpuppy.jglib.opengl.GLTexture;
+import com.shavenpuppy.jglib.util.FPMath;
+
+/**
+ * Writes the same randomly scaled, rotated, mirrored, flipped and coloured sprites with {@link SpriteVertexWriter},
+ * once on this thread and once on a four thread pool, and checks the two vertex buffers are byte for byte the same.
+ * Also checks the parallel write covers every vertex and nothing else. Exits with status 1 on failure.
+ */
+public final class SpriteVertexWriterCheck {
+
+	private static final int SPRITES = 3000;
+	private static final int ROUNDS = 20;
+
+	private SpriteVertexWriterCheck() {
+	}
+
+	public static void main(String[] args) {
+		Resources.setHeadless(true);
+		Random random = new Random(12);
+
+		GLTexture texture = new GLTexture("check.texture", new Image(256, 256, Image.RGBA), GL_TEXTURE_2D, GL_RGBA, GL_LINEAR, GL_LINEAR, false);
+		texture.create();
+		AlphaOp[] ops = AlphaOp.values();
+		Style[] styles = new Style[ops.length];
+		for (int i = 0; i < ops.length; i ++) {
+			styles[i] = new CheckStyle(i, ops[i]);
+		}
+		SpriteImage[] images = new SpriteImage[16];
+		for (int i = 0; i < images.length; i ++) {
+			images[i] = new SpriteImage(texture, styles[0], random.nextInt(192), random.nextInt(192), 1 + random.nextInt(64), 1 + random.nextInt(64), random.nextInt(16), random.nextInt(16), random.nextBoolean());
+			images[i].create();
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		SpriteVertexWriter writer = new SpriteVertexWriter(SPRITES);
+		int size = SPRITES * DefaultSpriteRenderer.VERTEX_SIZE * 4;
+		ByteBuffer serial = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		ByteBuffer parallel = ByteBuffer.allocateDirect(size + DefaultSpriteRenderer.VERTEX_SIZE * 8).order(ByteOrder.nativeOrder());
+		int failures = 0, sprites = 0;
+		for (int round = 0; round < ROUNDS; round ++) {
+			// Sprites go in the buffer in a random order, as they would after sorting
+			int count = round == 0 ? SpriteVertexWriter.PARALLEL_THRESHOLD : SPRITES - random.nextInt(SPRITES / 2);
+			int[] slot = shuffle(random, count);
+			Sprite[] sprite = new Sprite[count];
+			Style[] style = new Style[count];
+			float[] alpha = new float[count];
+			for (int i = 0; i < count; i ++) {
+				sprite[i] = randomSprite(random, images);
+				style[i] = styles[random.nextInt(styles.length)];
+				alpha[i] = random.nextFloat();
+			}
+
+			for (int i = 0; i < count; i ++) {
+				writer.add(sprite[i], style[i], alpha[i], slot[i] * 4);
+			}
+			fill(serial, (byte) 0x55);
+			writer.write(serial.asFloatBuffer(), null);
+
+			for (int i = 0; i < count; i ++) {
+				writer.add(sprite[i], style[i], alpha[i], slot[i] * 4);
+			}
+			fill(parallel, (byte) 0x55);
+			writer.write(parallel.asFloatBuffer(), pool);
+
+			int written = count * DefaultSpriteRenderer.VERTEX_SIZE * 4;
+			for (int i = 0; i < parallel.capacity(); i ++) {
+				byte expected = i < written ? serial.get(i) : 0x55;
+				if (parallel.get(i) != expected) {
+					System.out.println("Round " + round + ", " + count + " sprites: byte " + i + " is " + parallel.get(i) + ", expected " + expected);
+					failures ++;
+					break;
+				}
+			}
+			for (int i = 0; i < written; i += 4) {
+				if (serial.getInt(i) == 0x55555555) {
+					System.out.println("Round " + round + ", " + count + " sprites: byte " + i + " was never written");
+					failures ++;
+					break;
+				}
+			}
+			sprites += count;
+		}
+		pool.shutdown();
+
+		System.out.println("SpriteVertexWriterCheck: " + sprites + " sprites in " + ROUNDS + " rounds, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static Sprite randomSprite(Random random, SpriteImage[] images) {
+		Sprite s = new Sprite(null);
+		s.setImage(images[random.nextInt(images.length)]);
+		s.setLocation(random.nextFloat() * 1024.0f, random.nextFloat() * 768.0f);
+		s.setOffset(random.nextInt(9) - 4, random.nextInt(9) - 4);
+		if (random.nextBoolean()) {
+			s.setScale(FPMath.fpValue(0.5f + random.nextFloat() * 2.0f), FPMath.fpValue(0.5f + random.nextFloat() * 2.0f));
+		}
+		if (random.nextBoolean()) {
+			s.setAngle(random.nextInt(65536));
+		}
+		s.setMirrored(random.nextBoolean());
+		s.setFlipped(random.nextBoolean());
+		s.setAlpha(random.nextInt(256));
+		for (int i = 0; i < 4; i ++) {
+			s.setColor(i, new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+		}
+		return s;
+	}
+
+	private static int[] shuffle(Random random, int count) {
+		int[] ret = new int[count];
+		for (int i = 0; i < count; i ++) {
+			ret[i] = i;
+		}
+		for (int i = count; i > 1; i --) {
+			int j = random.nextInt(i);
+			int tmp = ret[i - 1];
+			ret[i - 1] = ret[j];
+			ret[j] = tmp;
+		}
+		return ret;
+	}
+
+	private static void fill(ByteBuffer buf, byte value) {
+		for (int i = 0; i < buf.capacity(); i ++) {
+			buf.put(i, value);
+		}
+	}
+
+	/**
+	 * Just enough of a style to write sprites with
+	 */
+	private static final class CheckStyle implements Style {
+
+		private final int id;
+		private final AlphaOp alphaOp;
+
+		CheckStyle(int id, AlphaOp alphaOp) {
+			this.id = id;
+			this.alphaOp = alphaOp;
+		}
+
+		@Override
+		public void setupState() {
+		}
+
+		@Override
+		public void resetState() {
+		}
+
+		@Override
+		public int getStyleID() {
+			return id;
+		}
+
+		@Override
+		public AlphaOp getAlphaOp() {
+			return alphaOp;
+		}
+
+		@Override
+		public boolean getRenderSprite() {
+			return true;
+		}
+
+		@Override
+		public GeometryData build() {
+			return null;
+		}
+
+		@Override
+		public void render(int vertexOffset, int indexOffset) {
+		}
+	}
+}
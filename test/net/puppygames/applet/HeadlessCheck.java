@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.puppygames.applet;
+
+import static org.lwjgl.opengl.ARBBufferObject.*;
+import static org.lwjgl.opengl.ARBVertexBufferObject.*;
+import static org.lwjgl.opengl.GL11.*;
+
+import com.shavenpuppy.jglib.IResource;
+import com.shavenpuppy.jglib.Image;
+import com.shavenpuppy.jglib.Resources;
+import com.shavenpuppy.jglib.openal.ALBuffer;
+import com.shavenpuppy.jglib.openal.ALStream;
+import com.shavenpuppy.jglib.opengl.GLTexture;
+import com.shavenpuppy.jglib.opengl.GLVertexBufferObject;
+import com.shavenpuppy.jglib.sprites.Sprite;
+import com.shavenpuppy.jglib.sprites.StaticSpriteEngine;
+
+/**
+ * Creates the OpenGL and OpenAL backed resources a headless run needs, and ticks some sprites, with the LWJGL natives
+ * pointed at a directory that doesn't exist. Anything that touches OpenGL, OpenAL or the natives at all fails. Exits
+ * with status 1 on failure.
+ */
+public final class HeadlessCheck {
+
+	private HeadlessCheck() {
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("org.lwjgl.librarypath", "/nonexistent/lwjgl/natives");
+		Game.setHeadless(true);
+		int failures = 0;
+
+		failures += create(new GLTexture("headless.texture", new Image(64, 64, Image.RGBA), GL_TEXTURE_2D, GL_RGBA, GL_LINEAR, GL_LINEAR, false));
+		failures += create(new GLVertexBufferObject(1024, GL_ARRAY_BUFFER_ARB, GL_STREAM_DRAW_ARB));
+		failures += create(new ALBuffer("headless.buffer"));
+		failures += create(new ALStream("headless.stream"));
+
+		StaticSpriteEngine engine = new StaticSpriteEngine(true, 0, false, 1);
+		failures += create(engine);
+		int sprites = 0;
+		try {
+			for (int i = 0; i < 100; i ++) {
+				Sprite sprite = engine.allocateSprite(engine);
+				sprite.setLocation(i, i);
+				sprites ++;
+			}
+			for (int tick = 0; tick < 60; tick ++) {
+				engine.tick();
+			}
+		} catch (Throwable t) {
+			System.out.println("Ticking sprites failed: " + t);
+			failures ++;
+		}
+
+		try {
+			if (Game.allocateSound(new ALBuffer("headless.sound"), 1.0f, 1.0f) != null) {
+				System.out.println("Allocated a sound with no sound device");
+				failures ++;
+			}
+		} catch (Throwable t) {
+			System.out.println("Allocating a sound failed: " + t);
+			failures ++;
+		}
+
+		System.out.println("HeadlessCheck: " + Resources.isHeadless() + " headless, " + sprites + " sprites ticked, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static int create(IResource resource) {
+		try {
+			resource.create();
+			return 0;
+		} catch (Throwable t) {
+			System.out.println("Creating " + resource + " failed: " + t);
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.puppygames.applet.effects;
+
+import org.lwjgl.util.Color;
+import org.lwjgl.util.ReadableColor;
+
+import com.shavenpuppy.jglib.sprites.SpriteImage;
+
+/**
+ * Ticks a batch of plain particles through their colour ramp and fade, and checks packed colour interpolation against
+ * per-channel interpolation. Needs no display. Exits with status 1 on failure.
+ */
+public final class ParticleBatchCheck {
+
+	private ParticleBatchCheck() {
+	}
+
+	private static int channel(int a, int b, int shift, float ratio) {
+		float ca = a >>> shift & 0xFF, cb = b >>> shift & 0xFF;
+		float c = ratio <= 0.0f ? ca : ratio >= 1.0f ? cb : ca + (cb - ca) * ratio;
+		return ((int) c & 0xFF) << shift;
+	}
+
+	public static void main(String[] args) {
+		int failures = 0;
+
+		// Packed colour interpolation, channel by channel
+		int[] colors = {0x00000000, 0xFFFFFFFF, 0xFF0000FF, 0x80FF8000, 0x12345678, 0xFEDCBA98};
+		float[] ratios = {-1.0f, 0.0f, 0.25f, 0.5f, 0.75f, 1.0f, 2.0f};
+		for (int a : colors) {
+			for (int b : colors) {
+				for (float ratio : ratios) {
+					int expected = channel(a, b, 0, ratio) | channel(a, b, 8, ratio) | channel(a, b, 16, ratio) | channel(a, b, 24, ratio);
+					int actual = ParticleBatch.lerpColor(a, b, ratio);
+					if (actual != expected) {
+						System.out.println("lerpColor(" + Integer.toHexString(a) + ", " + Integer.toHexString(b) + ", " + ratio + ") = "
+								+ Integer.toHexString(actual) + ", expected " + Integer.toHexString(expected));
+						failures ++;
+					}
+				}
+			}
+		}
+
+		// A batch of particles that ramp their colour and then fade, ticked until they've all gone
+		ParticleBatch batch = new ParticleBatch(new SpriteImage(null, null, 0, 0, 8, 8, 4, 4, false), 0, 0);
+		ReadableColor start = new Color(255, 0, 0, 255), end = new Color(0, 0, 255, 255);
+		for (int i = 0; i < 100; i ++) {
+			int index = batch.add(null, i, i, 0.0f, i * 3.6f, 1.0f, 0.0f, 10 + i % 7, 5 + i % 3, start, end);
+			if (index == -1) {
+				System.out.println("Particle " + i + " wasn't added");
+				failures ++;
+			} else if (i % 2 == 0) {
+				batch.setScale(index, 0.5f, 1.0f, 2.0f);
+			}
+		}
+		int ticks = 0;
+		while (batch.getCount() > 0 && ticks < 100) {
+			batch.tick();
+			ticks ++;
+		}
+		if (batch.getCount() != 0) {
+			System.out.println(batch.getCount() + " particles left after " + ticks + " ticks");
+			failures ++;
+		}
+
+		System.out.println("ParticleBatchCheck: " + ticks + " ticks, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+}
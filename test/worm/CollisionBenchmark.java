@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times {@link GridCollisionManager#checkCollisions()} on a busy level: 160 gidrahs, 400 bullets and 80 buildings in
+ * the middle of a 96x96 map. For comparison the same cells are also walked the old way, without collision masks and
+ * with a list of pair objects searched with contains() to weed out duplicates.
+ */
+public final class CollisionBenchmark {
+
+	private static final int SIZE = 48 * MapRenderer.TILE_SIZE;
+	private static final int FRAMES = 200;
+	private static final int ROUNDS = 15;
+
+	private static class Pair {
+
+		final Entity a, b;
+
+		Pair(Entity a, Entity b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public int hashCode() {
+			return a.hashCode() + b.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			Pair p = (Pair) obj;
+			return p.a == a && p.b == b || p.a == b && p.b == a;
+		}
+	}
+
+	private CollisionBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		System.out.println("CollisionBenchmark: 160 gidrahs, 400 bullets, 80 buildings, " + FRAMES + " frames, median of " + ROUNDS + " rounds");
+		long[] gridTimes = new long[ROUNDS], listTimes = new long[ROUNDS];
+		int gridPairs = 0, listPairs = 0;
+		for (int round = -5; round < ROUNDS; round ++) {
+			Random random = new Random(7);
+			CollisionScene scene = new CollisionScene(random, SIZE, 160, 400, 80);
+			GridCollisionManager manager = new GridCollisionManager(MapRenderer.TILE_SIZE);
+			scene.store(manager);
+			long gridTime = 0, listTime = 0;
+			gridPairs = 0;
+			listPairs = 0;
+			for (int frame = 0; frame < FRAMES; frame ++) {
+				scene.step(manager, null);
+				long then = System.nanoTime();
+				manager.checkCollisions();
+				gridTime += System.nanoTime() - then;
+				for (TestEntity entity : scene.entities) {
+					gridPairs += entity.hits;
+				}
+
+				List<List<Entity>> cells = buildCells(scene.entities);
+				then = System.nanoTime();
+				listPairs += listCollisions(cells);
+				listTime += System.nanoTime() - then;
+			}
+			if (round >= 0) {
+				gridTimes[round] = gridTime;
+				listTimes[round] = listTime;
+			}
+		}
+		System.out.println("  pair set:  " + millis(gridTimes) + "ms, " + gridPairs / 2 + " collisions");
+		System.out.println("  pair list: " + millis(listTimes) + "ms, " + listPairs + " collisions");
+	}
+
+	/**
+	 * Bin the entities into tile sized cells, as the grid does
+	 */
+	private static List<List<Entity>> buildCells(TestEntity[] entities) {
+		int cellsAcross = SIZE / MapRenderer.TILE_SIZE + 4;
+		List<List<Entity>> cells = new ArrayList<List<Entity>>(cellsAcross * cellsAcross);
+		for (int i = cellsAcross * cellsAcross; -- i >= 0; ) {
+			cells.add(null);
+		}
+		for (TestEntity entity : entities) {
+			int x0, y0, x1, y1;
+			if (entity.isRound()) {
+				float r = entity.getRadius();
+				x0 = (int) (entity.getX() - r) - 1;
+				y0 = (int) (entity.getY() - r) - 1;
+				x1 = x0 + (int) (r * 2.0f) + 2;
+				y1 = y0 + (int) (r * 2.0f) + 2;
+			} else {
+				x0 = (int) entity.getMapX();
+				y0 = (int) entity.getMapY();
+				x1 = x0 + entity.width;
+				y1 = y0 + entity.height;
+			}
+			for (int y = cell(y0); y <= cell(y1 - 1); y ++) {
+				for (int x = cell(x0); x <= cell(x1 - 1); x ++) {
+					int idx = Math.max(0, Math.min(cellsAcross - 1, x + 2)) + Math.max(0, Math.min(cellsAcross - 1, y + 2)) * cellsAcross;
+					List<Entity> cell = cells.get(idx);
+					if (cell == null) {
+						cells.set(idx, cell = new ArrayList<Entity>(4));
+					}
+					cell.add(entity);
+				}
+			}
+		}
+		return cells;
+	}
+
+	private static int cell(int x) {
+		return x >= 0 ? x / MapRenderer.TILE_SIZE : (x + 1) / MapRenderer.TILE_SIZE - 1;
+	}
+
+	/**
+	 * The pair pass as it was, with a list of pairs to weed out the ones found in more than one cell
+	 * @return the number of collisions
+	 */
+	private static int listCollisions(List<List<Entity>> cells) {
+		List<Pair> collisions = new ArrayList<Pair>();
+		for (List<Entity> cell : cells) {
+			if (cell == null) {
+				continue;
+			}
+			for (int i = 0; i < cell.size(); i ++) {
+				Entity src = cell.get(i);
+				for (int j = i + 1; j < cell.size(); j ++) {
+					Entity dest = cell.get(j);
+					if (src.isTouching(dest)) {
+						Pair pair = new Pair(src, dest);
+						if (!collisions.contains(pair)) {
+							collisions.add(pair);
+						}
+					}
+				}
+			}
+		}
+		return collisions.size();
+	}
+
+	private static String millis(long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return String.format("%.3f", sorted[sorted.length / 2] / 1.0E6);
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link GridCollisionManager} against a brute force test of every pair of entities: each touching pair that
+ * either side is interested in must be reported exactly once per frame, the single entity query must find exactly
+ * the entities touching it, and a filtered nearest query must find the nearest entity the filter accepts. Entities are removed and stored again between frames, so slots get recycled.
+ */
+public final class CollisionCheck {
+
+	private static final int SIZE = 40 * MapRenderer.TILE_SIZE;
+	private static final int FRAMES = 300;
+
+	private CollisionCheck() {
+	}
+
+	/** Accepts every third entity, as a turret might accept only the gidrahs it can see */
+	private static final EntityFilter FILTER = new EntityFilter() {
+		@Override
+		public boolean accept(Entity entity) {
+			return ((TestEntity) entity).id % 3 == 0;
+		}
+	};
+
+	public static void main(String[] args) {
+		Random random = new Random(5);
+		CollisionScene scene = new CollisionScene(random, SIZE, 160, 300, 60);
+		TestEntity[] entities = scene.entities;
+		GridCollisionManager manager = new GridCollisionManager(MapRenderer.TILE_SIZE);
+		scene.store(manager);
+		boolean[] stored = new boolean[entities.length];
+		Arrays.fill(stored, true);
+
+		int[] expected = new int[entities.length];
+		List<Entity> found = new ArrayList<Entity>();
+		Entity[] nearest = new Entity[1];
+		float[] distance = new float[1];
+		int failures = 0, pairs = 0, queries = 0, nearestQueries = 0;
+		for (int frame = 0; frame < FRAMES; frame ++) {
+			scene.step(manager, stored);
+
+			// Take a few entities out, and put a few back
+			for (int i = 0; i < 10; i ++) {
+				int idx = random.nextInt(entities.length);
+				if (stored[idx]) {
+					manager.remove(entities[idx]);
+				} else {
+					manager.store(entities[idx]);
+				}
+				stored[idx] = !stored[idx];
+			}
+
+			Arrays.fill(expected, 0);
+			for (int i = 0; i < entities.length; i ++) {
+				if (!stored[i]) {
+					continue;
+				}
+				for (int j = i + 1; j < entities.length; j ++) {
+					if (stored[j] && CollisionScene.interested(entities[i], entities[j]) && entities[i].isTouching(entities[j])) {
+						expected[i] ++;
+						expected[j] ++;
+						pairs ++;
+					}
+				}
+			}
+
+			manager.checkCollisions();
+			for (int i = 0; i < entities.length; i ++) {
+				if (entities[i].hits != expected[i]) {
+					if (failures ++ < 10) {
+						System.out.println("Frame " + frame + ": " + entities[i] + " reported " + entities[i].hits + " collisions, expected " + expected[i]);
+					}
+				}
+			}
+
+			// And the single entity query, for a handful of entities
+			for (int k = 0; k < 20; k ++) {
+				int idx = random.nextInt(entities.length);
+				if (!stored[idx]) {
+					continue;
+				}
+				manager.checkCollisions(entities[idx], found);
+				queries ++;
+				int count = 0;
+				for (int j = 0; j < entities.length; j ++) {
+					if (stored[j] && entities[idx].isTouching(entities[j])) {
+						count ++;
+						if (!found.contains(entities[j])) {
+							if (failures ++ < 10) {
+								System.out.println("Frame " + frame + ": " + entities[idx] + " missed " + entities[j]);
+							}
+						}
+					}
+				}
+				if (found.size() != count) {
+					if (failures ++ < 10) {
+						System.out.println("Frame " + frame + ": " + entities[idx] + " found " + found.size() + " entities, expected " + count);
+					}
+				}
+			}
+
+			// And the filtered nearest query, from a handful of points
+			for (int k = 0; k < 20; k ++) {
+				float x = random.nextFloat() * SIZE, y = random.nextFloat() * SIZE;
+				float minRadius = random.nextFloat() * 32.0f, maxRadius = minRadius + random.nextFloat() * 160.0f;
+				int n = manager.findNearest(x, y, minRadius, maxRadius, Entity.COLLIDE_GIDRAH, FILTER, nearest, distance);
+				nearestQueries ++;
+				Entity best = null;
+				float bestDist = maxRadius;
+				for (int j = 0; j < entities.length; j ++) {
+					if (!stored[j] || entities[j].getCollisionCategory() != Entity.COLLIDE_GIDRAH || !FILTER.accept(entities[j])) {
+						continue;
+					}
+					float dx = entities[j].getX() - x, dy = entities[j].getY() - y;
+					float dist = (float) Math.sqrt(dx * dx + dy * dy);
+					if (dist > minRadius && dist < bestDist) {
+						best = entities[j];
+						bestDist = dist;
+					}
+				}
+				if ((n == 0 ? null : nearest[0]) != best) {
+					if (failures ++ < 10) {
+						System.out.println("Frame " + frame + ": nearest to " + x + "," + y + " was " + (n == 0 ? null : nearest[0]) + ", expected " + best);
+					}
+				}
+			}
+		}
+
+		failures += checkSpawning();
+
+		System.out.println("CollisionCheck: " + FRAMES + " frames, " + pairs + " colliding pairs, " + queries + " queries, " + nearestQueries + " nearest queries, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * A collision callback which stores entities in enough new cells to grow the manager's list of used cells, part way
+	 * through checking: every other colliding pair must still be reported.
+	 * @return the number of failures
+	 */
+	private static int checkSpawning() {
+		final GridCollisionManager manager = new GridCollisionManager(MapRenderer.TILE_SIZE);
+		final int tile = MapRenderer.TILE_SIZE;
+		final int numPairs = 80;
+
+		// A pair which spawns lots of entities, well apart, when they collide; stored first, so checked first
+		final int spawn = 600;
+		TestEntity spawner = new TestEntity(numPairs, 3.0f, Entity.COLLIDE_GIDRAH, Entity.COLLIDE_GIDRAH) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void onCollision(Entity entity) {
+				super.onCollision(entity);
+				for (int i = 0; i < spawn; i ++) {
+					TestEntity debris = new TestEntity(numPairs + 2 + i, 2.0f, Entity.COLLIDE_GIDRAH, Entity.COLLIDE_GIDRAH);
+					debris.moveTo((i % 30) * 2 * tile + tile / 2, (i / 30) * 2 * tile + tile / 2);
+					manager.store(debris);
+				}
+			}
+		};
+		TestEntity other = new TestEntity(numPairs + 1, 3.0f, Entity.COLLIDE_GIDRAH, Entity.COLLIDE_GIDRAH);
+		spawner.moveTo(80 * tile + tile / 2, 80 * tile + tile / 2);
+		other.moveTo(80 * tile + tile / 2 + 1, 80 * tile + tile / 2);
+		manager.store(spawner);
+		manager.store(other);
+
+		// Then pairs of touching gidrahs, each pair in a cell of its own
+		TestEntity[] pairs = new TestEntity[numPairs];
+		for (int i = 0; i < pairs.length; i ++) {
+			pairs[i] = new TestEntity(i, 3.0f, Entity.COLLIDE_GIDRAH, Entity.COLLIDE_GIDRAH);
+			pairs[i].moveTo((i / 2) * 2 * tile + tile / 2 + (i & 1), 60 * tile + tile / 2);
+			manager.store(pairs[i]);
+		}
+
+		manager.checkCollisions();
+		int failures = 0;
+		if (spawner.hits != 1) {
+			System.out.println("Spawning: spawner reported " + spawner.hits + " collisions, expected 1");
+			failures ++;
+		}
+		for (TestEntity entity : pairs) {
+			if (entity.hits != 1) {
+				if (failures ++ < 10) {
+					System.out.println("Spawning: " + entity + " reported " + entity.hits + " collisions, expected 1");
+				}
+			}
+		}
+		return failures;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.util.Random;
+
+/**
+ * A battlefield of test entities for the collision checks and benchmarks: square buildings scattered over the middle of
+ * the map, gidrahs wandering slowly over them and bullets flying fast through everything, wrapping at the edges.
+ */
+class CollisionScene {
+
+	final TestEntity[] entities;
+	final int numGidrahs, numBullets, numBuildings;
+	final int size;
+
+	private final float[] vx, vy;
+	private final Random random;
+
+	/**
+	 * @param size Size of the battlefield, in pixels
+	 */
+	CollisionScene(Random random, int size, int numGidrahs, int numBullets, int numBuildings) {
+		this.random = random;
+		this.size = size;
+		this.numGidrahs = numGidrahs;
+		this.numBullets = numBullets;
+		this.numBuildings = numBuildings;
+		int n = numGidrahs + numBullets + numBuildings;
+		entities = new TestEntity[n];
+		vx = new float[n];
+		vy = new float[n];
+		int id = 0;
+		for (int i = 0; i < numBuildings; i ++) {
+			int tiles = 2 + random.nextInt(2);
+			TestEntity building = new TestEntity(id, tiles * MapRenderer.TILE_SIZE, tiles * MapRenderer.TILE_SIZE, Entity.COLLIDE_BUILDING, Entity.COLLIDE_BULLET | Entity.COLLIDE_GIDRAH);
+			building.moveTo(random.nextInt(size / MapRenderer.TILE_SIZE - tiles) * MapRenderer.TILE_SIZE, random.nextInt(size / MapRenderer.TILE_SIZE - tiles) * MapRenderer.TILE_SIZE);
+			entities[id ++] = building;
+		}
+		for (int i = 0; i < numGidrahs; i ++) {
+			TestEntity gidrah = new TestEntity(id, 4.0f + random.nextInt(9), Entity.COLLIDE_GIDRAH, Entity.COLLIDE_BUILDING | Entity.COLLIDE_BULLET | Entity.COLLIDE_SMARTBOMB);
+			gidrah.moveTo(random.nextFloat() * size, random.nextFloat() * size);
+			double angle = random.nextDouble() * Math.PI * 2.0;
+			vx[id] = (float) Math.cos(angle) * 0.5f;
+			vy[id] = (float) Math.sin(angle) * 0.5f;
+			entities[id ++] = gidrah;
+		}
+		for (int i = 0; i < numBullets; i ++) {
+			TestEntity bullet = new TestEntity(id, 1.0f + random.nextInt(4), Entity.COLLIDE_BULLET, Entity.COLLIDE_BULLET);
+			bullet.moveTo(random.nextFloat() * size, random.nextFloat() * size);
+			double angle = random.nextDouble() * Math.PI * 2.0;
+			vx[id] = (float) Math.cos(angle) * 6.0f;
+			vy[id] = (float) Math.sin(angle) * 6.0f;
+			entities[id ++] = bullet;
+		}
+	}
+
+	/**
+	 * Store everything in a collision manager
+	 */
+	void store(CollisionManager manager) {
+		for (TestEntity entity : entities) {
+			manager.store(entity);
+		}
+	}
+
+	/**
+	 * Move everything that moves by a frame, telling the collision manager about those stored in it, and clear the hit counts
+	 * @param stored Which entities are stored in the collision manager, or null for all of them
+	 */
+	void step(CollisionManager manager, boolean[] stored) {
+		for (int i = 0; i < entities.length; i ++) {
+			TestEntity entity = entities[i];
+			entity.hits = 0;
+			if (vx[i] == 0.0f && vy[i] == 0.0f) {
+				continue;
+			}
+			if (random.nextInt(30) == 0) {
+				// Change direction now and then, keeping the speed
+				double angle = random.nextDouble() * Math.PI * 2.0;
+				float speed = (float) Math.sqrt(vx[i] * vx[i] + vy[i] * vy[i]);
+				vx[i] = (float) Math.cos(angle) * speed;
+				vy[i] = (float) Math.sin(angle) * speed;
+			}
+			float x = entity.getMapX() + vx[i], y = entity.getMapY() + vy[i];
+			if (x < 0.0f) {
+				x += size;
+			} else if (x >= size) {
+				x -= size;
+			}
+			if (y < 0.0f) {
+				y += size;
+			} else if (y >= size) {
+				y -= size;
+			}
+			entity.moveTo(x, y);
+			if (stored == null || stored[i]) {
+				manager.move(entity);
+			}
+		}
+	}
+
+	/**
+	 * @return true if either entity is interested in colliding with the other, by category and mask
+	 */
+	static boolean interested(Entity a, Entity b) {
+		return (a.getCollisionMask() & b.getCollisionCategory() | b.getCollisionMask() & a.getCollisionCategory()) != 0;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link EntityList} against an ArrayList of the entities it should hold: removals must be hidden from readers
+ * straight away, remove(Object) must say whether the entity was there, and compacting must leave exactly the entities
+ * that are left, in order. The same entities go in a list of all entities and a typed list at once, as they do in the
+ * game state, so the two lists must keep their slots apart.
+ */
+public final class EntityListCheck {
+
+	private static final int ROUNDS = 4000;
+	private static final int ENTITIES = 64;
+
+	private EntityListCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Field active = Entity.class.getDeclaredField("active");
+		active.setAccessible(true);
+
+		Random random = new Random(11);
+		TestEntity[] pool = new TestEntity[ENTITIES];
+		for (int i = 0; i < ENTITIES; i ++) {
+			pool[i] = new TestEntity(i, 4.0f, 1, 1);
+		}
+
+		List<EntityList<TestEntity>> lists = new ArrayList<EntityList<TestEntity>>();
+		lists.add(new EntityList<TestEntity>(EntityList.ALL));
+		lists.add(new EntityList<TestEntity>(EntityList.TYPED));
+		List<List<TestEntity>> models = new ArrayList<List<TestEntity>>();
+		models.add(new ArrayList<TestEntity>());
+		models.add(new ArrayList<TestEntity>());
+		int failures = 0, compacts = 0;
+		for (int round = 0; round < ROUNDS; round ++) {
+			TestEntity e = pool[random.nextInt(ENTITIES)];
+			int which = random.nextInt(2);
+			EntityList<TestEntity> list = lists.get(which);
+			List<TestEntity> expected = models.get(which);
+			switch (random.nextInt(8)) {
+				case 0:
+				case 1:
+				case 2:
+					// An entity is only ever in a list once
+					if (!expected.contains(e)) {
+						list.add(e);
+						expected.add(e);
+					}
+					break;
+				case 3:
+				case 4:
+					if (list.remove(e) != expected.remove(e)) {
+						System.out.println("Round " + round + ": remove() gave the wrong answer");
+						failures ++;
+					}
+					break;
+				case 5:
+					// Remove through the iterator
+					for (Iterator<TestEntity> i = list.iterator(); i.hasNext(); ) {
+						if (i.next() == e) {
+							i.remove();
+							expected.remove(e);
+							break;
+						}
+					}
+					break;
+				case 6:
+					list.compact();
+					compacts ++;
+					if (list.slotCount() != expected.size()) {
+						System.out.println("Round " + round + ": compact() left " + list.slotCount() + " slots, expected " + expected.size());
+						failures ++;
+					}
+					for (int i = 0; i < list.slotCount(); i ++) {
+						if (list.isRemoved(i) || i >= expected.size() || list.slot(i) != expected.get(i)) {
+							System.out.println("Round " + round + ": compact() left the wrong entity at " + i);
+							failures ++;
+							break;
+						}
+					}
+					break;
+				case 7:
+					// Deactivate an entity and cull the inactive ones from both lists
+					active.setBoolean(e, false);
+					for (int i = 0; i < lists.size(); i ++) {
+						lists.get(i).removeInactive();
+						models.get(i).remove(e);
+					}
+					compacts ++;
+					active.setBoolean(e, true);
+					break;
+				default:
+					assert false;
+			}
+
+			// Readers must never see a removed entity, in either list
+			for (int k = 0; k < lists.size(); k ++) {
+				list = lists.get(k);
+				expected = models.get(k);
+				List<TestEntity> seen = new ArrayList<TestEntity>();
+				for (TestEntity t : list) {
+					seen.add(t);
+				}
+				int live = 0;
+				for (int i = 0; i < list.slotCount(); i ++) {
+					if (!list.isRemoved(i)) {
+						if (live >= expected.size() || list.slot(i) != expected.get(live)) {
+							live = -1;
+							break;
+						}
+						live ++;
+					}
+				}
+				if (!seen.equals(expected) || live != expected.size() || list.size() != expected.size() || list.isEmpty() != expected.isEmpty() || list.contains(e) != expected.contains(e)) {
+					System.out.println("Round " + round + ": list " + k + " holds " + seen + ", expected " + expected);
+					failures ++;
+					lists.set(k, copy(expected, k == 0 ? EntityList.ALL : EntityList.TYPED));
+				}
+			}
+		}
+
+		// Serialization writes only what's left
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(lists);
+		oos.close();
+		List<?> read = (List<?>) new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+		for (int k = 0; k < read.size(); k ++) {
+			EntityList<?> list = (EntityList<?>) read.get(k);
+			if (list.size() != models.get(k).size() || list.slotCount() != models.get(k).size()) {
+				System.out.println("Serialized list " + k + " holds " + list.size() + " entities, expected " + models.get(k).size());
+				failures ++;
+			} else {
+				// Entities read back must know their slots, in both lists
+				for (Object o : list.toArray()) {
+					if (!list.remove(o)) {
+						System.out.println("Serialized list " + k + " lost the slot of " + o);
+						failures ++;
+						break;
+					}
+				}
+			}
+		}
+
+		System.out.println("EntityListCheck: " + ROUNDS + " operations, " + compacts + " compacts, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static EntityList<TestEntity> copy(List<TestEntity> entities, int kind) {
+		EntityList<TestEntity> ret = new EntityList<TestEntity>(kind);
+		ret.addAll(entities);
+		return ret;
+	}
+}
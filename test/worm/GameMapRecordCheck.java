@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.puppygames.applet.SaveFile;
+import worm.tiles.EmptyTile;
+
+/**
+ * Checks that {@link GameMap} records read back exactly as they were written, straight, through a {@link SaveFile}
+ * and through serialization, and that damaged, truncated, mismatched or out of date records are rejected with an
+ * IOException rather than read as a broken map.
+ */
+public final class GameMapRecordCheck {
+
+	private static final int ROUNDS = 40;
+
+	private GameMapRecordCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		new EmptyTile().register();
+
+		Random random = new Random(17);
+		int failures = 0, rejected = 0;
+		for (int round = 0; round < ROUNDS; round ++) {
+			int width = 1 + random.nextInt(80), height = 1 + random.nextInt(80);
+			byte[] record = record(random, 1, width, height, 0);
+
+			// Straight
+			GameMap map = new GameMap(new DataInputStream(new ByteArrayInputStream(record)));
+			if (map.getWidth() != width || map.getHeight() != height || !Arrays.equals(record, bytes(map))) {
+				System.out.println("Round " + round + ": record didn't read back as written");
+				failures ++;
+			}
+
+			// Through a save file
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			SaveFile.writeRecord(map, file);
+			byte[] saved = file.toByteArray();
+			if (!Arrays.equals(record, bytes(new GameMap(SaveFile.readRecord(new ByteArrayInputStream(saved)))))) {
+				System.out.println("Round " + round + ": record didn't survive a save file");
+				failures ++;
+			}
+
+			// Through serialization, as in a saved game
+			ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			SaveFile.write(map, serialized);
+			GameMap copy = (GameMap) SaveFile.read(new ByteArrayInputStream(serialized.toByteArray()));
+			if (!Arrays.equals(record, bytes(copy))) {
+				System.out.println("Round " + round + ": map didn't survive serialization");
+				failures ++;
+			}
+
+			// Damage: a flipped byte, truncation, the wrong kind of file, the wrong version, and layers of the wrong size
+			byte[] flipped = saved.clone();
+			flipped[24 + random.nextInt(saved.length - 24)] ^= 1 << random.nextInt(8);
+			byte[] truncated = Arrays.copyOf(saved, random.nextInt(saved.length));
+			byte[][] files = {flipped, truncated, serialized.toByteArray()};
+			for (int i = 0; i < files.length; i ++) {
+				if (readFile(files[i])) {
+					rejected ++;
+				} else {
+					System.out.println("Round " + round + ": damaged file " + i + " was accepted");
+					failures ++;
+				}
+			}
+			byte[][] records = {
+				record(random, 2, width, height, 0),
+				record(random, 1, width, height, 1 + random.nextInt(7)),
+				record(random, 1, 4097, height, 0),
+				Arrays.copyOf(record, random.nextInt(record.length))
+			};
+			for (int i = 0; i < records.length; i ++) {
+				if (readRecord(records[i])) {
+					rejected ++;
+				} else {
+					System.out.println("Round " + round + ": bad record " + i + " was accepted");
+					failures ++;
+				}
+			}
+		}
+
+		System.out.println("GameMapRecordCheck: " + ROUNDS + " maps, " + rejected + " bad records rejected, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Write a map record by hand, with random contents
+	 * @param version The record version
+	 * @param width Map width
+	 * @param height Map height
+	 * @param skew If non zero, the layer at this index is written one tile too wide
+	 */
+	private static byte[] record(Random random, int version, int width, int height, int skew) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeInt(version);
+		out.writeShort(random.nextInt(4));
+
+		// Map clip
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(GameMap.LAYERS);
+		for (int i = 0; i < width * height * GameMap.LAYERS; i ++) {
+			out.writeShort(random.nextInt(64));
+		}
+
+		// visibility, occupied, danger, attacking, fade, cost, difficulty
+		int[] border = {1, 2, 0, 2, 0, 0, 0};
+		for (int layer = 0; layer < border.length; layer ++) {
+			int w = width + border[layer] + (skew == layer + 1 ? 1 : 0), h = height + border[layer];
+			out.writeInt(w);
+			out.writeInt(h);
+			out.writeInt(0);
+			for (int i = 0; i < w * h; i ++) {
+				out.writeInt(random.nextInt());
+			}
+		}
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	private static byte[] bytes(GameMap map) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		map.write(out);
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * @return true if the save file was rejected
+	 */
+	private static boolean readFile(byte[] file) {
+		try {
+			new GameMap(SaveFile.readRecord(new ByteArrayInputStream(file)));
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * @return true if the record was rejected
+	 */
+	private static boolean readRecord(byte[] record) {
+		try {
+			new GameMap(new DataInputStream(new ByteArrayInputStream(record)));
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.lwjgl.util.Rectangle;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+
+/**
+ * Fires every bullet defined in weapons.xml through a field of gidrahs, buildings and wall tiles twice: once the way
+ * bullets used to work, stepping a pixel at a time and testing every entity for touching at each step, and once the
+ * way {@link worm.entities.Bullet} works now, sweeping the whole tick's path through {@link GridCollisionManager} and
+ * filing what it finds against substeps. The speed, deceleration, range, targeting and pass-through of each definition
+ * are used as they are; non-passthrough definitions are fired again as passthrough, so that several hits from one sweep
+ * are delivered. Some targets deflect the bullet, which sweeps again, and walls stop it with the WALLTHRU_* rules.
+ * <p>
+ * Both ways must hit the same entities at the same substeps, in the same order. There are two intended differences,
+ * after which the two bullets go their own ways and the rest of the shot isn't compared:
+ * <ul>
+ * <li>The sweep hits an entity that the old way stepped right over, because the bullet's circle only passes over it in
+ * between two substeps.
+ * <li>Two entities reached at the same substep are hit nearest first, rather than in the grid's order.
+ * </ul>
+ * Hits so close to a whole substep that rounding may file them a step either way are counted separately.
+ */
+public final class SweepCheck {
+
+	private static final int SIZE = 40 * MapRenderer.TILE_SIZE;
+	private static final int SHOTS = 400;
+	private static final int MAX_TICKS = 60;
+
+	/** Radius of a bullet in flight */
+	private static final float RADIUS = 3.0f;
+
+	/** As {@link worm.entities.Bullet} */
+	private static final int WALLTHRU_UNKNOWN = 0, WALLTHRU_IN_WALL = 1, WALLTHRU_NORMAL = 2;
+	private static final int REMAINING_RANGE = 20;
+
+	/** Hits this close to a whole step may be filed a step either way, due to rounding */
+	private static final float BORDERLINE = 1.0E-3f;
+
+	/**
+	 * The parameters of a bullet definition that matter to what it hits
+	 */
+	private static final class Spec {
+		String name;
+		float minSpeed, maxSpeed, deceleration;
+		int damage, range;
+		boolean passThrough, targeted, exploding;
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * A hit: the substep at which it happened, and where the bullet was
+	 */
+	private static final class Hit {
+		final int tick, step;
+		final TestEntity entity;
+		final float near, px, py, x, y;
+
+		Hit(int tick, int step, TestEntity entity, float near, float px, float py, float x, float y) {
+			this.tick = tick;
+			this.step = step;
+			this.entity = entity;
+			this.near = near;
+			this.px = px;
+			this.py = py;
+			this.x = x;
+			this.y = y;
+		}
+
+		boolean sameAs(Hit h) {
+			return h.tick == tick && h.step == step && h.entity == entity;
+		}
+
+		boolean before(Hit h) {
+			return tick < h.tick || tick == h.tick && step < h.step;
+		}
+
+		@Override
+		public String toString() {
+			return (entity.round ? "circle " : "rectangle ") + entity.id + " at tick " + tick + " step " + step;
+		}
+	}
+
+	/**
+	 * A bullet, following the rules of {@link worm.entities.Bullet#doTick()} for a bullet that isn't exploding
+	 */
+	private static final class Shot implements RaycastCallback {
+
+		final Spec spec;
+		final boolean passThrough, swept;
+		final GridCollisionManager manager;
+		final TestEntity[] entities;
+		final boolean[] walls;
+		final List<Hit> hits = new ArrayList<Hit>();
+
+		/** Entities that have been hit; a target ignores a bullet it has already seen */
+		final Map<Entity, Boolean> seen = new IdentityHashMap<Entity, Boolean>();
+
+		/** Entities the sweep will reach this tick, and the substeps at which it reaches them */
+		final List<TestEntity> filed = new ArrayList<TestEntity>();
+		final List<Integer> filedSteps = new ArrayList<Integer>();
+		final List<Float> filedNear = new ArrayList<Float>();
+		int firstStep;
+		float stepLength;
+
+		final Rectangle bounds = new Rectangle();
+		float x, y, dx, dy, speed, leftoverMovement;
+		int sx, sy, rangeToTarget, remainingRange, damage, wallThruState, tick;
+		boolean active = true;
+
+		Shot(Spec spec, boolean passThrough, boolean swept, GridCollisionManager manager, TestEntity[] entities, boolean[] walls, int sx, int sy, int tx, int ty, float speed) {
+			this.spec = spec;
+			this.passThrough = passThrough;
+			this.swept = swept;
+			this.manager = manager;
+			this.entities = entities;
+			this.walls = walls;
+			this.sx = sx;
+			this.sy = sy;
+			this.speed = speed;
+			x = sx;
+			y = sy;
+			damage = spec.damage;
+			remainingRange = spec.range;
+			float ddx = tx - sx;
+			float ddy = ty - sy;
+			rangeToTarget = (int) Math.sqrt(ddx * ddx + ddy * ddy);
+			dx = ddx / rangeToTarget;
+			dy = ddy / rangeToTarget;
+		}
+
+		void fire() {
+			for (int t = 0; t < MAX_TICKS && active; t ++) {
+				tick = t;
+				doTick();
+			}
+		}
+
+		private void doTick() {
+			if (remainingRange > 0) {
+				remainingRange --;
+				if (remainingRange == 0) {
+					active = false;
+					return;
+				}
+			}
+			if (spec.targeted && distanceFromStart() >= rangeToTarget) {
+				active = false;
+				return;
+			}
+
+			int ms = (int) speed;
+			float rem = speed - ms;
+			leftoverMovement += rem;
+			if (leftoverMovement >= 1.0f) {
+				leftoverMovement -= 1.0f;
+				ms ++;
+			}
+
+			int tileX = (int) (x / MapRenderer.TILE_SIZE);
+			int tileY = (int) (y / MapRenderer.TILE_SIZE);
+			List<TestEntity> nearby = null;
+			int nextShootable = 0;
+			if (swept) {
+				sweep(0, ms);
+			} else {
+				nearby = nearby(ms);
+			}
+			for (int i = 0; i < ms && active; i ++) {
+				float px = x, py = y;
+				x += dx;
+				y += dy;
+				if (x < 2.0f || y < 2.0f || x >= SIZE - 2.0f || y >= SIZE - 2.0f) {
+					active = false;
+					return;
+				}
+				if (spec.targeted && distanceFromStart() >= rangeToTarget) {
+					active = false;
+					return;
+				}
+
+				float oldDx = dx, oldDy = dy;
+				if (swept) {
+					while (nextShootable < filed.size() && filedSteps.get(nextShootable) <= i) {
+						hit(i, filed.get(nextShootable), filedNear.get(nextShootable), px, py);
+						nextShootable ++;
+						if (!active) {
+							return;
+						}
+					}
+					if (dx != oldDx || dy != oldDy) {
+						sweep(i + 1, ms);
+						nextShootable = 0;
+					}
+				} else {
+					for (TestEntity entity : nearby) {
+						if (entity.isTouching(x, y, RADIUS)) {
+							hit(i, entity, Float.NaN, px, py);
+							if (!active) {
+								return;
+							}
+						}
+					}
+				}
+
+				int newTileX = (int) (x / MapRenderer.TILE_SIZE);
+				int newTileY = (int) (y / MapRenderer.TILE_SIZE);
+				if (newTileX != tileX || newTileY != tileY) {
+					tileX = newTileX;
+					tileY = newTileY;
+					if (walls[tileX + tileY * (SIZE / MapRenderer.TILE_SIZE)]) {
+						switch (wallThruState) {
+							case WALLTHRU_UNKNOWN:
+								wallThruState = WALLTHRU_IN_WALL;
+								break;
+							case WALLTHRU_IN_WALL:
+								break;
+							case WALLTHRU_NORMAL:
+								active = false;
+								return;
+							default:
+								assert false : wallThruState;
+						}
+					} else {
+						wallThruState = WALLTHRU_NORMAL;
+					}
+				}
+			}
+			speed -= spec.deceleration;
+			if (speed < 1.0f) {
+				active = false;
+			}
+		}
+
+		private float distanceFromStart() {
+			return (float) Math.sqrt((x - sx) * (x - sx) + (y - sy) * (y - sy));
+		}
+
+		/**
+		 * The target's side of a hit: deflect the bullet from every third entity, otherwise take the hit
+		 */
+		private void hit(int step, TestEntity target, float near, float px, float py) {
+			if (seen.put(target, Boolean.TRUE) != null) {
+				return;
+			}
+			hits.add(new Hit(tick, step, target, near, px, py, x, y));
+			if (target.id % 3 == 0) {
+				// As Bullet.bounce(), without the jitter
+				remainingRange = REMAINING_RANGE;
+				double angleOfCollision = Math.atan2(target.getMapY() - y, target.getMapX() - x);
+				double diff = Math.atan2(dy, dx) - angleOfCollision;
+				double reflection = angleOfCollision + Math.PI - diff;
+				dx = (float) Math.cos(reflection);
+				dy = (float) Math.sin(reflection);
+			} else if (passThrough) {
+				if (-- damage <= 0) {
+					active = false;
+				}
+			} else {
+				active = false;
+			}
+		}
+
+		/**
+		 * As Bullet.sweep()
+		 */
+		private void sweep(int step, int steps) {
+			filed.clear();
+			filedSteps.clear();
+			filedNear.clear();
+			int length = steps - step;
+			if (length <= 0) {
+				return;
+			}
+			firstStep = step;
+			stepLength = (float) Math.sqrt(dx * dx + dy * dy);
+			manager.raycast(x, y, x + dx * length, y + dy * length, RADIUS, stepLength, Entity.COLLIDE_ALL, this);
+		}
+
+		/**
+		 * As Bullet.Sweep.onHit()
+		 */
+		@Override
+		public boolean onHit(Entity entity, float near, float far) {
+			filed.add((TestEntity) entity);
+			filedSteps.add(firstStep + Math.max(0, (int) Math.ceil(near / stepLength) - 1));
+			filedNear.add(near / stepLength);
+			return false;
+		}
+
+		/**
+		 * @return the entities the bullet might touch in the next few substeps, in the grid's order
+		 */
+		private List<TestEntity> nearby(int steps) {
+			List<TestEntity> ret = new ArrayList<TestEntity>();
+			int margin = steps + (int) RADIUS + 2;
+			for (TestEntity entity : entities) {
+				entity.getBounds(bounds);
+				if (x >= bounds.getX() - margin && x <= bounds.getX() + bounds.getWidth() + margin && y >= bounds.getY() - margin && y <= bounds.getY() + bounds.getHeight() + margin) {
+					ret.add(entity);
+				}
+			}
+			return ret;
+		}
+	}
+
+	private SweepCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Spec> specs = loadSpecs();
+		Random random = new Random(23);
+		CollisionScene scene = new CollisionScene(random, SIZE, 160, 0, 60);
+		GridCollisionManager manager = new GridCollisionManager(MapRenderer.TILE_SIZE);
+		scene.store(manager);
+		int tiles = SIZE / MapRenderer.TILE_SIZE;
+		boolean[] walls = new boolean[tiles * tiles];
+		for (int i = 0; i < walls.length; i ++) {
+			walls[i] = random.nextInt(25) == 0;
+		}
+
+		int failures = 0, shots = 0, hits = 0, between = 0, order = 0, borderline = 0;
+		for (Spec spec : specs) {
+			for (int pass = 0; pass < 2; pass ++) {
+				boolean passThrough = pass == 1;
+				if (spec.passThrough && !passThrough) {
+					continue;
+				}
+				for (int i = 0; i < SHOTS; i ++) {
+					int sx = 32 + random.nextInt(SIZE - 64), sy = 32 + random.nextInt(SIZE - 64);
+					int tx, ty;
+					do {
+						tx = sx + random.nextInt(801) - 400;
+						ty = sy + random.nextInt(801) - 400;
+					} while (Math.abs(tx - sx) + Math.abs(ty - sy) < 8);
+					float speed = spec.minSpeed + random.nextFloat() * (spec.maxSpeed - spec.minSpeed);
+					Shot old = new Shot(spec, passThrough, false, manager, scene.entities, walls, sx, sy, tx, ty, speed);
+					Shot now = new Shot(spec, passThrough, true, manager, scene.entities, walls, sx, sy, tx, ty, speed);
+					old.fire();
+					now.fire();
+					shots ++;
+
+					int n = Math.min(old.hits.size(), now.hits.size());
+					int k = 0;
+					while (k < n && old.hits.get(k).sameAs(now.hits.get(k))) {
+						k ++;
+					}
+					hits += k;
+					if (k == old.hits.size() && k == now.hits.size()) {
+						continue;
+					}
+					Hit was = k < old.hits.size() ? old.hits.get(k) : null;
+					Hit is = k < now.hits.size() ? now.hits.get(k) : null;
+					if (is != null && (was == null || !was.before(is)) && !is.entity.isTouching(is.x, is.y, RADIUS) && touchedBetween(is)) {
+						between ++;
+					} else if (is != null && was != null && !was.before(is) && is.entity.isTouching(is.x, is.y, RADIUS)) {
+						order ++;
+					} else if (is != null && Math.abs(is.near - Math.round(is.near)) < BORDERLINE && touchedJustAfter(is)) {
+						borderline ++;
+					} else {
+						System.out.println(spec + (passThrough ? " (passthrough)" : "") + " shot " + i + ": hit " + is + ", expected " + was);
+						failures ++;
+					}
+				}
+			}
+		}
+
+		System.out.println("SweepCheck: " + specs.size() + " bullets, " + shots + " shots, " + hits + " hits matched, " + between + " hit between steps, " + order + " hit in nearest order, " + borderline + " borderline, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return true if the bullet touches the entity on its way to the substep at which it hit it, in finer steps than
+	 * it actually moves
+	 */
+	private static boolean touchedBetween(Hit hit) {
+		for (float t = 0.0f; t <= 1.0f; t += 0.01f) {
+			if (hit.entity.isTouching(hit.px + (hit.x - hit.px) * t, hit.py + (hit.y - hit.py) * t, RADIUS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the bullet isn't quite touching the entity at the substep at which it hit it, but would be a hair
+	 * further along
+	 */
+	private static boolean touchedJustAfter(Hit hit) {
+		float x = hit.x + (hit.x - hit.px) * BORDERLINE, y = hit.y + (hit.y - hit.py) * BORDERLINE;
+		return !hit.entity.isTouching(hit.x, hit.y, RADIUS) && hit.entity.isTouching(x, y, RADIUS);
+	}
+
+	/**
+	 * @return the bullets defined in weapons.xml which can hit things in flight; exploding bullets only collide once
+	 * they've gone off
+	 */
+	private static List<Spec> loadSpecs() throws Exception {
+		InputStream is = SweepCheck.class.getClassLoader().getResourceAsStream("weapons.xml");
+		if (is == null) {
+			throw new IllegalStateException("weapons.xml is not on the classpath");
+		}
+		Element root;
+		try {
+			root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is).getDocumentElement();
+		} finally {
+			is.close();
+		}
+		Map<String, Map<String, String>> byName = new HashMap<String, Map<String, String>>();
+		NodeList bullets = root.getElementsByTagName("bullet");
+		for (int i = 0; i < bullets.getLength(); i ++) {
+			Element e = (Element) bullets.item(i);
+			if (e.hasAttribute("name")) {
+				byName.put(e.getAttribute("name"), attributes(e));
+			}
+		}
+		List<Spec> ret = new ArrayList<Spec>();
+		for (Map.Entry<String, Map<String, String>> entry : byName.entrySet()) {
+			Map<String, String> a = new HashMap<String, String>();
+			for (Map<String, String> m = entry.getValue(); m != null; m = byName.get(m.get("inherit"))) {
+				for (Map.Entry<String, String> attribute : m.entrySet()) {
+					if (!a.containsKey(attribute.getKey())) {
+						a.put(attribute.getKey(), attribute.getValue());
+					}
+				}
+			}
+			Spec spec = new Spec();
+			spec.name = entry.getKey();
+			String[] speed = a.get("speed").split(",");
+			spec.minSpeed = Float.parseFloat(speed[0].trim());
+			spec.maxSpeed = Float.parseFloat(speed[speed.length - 1].trim());
+			spec.deceleration = a.containsKey("deceleration") ? Float.parseFloat(a.get("deceleration")) : 0.0f;
+			spec.damage = a.containsKey("damage") ? Integer.parseInt(a.get("damage")) : 0;
+			spec.range = a.containsKey("range") ? Integer.parseInt(a.get("range")) : 0;
+			spec.passThrough = Boolean.parseBoolean(a.get("passthrough"));
+			spec.targeted = Boolean.parseBoolean(a.get("targeted"));
+			spec.exploding = Boolean.parseBoolean(a.get("exploding"));
+			if (!spec.exploding) {
+				ret.add(spec);
+			}
+		}
+		if (ret.isEmpty()) {
+			throw new IllegalStateException("No bullets found in weapons.xml");
+		}
+		// Fire them in a stable order, so that the random shots are the same every run
+		Collections.sort(ret, new Comparator<Spec>() {
+			@Override
+			public int compare(Spec s0, Spec s1) {
+				return s0.name.compareTo(s1.name);
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * @return an element's attributes, with lower case names
+	 */
+	private static Map<String, String> attributes(Element e) {
+		Map<String, String> ret = new HashMap<String, String>();
+		NamedNodeMap attributes = e.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i ++) {
+			ret.put(attributes.item(i).getNodeName().toLowerCase(Locale.ENGLISH), attributes.item(i).getNodeValue());
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm;
+
+import java.lang.reflect.Field;
+
+import org.lwjgl.util.Rectangle;
+
+/**
+ * A bare entity for exercising the collision manager without a game: a circle or a rectangle with a collision
+ * category and mask, which counts the collisions it is told about.
+ */
+class TestEntity extends Entity {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Field ACTIVE;
+	static {
+		try {
+			ACTIVE = Entity.class.getDeclaredField("active");
+			ACTIVE.setAccessible(true);
+		} catch (NoSuchFieldException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	final int id;
+	final boolean round;
+	final float radius;
+	final int width, height;
+	final int category, mask;
+
+	/** Number of collisions reported */
+	int hits;
+
+	/** Set while moving, so that the entity stays out of the game's own collision manager */
+	private boolean moving;
+
+	/**
+	 * A round entity
+	 */
+	TestEntity(int id, float radius, int category, int mask) {
+		this.id = id;
+		this.round = true;
+		this.radius = radius;
+		this.width = 0;
+		this.height = 0;
+		this.category = category;
+		this.mask = mask;
+		activate();
+	}
+
+	/**
+	 * A rectangular entity, with its location at the bottom left
+	 */
+	TestEntity(int id, int width, int height, int category, int mask) {
+		this.id = id;
+		this.round = false;
+		this.radius = Math.max(width, height) * 0.5f;
+		this.width = width;
+		this.height = height;
+		this.category = category;
+		this.mask = mask;
+		activate();
+	}
+
+	/**
+	 * Move the entity without it being stored in the game's collision manager
+	 */
+	void moveTo(float x, float y) {
+		moving = true;
+		setLocation(x, y);
+		moving = false;
+	}
+
+	private void activate() {
+		try {
+			ACTIVE.setBoolean(this, true);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void addToGameState(GameStateInterface gsi) {
+	}
+
+	@Override
+	public void removeFromGameState(GameStateInterface gsi) {
+	}
+
+	@Override
+	public boolean canCollide() {
+		return !moving;
+	}
+
+	@Override
+	public void onCollision(Entity entity) {
+		hits ++;
+	}
+
+	@Override
+	public int getCollisionCategory() {
+		return category;
+	}
+
+	@Override
+	public int getCollisionMask() {
+		return mask;
+	}
+
+	@Override
+	public float getRadius() {
+		return radius;
+	}
+
+	@Override
+	public Rectangle getBounds(Rectangle bounds) {
+		if (bounds == null) {
+			bounds = new Rectangle();
+		}
+		if (round) {
+			bounds.setBounds((int) (getMapX() - radius), (int) (getMapY() - radius), (int) (radius * 2.0f), (int) (radius * 2.0f));
+		} else {
+			bounds.setBounds((int) getMapX(), (int) getMapY(), width, height);
+		}
+		return bounds;
+	}
+
+	@Override
+	public boolean isRound() {
+		return round;
+	}
+
+	@Override
+	public boolean isShootable() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "TestEntity[" + id + (round ? " r=" + radius : " " + width + "x" + height) + " at " + getMapX() + "," + getMapY() + "]";
+	}
+}
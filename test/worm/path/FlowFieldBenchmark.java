@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Compares a tick's worth of gidrah path queries on a 96x96 map: every gidrah running its own A* search to the
+ * target, against one shared flow field that every gidrah reads its route from. Also times building the field and
+ * repairing it after a building is placed.
+ */
+public final class FlowFieldBenchmark {
+
+	private static final int SIZE = 96;
+	private static final int GIDRAHS = 160;
+	private static final int ROUNDS = 20;
+
+	private FlowFieldBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		GridTopology topology = new GridTopology(SIZE, SIZE);
+		topology.randomise(random, 0.15f, 3);
+		int target = GridTopology.pack(SIZE / 2, SIZE / 2);
+		topology.setCost(SIZE / 2, SIZE / 2, 1);
+		int[] starts = new int[GIDRAHS];
+		for (int i = 0; i < GIDRAHS; i ++) {
+			// Gidrahs come in from the edges of the map
+			int x = random.nextBoolean() ? random.nextInt(4) : SIZE - 1 - random.nextInt(4);
+			int y = random.nextInt(SIZE);
+			topology.setCost(x, y, 1);
+			starts[i] = GridTopology.pack(x, y);
+		}
+
+		IntList path = new IntList(true, SIZE * SIZE);
+		int[] steps = new int[1];
+		long[] astar = new long[ROUNDS], build = new long[ROUNDS], follow = new long[ROUNDS], repair = new long[ROUNDS];
+		int astarSteps = 0, routeSteps = 0, buildSteps = 0, repairSteps = 0;
+		for (int round = -5; round < ROUNDS; round ++) {
+			// Per-gidrah A*
+			steps[0] = 0;
+			long then = System.nanoTime();
+			for (int i = 0; i < GIDRAHS; i ++) {
+				GridTopology.run(new AStar(topology), starts[i], target, path, steps);
+			}
+			long astarTime = System.nanoTime() - then;
+			astarSteps = steps[0];
+
+			// One flow field, built from scratch
+			then = System.nanoTime();
+			FlowField field = new FlowField(topology, target);
+			buildSteps = field.update(Integer.MAX_VALUE);
+			long buildTime = System.nanoTime() - then;
+
+			// Every gidrah walks its whole route out of the field
+			then = System.nanoTime();
+			routeSteps = 0;
+			for (int i = 0; i < GIDRAHS; i ++) {
+				for (int s = field.getNext(starts[i]); s != -1; s = field.getNext(s)) {
+					routeSteps ++;
+				}
+			}
+			long followTime = System.nanoTime() - then;
+
+			// A 3x3 building goes down somewhere between the edges and the target
+			int bx = SIZE / 4 + random.nextInt(SIZE / 2 - 3), by = random.nextInt(SIZE - 3);
+			for (int y = by; y < by + 3; y ++) {
+				for (int x = bx; x < bx + 3; x ++) {
+					if (GridTopology.pack(x, y) != target) {
+						topology.setCost(x, y, -1);
+					}
+				}
+			}
+			then = System.nanoTime();
+			field.invalidate(bx, by, 3, 3);
+			repairSteps = field.update(Integer.MAX_VALUE);
+			long repairTime = System.nanoTime() - then;
+			topology.randomise(random, bx, by, 3, 3, 0.0f, 3);
+
+			if (round >= 0) {
+				astar[round] = astarTime;
+				build[round] = buildTime;
+				follow[round] = followTime;
+				repair[round] = repairTime;
+			}
+		}
+
+		System.out.println("FlowFieldBenchmark: " + SIZE + "x" + SIZE + " map, " + GIDRAHS + " gidrahs, median of " + ROUNDS + " rounds");
+		System.out.println("  per-gidrah A*:        " + millis(astar) + "ms, " + astarSteps + " search steps");
+		System.out.println("  flow field build:     " + millis(build) + "ms, " + buildSteps + " states expanded");
+		System.out.println("  flow field routes:    " + millis(follow) + "ms, " + routeSteps + " steps read");
+		System.out.println("  flow field repair:    " + millis(repair) + "ms, " + repairSteps + " states expanded");
+	}
+
+	private static String millis(long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return String.format("%.3f", sorted[sorted.length / 2] / 1.0E6);
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Random;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Checks that flow fields built and repaired a few states at a time, with map changes arriving part way through,
+ * end up exactly the same as fields built from scratch, and that their distances match A* path costs. Exits with
+ * status 1 on failure.
+ */
+public final class FlowFieldCheck {
+
+	private static final int SIZE = 96;
+
+	private FlowFieldCheck() {
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		GridTopology topology = new GridTopology(SIZE, SIZE);
+		int failures = 0, compared = 0, searched = 0, updates = 0;
+
+		for (int map = 0; map < 20; map ++) {
+			topology.randomise(random, 0.2f, 5);
+			int targetX = random.nextInt(SIZE), targetY = random.nextInt(SIZE);
+			topology.setCost(targetX, targetY, 1);
+			int target = GridTopology.pack(targetX, targetY);
+			FlowField field = new FlowField(topology, target);
+
+			for (int change = 0; change < 25; change ++) {
+				// Work on the field in small pieces, changing the map part way through now and then
+				int budget = 1 + random.nextInt(500);
+				for (int i = 0; !field.isReady(); i ++) {
+					field.update(budget);
+					updates ++;
+					if (i < 100 && random.nextInt(20) == 0) {
+						failures += changeMap(random, topology, field, targetX, targetY);
+					}
+				}
+
+				FlowField fresh = new FlowField(topology, target);
+				fresh.update(Integer.MAX_VALUE);
+				for (int y = 0; y < SIZE; y ++) {
+					for (int x = 0; x < SIZE; x ++) {
+						int state = GridTopology.pack(x, y);
+						if (field.getDistance(state) != fresh.getDistance(state)) {
+							if (failures < 10) {
+								System.out.println("Map " + map + " change " + change + ": distance at " + x + "," + y + " is " + field.getDistance(state) + ", expected " + fresh.getDistance(state));
+							}
+							failures ++;
+						}
+						compared ++;
+					}
+				}
+
+				// Distances should be the cost of the best path
+				for (int i = 0; i < 5; i ++) {
+					int start = GridTopology.pack(random.nextInt(SIZE), random.nextInt(SIZE));
+					if (topology.isWall(start) || start == target) {
+						continue;
+					}
+					IntList path = new IntList();
+					int result = GridTopology.run(new AStar(topology), start, target, path, new int[1]);
+					int expected = result == PathFinder.SEARCH_STATE_SUCCEEDED ? topology.getPathCost(start, path) : FlowField.UNREACHABLE;
+					if (field.getDistance(start) != expected) {
+						System.out.println("Map " + map + ": distance " + field.getDistance(start) + ", A* path cost " + expected);
+						failures ++;
+					}
+					searched ++;
+				}
+
+				failures += changeMap(random, topology, field, targetX, targetY);
+			}
+		}
+
+		System.out.println("FlowFieldCheck: " + compared + " distances compared, " + searched + " A* searches, " + updates + " updates, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Change a random patch of the map and tell the field about it
+	 * @return the number of failures
+	 */
+	private static int changeMap(Random random, GridTopology topology, FlowField field, int targetX, int targetY) {
+		int x = random.nextInt(SIZE), y = random.nextInt(SIZE), w = 1 + random.nextInt(6), h = 1 + random.nextInt(6);
+		topology.randomise(random, x, y, w, h, 0.3f, 5);
+		topology.setCost(targetX, targetY, 1);
+		field.invalidate(x, y, w, h);
+		return field.isReady() ? 1 : 0;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Times {@link AStar} against {@link GridAStar} on a 96x96 map in three cases: an open field, a maze of walls with
+ * single gaps, and a goal walled off so the whole reachable map is searched. Each searcher is reused between
+ * searches. Also reports how much each one allocates, where the JVM can tell us.
+ */
+public final class GridAStarBenchmark {
+
+	private static final int SIZE = 96;
+	private static final int SEARCHES = 100;
+	private static final int ROUNDS = 15;
+
+	private GridAStarBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		System.out.println("GridAStarBenchmark: " + SIZE + "x" + SIZE + " map, " + SEARCHES + " searches, median of " + ROUNDS + " rounds");
+
+		Random random = new Random(3);
+		GridTopology open = new GridTopology(SIZE, SIZE);
+		open.randomise(random, 0.05f, 3);
+		run("open field", open, random, false);
+
+		GridTopology maze = new GridTopology(SIZE, SIZE);
+		maze.maze(random, 6);
+		run("maze", maze, random, false);
+
+		GridTopology walled = new GridTopology(SIZE, SIZE);
+		walled.randomise(random, 0.05f, 3);
+		run("unreachable goal", walled, random, true);
+	}
+
+	private static void run(String name, GridTopology topology, Random random, boolean wallOffGoal) {
+		int[] starts = new int[SEARCHES], ends = new int[SEARCHES];
+		for (int i = 0; i < SEARCHES; i ++) {
+			int sx = random.nextInt(SIZE / 8), sy = random.nextInt(SIZE);
+			int ex = SIZE - 1 - random.nextInt(SIZE / 8), ey = random.nextInt(SIZE);
+			if (wallOffGoal) {
+				ex = Math.max(1, Math.min(SIZE - 2, ex));
+				ey = Math.max(1, Math.min(SIZE - 2, ey));
+			}
+			starts[i] = GridTopology.pack(sx, sy);
+			ends[i] = GridTopology.pack(ex, ey);
+		}
+
+		long[] astarTimes = new long[ROUNDS], gridTimes = new long[ROUNDS];
+		long astarBytes = 0, gridBytes = 0;
+		int astarSteps = 0, gridSteps = 0;
+		AStar astar = new AStar(topology);
+		GridAStar grid = new GridAStar(topology);
+		IntList path = new IntList(true, SIZE * SIZE);
+		int[] steps = new int[1];
+		for (int round = -5; round < ROUNDS; round ++) {
+			long astarTime = 0, gridTime = 0;
+			for (int i = 0; i < SEARCHES; i ++) {
+				int sx = GridTopology.getX(starts[i]), sy = GridTopology.getY(starts[i]);
+				int ex = GridTopology.getX(ends[i]), ey = GridTopology.getY(ends[i]);
+				int[] saved = topology.cost.clone();
+				topology.setCost(sx, sy, 1);
+				topology.setCost(ex, ey, 1);
+				if (wallOffGoal) {
+					for (int y = ey - 1; y <= ey + 1; y ++) {
+						for (int x = ex - 1; x <= ex + 1; x ++) {
+							if (x != ex || y != ey) {
+								topology.setCost(x, y, -1);
+							}
+						}
+					}
+				}
+
+				steps[0] = 0;
+				long bytes = allocated();
+				long then = System.nanoTime();
+				GridTopology.run(astar, starts[i], ends[i], path, steps);
+				astarTime += System.nanoTime() - then;
+				astarBytes = bytes < 0L ? -1L : allocated() - bytes;
+				astarSteps = steps[0];
+
+				steps[0] = 0;
+				bytes = allocated();
+				then = System.nanoTime();
+				GridTopology.run(grid, starts[i], ends[i], path, steps);
+				gridTime += System.nanoTime() - then;
+				gridBytes = bytes < 0L ? -1L : allocated() - bytes;
+				gridSteps = steps[0];
+
+				System.arraycopy(saved, 0, topology.cost, 0, saved.length);
+			}
+			if (round >= 0) {
+				astarTimes[round] = astarTime;
+				gridTimes[round] = gridTime;
+			}
+		}
+		System.out.println("  " + name + ":");
+		System.out.println("    AStar:     " + millis(astarTimes) + "ms, last search " + astarSteps + " steps, " + bytes(astarBytes) + " allocated");
+		System.out.println("    GridAStar: " + millis(gridTimes) + "ms, last search " + gridSteps + " steps, " + bytes(gridBytes) + " allocated");
+	}
+
+	/**
+	 * @return bytes allocated by this thread so far, or -1 if the JVM won't say
+	 */
+	private static long allocated() {
+		try {
+			return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+		} catch (ClassCastException e) {
+			return -1L;
+		} catch (LinkageError e) {
+			return -1L;
+		}
+	}
+
+	private static String bytes(long bytes) {
+		return bytes < 0L ? "?" : bytes + " bytes";
+	}
+
+	private static String millis(long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return String.format("%.3f", sorted[sorted.length / 2] / 1.0E6);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Random;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Checks that {@link GridAStar} agrees with {@link AStar} on random maps: the same result, paths of the same cost,
+ * and paths that are legal and end at the goal. Searchers are reused between searches, as gidrahs reuse theirs.
+ * Exits with status 1 on failure.
+ */
+public final class GridAStarCheck {
+
+	private GridAStarCheck() {
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(2);
+		GridTopology topology = new GridTopology(60, 60);
+		GridAStar grid = new GridAStar(topology);
+		IntList expected = new IntList(), actual = new IntList();
+		int[] astarSteps = new int[1], gridSteps = new int[1];
+		int failures = 0, found = 0;
+		for (int i = 0; i < 500; i ++) {
+			topology.randomise(random, i % 2 == 0 ? 0.3f : 0.45f, 5);
+			int start = GridTopology.pack(random.nextInt(60), random.nextInt(60));
+			int end = GridTopology.pack(random.nextInt(60), random.nextInt(60));
+			topology.setCost(GridTopology.getX(start), GridTopology.getY(start), 1);
+			topology.setCost(GridTopology.getX(end), GridTopology.getY(end), 1);
+
+			int r1 = GridTopology.run(new AStar(topology), start, end, expected, astarSteps);
+			int r2 = GridTopology.run(grid, start, end, actual, gridSteps);
+			if (r1 != r2) {
+				System.out.println("Search " + i + ": AStar gave " + r1 + ", GridAStar gave " + r2);
+				failures ++;
+			} else if (r1 == PathFinder.SEARCH_STATE_SUCCEEDED) {
+				found ++;
+				int c1 = topology.getPathCost(start, expected), c2 = topology.getPathCost(start, actual);
+				if (c2 == -1 || c1 != c2 || actual.size() > 0 && actual.get(actual.size() - 1) != end) {
+					System.out.println("Search " + i + ": AStar path cost " + c1 + ", GridAStar path cost " + c2);
+					failures ++;
+				}
+			}
+		}
+
+		System.out.println("GridAStarCheck: 500 searches, " + found + " paths, " + astarSteps[0] + " AStar steps, " + gridSteps[0] + " GridAStar steps, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+}
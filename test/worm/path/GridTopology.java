@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Random;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * An eight-way grid with a cost per tile, for exercising the path finders without a game. Negative costs are walls.
+ * States are packed the same way as the game's topologies.
+ */
+class GridTopology implements Topology {
+
+	final int width, height;
+	final int[] cost;
+
+	GridTopology(int width, int height) {
+		this.width = width;
+		this.height = height;
+		cost = new int[width * height];
+	}
+
+	/**
+	 * Fill the grid with random costs
+	 * @param random
+	 * @param wallChance Chance of each tile being a wall, 0..1
+	 * @param maxCost Most a tile can cost to enter
+	 */
+	void randomise(Random random, float wallChance, int maxCost) {
+		randomise(random, 0, 0, width, height, wallChance, maxCost);
+	}
+
+	/**
+	 * Fill part of the grid with random costs
+	 */
+	void randomise(Random random, int x, int y, int w, int h, float wallChance, int maxCost) {
+		for (int yy = Math.max(0, y); yy < Math.min(height, y + h); yy ++) {
+			for (int xx = Math.max(0, x); xx < Math.min(width, x + w); xx ++) {
+				cost[xx + yy * width] = random.nextFloat() < wallChance ? -1 : 1 + random.nextInt(maxCost);
+			}
+		}
+	}
+
+	/**
+	 * Turn the grid into a maze of walls with single gaps
+	 */
+	void maze(Random random, int spacing) {
+		for (int i = 0; i < cost.length; i ++) {
+			cost[i] = 1;
+		}
+		for (int x = spacing; x < width; x += spacing) {
+			int gap = random.nextInt(height);
+			for (int y = 0; y < height; y ++) {
+				if (y != gap) {
+					cost[x + y * width] = -1;
+				}
+			}
+		}
+	}
+
+	void setCost(int x, int y, int c) {
+		cost[x + y * width] = c;
+	}
+
+	boolean isWall(int state) {
+		return cost[getX(state) + getY(state) * width] < 0;
+	}
+
+	/**
+	 * @return the total cost of following a path from a start state
+	 */
+	int getPathCost(int start, IntList path) {
+		int total = 0;
+		int prev = start;
+		for (int i = 0; i < path.size(); i ++) {
+			int c = getCost(prev, path.get(i));
+			if (c < 0 || Math.max(Math.abs(getX(prev) - getX(path.get(i))), Math.abs(getY(prev) - getY(path.get(i)))) != 1) {
+				return -1;
+			}
+			total += c;
+			prev = path.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Run a path finder to completion
+	 * @return the final search state
+	 */
+	static int run(PathFinder finder, int start, int end, IntList path, int[] steps) {
+		finder.findPath(start, end, path);
+		int result;
+		do {
+			result = finder.nextStep();
+			steps[0] ++;
+		} while (result == PathFinder.SEARCH_STATE_SEARCHING);
+		return result;
+	}
+
+	static int pack(int x, int y) {
+		return x & 0xFFFF | y << 16;
+	}
+
+	static int getX(int state) {
+		if ((state & 0xFFFF) <= 0x7FFF) {
+			return state & 0x7FFF;
+		} else {
+			return state & 0xFFFF | 0xFFFF0000;
+		}
+	}
+
+	static int getY(int state) {
+		return state >> 16;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public int getCost(int from, int to) {
+		if (from == to) {
+			return 0;
+		}
+		int tx = getX(to), ty = getY(to);
+		int c = cost[tx + ty * width];
+		if (c < 0) {
+			return -1;
+		}
+		return Math.abs(getX(from) - tx) + Math.abs(getY(from) - ty) == 2 ? c * 14 / 10 : c;
+	}
+
+	@Override
+	public int getDistance(int from, int to) {
+		return Math.max(Math.abs(getX(from) - getX(to)), Math.abs(getY(from) - getY(to)));
+	}
+
+	@Override
+	public void getNeighbours(int node, int parent, IntList dest) {
+		dest.clear();
+		int x = getX(node), y = getY(node);
+		for (int dy = -1; dy <= 1; dy ++) {
+			for (int dx = -1; dx <= 1; dx ++) {
+				if (dx == 0 && dy == 0) {
+					continue;
+				}
+				int xx = x + dx, yy = y + dy;
+				if (xx < 0 || yy < 0 || xx >= width || yy >= height || cost[xx + yy * width] < 0) {
+					continue;
+				}
+				int n = pack(xx, yy);
+				if (n != parent) {
+					dest.add(n);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2003-onwards Shaven Puppy Ltd
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'Shaven Puppy' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package worm.path;
+
+import java.util.Random;
+
+import com.shavenpuppy.jglib.util.IntList;
+
+/**
+ * Checks {@link HierarchicalPathFinder} on random 96x96 maps. Fully refined routes must be legal, reach the goal,
+ * and agree with {@link GridAStar} about whether the goal can be reached. Then, with squares around the start
+ * blocked only in the searcher's local topology (as other gidrahs block a gidrah), the first step of a partly
+ * refined route must be one the searcher can actually take. Exits with status 1 on failure.
+ */
+public final class HierarchicalPathFinderCheck {
+
+	private static final int SIZE = 96;
+
+	private HierarchicalPathFinderCheck() {
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(4);
+		GridTopology shared = new GridTopology(SIZE, SIZE);
+		GridTopology local = new GridTopology(SIZE, SIZE);
+		IntList path = new IntList(), best = new IntList();
+		int[] steps = new int[1];
+		int failures = 0, found = 0, blockedWithout = 0, localRoutes = 0;
+		double worst = 1.0;
+		for (int i = 0; i < 200; i ++) {
+			shared.randomise(random, 0.2f, 10);
+			int start = GridTopology.pack(random.nextInt(SIZE), random.nextInt(SIZE));
+			int end = GridTopology.pack(random.nextInt(SIZE), random.nextInt(SIZE));
+			shared.setCost(GridTopology.getX(start), GridTopology.getY(start), 1);
+			shared.setCost(GridTopology.getX(end), GridTopology.getY(end), 1);
+			ClusterGraph graph = new ClusterGraph(shared, ClusterGraph.DEFAULT_CLUSTER_SIZE);
+
+			// Fully refined
+			int r1 = GridTopology.run(new HierarchicalPathFinder(graph, 1000), start, end, path, steps);
+			int r2 = GridTopology.run(new GridAStar(shared), start, end, best, steps);
+			if (r1 != r2) {
+				System.out.println("Search " + i + ": hierarchical gave " + r1 + ", GridAStar gave " + r2);
+				failures ++;
+			} else if (r1 == PathFinder.SEARCH_STATE_SUCCEEDED) {
+				found ++;
+				int cost = shared.getPathCost(start, path);
+				if (cost == -1 || path.get(path.size() - 1) != end) {
+					System.out.println("Search " + i + ": hierarchical route is not legal or doesn't reach the goal");
+					failures ++;
+				} else {
+					worst = Math.max(worst, (double) cost / shared.getPathCost(start, best));
+				}
+			}
+			if (r2 != PathFinder.SEARCH_STATE_SUCCEEDED || best.size() < 2) {
+				continue;
+			}
+
+			// Block the best first step, and most of the others, in the local topology only
+			System.arraycopy(shared.cost, 0, local.cost, 0, shared.cost.length);
+			int sx = GridTopology.getX(start), sy = GridTopology.getY(start);
+			local.setCost(GridTopology.getX(best.get(0)), GridTopology.getY(best.get(0)), -1);
+			for (int dy = -1; dy <= 1; dy ++) {
+				for (int dx = -1; dx <= 1; dx ++) {
+					int x = sx + dx, y = sy + dy;
+					if ((dx != 0 || dy != 0) && x >= 0 && y >= 0 && x < SIZE && y < SIZE && random.nextBoolean()) {
+						local.setCost(x, y, -1);
+					}
+				}
+			}
+			local.setCost(GridTopology.getX(end), GridTopology.getY(end), 1);
+
+			GridTopology.run(new HierarchicalPathFinder(graph, HierarchicalPathFinder.DEFAULT_REFINE_CLUSTERS), start, end, path, steps);
+			if (path.size() > 0 && local.getCost(start, path.get(0)) < 0) {
+				blockedWithout ++;
+			}
+			int r3 = GridTopology.run(new HierarchicalPathFinder(graph, HierarchicalPathFinder.DEFAULT_REFINE_CLUSTERS, local), start, end, path, steps);
+			if (r3 == PathFinder.SEARCH_STATE_SUCCEEDED) {
+				localRoutes ++;
+				if (local.getCost(start, path.get(0)) < 0 || Math.max(Math.abs(GridTopology.getX(path.get(0)) - sx), Math.abs(GridTopology.getY(path.get(0)) - sy)) != 1) {
+					System.out.println("Search " + i + ": first step with a local topology is blocked");
+					failures ++;
+				}
+			}
+		}
+
+		System.out.println("HierarchicalPathFinderCheck: " + found + " routes, worst cost " + String.format("%.3f", worst) + "x optimal; first step blocked "
+				+ blockedWithout + " times without a local topology, " + localRoutes + " local routes; " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+}